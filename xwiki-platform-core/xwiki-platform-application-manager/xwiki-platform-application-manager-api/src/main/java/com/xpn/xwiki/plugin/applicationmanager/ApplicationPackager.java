@@ -22,6 +22,7 @@
 import java.io.IOException;
 import java.util.Set;
 
+import org.apache.commons.lang3.StringUtils;
 import org.xwiki.localization.ContextualLocalizationManager;
 
 import com.xpn.xwiki.XWikiContext;
@@ -156,26 +157,33 @@ public void importApplication(XWikiDocument packageDoc, String packageName, Stri
         PackageAPI importer = ((PackageAPI) context.getWiki().getPluginApi(PACKAGEPLUGIN_NAME, context));
 
         try {
-            importer.Import(packFile.getContent(context));
-        } catch (IOException e) {
-            throw new ApplicationManagerException(XWikiException.ERROR_XWIKI_UNKNOWN,
-                this.localizationManager.getTranslationPlain(ApplicationManagerMessageTool.ERROR_IMORT_IMPORT,
-                    packageName), e);
-        }
+            try {
+                importer.Import(packFile.getContent(context));
+            } catch (IOException e) {
+                throw new ApplicationManagerException(XWikiException.ERROR_XWIKI_UNKNOWN,
+                    this.localizationManager.getTranslationPlain(ApplicationManagerMessageTool.ERROR_IMORT_IMPORT,
+                        packageName), e);
+            }
 
-        if (importer.install() == DocumentInfo.INSTALL_IMPOSSIBLE) {
-            throw new ApplicationManagerException(XWikiException.ERROR_XWIKI_UNKNOWN,
-                this.localizationManager.getTranslationPlain(ApplicationManagerMessageTool.ERROR_IMORT_INSTALL,
-                    packageName));
+            if (importer.install() == DocumentInfo.INSTALL_IMPOSSIBLE) {
+                throw new ApplicationManagerException(XWikiException.ERROR_XWIKI_UNKNOWN,
+                    this.localizationManager.getTranslationPlain(ApplicationManagerMessageTool.ERROR_IMORT_INSTALL,
+                        packageName));
+            }
+        } finally {
+            importer.dispose();
         }
 
-        // Apply applications installation
+        // Apply applications installation. The documents are read from the wiki since the package documents are
+        // released once installed.
         for (DocumentInfoAPI docinfo : importer.getFiles()) {
-            XWikiDocument doc = docinfo.getDocInfo().getDoc();
+            if (StringUtils.isEmpty(docinfo.getLanguage())) {
+                XWikiDocument doc = context.getWiki().getDocument(docinfo.getFullName(), context);
 
-            if (XWikiApplicationClass.getInstance(context).isInstance(doc)) {
-                this.applicationManager.reloadApplication(XWikiApplicationClass.getInstance(context)
-                    .newXObjectDocument(doc, 0, context), comment, context);
+                if (XWikiApplicationClass.getInstance(context).isInstance(doc)) {
+                    this.applicationManager.reloadApplication(XWikiApplicationClass.getInstance(context)
+                        .newXObjectDocument(doc, 0, context), comment, context);
+                }
             }
         }
     }
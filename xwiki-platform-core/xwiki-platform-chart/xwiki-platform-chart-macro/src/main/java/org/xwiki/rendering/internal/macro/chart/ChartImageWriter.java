@@ -41,6 +41,17 @@
      */
     void writeImage(ImageId imageId, byte[] imageData) throws MacroExecutionException;
 
+    /**
+     * Checks if an image has already been written to storage for the passed id. Since the image id is computed from
+     * the chart parameters and data, an existing image can be reused as is instead of generating the chart again.
+     *
+     * @param imageId the image id for the image to look for
+     * @return {@code true} if the image is available in the storage, {@code false} otherwise
+     * @throws MacroExecutionException if an error happened when computing the location
+     * @since 5.2M1
+     */
+    boolean exists(ImageId imageId) throws MacroExecutionException;
+
     /**
      * Compute the URL to use to access the stored generate chart image.
      *
@@ -31,6 +31,7 @@
 import org.apache.commons.lang3.StringUtils;
 import org.xwiki.chart.ChartGenerator;
 import org.xwiki.chart.ChartGeneratorException;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
@@ -107,9 +108,9 @@ public List<Block> execute(ChartMacroParameters macroParams, String content, Mac
         throws MacroExecutionException
     {
         // Generate the chart image in a temporary location.
-        generateChart(macroParams, content, context);
+        ImageId imageId = generateChart(macroParams, content, context);
 
-        String imageLocation = this.imageWriter.getURL(new ImageId(macroParams));
+        String imageLocation = this.imageWriter.getURL(imageId);
         String title = macroParams.getTitle();
         ResourceReference reference = new ResourceReference(imageLocation, ResourceType.URL);
         ImageBlock imageBlock = new ImageBlock(new ResourceReference(imageLocation, ResourceType.URL), true);
@@ -134,9 +135,10 @@ public List<Block> execute(ChartMacroParameters macroParams, String content, Mac
      * @param parameters the macro parameters
      * @param content the macro content
      * @param context the macro transformation context, used for example to find out the current document reference
+     * @return the id of the chart image
      * @throws MacroExecutionException if an error occurs while generating / saving the chart image
      */
-    private void generateChart(ChartMacroParameters parameters, String content, MacroTransformationContext context)
+    private ImageId generateChart(ChartMacroParameters parameters, String content, MacroTransformationContext context)
         throws MacroExecutionException
     {
         String source = computeSource(parameters.getSource(), content);
@@ -152,13 +154,20 @@ private void generateChart(ChartMacroParameters parameters, String content, Macr
         Map<String, String> sourceParameters = getSourceParameters(parameters, source);
 
         dataSource.buildDataset(content, sourceParameters, context);
-
-        try {
-            this.imageWriter.writeImage(new ImageId(parameters),
-                this.chartGenerator.generate(dataSource.getChartModel(), sourceParameters));
-        } catch (ChartGeneratorException e) {
-            throw new MacroExecutionException("Error while rendering chart", e);
+        ChartModel chartModel = dataSource.getChartModel();
+
+        // The image id is computed from the parameters and the data so an image already stored for this id can be
+        // reused without plotting the chart again.
+        ImageId imageId = new ImageId(parameters, chartModel);
+        if (!this.imageWriter.exists(imageId)) {
+            try {
+                this.imageWriter.writeImage(imageId, this.chartGenerator.generate(chartModel, sourceParameters));
+            } catch (ChartGeneratorException e) {
+                throw new MacroExecutionException("Error while rendering chart", e);
+            }
         }
+
+        return imageId;
     }
 
     /**
@@ -19,10 +19,24 @@
  */
 package org.xwiki.rendering.internal.macro.chart;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.rendering.macro.chart.ChartMacroParameters;
 
 /**
  * Compute a unique id for the image that the chart macro generates.
+ * <p>
+ * The id is a hash of the macro parameters and of the chart dataset so that rendering the same chart over the same
+ * data always leads to the same id, which allows to reuse the image generated previously instead of plotting it again.
  *
  * @version $Id$
  * @since 4.2M1
@@ -30,25 +44,64 @@
 public class ImageId
 {
     /**
-     * @see ImageId#ImageId(org.xwiki.rendering.macro.chart.ChartMacroParameters)
+     * The algorithm used to hash the chart content.
+     */
+    private static final String HASH_ALGORITHM = "SHA-1";
+
+    /**
+     * @see #getId()
      */
-    private ChartMacroParameters macroParameters;
+    private final String id;
 
     /**
      * @param macroParameters the chart macro parameters
+     * @param chartModel the chart model holding the dataset to plot
+     * @since 5.2M1
      */
-    public ImageId(ChartMacroParameters macroParameters)
+    public ImageId(ChartMacroParameters macroParameters, ChartModel chartModel)
     {
-        this.macroParameters = macroParameters;
+        this.id = computeId(macroParameters, chartModel);
     }
 
     /**
-     * Compute a unique id based on the macro parameters.
+     * Compute a unique id based on the macro parameters and on the chart data.
      *
      * @return the unique image id used for storing the generated chart image
      */
     public String getId()
     {
-        return String.format("%s", Math.abs(this.macroParameters.hashCode()));
+        return this.id;
+    }
+
+    /**
+     * @param macroParameters the chart macro parameters
+     * @param chartModel the chart model holding the dataset to plot
+     * @return the hash of the parameters and of the dataset, or a random id if the dataset cannot be hashed (in which
+     *         case the image will simply never be reused)
+     */
+    private static String computeId(ChartMacroParameters macroParameters, ChartModel chartModel)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(HASH_ALGORITHM);
+            OutputStream digestStream = new DigestOutputStream(new NullOutputStream(), digest);
+            ObjectOutputStream oos = new ObjectOutputStream(digestStream);
+            oos.writeObject(macroParameters.getType());
+            oos.writeObject(macroParameters.getSource());
+            oos.writeObject(macroParameters.getParams());
+            oos.writeObject(macroParameters.getTitle());
+            oos.writeInt(macroParameters.getWidth());
+            oos.writeInt(macroParameters.getHeight());
+            // JFreeChart datasets are serializable and their serialized form holds all the plotted values. The axes
+            // don't need to be hashed since they are built from the parameters hashed above.
+            oos.writeObject(chartModel.getDataset());
+            oos.close();
+
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            return UUID.randomUUID().toString();
+        } catch (IOException e) {
+            // The dataset holds values that are not serializable.
+            return UUID.randomUUID().toString();
+        }
     }
 }
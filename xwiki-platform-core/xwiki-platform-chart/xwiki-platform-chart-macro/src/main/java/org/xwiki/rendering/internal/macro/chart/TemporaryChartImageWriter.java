@@ -20,9 +20,14 @@
 package org.xwiki.rendering.internal.macro.chart;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -71,6 +76,34 @@ public class TemporaryChartImageWriter implements ChartImageWriter
      */
     private static final String PAGE = "page";
 
+    /**
+     * The extension of the stored chart images.
+     */
+    private static final String IMAGE_EXTENSION = ".png";
+
+    /**
+     * The maximum number of chart images kept per wiki. The least recently used images are removed first.
+     */
+    private static final int MAX_IMAGE_COUNT = 1000;
+
+    /**
+     * The maximum total size (in bytes) of the chart images kept per wiki. The least recently used images are removed
+     * first.
+     */
+    private static final long MAX_STORAGE_SIZE = 50L * 1024 * 1024;
+
+    /**
+     * Only the stored images are considered for eviction (not the files being written).
+     */
+    private static final FileFilter IMAGE_FILTER = new FileFilter()
+    {
+        @Override
+        public boolean accept(File file)
+        {
+            return file.isFile() && file.getName().endsWith(IMAGE_EXTENSION);
+        }
+    };
+
     /**
      * Used to get the temporary directory.
      */
@@ -94,15 +127,89 @@ public void writeImage(ImageId imageId, byte[] imageData) throws MacroExecutionE
     {
         File imageFile = getStorageLocation(imageId);
 
+        // Write to a temporary file first and then rename it so that a concurrent request for the same chart never
+        // serves a partially written image.
         FileOutputStream fos = null;
+        File tmpFile = null;
         try {
-            fos = new FileOutputStream(imageFile);
+            tmpFile = File.createTempFile(imageId.getId(), ".tmp", imageFile.getParentFile());
+            fos = new FileOutputStream(tmpFile);
             fos.write(imageData);
             fos.close();
+            if (!tmpFile.renameTo(imageFile)) {
+                // Some file systems don't allow to rename over an existing file.
+                imageFile.delete();
+                if (!tmpFile.renameTo(imageFile)) {
+                    throw new IOException(String.format("Failed to rename [%s] to [%s]", tmpFile, imageFile));
+                }
+            }
         } catch (IOException e) {
             throw new MacroExecutionException("Failed to write the generated chart image", e);
         } finally {
             IOUtils.closeQuietly(fos);
+            if (tmpFile != null && tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+
+        evict(imageFile.getParentFile());
+    }
+
+    @Override
+    public boolean exists(ImageId imageId) throws MacroExecutionException
+    {
+        File imageFile = getStorageLocation(imageId);
+        if (imageFile.isFile()) {
+            // Mark the image as recently used so that it's evicted last.
+            imageFile.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Removes the least recently used images from the passed directory until both the number of images and their
+     * total size are below the configured limits.
+     *
+     * @param directory the directory holding the chart images
+     */
+    private void evict(File directory)
+    {
+        File[] images = directory.listFiles(IMAGE_FILTER);
+        if (images == null) {
+            return;
+        }
+
+        long totalSize = 0;
+        // Take a snapshot of the access times since they can be modified concurrently while sorting.
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+        for (File image : images) {
+            totalSize += image.length();
+            lastModified.put(image, image.lastModified());
+        }
+
+        int count = images.length;
+        if (count > MAX_IMAGE_COUNT || totalSize > MAX_STORAGE_SIZE) {
+            // Sort the images from the least recently used to the most recently used.
+            Arrays.sort(images, new Comparator<File>()
+            {
+                @Override
+                public int compare(File file1, File file2)
+                {
+                    return lastModified.get(file1).compareTo(lastModified.get(file2));
+                }
+            });
+            // Never remove the most recently used image which is the one that has just been written.
+            int index = 0;
+            while (index < images.length - 1 && (count > MAX_IMAGE_COUNT || totalSize > MAX_STORAGE_SIZE)) {
+                long size = images[index].length();
+                if (images[index].delete()) {
+                    count--;
+                    totalSize -= size;
+                }
+                index++;
+            }
         }
     }
 
@@ -128,7 +235,7 @@ protected File getStorageLocation(ImageId imageId) throws MacroExecutionExceptio
             // Should not happen since UTF8 encoding should always be present
             throw new MacroExecutionException("Failed to compute chart image location", e);
         }
-        File locationFile = new File(directory, String.format("%s.png", imageId.getId()));
+        File locationFile = new File(directory, imageId.getId() + IMAGE_EXTENSION);
         return locationFile;
     }
 
@@ -151,6 +258,6 @@ public String getURL(ImageId imageId) throws MacroExecutionException
     {
         DocumentReference reference = new DocumentReference(getCurrentWiki(), SPACE, PAGE);
         String prefix = this.documentAccessBridge.getDocumentURL(reference, "temp", null, null);
-        return String.format("%s/%s/%s.png", prefix, MODULE_NAME, imageId.getId());
+        return String.format("%s/%s/%s%s", prefix, MODULE_NAME, imageId.getId(), IMAGE_EXTENSION);
     }
 }
@@ -19,10 +19,14 @@
  */
 package org.xwiki.rendering.internal.macro.chart;
 
+import org.jfree.data.general.DefaultPieDataset;
+import org.junit.Assert;
 import org.junit.Test;
+import org.xwiki.chart.model.ChartModel;
 import org.xwiki.rendering.macro.chart.ChartMacroParameters;
 
-import org.junit.Assert;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link ImageId}.
@@ -33,14 +37,53 @@
 public class ImageIdTest
 {
     /**
-     * Verify id are different even when using same parameters (but different instances of parameters).
+     * Verify ids are the same when using the same parameters and data (but different instances).
+     */
+    @Test
+    public void testGetIdWithSameParametersAndDataButDifferentInstances()
+    {
+        ChartMacroParameters parameters1 = new ChartMacroParameters();
+        parameters1.setType("pie");
+        ChartMacroParameters parameters2 = new ChartMacroParameters();
+        parameters2.setType("pie");
+
+        Assert.assertEquals(new ImageId(parameters1, createChartModel(1.0)).getId(),
+            new ImageId(parameters2, createChartModel(1.0)).getId());
+    }
+
+    /**
+     * Verify ids are different when the parameters are different.
      */
     @Test
-    public void testGetIdWithSameParametersButDifferentInstances()
+    public void testGetIdWithDifferentParameters()
     {
         ChartMacroParameters parameters1 = new ChartMacroParameters();
         ChartMacroParameters parameters2 = new ChartMacroParameters();
+        parameters2.setWidth(parameters1.getWidth() + 1);
+
+        Assert.assertFalse(new ImageId(parameters1, createChartModel(1.0)).getId().equals(
+            new ImageId(parameters2, createChartModel(1.0)).getId()));
+    }
+
+    /**
+     * Verify ids are different when the data are different.
+     */
+    @Test
+    public void testGetIdWithDifferentData()
+    {
+        ChartMacroParameters parameters = new ChartMacroParameters();
+
+        Assert.assertFalse(new ImageId(parameters, createChartModel(1.0)).getId().equals(
+            new ImageId(parameters, createChartModel(2.0)).getId()));
+    }
+
+    private ChartModel createChartModel(double value)
+    {
+        DefaultPieDataset dataset = new DefaultPieDataset();
+        dataset.setValue("key", value);
 
-        Assert.assertFalse(new ImageId(parameters1).getId().equals(new ImageId(parameters2).getId()));
+        ChartModel chartModel = mock(ChartModel.class);
+        when(chartModel.getDataset()).thenReturn(dataset);
+        return chartModel;
     }
 }
@@ -20,6 +20,7 @@
 package org.xwiki.rendering.internal.macro.chart;
 
 import java.io.File;
+import java.util.Date;
 
 import org.junit.Assert;
 import org.junit.Rule;
@@ -29,6 +30,7 @@
 import org.xwiki.model.ModelContext;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.internal.macro.chart.source.SimpleChartModel;
 import org.xwiki.rendering.macro.chart.ChartMacroParameters;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
@@ -57,7 +59,7 @@ public void getStorageLocation() throws Exception
         when(environment.getTemporaryDirectory()).thenReturn(new File("/tmpdir"));
 
         File location = this.componentManager.getComponentUnderTest().getStorageLocation(
-            new ImageId(new ChartMacroParameters()));
+            new ImageId(new ChartMacroParameters(), new SimpleChartModel()));
         Assert.assertTrue("Got: " + location.toString(),
             location.toString().matches("/tmpdir/temp/chart/wiki/space/page/.*\\.png"));
     }
@@ -73,7 +75,30 @@ public void getURL() throws Exception
         when(dab.getDocumentURL(new DocumentReference("wiki", "space", "page"), "temp", null, null)).thenReturn(
             "temp/Space/Page");
 
-        String location = this.componentManager.getComponentUnderTest().getURL(new ImageId(new ChartMacroParameters()));
+        String location = this.componentManager.getComponentUnderTest().getURL(
+            new ImageId(new ChartMacroParameters(), new SimpleChartModel()));
         Assert.assertTrue("Got: " + location, location.toString().matches("temp/Space/Page/chart/.*\\.png"));
     }
+
+    @Test
+    public void writeImageAndExists() throws Exception
+    {
+        WikiReference currentWikiReference = new WikiReference("wiki");
+        ModelContext modelContext = this.componentManager.getInstance(ModelContext.class);
+        when(modelContext.getCurrentEntityReference()).thenReturn(currentWikiReference);
+
+        Environment environment = this.componentManager.getInstance(Environment.class);
+        File temporaryDirectory = new File("target/test-" + new Date().getTime());
+        when(environment.getTemporaryDirectory()).thenReturn(temporaryDirectory);
+
+        TemporaryChartImageWriter writer = this.componentManager.getComponentUnderTest();
+        ImageId imageId = new ImageId(new ChartMacroParameters(), new SimpleChartModel());
+        Assert.assertFalse(writer.exists(imageId));
+
+        writer.writeImage(imageId, new byte[] {1, 2, 3});
+        Assert.assertTrue(writer.exists(imageId));
+        Assert.assertEquals(3, writer.getStorageLocation(imageId).length());
+        // Only the image is left in the storage, not the temporary file used while writing.
+        Assert.assertEquals(1, writer.getStorageLocation(imageId).getParentFile().list().length);
+    }
 }
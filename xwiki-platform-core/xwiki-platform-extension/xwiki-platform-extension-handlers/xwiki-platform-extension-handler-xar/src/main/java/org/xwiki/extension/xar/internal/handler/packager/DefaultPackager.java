@@ -26,8 +26,14 @@
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -37,9 +43,9 @@
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.input.CloseShieldInputStream;
 import org.slf4j.Logger;
 import org.xml.sax.ContentHandler;
@@ -51,6 +57,9 @@
 import org.xwiki.component.manager.ComponentManager;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.extension.xar.internal.handler.packager.xml.DocumentHandler;
 import org.xwiki.extension.xar.internal.handler.packager.xml.DocumentImporterHandler;
 import org.xwiki.extension.xar.internal.handler.packager.xml.RootHandler;
 import org.xwiki.extension.xar.internal.handler.packager.xml.UnknownRootElement;
@@ -66,6 +75,7 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.internal.event.XARImportedEvent;
 import com.xpn.xwiki.internal.event.XARImportingEvent;
+import com.xpn.xwiki.util.XWikiStubContextProvider;
 
 /**
  * Default implementation of {@link Packager}.
@@ -77,6 +87,22 @@
 @Singleton
 public class DefaultPackager implements Packager, Initializable
 {
+    /**
+     * The number of threads used to parse XAR entries in advance.
+     */
+    private static final int PARSER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The maximum number of documents parsed in advance.
+     */
+    private static final int PARSED_DOCUMENTS_WINDOW = PARSER_THREADS * 2;
+
+    /**
+     * Bigger entries (generally containing attachments) are parsed while importing them so that each attachment can be
+     * saved and released as soon as it's parsed.
+     */
+    private static final long MAX_PARSED_ENTRY_SIZE = 1024 * 1024;
+
     @Inject
     private ComponentManager componentManager;
 
@@ -99,6 +125,15 @@ public class DefaultPackager implements Packager, Initializable
     @Inject
     private DocumentMergeImporter importer;
 
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    @Inject
+    private XWikiStubContextProvider stubContextProvider;
+
     private SAXParserFactory parserFactory;
 
     @Override
@@ -126,75 +161,171 @@ public void importXAR(File xarFile, PackageConfiguration configuration) throws I
     private XarMergeResult importXARToWiki(File xarFile, String wiki, PackageConfiguration configuration)
         throws IOException, ComponentLookupException
     {
-        FileInputStream fis = new FileInputStream(xarFile);
+        ZipFile zipFile = new ZipFile(xarFile);
         try {
-            return importXARToWiki(fis, wiki, configuration);
+            return importXARToWiki(zipFile, wiki, configuration);
         } finally {
-            fis.close();
+            zipFile.close();
         }
     }
 
-    private XarMergeResult importXARToWiki(InputStream xarInputStream, String wiki, PackageConfiguration configuration)
+    private XarMergeResult importXARToWiki(ZipFile zipFile, String wiki, PackageConfiguration configuration)
         throws IOException, ComponentLookupException
     {
         XarMergeResult mergeResult = new XarMergeResult();
 
-        ZipArchiveInputStream zis = new ZipArchiveInputStream(xarInputStream);
+        List<ZipArchiveEntry> entries = getEntriesToImport(zipFile, configuration);
 
         XWikiContext xcontext = this.xcontextProvider.get();
 
+        // Documents are parsed in advance by a pool of threads while the current thread is merging and saving the
+        // previous ones. Merge and save stay in the current thread so that conflict questions are asked in order and
+        // with the job context.
+        ExecutorService parsers =
+            Executors.newFixedThreadPool(PARSER_THREADS, new XarParserThreadFactory(this.execution,
+                this.executionContextManager, this.stubContextProvider, wiki));
+
         String currentWiki = xcontext.getDatabase();
+        long startTime = System.currentTimeMillis();
+        int imported = 0;
         try {
             xcontext.setDatabase(wiki);
 
             this.observation.notify(new XARImportingEvent(), null, xcontext);
 
-            for (ArchiveEntry entry = zis.getNextEntry(); entry != null; entry = zis.getNextEntry()) {
-                if (!entry.isDirectory()) {
-                    // Only import what should be imported
-                    if (configuration.getEntriesToImport() == null
-                        || configuration.getEntriesToImport().contains(entry.getName())) {
-                        DocumentImporterHandler documentHandler =
-                            new DocumentImporterHandler(this, this.componentManager, wiki, this.importer);
-
-                        try {
-                            documentHandler.setConfiguration(configuration);
-
-                            parseDocument(zis, documentHandler);
-
-                            if (documentHandler.getMergeResult() != null) {
-                                mergeResult.addMergeResult(documentHandler.getMergeResult());
-                            }
-
-                            if (configuration.isLogEnabled()) {
-                                this.logger.info("Successfully imported document [{}] in language [{}]",
-                                    documentHandler.getDocument().getDocumentReference(), documentHandler.getDocument()
-                                        .getRealLocale());
-                            }
-                        } catch (NotADocumentException e) {
-                            // Impossible to know that before parsing
-                            this.logger.debug("Entry [" + entry + "] is not a document", e);
-                        } catch (Exception e) {
-                            this.logger.error("Failed to parse document [" + entry.getName() + "]", e);
-
-                            if (configuration.isLogEnabled()) {
-                                this.logger.info("Failed to import document [{}] in language [{}]", documentHandler
-                                    .getDocument().getDocumentReference(), documentHandler.getDocument()
-                                    .getRealLocale());
-                            }
-                        }
-                    }
+            List<Future<XWikiDocument>> parsedDocuments = new ArrayList<Future<XWikiDocument>>(entries.size());
+            for (int i = 0; i < entries.size(); ++i) {
+                // Keep a limited number of parsed documents in memory
+                for (int j = parsedDocuments.size(); j < entries.size() && j <= i + PARSED_DOCUMENTS_WINDOW; ++j) {
+                    parsedDocuments.add(submitParse(parsers, zipFile, entries.get(j), wiki));
+                }
+
+                Future<XWikiDocument> parsedDocument = parsedDocuments.set(i, null);
+                if (importEntry(zipFile, entries.get(i), parsedDocument, wiki, configuration, mergeResult)) {
+                    ++imported;
                 }
             }
         } finally {
+            parsers.shutdownNow();
+
             this.observation.notify(new XARImportedEvent(), null, xcontext);
 
             xcontext.setDatabase(currentWiki);
         }
 
+        long duration = System.currentTimeMillis() - startTime;
+        this.logger.info("Imported [{}] documents in wiki [{}] in [{}] ms ([{}] documents per second)", new Object[] {
+            imported, wiki, duration, duration > 0 ? imported * 1000 / duration : imported});
+
         return mergeResult;
     }
 
+    private List<ZipArchiveEntry> getEntriesToImport(ZipFile zipFile, PackageConfiguration configuration)
+    {
+        List<ZipArchiveEntry> entries = new ArrayList<ZipArchiveEntry>();
+
+        for (Enumeration<ZipArchiveEntry> en = zipFile.getEntriesInPhysicalOrder(); en.hasMoreElements();) {
+            ZipArchiveEntry entry = en.nextElement();
+            if (!entry.isDirectory()) {
+                // Only import what should be imported
+                if (configuration.getEntriesToImport() == null
+                    || configuration.getEntriesToImport().contains(entry.getName())) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * @return the parsing task or null if the entry is too big to be parsed in advance, in which case its attachments
+     *         have to be saved as soon as they are parsed
+     */
+    private Future<XWikiDocument> submitParse(ExecutorService parsers, final ZipFile zipFile,
+        final ZipArchiveEntry entry, final String wiki)
+    {
+        if (entry.getSize() < 0 || entry.getSize() > MAX_PARSED_ENTRY_SIZE) {
+            return null;
+        }
+
+        return parsers.submit(new Callable<XWikiDocument>()
+        {
+            @Override
+            public XWikiDocument call() throws Exception
+            {
+                DocumentHandler documentHandler = new DocumentHandler(componentManager, wiki);
+
+                InputStream stream = zipFile.getInputStream(entry);
+                try {
+                    parseDocument(stream, documentHandler);
+                } finally {
+                    stream.close();
+                }
+
+                return documentHandler.getDocument();
+            }
+        });
+    }
+
+    private boolean importEntry(ZipFile zipFile, ZipArchiveEntry entry, Future<XWikiDocument> parsedDocument,
+        String wiki, PackageConfiguration configuration, XarMergeResult mergeResult) throws ComponentLookupException
+    {
+        DocumentImporterHandler documentHandler =
+            new DocumentImporterHandler(this, this.componentManager, wiki, this.importer);
+
+        try {
+            documentHandler.setConfiguration(configuration);
+
+            if (parsedDocument != null) {
+                documentHandler.importDocument(getParsedDocument(parsedDocument));
+            } else {
+                InputStream stream = zipFile.getInputStream(entry);
+                try {
+                    parseDocument(stream, documentHandler);
+                } finally {
+                    stream.close();
+                }
+            }
+
+            if (documentHandler.getMergeResult() != null) {
+                mergeResult.addMergeResult(documentHandler.getMergeResult());
+            }
+
+            if (configuration.isLogEnabled()) {
+                this.logger.info("Successfully imported document [{}] in language [{}]", documentHandler
+                    .getDocument().getDocumentReference(), documentHandler.getDocument().getRealLocale());
+            }
+
+            return true;
+        } catch (NotADocumentException e) {
+            // Impossible to know that before parsing
+            this.logger.debug("Entry [" + entry + "] is not a document", e);
+        } catch (Exception e) {
+            this.logger.error("Failed to parse document [" + entry.getName() + "]", e);
+
+            if (configuration.isLogEnabled()) {
+                this.logger.info("Failed to import document [{}] in language [{}]", documentHandler.getDocument()
+                    .getDocumentReference(), documentHandler.getDocument().getRealLocale());
+            }
+        }
+
+        return false;
+    }
+
+    private XWikiDocument getParsedDocument(Future<XWikiDocument> parsedDocument) throws Exception
+    {
+        try {
+            return parsedDocument.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
     @Override
     public void unimportXAR(File xarFile, PackageConfiguration configuration) throws IOException, XWikiException
     {
@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.extension.xar.internal.handler.packager;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.util.XWikiStubContextProvider;
+
+/**
+ * Create the threads used to parse XAR entries in parallel. Each thread gets its own Execution Context targeting the
+ * wiki where the documents are imported since parsing a document resolves references relatively to the current wiki.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class XarParserThreadFactory implements ThreadFactory
+{
+    private final Execution execution;
+
+    private final ExecutionContextManager executionContextManager;
+
+    private final XWikiStubContextProvider stubContextProvider;
+
+    private final String wiki;
+
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * @param execution used to set the Execution Context of the thread
+     * @param executionContextManager used to initialize the Execution Context of the thread
+     * @param stubContextProvider used to create the XWiki Context of the thread
+     * @param wiki the wiki where the documents are imported
+     */
+    public XarParserThreadFactory(Execution execution, ExecutionContextManager executionContextManager,
+        XWikiStubContextProvider stubContextProvider, String wiki)
+    {
+        this.execution = execution;
+        this.executionContextManager = executionContextManager;
+        this.stubContextProvider = stubContextProvider;
+        this.wiki = wiki;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable)
+    {
+        Thread thread = new Thread("XAR parser " + this.counter.incrementAndGet() + " for wiki [" + this.wiki + "]")
+        {
+            @Override
+            public void run()
+            {
+                ExecutionContext context = new ExecutionContext();
+
+                try {
+                    executionContextManager.initialize(context);
+                } catch (ExecutionContextException e) {
+                    throw new RuntimeException("Failed to initialize XAR parser execution context", e);
+                }
+
+                // Bridge with old XWiki Context, required for old code.
+                XWikiContext xcontext = stubContextProvider.createStubContext();
+                xcontext.setDatabase(wiki);
+                context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+
+                execution.pushContext(context);
+
+                try {
+                    runnable.run();
+                } finally {
+                    // Make sure to not leak the Execution Context ThreadLocal
+                    execution.removeContext();
+                }
+            }
+        };
+        thread.setDaemon(true);
+
+        return thread;
+    }
+}
@@ -20,9 +20,11 @@
 package org.xwiki.extension.xar.internal.handler.packager.xml;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
-import org.apache.commons.codec.binary.Base64InputStream;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.io.IOUtils;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xwiki.component.manager.ComponentManager;
 
@@ -34,6 +36,16 @@
  */
 public class AttachmentHandler extends AbstractHandler
 {
+    /**
+     * The stream into which the base 64 content is decoded while it's being parsed.
+     */
+    private OutputStream contentStream;
+
+    /**
+     * Reused buffer to convert base 64 characters into bytes.
+     */
+    private byte[] contentBuffer;
+
     public AttachmentHandler(ComponentManager componentManager)
     {
         super(componentManager, new XWikiAttachment());
@@ -50,14 +62,56 @@ public XWikiAttachment getAttachment()
     }
 
     @Override
-    protected void endElementInternal(String uri, String localName, String qName) throws SAXException
+    protected void startElementInternal(String uri, String localName, String qName, Attributes attributes)
+        throws SAXException
     {
         if (qName.equals("content")) {
+            // Decode the content as it's parsed instead of keeping the whole base 64 text in memory
+            this.contentStream = new Base64OutputStream(getAttachment().getContentOutputStream(), false);
+        } else {
+            super.startElementInternal(uri, localName, qName, attributes);
+        }
+    }
+
+    @Override
+    protected void charactersInternal(char[] ch, int start, int length) throws SAXException
+    {
+        if (this.contentStream != null) {
+            if (this.contentBuffer == null || this.contentBuffer.length < length) {
+                this.contentBuffer = new byte[length];
+            }
+
+            // Base 64 only use ASCII characters
+            for (int i = 0; i < length; ++i) {
+                this.contentBuffer[i] = (byte) ch[start + i];
+            }
+
             try {
-                Base64InputStream b64is = new Base64InputStream(IOUtils.toInputStream(this.value));
-                getAttachment().setContent(b64is);
+                this.contentStream.write(this.contentBuffer, 0, length);
             } catch (IOException e) {
-                // TODO: log error
+                IOUtils.closeQuietly(this.contentStream);
+                this.contentStream = null;
+
+                throw new SAXException("Failed to write attachment content", e);
+            }
+        } else {
+            super.charactersInternal(ch, start, length);
+        }
+    }
+
+    @Override
+    protected void endElementInternal(String uri, String localName, String qName) throws SAXException
+    {
+        if (qName.equals("content")) {
+            if (this.contentStream != null) {
+                try {
+                    // Closing the stream set the attachment content and size
+                    this.contentStream.close();
+                } catch (IOException e) {
+                    throw new SAXException("Failed to write attachment content", e);
+                } finally {
+                    this.contentStream = null;
+                }
             }
         } else {
             super.endElementInternal(uri, localName, qName);
@@ -20,6 +20,8 @@
 package org.xwiki.extension.xar.internal.handler.packager.xml;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -208,6 +210,28 @@ private void saveAttachment(XWikiAttachment attachment, String comment) throws S
         }
     }
 
+    /**
+     * Import a document which has already been parsed. Attachments are saved one by one before the document itself
+     * like it's done when importing the document while parsing it.
+     * 
+     * @param document the parsed document
+     * @throws SAXException when failing to import the document
+     * @since 5.2M1
+     */
+    public void importDocument(XWikiDocument document) throws SAXException
+    {
+        List<XWikiAttachment> attachments = new ArrayList<XWikiAttachment>(document.getAttachmentList());
+        document.getAttachmentList().clear();
+
+        setCurrentBean(document);
+
+        for (XWikiAttachment attachment : attachments) {
+            saveAttachment(attachment, "Import: add attachment");
+        }
+
+        saveDocument(attachments.isEmpty() ? "Import" : "Import: final save");
+    }
+
     @Override
     protected void endAttachment(String uri, String localName, String qName) throws SAXException
     {
@@ -19,13 +19,23 @@
  */
 package org.xwiki.extension.xar.internal.handler;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
@@ -107,6 +117,8 @@ public class XarExtensionHandlerTest extends AbstractBridgedComponentTestCase
 
     private DocumentMergeImporter importer;
 
+    private List<DocumentReference> savedDocuments = new ArrayList<DocumentReference>();
+
     @Override
     @Before
     public void setUp() throws Exception
@@ -228,6 +240,8 @@ public Object invoke(org.jmock.api.Invocation invocation) throws Throwable
 
                         documentLanguages.put(document.getLanguage(), document.clone());
 
+                        savedDocuments.add(document.getDocumentReference());
+
                         return null;
                     }
                 });
@@ -1046,6 +1060,101 @@ public void testImportDocumentWithEqualsExistingDocument() throws Throwable
         importDocument("/packagefile/xarextension1/space/page.xml", true, "wiki");
     }
 
+    // DefaultPackager
+
+    private File createXAR(Map<String, String> entries) throws IOException
+    {
+        File xarFile = File.createTempFile("packager", ".xar", new File("target"));
+        xarFile.deleteOnExit();
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(xarFile));
+        try {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(entry.getKey()));
+                zos.write(entry.getValue().getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+
+        return xarFile;
+    }
+
+    private String createDocumentXML(String space, String page)
+    {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><xwikidoc><web>" + space + "</web><name>" + page
+            + "</name><language></language><defaultLanguage>en</defaultLanguage><translation>0</translation>"
+            + "<version>1.1</version><syntaxId>xwiki/2.0</syntaxId><content>" + page + " content</content></xwikidoc>";
+    }
+
+    private void importXAR(File xarFile) throws Exception
+    {
+        DefaultPackageConfiguration configuration = new DefaultPackageConfiguration();
+        configuration.setWiki("wiki");
+
+        this.savedDocuments.clear();
+        this.defaultPackager.importXAR(xarFile, configuration);
+    }
+
+    @Test
+    public void testImportXARKeepsTheEntriesOrder() throws Throwable
+    {
+        // More entries than the documents parsed in advance, in reverse alphabetical order
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        List<DocumentReference> expected = new ArrayList<DocumentReference>();
+        for (int i = 20; i > 0; --i) {
+            entries.put("space/page" + i + ".xml", createDocumentXML("space", "page" + i));
+            expected.add(new DocumentReference("wiki", "space", "page" + i));
+        }
+
+        importXAR(createXAR(entries));
+
+        Assert.assertEquals(expected, this.savedDocuments);
+        Assert.assertEquals("page20 content",
+            this.mockXWiki.getDocument(new DocumentReference("wiki", "space", "page20"), getContext()).getContent());
+    }
+
+    @Test
+    public void testImportXARWithBigAttachment() throws Throwable
+    {
+        // Bigger than the buffers of the XML parser so that the content is decoded in several chunks
+        byte[] content = new byte[100000];
+        new Random().nextBytes(content);
+
+        String xml = createDocumentXML("space", "page");
+        xml = xml.substring(0, xml.length() - "</xwikidoc>".length()) + "<attachment><filename>file.bin</filename>"
+            + "<filesize>" + content.length + "</filesize><author>XWiki.attachmentauthor</author>"
+            + "<date>1342102850000</date><version>1.1</version><comment></comment><content>"
+            + Base64.encodeBase64String(content) + "</content></attachment></xwikidoc>";
+
+        importXAR(createXAR(Collections.singletonMap("space/page.xml", xml)));
+
+        XWikiAttachment attachment =
+            this.mockXWiki.getDocument(new DocumentReference("wiki", "space", "page"), getContext()).getAttachment(
+                "file.bin");
+        Assert.assertEquals(content.length, attachment.getContentSize(getContext()));
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(attachment.getContentInputStream(getContext())));
+    }
+
+    @Test
+    public void testImportXARWithAnEntryFailingToParse() throws Throwable
+    {
+        Map<String, String> entries = new LinkedHashMap<String, String>();
+        entries.put("space/page1.xml", createDocumentXML("space", "page1"));
+        entries.put("space/broken.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><xwikidoc><web>space</web><name>");
+        entries.put("package.xml", "<?xml version=\"1.0\" encoding=\"UTF-8\"?><package></package>");
+        entries.put("space/page2.xml", createDocumentXML("space", "page2"));
+
+        importXAR(createXAR(entries));
+
+        // The other entries are still imported, in order
+        Assert.assertEquals(Arrays.asList(new DocumentReference("wiki", "space", "page1"), new DocumentReference(
+            "wiki", "space", "page2")), this.savedDocuments);
+        Assert.assertTrue(this.mockXWiki.getDocument(new DocumentReference("wiki", "space", "broken"), getContext())
+            .isNew());
+    }
+
     // rights check
 
     // install
@@ -0,0 +1,204 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.formula.job;
+
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.formula.FormulaRenderer;
+import org.xwiki.job.Request;
+import org.xwiki.job.internal.AbstractJob;
+import org.xwiki.job.internal.DefaultJobStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.properties.BeanManager;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.block.match.ClassBlockMatcher;
+import org.xwiki.rendering.macro.formula.FormulaMacroConfiguration;
+import org.xwiki.rendering.macro.formula.FormulaMacroParameters;
+
+/**
+ * Renders all the formulae found in the formula macros of the documents of a space so that they are already in the
+ * formula image storage the first time those documents are viewed.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+@Named(FormulaWarmUpJob.JOBTYPE)
+public class FormulaWarmUpJob extends AbstractJob<FormulaWarmUpRequest, DefaultJobStatus<FormulaWarmUpRequest>>
+{
+    /**
+     * The id of the job.
+     */
+    public static final String JOBTYPE = "formula.warmup";
+
+    /**
+     * The id of the formula macro.
+     */
+    private static final String MACRO_ID = "formula";
+
+    /**
+     * Used to retrieve the configured formula renderers.
+     */
+    @Inject
+    private ComponentManager manager;
+
+    /**
+     * Used to find the documents containing formula macros.
+     */
+    @Inject
+    private QueryManager queryManager;
+
+    /**
+     * Used to get the content of the documents.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Defines which renderers are used by the formula macro.
+     */
+    @Inject
+    private FormulaMacroConfiguration configuration;
+
+    /**
+     * Used to parse the formula macro parameters.
+     */
+    @Inject
+    private BeanManager beanManager;
+
+    @Override
+    public String getType()
+    {
+        return JOBTYPE;
+    }
+
+    @Override
+    protected FormulaWarmUpRequest castRequest(Request request)
+    {
+        FormulaWarmUpRequest warmUpRequest;
+        if (request instanceof FormulaWarmUpRequest) {
+            warmUpRequest = (FormulaWarmUpRequest) request;
+        } else {
+            warmUpRequest = new FormulaWarmUpRequest(request);
+        }
+
+        return warmUpRequest;
+    }
+
+    @Override
+    protected void runInternal() throws Exception
+    {
+        SpaceReference spaceReference = getRequest().getSpaceReference();
+
+        this.logger.info("Rendering the formulae of the documents in space [{}]", spaceReference);
+
+        Query query =
+            this.queryManager.createQuery("select distinct doc.name from XWikiDocument doc"
+                + " where doc.space = :space and doc.content like :macro", Query.HQL);
+        query.bindValue("space", spaceReference.getName());
+        query.bindValue("macro", "%{{" + MACRO_ID + "%");
+        query.setWiki(spaceReference.getParent().getName());
+        List<String> documentNames = query.execute();
+
+        notifyPushLevelProgress(documentNames.size());
+
+        try {
+            for (String documentName : documentNames) {
+                DocumentReference documentReference = new DocumentReference(documentName, spaceReference);
+                try {
+                    warmUp(this.documentAccessBridge.getDocument(documentReference).getXDOM());
+                } catch (Exception e) {
+                    this.logger.error("Failed to render the formulae of document [{}]", documentReference, e);
+                }
+
+                notifyStepPropress();
+            }
+        } finally {
+            notifyPopLevelProgress();
+        }
+    }
+
+    /**
+     * Renders the formulae of all the formula macros found in the passed content.
+     * 
+     * @param xdom the content of a document
+     */
+    private void warmUp(XDOM xdom)
+    {
+        List<MacroBlock> macroBlocks =
+            xdom.<MacroBlock> getBlocks(new ClassBlockMatcher(MacroBlock.class), Block.Axes.DESCENDANT);
+        for (MacroBlock macroBlock : macroBlocks) {
+            if (MACRO_ID.equals(macroBlock.getId()) && macroBlock.getContent() != null) {
+                try {
+                    FormulaMacroParameters parameters = new FormulaMacroParameters();
+                    this.beanManager.populate(parameters, macroBlock.getParameters());
+                    render(macroBlock.getContent(), macroBlock.isInline(), parameters);
+                } catch (Exception e) {
+                    this.logger.warn("Failed to render formula [{}]: {}", macroBlock.getContent(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Renders the formula the same way the formula macro does, falling back to the safe renderer if the configured
+     * one fails.
+     * 
+     * @param formula the formula text
+     * @param inline is the formula supposed to be used inline or as a block-level element
+     * @param parameters the formula macro parameters
+     * @throws Exception if the formula can't be rendered
+     */
+    private void render(String formula, boolean inline, FormulaMacroParameters parameters) throws Exception
+    {
+        try {
+            getRenderer(this.configuration.getRenderer()).process(formula, inline, parameters.getFontSize(),
+                parameters.getImageType());
+        } catch (Exception e) {
+            getRenderer(this.configuration.getSafeRenderer()).process(formula, inline, parameters.getFontSize(),
+                parameters.getImageType());
+        }
+    }
+
+    /**
+     * @param rendererHint the hint of the renderer
+     * @return the formula renderer
+     * @throws ComponentLookupException if no renderer exists for the passed hint
+     */
+    private FormulaRenderer getRenderer(String rendererHint) throws ComponentLookupException
+    {
+        return this.manager.getInstance(FormulaRenderer.class, rendererHint);
+    }
+}
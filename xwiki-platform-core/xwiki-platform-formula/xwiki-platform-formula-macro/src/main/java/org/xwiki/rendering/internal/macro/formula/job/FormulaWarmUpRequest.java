@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.formula.job;
+
+import org.xwiki.job.AbstractRequest;
+import org.xwiki.job.Request;
+import org.xwiki.model.reference.SpaceReference;
+
+/**
+ * The request used to configure {@link FormulaWarmUpJob}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class FormulaWarmUpRequest extends AbstractRequest
+{
+    /**
+     * Serialization identifier.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @see #getSpaceReference()
+     */
+    private SpaceReference spaceReference;
+
+    /**
+     * The default constructor.
+     */
+    public FormulaWarmUpRequest()
+    {
+    }
+
+    /**
+     * @param request the request to copy
+     */
+    public FormulaWarmUpRequest(Request request)
+    {
+        super(request);
+    }
+
+    /**
+     * @return the space holding the documents whose formulae should be rendered
+     */
+    public SpaceReference getSpaceReference()
+    {
+        return this.spaceReference;
+    }
+
+    /**
+     * @param spaceReference the space holding the documents whose formulae should be rendered
+     */
+    public void setSpaceReference(SpaceReference spaceReference)
+    {
+        this.spaceReference = spaceReference;
+    }
+}
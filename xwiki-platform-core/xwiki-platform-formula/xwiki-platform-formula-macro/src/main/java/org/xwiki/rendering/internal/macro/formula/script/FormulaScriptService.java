@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.formula.script;
+
+import java.util.Arrays;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.job.Job;
+import org.xwiki.job.JobException;
+import org.xwiki.job.JobManager;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.rendering.internal.macro.formula.job.FormulaWarmUpJob;
+import org.xwiki.rendering.internal.macro.formula.job.FormulaWarmUpRequest;
+import org.xwiki.script.service.ScriptService;
+
+/**
+ * Formula oriented APIs for scripts.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("formula")
+@Singleton
+public class FormulaScriptService implements ScriptService
+{
+    /**
+     * The key under which the last encountered error is stored in the current execution context.
+     */
+    public static final String FORMULAERROR_KEY = "scriptservice.formula.error";
+
+    /**
+     * Needed for checking programming rights.
+     */
+    @Inject
+    private DocumentAccessBridge documentAccessBridge;
+
+    /**
+     * Provides access to the current context.
+     */
+    @Inject
+    private Execution execution;
+
+    /**
+     * Used to start the warm-up job.
+     */
+    @Inject
+    private JobManager jobManager;
+
+    /**
+     * Render in the background all the formulae found in the formula macros of the documents of a space, so that
+     * they are already stored the first time those documents are viewed.
+     * <p>
+     * Start an asynchronous Job.
+     * 
+     * @param wiki the wiki holding the space
+     * @param space the space holding the documents whose formulae should be rendered
+     * @return the {@link Job} object which can be used to monitor the progress of the rendering, or {@code null} in
+     *         case of failure
+     */
+    public Job warmUp(String wiki, String space)
+    {
+        setError(null);
+
+        if (!this.documentAccessBridge.hasProgrammingRights()) {
+            setError(new JobException("Need programming right to render the formulae of a space"));
+            return null;
+        }
+
+        FormulaWarmUpRequest request = new FormulaWarmUpRequest();
+        request.setId(Arrays.asList("formula", "warmup", wiki, space));
+        request.setSpaceReference(new SpaceReference(space, new WikiReference(wiki)));
+
+        Job job = null;
+        try {
+            job = this.jobManager.addJob(FormulaWarmUpJob.JOBTYPE, request);
+        } catch (Exception e) {
+            setError(e);
+        }
+
+        return job;
+    }
+
+    /**
+     * Get the error generated while performing the previously called action.
+     * 
+     * @return the last exception or {@code null} if no exception was thrown
+     */
+    public Exception getLastError()
+    {
+        return (Exception) this.execution.getContext().getProperty(FORMULAERROR_KEY);
+    }
+
+    /**
+     * Store a caught exception in the context, so that it can be later retrieved using {@link #getLastError()}.
+     * 
+     * @param e the exception to store, can be {@code null} to clear the previously stored exception
+     */
+    private void setError(Exception e)
+    {
+        this.execution.getContext().setProperty(FORMULAERROR_KEY, e);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rendering.internal.macro.formula.job;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.formula.FormulaRenderer;
+import org.xwiki.formula.FormulaRenderer.FontSize;
+import org.xwiki.formula.FormulaRenderer.Type;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.rendering.block.Block;
+import org.xwiki.rendering.block.MacroBlock;
+import org.xwiki.rendering.block.ParagraphBlock;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.macro.formula.FormulaMacroConfiguration;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link FormulaWarmUpJob}.
+ * 
+ * @version $Id$
+ */
+public class FormulaWarmUpJobTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<FormulaWarmUpJob> mocker =
+        new MockitoComponentMockingRule<FormulaWarmUpJob>(FormulaWarmUpJob.class);
+
+    private final SpaceReference spaceReference = new SpaceReference("Space", new WikiReference("wiki"));
+
+    private final Map<String, String> noParameters = Collections.emptyMap();
+
+    private FormulaRenderer renderer;
+
+    private FormulaRenderer safeRenderer;
+
+    private Query query;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        FormulaMacroConfiguration configuration = this.mocker.getInstance(FormulaMacroConfiguration.class);
+        when(configuration.getRenderer()).thenReturn("native");
+        when(configuration.getSafeRenderer()).thenReturn("snuggletex");
+
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class);
+        this.renderer = mock(FormulaRenderer.class, "native");
+        when(componentManager.getInstance(FormulaRenderer.class, "native")).thenReturn(this.renderer);
+        this.safeRenderer = mock(FormulaRenderer.class, "snuggletex");
+        when(componentManager.getInstance(FormulaRenderer.class, "snuggletex")).thenReturn(this.safeRenderer);
+
+        this.query = mock(Query.class);
+        QueryManager queryManager = this.mocker.getInstance(QueryManager.class);
+        when(queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(this.query);
+    }
+
+    private void mockDocument(String name, Block... blocks) throws Exception
+    {
+        DocumentModelBridge document = mock(DocumentModelBridge.class, name);
+        when(document.getXDOM()).thenReturn(new XDOM(Arrays.asList(blocks)));
+
+        DocumentAccessBridge documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(documentAccessBridge.getDocument(new DocumentReference(name, this.spaceReference))).thenReturn(
+            document);
+    }
+
+    private void warmUp() throws Exception
+    {
+        FormulaWarmUpRequest request = new FormulaWarmUpRequest();
+        request.setSpaceReference(this.spaceReference);
+
+        this.mocker.getComponentUnderTest().start(request);
+    }
+
+    @Test
+    public void formulaeOfTheSpaceAreRendered() throws Exception
+    {
+        when(this.query.<String> execute()).thenReturn(Arrays.asList("Page1", "Page2"));
+        mockDocument("Page1", new MacroBlock("formula", this.noParameters, "x^2", false), new MacroBlock("info",
+            this.noParameters, "not a formula", false));
+        mockDocument("Page2", new ParagraphBlock(Arrays.<Block> asList(new MacroBlock("formula",
+            this.noParameters, "\\sqrt{y}", true))));
+
+        warmUp();
+
+        verify(this.query).bindValue("space", "Space");
+        verify(this.query).setWiki("wiki");
+        verify(this.renderer).process("x^2", false, FontSize.DEFAULT, Type.DEFAULT);
+        verify(this.renderer).process("\\sqrt{y}", true, FontSize.DEFAULT, Type.DEFAULT);
+        verify(this.renderer, never()).process(eq("not a formula"), anyBoolean(), any(FontSize.class),
+            any(Type.class));
+        verifyZeroInteractions(this.safeRenderer);
+    }
+
+    @Test
+    public void safeRendererIsUsedWhenTheRendererFails() throws Exception
+    {
+        when(this.query.<String> execute()).thenReturn(Arrays.asList("Page"));
+        mockDocument("Page", new MacroBlock("formula", this.noParameters, "x^2", false));
+        when(this.renderer.process("x^2", false, FontSize.DEFAULT, Type.DEFAULT)).thenThrow(
+            new IllegalArgumentException("unsupported"));
+
+        warmUp();
+
+        verify(this.safeRenderer).process("x^2", false, FontSize.DEFAULT, Type.DEFAULT);
+    }
+
+    @Test
+    public void failingDocumentDoesNotStopTheJob() throws Exception
+    {
+        when(this.query.<String> execute()).thenReturn(Arrays.asList("Broken", "Page"));
+        DocumentAccessBridge documentAccessBridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(documentAccessBridge.getDocument(new DocumentReference("Broken", this.spaceReference))).thenThrow(
+            new RuntimeException("broken"));
+        mockDocument("Page", new MacroBlock("formula", this.noParameters, "x^2", false));
+
+        warmUp();
+
+        verify(this.renderer).process("x^2", false, FontSize.DEFAULT, Type.DEFAULT);
+    }
+}
@@ -80,20 +80,23 @@ protected abstract ImageData renderImage(String formula, boolean inline, FontSiz
         throws IllegalArgumentException, IOException;
 
     /**
-     * Computes the identifier under which the rendered formula will be stored for later reuse.
+     * Computes the identifier under which the rendered formula will be stored for later reuse. The identifier depends on
+     * the renderer, so that an image rendered by a fallback renderer is never served in place of the one rendered by
+     * the configured renderer.
      * 
      * @param formula a string representation of the formula, in LaTeX syntax, without any commands that specify the
      *            environment (such as $$ .. $$, \begin{math} ... \end{math}, etc)
      * @param inline specifies if the rendered formula will be displayed inline in the text, or as a separate block
      * @param size the font size used for displaying the formula
      * @param type the format in which the formula is rendered
-     * @return a string representation of the hash code for the four information items
+     * @return a string representation of the hash code for the four information items and the renderer
      */
     protected String computeImageID(String formula, boolean inline, FontSize size, Type type)
     {
         // Try computing a long hash
         try {
             MessageDigest hashAlgorithm = MessageDigest.getInstance("SHA-256");
+            hashAlgorithm.update(this.getClass().getCanonicalName().getBytes());
             hashAlgorithm.update(inline ? (byte) 't' : (byte) 'f');
             hashAlgorithm.update((byte) size.ordinal());
             hashAlgorithm.update((byte) type.ordinal());
@@ -19,9 +19,21 @@
  */
 package org.xwiki.formula.internal;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
@@ -29,11 +41,18 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.environment.Environment;
+import org.xwiki.formula.FormulaRenderer.Type;
 import org.xwiki.formula.ImageData;
 import org.xwiki.formula.ImageStorage;
 
 /**
  * Cache-based implementation for the {@link ImageStorage} component.
+ * <p>
+ * The in-memory cache is backed by a persistent store located in the permanent directory so that rendered formulae
+ * survive restarts. The identifiers are hashes of the formula, of its rendering options and of the renderer, so a
+ * stored image never needs to be invalidated; the least recently used images are removed when the store grows above
+ * 100MB.
  * 
  * @version $Id$
  * @since 2.0M3
@@ -42,6 +61,18 @@
 @Singleton
 public class CacheImageStorage implements ImageStorage, Initializable
 {
+    /** The maximum total size (in bytes) of the images kept in the persistent store. */
+    private static final long MAX_STORAGE_SIZE = 100L * 1024 * 1024;
+
+    /** When the store is full, the least recently used images are removed until it's back to this size. */
+    private static final long EVICTED_STORAGE_SIZE = MAX_STORAGE_SIZE * 9 / 10;
+
+    /** The extensions of the stored images, used to skip the files being written. */
+    private static final String[] IMAGE_EXTENSIONS = {"png", "gif", "jpg"};
+
+    /** The identifiers accepted for the persistent store, since they are used as file names. */
+    private static final Pattern VALID_ID = Pattern.compile("[\\w-]+");
+
     /**
      * Since this class implements a storage based on the {@link Cache} component, it needs to access the
      * {@link CacheManager cache manager} to obtain a valid cache.
@@ -49,19 +80,41 @@ public class CacheImageStorage implements ImageStorage, Initializable
     @Inject
     private CacheManager cacheManager;
 
+    /** Used to get the permanent directory holding the persistent store. */
+    @Inject
+    private Environment environment;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
     /** Cache used as the storage back-end. */
     private Cache<ImageData> cache;
 
+    /** The root directory of the persistent store. */
+    private File directory;
+
+    /** The current size of the persistent store. */
+    private long storageSize;
+
     @Override
     public ImageData get(String id)
     {
-        return this.cache.get(id);
+        ImageData data = this.cache.get(id);
+        if (data == null) {
+            data = load(id);
+            if (data != null) {
+                this.cache.set(id, data);
+            }
+        }
+        return data;
     }
 
     @Override
     public void put(String id, ImageData data)
     {
         this.cache.set(id, data);
+        store(id, data);
     }
 
     @Override
@@ -74,5 +127,135 @@ public void initialize() throws InitializationException
         } catch (CacheException e) {
             throw new InitializationException("Failed to create cache", e);
         }
+
+        this.directory = new File(this.environment.getPermanentDirectory(), "cache/formula");
+        this.directory.mkdirs();
+        this.storageSize = FileUtils.sizeOfDirectory(this.directory);
+    }
+
+    /**
+     * @param id the identifier of the image
+     * @param type the format of the image
+     * @return the file holding the image in the persistent store
+     */
+    private File getFile(String id, Type type)
+    {
+        // Spread the images in sub-directories to avoid having too many files in the same directory
+        File subdirectory = new File(this.directory, id.length() > 2 ? id.substring(0, 2) : id);
+        return new File(subdirectory, id + type.getExtension());
+    }
+
+    /**
+     * Read an image from the persistent store.
+     * 
+     * @param id the identifier of the image
+     * @return the stored image, or {@code null} if the store doesn't hold any image under this identifier
+     */
+    private ImageData load(String id)
+    {
+        if (id == null || !VALID_ID.matcher(id).matches()) {
+            return null;
+        }
+
+        for (Type type : Type.values()) {
+            File file = getFile(id, type);
+            if (file.isFile()) {
+                try {
+                    ImageData data = new ImageData(FileUtils.readFileToByteArray(file), type);
+                    // Mark the image as recently used so that it's evicted last
+                    file.setLastModified(System.currentTimeMillis());
+                    return data;
+                } catch (IOException e) {
+                    this.logger.warn("Failed to read formula image [{}]: {}", file, e.getMessage());
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Write an image to the persistent store.
+     * 
+     * @param id the identifier of the image
+     * @param data the image to store
+     */
+    private void store(String id, ImageData data)
+    {
+        if (id == null || !VALID_ID.matcher(id).matches() || data == null || data.getData() == null) {
+            return;
+        }
+
+        File file = getFile(id, data.getType());
+        File tmpFile = null;
+        long previousLength;
+        try {
+            file.getParentFile().mkdirs();
+            // Write to a temporary file first so that a concurrent read never sees a partially written image
+            tmpFile = File.createTempFile(id, ".tmp", file.getParentFile());
+            FileUtils.writeByteArrayToFile(tmpFile, data.getData());
+            // The image may already be stored, in which case it is overwritten
+            previousLength = file.length();
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                if (!tmpFile.renameTo(file)) {
+                    throw new IOException(String.format("Failed to rename [%s] to [%s]", tmpFile, file));
+                }
+            }
+        } catch (IOException e) {
+            this.logger.warn("Failed to store formula image [{}]: {}", file, e.getMessage());
+            return;
+        } finally {
+            if (tmpFile != null && tmpFile.exists()) {
+                tmpFile.delete();
+            }
+        }
+
+        boolean evict;
+        synchronized (this) {
+            this.storageSize += data.getData().length - previousLength;
+            evict = this.storageSize > MAX_STORAGE_SIZE;
+        }
+        if (evict) {
+            evict();
+        }
+    }
+
+    /**
+     * Remove the least recently used images from the persistent store until it's back below
+     * {@link #EVICTED_STORAGE_SIZE}.
+     */
+    private synchronized void evict()
+    {
+        // Take a snapshot of the access times since they can be modified concurrently while sorting
+        final Map<File, Long> lastModified = new HashMap<File, Long>();
+        List<File> files = new ArrayList<File>();
+        long size = 0;
+        for (File file : FileUtils.listFiles(this.directory, IMAGE_EXTENSIONS, true)) {
+            lastModified.put(file, file.lastModified());
+            files.add(file);
+            size += file.length();
+        }
+
+        Collections.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(File file1, File file2)
+            {
+                return lastModified.get(file1).compareTo(lastModified.get(file2));
+            }
+        });
+
+        for (File file : files) {
+            if (size <= EVICTED_STORAGE_SIZE) {
+                break;
+            }
+            long fileSize = file.length();
+            if (file.delete()) {
+                size -= fileSize;
+            }
+        }
+
+        this.storageSize = size;
     }
 }
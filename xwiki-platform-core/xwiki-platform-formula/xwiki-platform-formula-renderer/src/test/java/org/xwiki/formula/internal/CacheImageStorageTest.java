@@ -0,0 +1,187 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.formula.internal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.environment.Environment;
+import org.xwiki.formula.FormulaRenderer.Type;
+import org.xwiki.formula.ImageData;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CacheImageStorage}.
+ * 
+ * @version $Id$
+ */
+public class CacheImageStorageTest
+{
+    private static final long MB = 1024L * 1024;
+
+    private File permanentDirectory;
+
+    private File storeDirectory;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.permanentDirectory = new File(System.getProperty("java.io.tmpdir"), "formulatest" + System.nanoTime());
+        this.storeDirectory = new File(this.permanentDirectory, "cache/formula");
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        FileUtils.deleteDirectory(this.permanentDirectory);
+    }
+
+    /**
+     * Simulates a start of the wiki.
+     * 
+     * @return a new storage, reading the persistent store of the previous ones
+     */
+    private CacheImageStorage createStorage() throws Exception
+    {
+        CacheManager cacheManager = mock(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenAnswer(new Answer<Cache<ImageData>>()
+        {
+            @Override
+            public Cache<ImageData> answer(InvocationOnMock invocation)
+            {
+                return createCache();
+            }
+        });
+        Environment environment = mock(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.permanentDirectory);
+
+        CacheImageStorage storage = new CacheImageStorage();
+        ReflectionUtils.setFieldValue(storage, "cacheManager", cacheManager);
+        ReflectionUtils.setFieldValue(storage, "environment", environment);
+        ReflectionUtils.setFieldValue(storage, "logger", mock(Logger.class));
+        storage.initialize();
+
+        return storage;
+    }
+
+    private Cache<ImageData> createCache()
+    {
+        final Map<String, ImageData> entries = new HashMap<String, ImageData>();
+        @SuppressWarnings("unchecked")
+        Cache<ImageData> cache = mock(Cache.class);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                entries.put((String) invocation.getArguments()[0], (ImageData) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(cache).set(anyString(), any(ImageData.class));
+        when(cache.get(anyString())).thenAnswer(new Answer<ImageData>()
+        {
+            @Override
+            public ImageData answer(InvocationOnMock invocation)
+            {
+                return entries.get(invocation.getArguments()[0]);
+            }
+        });
+
+        return cache;
+    }
+
+    /**
+     * Creates a stored image without writing its content.
+     */
+    private File createStoredImage(String id, long size, long lastModified) throws Exception
+    {
+        File file = new File(new File(this.storeDirectory, id.substring(0, 2)), id + Type.PNG.getExtension());
+        file.getParentFile().mkdirs();
+        RandomAccessFile content = new RandomAccessFile(file, "rw");
+        try {
+            content.setLength(size);
+        } finally {
+            content.close();
+        }
+        file.setLastModified(lastModified);
+
+        return file;
+    }
+
+    @Test
+    public void imagesArePersistedAcrossRestarts() throws Exception
+    {
+        byte[] data = new byte[] {1, 2, 3};
+        createStorage().put("a1b2c3", new ImageData(data, Type.GIF));
+
+        ImageData storedData = createStorage().get("a1b2c3");
+
+        Assert.assertArrayEquals(data, storedData.getData());
+        Assert.assertEquals(Type.GIF, storedData.getType());
+        Assert.assertNull(createStorage().get("unknown"));
+    }
+
+    @Test
+    public void leastRecentlyUsedImagesAreEvictedAbove100MB() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        File oldest = createStoredImage("aa0001", 50 * MB, now - 1000000L);
+        File old = createStoredImage("bb0001", 50 * MB, now - 500000L);
+
+        CacheImageStorage storage = createStorage();
+        storage.put("cc0001", new ImageData(new byte[1024], Type.PNG));
+
+        // The least recently used images are removed until the store is back below 90MB
+        Assert.assertFalse(oldest.exists());
+        Assert.assertTrue(old.exists());
+        Assert.assertNull(createStorage().get("aa0001"));
+        Assert.assertNotNull(createStorage().get("cc0001"));
+    }
+
+    @Test
+    public void overwrittenImagesAreCountedOnce() throws Exception
+    {
+        File old = createStoredImage("aa0001", 95 * MB, System.currentTimeMillis() - 1000000L);
+
+        CacheImageStorage storage = createStorage();
+        ImageData data = new ImageData(new byte[(int) (3 * MB)], Type.PNG);
+        storage.put("bb0001", data);
+        storage.put("bb0001", data);
+        storage.put("bb0001", data);
+
+        // The store holds 98MB, nothing is evicted
+        Assert.assertTrue(old.exists());
+    }
+}
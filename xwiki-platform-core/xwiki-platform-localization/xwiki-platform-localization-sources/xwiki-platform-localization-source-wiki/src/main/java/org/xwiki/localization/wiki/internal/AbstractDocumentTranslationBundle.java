@@ -29,6 +29,7 @@
 
 import javax.inject.Provider;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.LoggerFactory;
 import org.xwiki.bridge.event.DocumentCreatedEvent;
 import org.xwiki.bridge.event.DocumentDeletedEvent;
@@ -210,10 +211,25 @@ public void onEvent(Event arg0, Object arg1, Object arg2)
         } else {
             XWikiDocument document = (XWikiDocument) arg1;
 
-            bundleCache.remove(document.getLocale() != null ? document.getLocale() : Locale.ROOT);
+            // Keep the already parsed translations when the document is saved without modifying its content
+            if (!(arg0 instanceof DocumentUpdatedEvent) || isContentModified(document)) {
+                bundleCache.remove(document.getLocale() != null ? document.getLocale() : Locale.ROOT);
+            }
         }
     }
 
+    /**
+     * @param document the updated document
+     * @return true if the content of the document is different from the content of the previous version
+     */
+    private boolean isContentModified(XWikiDocument document)
+    {
+        XWikiDocument originalDocument = document.getOriginalDocument();
+
+        return originalDocument == null || originalDocument.isNew()
+            || !StringUtils.equals(document.getContent(), originalDocument.getContent());
+    }
+
     @Override
     public String getName()
     {
@@ -351,4 +351,30 @@ public void getTranslationScopeONDemand() throws XWikiException, TranslationBund
 
         assertTranslation("wiki.translation", "Wiki translation", Locale.ROOT);
     }
+
+    @Test
+    public void getTranslationReusedWhenContentIsNotModified() throws XWikiException
+    {
+        DocumentReference translationDocument =
+            new DocumentReference(getContext().getDatabase(), "space", "translation");
+
+        addTranslation("wiki.translation", "Wiki translation", translationDocument, Locale.ROOT, Scope.WIKI);
+
+        Translation translation = this.localization.getTranslation("wiki.translation", Locale.ROOT);
+
+        // Save the document without modifying its content
+        XWikiDocument document = this.mockXWiki.getDocument(translationDocument, getContext());
+        document.setTitle("title");
+        this.mockXWiki.saveDocument(document, "", getContext());
+
+        Assert.assertSame(translation, this.localization.getTranslation("wiki.translation", Locale.ROOT));
+
+        // Modifying the content reloads the translations
+        addTranslation("wiki.othertranslation", "Other translation", translationDocument, Locale.ROOT, Scope.WIKI);
+
+        Translation reloadedTranslation = this.localization.getTranslation("wiki.translation", Locale.ROOT);
+        Assert.assertNotSame(translation, reloadedTranslation);
+        Assert.assertEquals("Wiki translation", reloadedTranslation.getRawSource());
+        assertTranslation("wiki.othertranslation", "Other translation", Locale.ROOT);
+    }
 }
@@ -0,0 +1,213 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.SendFailedException;
+
+/**
+ * Progress and result of the delivery of a set of mails handed to the mail sender queue.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class MailDeliveryStatus
+{
+    /** @see #getTotalCount() */
+    private final int totalCount;
+
+    /** @see #getSentCount() */
+    private final AtomicInteger sentCount = new AtomicInteger();
+
+    /** @see #getFailedCount() */
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /** @see #getSendFailedCount() */
+    private final AtomicInteger sendFailedCount = new AtomicInteger();
+
+    /** @see #getRetryCount() */
+    private final AtomicInteger retryCount = new AtomicInteger();
+
+    /** Counts down the mails which are not yet sent or definitively failed. */
+    private final CountDownLatch pending;
+
+    /** @see #getLastError() */
+    private volatile Exception lastError;
+
+    /** @see #getLastSendFailedException() */
+    private volatile SendFailedException lastSendFailedException;
+
+    /**
+     * @param totalCount the number of mails to deliver
+     */
+    public MailDeliveryStatus(int totalCount)
+    {
+        this.totalCount = totalCount;
+        this.pending = new CountDownLatch(totalCount);
+    }
+
+    /**
+     * @return the number of mails to deliver
+     */
+    public int getTotalCount()
+    {
+        return this.totalCount;
+    }
+
+    /**
+     * @return the number of mails successfully sent
+     */
+    public int getSentCount()
+    {
+        return this.sentCount.get();
+    }
+
+    /**
+     * @return the number of mails which could not be sent
+     */
+    public int getFailedCount()
+    {
+        return this.failedCount.get();
+    }
+
+    /**
+     * @return the number of mails which could not be sent because the SMTP server rejected some of their recipients
+     */
+    public int getSendFailedCount()
+    {
+        return this.sendFailedCount.get();
+    }
+
+    /**
+     * @return the number of delivery attempts which failed and were retried later
+     */
+    public int getRetryCount()
+    {
+        return this.retryCount.get();
+    }
+
+    /**
+     * @return the number of mails not yet delivered
+     */
+    public int getPendingCount()
+    {
+        return (int) this.pending.getCount();
+    }
+
+    /**
+     * @return {@code true} if all the mails have been processed, whether they have been sent or not
+     */
+    public boolean isDone()
+    {
+        return this.pending.getCount() == 0;
+    }
+
+    /**
+     * @return the last error encountered while delivering the mails, {@code null} if none
+     */
+    public Exception getLastError()
+    {
+        return this.lastError;
+    }
+
+    /**
+     * @return the last error raised because the SMTP server rejected some recipients, {@code null} if none
+     */
+    public SendFailedException getLastSendFailedException()
+    {
+        return this.lastSendFailedException;
+    }
+
+    /**
+     * Wait until all the mails have been processed.
+     * 
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public void waitUntilDone() throws InterruptedException
+    {
+        this.pending.await();
+    }
+
+    /**
+     * Wait until all the mails have been processed or the passed time has elapsed.
+     * 
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return {@code true} if all the mails have been processed, {@code false} if the time elapsed before
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean waitUntilDone(long timeout) throws InterruptedException
+    {
+        return this.pending.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A mail has been sent.
+     */
+    void onSent()
+    {
+        this.sentCount.incrementAndGet();
+        this.pending.countDown();
+    }
+
+    /**
+     * A mail has been skipped since it has no recipient.
+     */
+    void onSkipped()
+    {
+        this.pending.countDown();
+    }
+
+    /**
+     * A mail could not be sent and won't be retried.
+     * 
+     * @param error the reason of the failure
+     */
+    void onFailed(Exception error)
+    {
+        this.lastError = error;
+        if (error instanceof SendFailedException) {
+            this.lastSendFailedException = (SendFailedException) error;
+            this.sendFailedCount.incrementAndGet();
+        }
+        this.failedCount.incrementAndGet();
+        this.pending.countDown();
+    }
+
+    /**
+     * The delivery of a mail failed and is going to be retried.
+     * 
+     * @param error the reason of the failure
+     */
+    void onRetry(Exception error)
+    {
+        this.lastError = error;
+        this.retryCount.incrementAndGet();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("Total [%d], Sent [%d], Failed [%d], Retries [%d], Pending [%d]", getTotalCount(),
+            getSentCount(), getFailedCount(), getRetryCount(), getPendingCount());
+    }
+}
@@ -29,8 +29,8 @@
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -46,7 +46,6 @@
 import javax.mail.Multipart;
 import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeBodyPart;
@@ -121,6 +120,30 @@ public class MailSenderPlugin extends XWikiDefaultPlugin
     /** The name of the header that specifies the sender of the mail. */
     private static final String FROM = "From";
 
+    /** The prefix of the configuration parameters of the plugin in xwiki.cfg. */
+    private static final String CONFIGURATION_PREFIX = "xwiki.plugin.mailsender.";
+
+    /** Default number of threads building and sending the mails. */
+    private static final int DEFAULT_THREADS = 4;
+
+    /** Default maximum number of connections opened to a SMTP server. */
+    private static final int DEFAULT_CONNECTIONS = 4;
+
+    /** Default maximum number of mails sent at the same time to a recipient domain. */
+    private static final int DEFAULT_CONNECTIONS_PER_DOMAIN = 2;
+
+    /** Default maximum number of times the delivery of a mail is retried. */
+    private static final int DEFAULT_RETRIES = 3;
+
+    /** Default time (in milliseconds) to wait before retrying to send a mail. */
+    private static final long DEFAULT_RETRY_DELAY = 5000L;
+
+    /** The number of mails with rejected recipients above which sending a collection of mails fails. */
+    private static final int MAX_SEND_FAILED = 10;
+
+    /** Delivers the mails in the background, created on first use. */
+    private MailSenderQueue queue;
+
     /**
      * Default plugin constructor.
      * 
@@ -151,6 +174,16 @@ public void virtualInit(XWikiContext context)
         }
     }
 
+    @Override
+    public synchronized void flushCache(XWikiContext context)
+    {
+        // The queue is created again on next use, with the current configuration
+        if (this.queue != null) {
+            this.queue.shutdown();
+            this.queue = null;
+        }
+    }
+
     @Override
     public String getName()
     {
@@ -270,7 +303,7 @@ protected BaseClass initMailClass(XWikiContext context) throws XWikiException
      * @param session Mail session
      * @return The MIME message
      */
-    private MimeMessage createMimeMessage(Mail mail, Session session, XWikiContext context) throws MessagingException,
+    MimeMessage createMimeMessage(Mail mail, Session session, XWikiContext context) throws MessagingException,
         XWikiException, IOException
     {
         // this will also check for email error
@@ -567,7 +600,7 @@ protected String getFileName(String path)
      * 
      * @return The properties
      */
-    private Properties initProperties(MailConfiguration mailConfiguration)
+    Properties initProperties(MailConfiguration mailConfiguration)
     {
         Properties properties = new Properties();
 
@@ -689,94 +722,121 @@ public boolean sendMails(Collection<Mail> emails, XWikiContext context) throws M
     }
 
     /**
-     * Send a Collection of Mails (multiple emails)
+     * Send a Collection of Mails (multiple emails). The mails are sent concurrently by the delivery threads and this
+     * method waits until they have all been processed; use
+     * {@link #sendMailsAsync(Collection, MailConfiguration, XWikiContext)} to avoid waiting.
+     * <p>
+     * As before, the delivery fails if a single mail is sent and can't be delivered, or if the SMTP server rejects the
+     * recipients of more than 10 mails. The other failures are only logged. Since the mails are sent concurrently, the
+     * exception is thrown once all the mails have been processed instead of stopping at the failing mail.
      * 
      * @param emails Mail Collection
      * @return True in any case (TODO ?)
+     * @throws MessagingException if the single mail to send failed, or the last {@link SendFailedException} if more
+     *             than 10 mails have been rejected
      */
     public boolean sendMails(Collection<Mail> emails, MailConfiguration mailConfiguration, XWikiContext context)
         throws MessagingException, UnsupportedEncodingException
     {
-        Session session = null;
-        Transport transport = null;
-        int emailCount = emails.size();
-        int count = 0;
-        int sendFailedCount = 0;
+        // A single mail is not retried so that the caller gets the error right away, as before
+        MailDeliveryStatus status = sendMailsAsync(emails, mailConfiguration, emails.size() > 1, context);
         try {
-            for (Iterator<Mail> emailIt = emails.iterator(); emailIt.hasNext();) {
-                count++;
-
-                Mail mail = emailIt.next();
-                LOGGER.info("Sending email: " + mail.toString());
-
-                if ((transport == null) || (session == null)) {
-                    // initialize JavaMail Session and Transport
-                    Properties props = initProperties(mailConfiguration);
-                    session = Session.getInstance(props, null);
-                    transport = session.getTransport("smtp");
-                    if (!mailConfiguration.usesAuthentication()) {
-                        // no auth info - typical 127.0.0.1 open relay scenario
-                        transport.connect();
-                    } else {
-                        // auth info present - typical with external smtp server
-                        transport.connect(mailConfiguration.getSmtpUsername(), mailConfiguration.getSmtpPassword());
-                    }
-                }
+            status.waitUntilDone();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for the emails to be sent", e);
+        }
 
-                try {
-                    MimeMessage message = createMimeMessage(mail, session, context);
-                    if (message == null) {
-                        continue;
-                    }
+        LOGGER.info("sendEmails: " + status);
 
-                    transport.sendMessage(message, message.getAllRecipients());
-
-                    // close the connection every other 100 emails
-                    if ((count % 100) == 0) {
-                        try {
-                            if (transport != null) {
-                                transport.close();
-                            }
-                        } catch (MessagingException ex) {
-                            LOGGER.error("MessagingException has occured.", ex);
-                        }
-                        transport = null;
-                        session = null;
-                    }
-                } catch (SendFailedException ex) {
-                    sendFailedCount++;
-                    LOGGER.error("SendFailedException has occured.", ex);
-                    LOGGER.error("Detailed email information" + mail.toString());
-                    if (emailCount == 1) {
-                        throw ex;
-                    }
-                    if ((emailCount != 1) && (sendFailedCount > 10)) {
-                        throw ex;
-                    }
-                } catch (MessagingException mex) {
-                    LOGGER.error("MessagingException has occured.", mex);
-                    LOGGER.error("Detailed email information" + mail.toString());
-                    if (emailCount == 1) {
-                        throw mex;
+        if (emails.size() == 1 && status.getLastError() instanceof MessagingException) {
+            throw (MessagingException) status.getLastError();
+        }
+        if (status.getSendFailedCount() > MAX_SEND_FAILED) {
+            throw status.getLastSendFailedException();
+        }
+
+        return true;
+    }
+
+    /**
+     * Queue a Collection of Mails to be sent in the background. The mails are built and sent concurrently, using a
+     * pool of SMTP connections, and the deliveries failing because of a transient error are retried.
+     * 
+     * @param emails Mail Collection
+     * @param mailConfiguration the SMTP configuration to use
+     * @param context the XWiki context
+     * @return the status of the delivery, which can be used to follow its progress
+     * @since 5.2M1
+     */
+    public MailDeliveryStatus sendMailsAsync(Collection<Mail> emails, MailConfiguration mailConfiguration,
+        XWikiContext context)
+    {
+        return sendMailsAsync(emails, mailConfiguration, true, context);
+    }
+
+    /**
+     * @param emails Mail Collection
+     * @param mailConfiguration the SMTP configuration to use
+     * @param retry {@code false} if a mail failing to be sent should not be retried
+     * @param context the XWiki context
+     * @return the status of the delivery
+     */
+    private MailDeliveryStatus sendMailsAsync(Collection<Mail> emails, MailConfiguration mailConfiguration,
+        boolean retry, XWikiContext context)
+    {
+        // The mails are built in the delivery threads, so make sure the content of their attachments is loaded while
+        // the current request has access to the store.
+        for (Mail mail : emails) {
+            if (mail.getAttachments() != null) {
+                for (Attachment attachment : mail.getAttachments()) {
+                    try {
+                        attachment.getContent();
+                    } catch (XWikiException e) {
+                        LOGGER.error("Failed to load the content of attachment [" + attachment.getFilename() + "]",
+                            e);
                     }
-                } catch (XWikiException e) {
-                    LOGGER.error("XWikiException has occured.", e);
-                } catch (IOException e) {
-                    LOGGER.error("IOException has occured.", e);
                 }
             }
-        } finally {
-            try {
-                if (transport != null) {
-                    transport.close();
-                }
-            } catch (MessagingException ex) {
-                LOGGER.error("MessagingException has occured.", ex);
-            }
+        }
+
+        return getQueue(context).send(emails, mailConfiguration, retry, context);
+    }
 
-            LOGGER.info("sendEmails: Email count = " + emailCount + " sent count = " + count);
+    /**
+     * @return the number of mails queued, sent, failed, retried and pending since startup
+     * @since 5.2M1
+     */
+    public synchronized Map<String, Long> getDeliveryStatistics()
+    {
+        if (this.queue == null) {
+            return Collections.emptyMap();
         }
-        return true;
+
+        return this.queue.getStatistics();
+    }
+
+    /**
+     * @param context the XWiki context, used to read the configuration
+     * @return the queue delivering the mails in the background
+     */
+    private synchronized MailSenderQueue getQueue(XWikiContext context)
+    {
+        if (this.queue == null) {
+            XWiki xwiki = context.getWiki();
+            int threads = (int) xwiki.ParamAsLong(CONFIGURATION_PREFIX + "threads", DEFAULT_THREADS);
+            int connections = (int) xwiki.ParamAsLong(CONFIGURATION_PREFIX + "connections", DEFAULT_CONNECTIONS);
+            int connectionsPerDomain =
+                (int) xwiki.ParamAsLong(CONFIGURATION_PREFIX + "connectionsPerDomain", DEFAULT_CONNECTIONS_PER_DOMAIN);
+            int retries = (int) xwiki.ParamAsLong(CONFIGURATION_PREFIX + "retries", DEFAULT_RETRIES);
+            long retryDelay = xwiki.ParamAsLong(CONFIGURATION_PREFIX + "retryDelay", DEFAULT_RETRY_DELAY);
+
+            this.queue =
+                new MailSenderQueue(this, Math.max(1, threads), Math.max(1, connections),
+                    Math.max(1, connectionsPerDomain), Math.max(0, retries), Math.max(0, retryDelay));
+        }
+
+        return this.queue;
     }
 
     /**
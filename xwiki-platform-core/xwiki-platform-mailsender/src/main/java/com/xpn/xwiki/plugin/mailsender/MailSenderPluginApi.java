@@ -205,4 +205,49 @@ public int sendMail(Mail mail, MailConfiguration mailConfiguration)
 
         return result;
     }
+
+    /**
+     * Queue mails to be sent in the background, using the mail configuration of the current wiki. The call returns
+     * right away: use the returned status to follow the progress of the delivery.
+     * 
+     * @param mails the mails to send
+     * @return the status of the delivery, or {@code null} if the mails could not be queued
+     * @since 5.2M1
+     */
+    public MailDeliveryStatus sendMailsAsync(List<Mail> mails)
+    {
+        return sendMailsAsync(mails, createMailConfiguration(new XWiki(this.context.getWiki(), this.context)));
+    }
+
+    /**
+     * Queue mails to be sent in the background. The call returns right away: use the returned status to follow the
+     * progress of the delivery.
+     * 
+     * @param mails the mails to send
+     * @param mailConfiguration the SMTP configuration to use
+     * @return the status of the delivery, or {@code null} if the mails could not be queued
+     * @since 5.2M1
+     */
+    public MailDeliveryStatus sendMailsAsync(List<Mail> mails, MailConfiguration mailConfiguration)
+    {
+        try {
+            return getProtectedPlugin().sendMailsAsync(mails, mailConfiguration, this.context);
+        } catch (Exception e) {
+            if (e.getMessage() != null) {
+                this.context.put("error", e.getMessage());
+            }
+            LOGGER.error("Failed to queue [" + mails.size() + "] emails using mail configuration ["
+                + mailConfiguration.toString() + "]", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return the number of mails queued, sent, failed, retried and pending since startup
+     * @since 5.2M1
+     */
+    public Map<String, Long> getDeliveryStatistics()
+    {
+        return getProtectedPlugin().getDeliveryStatistics();
+    }
 }
@@ -0,0 +1,400 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xwiki.context.ExecutionContext;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.plugin.mailsender.SMTPConnectionPool.PooledConnection;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+
+/**
+ * Delivers mails in the background. The MIME messages are built and sent concurrently by a pool of threads, through
+ * SMTP connections reused between mails. The number of mails sent at the same time to a given recipient domain is
+ * limited and the deliveries failing because of a transient error are retried with an exponential backoff.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+class MailSenderQueue
+{
+    /** Logging helper object. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailSenderQueue.class);
+
+    /** The time (in milliseconds) after which a mail throttled because of its recipient domain is tried again. */
+    private static final long THROTTLE_DELAY = 100L;
+
+    /** Used to build the key identifying a SMTP connection pool. */
+    private static final String KEY_SEPARATOR = "|";
+
+    /** The plugin, used to build the MIME messages. */
+    private final MailSenderPlugin plugin;
+
+    /** The threads building and sending the mails. */
+    private final ScheduledExecutorService executor;
+
+    /** The maximum number of connections opened to a SMTP server. */
+    private final int connectionsPerServer;
+
+    /** The maximum number of mails sent at the same time to a recipient domain. */
+    private final int connectionsPerDomain;
+
+    /** The maximum number of times the delivery of a mail is retried. */
+    private final int maxRetries;
+
+    /** The time (in milliseconds) to wait before the first retry, doubled for each following retry. */
+    private final long retryDelay;
+
+    /** The SMTP connection pools, one for each mail configuration. */
+    private final ConcurrentMap<String, SMTPConnectionPool> pools = new ConcurrentHashMap<String, SMTPConnectionPool>();
+
+    /** Limits the number of mails sent at the same time to each recipient domain. */
+    private final ConcurrentMap<String, Semaphore> domainPermits = new ConcurrentHashMap<String, Semaphore>();
+
+    /** The number of mails queued since startup. */
+    private final AtomicLong queuedCount = new AtomicLong();
+
+    /** The number of mails sent since startup. */
+    private final AtomicLong sentCount = new AtomicLong();
+
+    /** The number of mails which could not be sent since startup. */
+    private final AtomicLong failedCount = new AtomicLong();
+
+    /** The number of delivery attempts retried since startup. */
+    private final AtomicLong retryCount = new AtomicLong();
+
+    /**
+     * @param plugin the plugin, used to build the MIME messages
+     * @param threads the number of threads building and sending the mails
+     * @param connectionsPerServer the maximum number of connections opened to a SMTP server
+     * @param connectionsPerDomain the maximum number of mails sent at the same time to a recipient domain
+     * @param maxRetries the maximum number of times the delivery of a mail is retried
+     * @param retryDelay the time (in milliseconds) to wait before the first retry
+     */
+    MailSenderQueue(MailSenderPlugin plugin, int threads, int connectionsPerServer, int connectionsPerDomain,
+        int maxRetries, long retryDelay)
+    {
+        this.plugin = plugin;
+        this.connectionsPerServer = connectionsPerServer;
+        this.connectionsPerDomain = connectionsPerDomain;
+        this.maxRetries = maxRetries;
+        this.retryDelay = retryDelay;
+
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki mail sender thread %d").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+        this.executor = new ScheduledThreadPoolExecutor(threads, factory);
+    }
+
+    /**
+     * Queue mails for delivery.
+     * 
+     * @param mails the mails to send
+     * @param configuration the SMTP configuration to use
+     * @param retry {@code false} if a mail failing to be sent should not be retried
+     * @param context the XWiki context, cloned for the delivery threads
+     * @return the status of the delivery of the passed mails
+     */
+    MailDeliveryStatus send(Collection<Mail> mails, MailConfiguration configuration, boolean retry,
+        XWikiContext context)
+    {
+        MailDeliveryStatus status = new MailDeliveryStatus(mails.size());
+        SMTPConnectionPool pool = getPool(configuration);
+        for (Mail mail : mails) {
+            this.queuedCount.incrementAndGet();
+            schedule(new DeliveryTask(mail, pool, status, retry ? this.maxRetries : 0, context), 0);
+        }
+
+        return status;
+    }
+
+    /**
+     * @return the number of mails queued, sent, failed and retried since startup
+     */
+    Map<String, Long> getStatistics()
+    {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("queued", this.queuedCount.get());
+        statistics.put("sent", this.sentCount.get());
+        statistics.put("failed", this.failedCount.get());
+        statistics.put("retried", this.retryCount.get());
+        statistics.put("pending", this.queuedCount.get() - this.sentCount.get() - this.failedCount.get());
+
+        return statistics;
+    }
+
+    /**
+     * Stop accepting mails and close the idle SMTP connections. The mails already queued are still delivered, but
+     * they are not retried anymore if their delivery fails, and the delivery threads stop once they are all sent.
+     */
+    void shutdown()
+    {
+        this.executor.shutdown();
+        for (SMTPConnectionPool pool : this.pools.values()) {
+            pool.close();
+        }
+    }
+
+    /**
+     * @param configuration the SMTP configuration
+     * @return the pool of connections to the SMTP server of the passed configuration
+     */
+    private SMTPConnectionPool getPool(MailConfiguration configuration)
+    {
+        Properties properties = this.plugin.initProperties(configuration);
+        String key =
+            new TreeMap<Object, Object>(properties).toString() + KEY_SEPARATOR + configuration.getSmtpUsername()
+                + KEY_SEPARATOR + configuration.getSmtpPassword();
+
+        SMTPConnectionPool pool = this.pools.get(key);
+        if (pool == null) {
+            pool =
+                new SMTPConnectionPool(Session.getInstance(properties, null), configuration,
+                    this.connectionsPerServer);
+            SMTPConnectionPool existingPool = this.pools.putIfAbsent(key, pool);
+            if (existingPool != null) {
+                pool = existingPool;
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * @param domain a recipient domain
+     * @return the permits limiting the number of mails sent at the same time to the passed domain
+     */
+    private Semaphore getDomainPermits(String domain)
+    {
+        Semaphore permits = this.domainPermits.get(domain);
+        if (permits == null) {
+            permits = new Semaphore(this.connectionsPerDomain);
+            Semaphore existingPermits = this.domainPermits.putIfAbsent(domain, permits);
+            if (existingPermits != null) {
+                permits = existingPermits;
+            }
+        }
+
+        return permits;
+    }
+
+    /**
+     * @param message the message to send
+     * @return the domain of the first recipient of the message
+     * @throws MessagingException if the recipients can't be read
+     */
+    private static String getDomain(MimeMessage message) throws MessagingException
+    {
+        Address[] recipients = message.getAllRecipients();
+        if (recipients != null && recipients.length > 0 && recipients[0] instanceof InternetAddress) {
+            String domain = StringUtils.substringAfterLast(((InternetAddress) recipients[0]).getAddress(), "@");
+            return domain.toLowerCase();
+        }
+
+        return "";
+    }
+
+    /**
+     * @param task the task to execute
+     * @param delay the time (in milliseconds) to wait before executing the task
+     */
+    private void schedule(DeliveryTask task, long delay)
+    {
+        try {
+            this.executor.schedule(task, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            task.fail(e);
+        }
+    }
+
+    /**
+     * Builds and sends a mail.
+     */
+    private class DeliveryTask extends AbstractXWikiRunnable
+    {
+        /** The mail to send. */
+        private final Mail mail;
+
+        /** The connections to the SMTP server to use. */
+        private final SMTPConnectionPool pool;
+
+        /** The status to update with the result of the delivery. */
+        private final MailDeliveryStatus status;
+
+        /** The maximum number of times the delivery is retried. */
+        private final int retries;
+
+        /** The XWiki context used in the delivery thread. */
+        private final XWikiContext xcontext;
+
+        /** The message, built once and reused by the following attempts. */
+        private MimeMessage message;
+
+        /** The number of failed attempts. */
+        private int attempts;
+
+        /**
+         * @param mail the mail to send
+         * @param pool the connections to the SMTP server to use
+         * @param status the status to update with the result of the delivery
+         * @param retries the maximum number of times the delivery is retried
+         * @param context the XWiki context, cloned for the delivery thread
+         */
+        DeliveryTask(Mail mail, SMTPConnectionPool pool, MailDeliveryStatus status, int retries,
+            XWikiContext context)
+        {
+            this.mail = mail;
+            this.pool = pool;
+            this.status = status;
+            this.retries = retries;
+            this.xcontext = context.clone();
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                if (this.message == null) {
+                    this.message = plugin.createMimeMessage(this.mail, this.pool.getSession(), this.xcontext);
+                    if (this.message == null) {
+                        queuedCount.decrementAndGet();
+                        this.status.onSkipped();
+                        return;
+                    }
+                }
+
+                Semaphore permits = getDomainPermits(getDomain(this.message));
+                if (!permits.tryAcquire()) {
+                    // Too many mails are being sent to the same domain, try again a bit later
+                    schedule(this, THROTTLE_DELAY);
+                    return;
+                }
+                try {
+                    deliver();
+                } finally {
+                    permits.release();
+                }
+            } catch (MessagingException e) {
+                fail(e);
+            } catch (XWikiException e) {
+                fail(e);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Send the message through a pooled connection, retrying later if the delivery fails.
+         * 
+         * @throws MessagingException if the message is invalid
+         */
+        private void deliver() throws MessagingException
+        {
+            PooledConnection connection;
+            try {
+                connection = this.pool.borrow();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(e);
+                return;
+            } catch (MessagingException e) {
+                retryOrFail(e);
+                return;
+            }
+
+            boolean broken = false;
+            try {
+                LOGGER.info("Sending email: " + this.mail.toString());
+                connection.send(this.message);
+                sentCount.incrementAndGet();
+                this.status.onSent();
+            } catch (SendFailedException e) {
+                // Invalid addresses: retrying won't help
+                fail(e);
+            } catch (MessagingException e) {
+                broken = true;
+                retryOrFail(e);
+            } finally {
+                this.pool.release(connection, broken);
+            }
+        }
+
+        /**
+         * @param error the reason of the failed attempt
+         */
+        private void retryOrFail(MessagingException error)
+        {
+            if (this.attempts < this.retries) {
+                long delay = retryDelay << this.attempts;
+                this.attempts++;
+                LOGGER.warn("Failed to send email [{}], retrying in [{}] ms: {}", new Object[] {this.mail, delay,
+                    error.getMessage()});
+                retryCount.incrementAndGet();
+                this.status.onRetry(error);
+                schedule(this, delay);
+            } else {
+                fail(error);
+            }
+        }
+
+        /**
+         * @param error the reason of the failure
+         */
+        private void fail(Exception error)
+        {
+            LOGGER.error("Failed to send email [" + this.mail.toString() + "]", error);
+            failedCount.incrementAndGet();
+            this.status.onFailed(error);
+        }
+    }
+}
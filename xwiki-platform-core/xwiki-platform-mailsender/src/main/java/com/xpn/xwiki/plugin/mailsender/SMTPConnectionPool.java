@@ -0,0 +1,228 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of connections to a SMTP server, reused between mails instead of opening a new connection for each
+ * set of mails to send.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+class SMTPConnectionPool
+{
+    /** Logging helper object. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(SMTPConnectionPool.class);
+
+    /** The number of mails after which a connection is closed and a new one is opened. */
+    private static final int MAX_MAILS_PER_CONNECTION = 100;
+
+    /** The time (in milliseconds) after which an idle connection is closed instead of being reused. */
+    private static final long MAX_IDLE_TIME = 60000L;
+
+    /** The time (in milliseconds) to wait for a connection to be released before checking again. */
+    private static final long WAIT_TIME = 1000L;
+
+    /** The mail session holding the SMTP configuration. */
+    private final Session session;
+
+    /** The configuration used to authenticate to the SMTP server. */
+    private final MailConfiguration configuration;
+
+    /** The maximum number of connections opened at the same time. */
+    private final int maxConnections;
+
+    /** The number of connections currently opened, idle or not. */
+    private final AtomicInteger connectionCount = new AtomicInteger();
+
+    /** The opened connections which are not currently used. */
+    private final BlockingQueue<PooledConnection> idleConnections = new LinkedBlockingQueue<PooledConnection>();
+
+    /** {@code true} once the pool is closed, the released connections are then closed instead of being kept. */
+    private volatile boolean closed;
+
+    /**
+     * @param session the mail session holding the SMTP configuration
+     * @param configuration the configuration used to authenticate to the SMTP server
+     * @param maxConnections the maximum number of connections opened at the same time
+     */
+    SMTPConnectionPool(Session session, MailConfiguration configuration, int maxConnections)
+    {
+        this.session = session;
+        this.configuration = configuration;
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @return the mail session holding the SMTP configuration
+     */
+    Session getSession()
+    {
+        return this.session;
+    }
+
+    /**
+     * Get an opened connection, waiting for one to be released if the maximum number of connections is reached.
+     * 
+     * @return an opened connection, to be given back with {@link #release(PooledConnection, boolean)}
+     * @throws MessagingException if a new connection can't be opened
+     * @throws InterruptedException if the current thread is interrupted while waiting for a connection
+     */
+    PooledConnection borrow() throws MessagingException, InterruptedException
+    {
+        PooledConnection connection = this.idleConnections.poll();
+        while (connection == null || !connection.isValid()) {
+            if (connection != null) {
+                close(connection);
+            }
+
+            if (this.connectionCount.incrementAndGet() <= this.maxConnections) {
+                try {
+                    return open();
+                } catch (MessagingException e) {
+                    this.connectionCount.decrementAndGet();
+                    throw e;
+                }
+            }
+            this.connectionCount.decrementAndGet();
+
+            connection = this.idleConnections.poll(WAIT_TIME, TimeUnit.MILLISECONDS);
+        }
+
+        return connection;
+    }
+
+    /**
+     * Give back a connection obtained with {@link #borrow()}.
+     * 
+     * @param connection the connection
+     * @param broken {@code true} if the connection failed and should not be reused
+     */
+    void release(PooledConnection connection, boolean broken)
+    {
+        if (broken || this.closed || connection.sentCount >= MAX_MAILS_PER_CONNECTION) {
+            close(connection);
+        } else {
+            connection.lastUsed = System.currentTimeMillis();
+            this.idleConnections.offer(connection);
+            // The pool may have been closed while the connection was released
+            if (this.closed && this.idleConnections.remove(connection)) {
+                close(connection);
+            }
+        }
+    }
+
+    /**
+     * Close all the idle connections. The connections still used are closed when they are released.
+     */
+    void close()
+    {
+        this.closed = true;
+        PooledConnection connection;
+        while ((connection = this.idleConnections.poll()) != null) {
+            close(connection);
+        }
+    }
+
+    /**
+     * @return a new connection to the SMTP server
+     * @throws MessagingException if the connection fails
+     */
+    private PooledConnection open() throws MessagingException
+    {
+        Transport transport = this.session.getTransport("smtp");
+        if (!this.configuration.usesAuthentication()) {
+            // no auth info - typical 127.0.0.1 open relay scenario
+            transport.connect();
+        } else {
+            // auth info present - typical with external smtp server
+            transport.connect(this.configuration.getSmtpUsername(), this.configuration.getSmtpPassword());
+        }
+
+        return new PooledConnection(transport);
+    }
+
+    /**
+     * @param connection the connection to close
+     */
+    private void close(PooledConnection connection)
+    {
+        this.connectionCount.decrementAndGet();
+        try {
+            connection.transport.close();
+        } catch (MessagingException e) {
+            LOGGER.debug("Failed to close SMTP connection", e);
+        }
+    }
+
+    /**
+     * A connection to the SMTP server.
+     */
+    static class PooledConnection
+    {
+        /** The connected transport. */
+        private final Transport transport;
+
+        /** The number of mails sent with this connection. */
+        private int sentCount;
+
+        /** The time (in milliseconds) when this connection was last released. */
+        private long lastUsed = System.currentTimeMillis();
+
+        /**
+         * @param transport the connected transport
+         */
+        PooledConnection(Transport transport)
+        {
+            this.transport = transport;
+        }
+
+        /**
+         * @param message the message to send to all its recipients
+         * @throws MessagingException if the message can't be sent
+         */
+        void send(MimeMessage message) throws MessagingException
+        {
+            this.transport.sendMessage(message, message.getAllRecipients());
+            this.sentCount++;
+        }
+
+        /**
+         * @return {@code true} if the connection can be reused
+         */
+        private boolean isValid()
+        {
+            return System.currentTimeMillis() - this.lastUsed < MAX_IDLE_TIME && this.transport.isConnected();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A dummy SMTP transport recording the delivered mails, used to test the delivery queue. It can simulate transient
+ * failures and rejected recipients. It is selected with the {@code mail.smtp.class} JavaMail property.
+ * 
+ * @version $Id$
+ */
+public class DummyTransport extends Transport
+{
+    /** The number of connections opened. */
+    private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+    /** The number of mails sent with each closed connection. */
+    private static final List<Integer> CLOSED_CONNECTIONS = Collections.synchronizedList(new ArrayList<Integer>());
+
+    /** The recipients of the delivered mails. */
+    private static final List<String> DELIVERED = Collections.synchronizedList(new ArrayList<String>());
+
+    /** The time (in milliseconds) of each delivery attempt, by recipient. */
+    private static final Map<String, List<Long>> ATTEMPTS = new ConcurrentHashMap<String, List<Long>>();
+
+    /** The number of attempts which should still fail, by recipient. */
+    private static final Map<String, Integer> TRANSIENT_FAILURES = new ConcurrentHashMap<String, Integer>();
+
+    /** The recipients rejected by the server. */
+    private static final Set<String> REJECTED = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** The number of mails being sent, by recipient domain. */
+    private static final Map<String, AtomicInteger> ACTIVE = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /** The maximum number of mails sent at the same time, by recipient domain. */
+    private static final Map<String, Integer> MAX_ACTIVE = new ConcurrentHashMap<String, Integer>();
+
+    /** The time (in milliseconds) taken to send a mail. */
+    private static volatile long sendTime;
+
+    /** The number of mails sent with this connection. */
+    private int sentCount;
+
+    /**
+     * @param session the mail session
+     * @param urlname the URL name of the server
+     */
+    public DummyTransport(Session session, URLName urlname)
+    {
+        super(session, urlname);
+    }
+
+    /**
+     * Forget all the recorded deliveries and simulated failures.
+     */
+    public static void reset()
+    {
+        CONNECTIONS.set(0);
+        CLOSED_CONNECTIONS.clear();
+        DELIVERED.clear();
+        ATTEMPTS.clear();
+        TRANSIENT_FAILURES.clear();
+        REJECTED.clear();
+        ACTIVE.clear();
+        MAX_ACTIVE.clear();
+        sendTime = 0;
+    }
+
+    /**
+     * @param recipient the recipient
+     * @param failures the number of delivery attempts to the passed recipient which should fail
+     */
+    public static void failTransiently(String recipient, int failures)
+    {
+        TRANSIENT_FAILURES.put(recipient, failures);
+    }
+
+    /**
+     * @param recipient the recipient to reject
+     */
+    public static void reject(String recipient)
+    {
+        REJECTED.add(recipient);
+    }
+
+    /**
+     * @param time the time (in milliseconds) taken to send a mail
+     */
+    public static void setSendTime(long time)
+    {
+        sendTime = time;
+    }
+
+    /**
+     * @return the number of connections opened
+     */
+    public static int getConnectionCount()
+    {
+        return CONNECTIONS.get();
+    }
+
+    /**
+     * @return the number of mails sent with each closed connection
+     */
+    public static List<Integer> getClosedConnections()
+    {
+        synchronized (CLOSED_CONNECTIONS) {
+            return new ArrayList<Integer>(CLOSED_CONNECTIONS);
+        }
+    }
+
+    /**
+     * @return the recipients of the delivered mails
+     */
+    public static List<String> getDelivered()
+    {
+        synchronized (DELIVERED) {
+            return new ArrayList<String>(DELIVERED);
+        }
+    }
+
+    /**
+     * @param recipient the recipient
+     * @return the time (in milliseconds) of each attempt to deliver a mail to the passed recipient
+     */
+    public static List<Long> getAttempts(String recipient)
+    {
+        List<Long> attempts = ATTEMPTS.get(recipient);
+        return attempts != null ? attempts : Collections.<Long>emptyList();
+    }
+
+    /**
+     * @param domain a recipient domain
+     * @return the maximum number of mails sent at the same time to the passed domain
+     */
+    public static int getMaxActive(String domain)
+    {
+        Integer max = MAX_ACTIVE.get(domain);
+        return max != null ? max : 0;
+    }
+
+    /**
+     * Wait for some connections to be closed.
+     * 
+     * @param count the number of closed connections to wait for
+     * @param timeout the maximum time to wait, in milliseconds
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public static void waitForClosedConnections(int count, long timeout) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeout;
+        while (CLOSED_CONNECTIONS.size() < count && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Override
+    protected boolean protocolConnect(String host, int port, String user, String password)
+    {
+        CONNECTIONS.incrementAndGet();
+        return true;
+    }
+
+    @Override
+    public void sendMessage(Message message, Address[] addresses) throws MessagingException
+    {
+        String recipient = ((InternetAddress) addresses[0]).getAddress();
+        synchronized (ATTEMPTS) {
+            if (!ATTEMPTS.containsKey(recipient)) {
+                ATTEMPTS.put(recipient, Collections.synchronizedList(new ArrayList<Long>()));
+            }
+        }
+        ATTEMPTS.get(recipient).add(System.currentTimeMillis());
+
+        String domain = StringUtils.substringAfterLast(recipient, "@");
+        AtomicInteger active;
+        synchronized (ACTIVE) {
+            active = ACTIVE.get(domain);
+            if (active == null) {
+                active = new AtomicInteger();
+                ACTIVE.put(domain, active);
+            }
+            MAX_ACTIVE.put(domain, Math.max(getMaxActive(domain), active.incrementAndGet()));
+        }
+        try {
+            if (sendTime > 0) {
+                Thread.sleep(sendTime);
+            }
+            if (REJECTED.contains(recipient)) {
+                throw new SendFailedException("Invalid address", null, new Address[0], new Address[0], addresses);
+            }
+            synchronized (TRANSIENT_FAILURES) {
+                Integer failures = TRANSIENT_FAILURES.get(recipient);
+                if (failures != null && failures > 0) {
+                    TRANSIENT_FAILURES.put(recipient, failures - 1);
+                    throw new MessagingException("Service not available");
+                }
+            }
+            this.sentCount++;
+            DELIVERED.add(recipient);
+        } catch (InterruptedException e) {
+            throw new MessagingException("Interrupted", e);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws MessagingException
+    {
+        CLOSED_CONNECTIONS.add(this.sentCount);
+        super.close();
+    }
+}
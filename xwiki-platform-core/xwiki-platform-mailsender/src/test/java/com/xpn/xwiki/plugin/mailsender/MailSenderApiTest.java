@@ -20,6 +20,8 @@
 package com.xpn.xwiki.plugin.mailsender;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.mail.Message;
@@ -69,6 +71,8 @@ protected void setUp() throws Exception
             returnValue(""));
         this.mockXWiki.stubs().method("getXWikiPreference").with(eq("javamail_extra_props"), ANYTHING).will(
             returnValue(""));
+        // Use a single delivery thread and connection, and retry right away
+        this.mockXWiki.stubs().method("ParamAsLong").will(returnValue(1L));
 
         MailSenderPlugin plugin = new MailSenderPlugin("dummy", "dummy", getContext());
         this.api = new MailSenderPluginApi(plugin, getContext());
@@ -134,4 +138,30 @@ public void testSendRawMessage() throws MessagingException, IOException
         inbox = Mailbox.get("adam@acme.org");
         assertEquals(1, inbox.size());
     }
+
+    public void testSendMailsAsync() throws Exception
+    {
+        List<Mail> mails = new ArrayList<Mail>();
+        for (String to : Arrays.asList("peter@acme.org", "paul@acme.org", "mary@example.org")) {
+            Mail mail = this.api.createMail();
+            mail.setFrom("john@acme.org");
+            mail.setTo(to);
+            mail.setSubject("Test subject");
+            mail.setTextPart("Text content");
+            mails.add(mail);
+        }
+
+        MailDeliveryStatus status = this.api.sendMailsAsync(mails);
+        assertTrue(status.waitUntilDone(10000));
+        assertEquals(3, status.getTotalCount());
+        assertEquals(3, status.getSentCount());
+        assertEquals(0, status.getFailedCount());
+
+        assertEquals(1, Mailbox.get("peter@acme.org").size());
+        assertEquals(1, Mailbox.get("paul@acme.org").size());
+        assertEquals(1, Mailbox.get("mary@example.org").size());
+
+        assertEquals(Long.valueOf(3), this.api.getDeliveryStatistics().get("sent"));
+        assertEquals(Long.valueOf(0), this.api.getDeliveryStatistics().get("pending"));
+    }
 }
@@ -0,0 +1,237 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.mailsender;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+
+import org.jmock.Mock;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.plugin.mailsender.SMTPConnectionPool.PooledConnection;
+import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
+
+/**
+ * Unit tests for {@link MailSenderQueue}, delivering the mails through {@link DummyTransport}.
+ * 
+ * @version $Id$
+ */
+public class MailSenderQueueTest extends AbstractBridgedXWikiComponentTestCase
+{
+    /** The maximum time (in milliseconds) to wait for the mails to be delivered. */
+    private static final long TIMEOUT = 10000L;
+
+    private MailSenderPlugin plugin;
+
+    private MailConfiguration configuration;
+
+    private MailSenderQueue queue;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        // Use a single delivery thread and connection, retry once right away
+        Mock mockXWiki = mock(XWiki.class);
+        mockXWiki.stubs().method("ParamAsLong").will(returnValue(1L));
+        getContext().setWiki((XWiki) mockXWiki.proxy());
+
+        this.plugin = new MailSenderPlugin("mail", MailSenderPlugin.class.getCanonicalName(), null);
+        this.configuration = new MailConfiguration();
+        this.configuration.setHost("localhost");
+        this.configuration.setPort(25);
+        this.configuration.setExtraProperties("mail.smtp.class=" + DummyTransport.class.getName());
+
+        DummyTransport.reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        if (this.queue != null) {
+            this.queue.shutdown();
+        }
+        this.plugin.flushCache(getContext());
+
+        super.tearDown();
+    }
+
+    private Mail createMail(String to)
+    {
+        Mail mail = new Mail();
+        mail.setFrom("john@acme.org");
+        mail.setTo(to);
+        mail.setSubject("Test subject");
+        mail.setTextPart("Text content");
+
+        return mail;
+    }
+
+    private MailDeliveryStatus send(List<Mail> mails) throws InterruptedException
+    {
+        MailDeliveryStatus status = this.queue.send(mails, this.configuration, true, getContext());
+        assertTrue(status.waitUntilDone(TIMEOUT));
+
+        return status;
+    }
+
+    public void testRetryWithExponentialBackoff() throws Exception
+    {
+        this.queue = new MailSenderQueue(this.plugin, 1, 1, 1, 3, 100L);
+        DummyTransport.failTransiently("peter@acme.org", 2);
+
+        MailDeliveryStatus status = send(Arrays.asList(createMail("peter@acme.org")));
+
+        assertEquals(1, status.getSentCount());
+        assertEquals(0, status.getFailedCount());
+        assertEquals(2, status.getRetryCount());
+        List<Long> attempts = DummyTransport.getAttempts("peter@acme.org");
+        assertEquals(3, attempts.size());
+        // The delay before each retry is doubled
+        assertTrue(attempts.get(1) - attempts.get(0) >= 100L);
+        assertTrue(attempts.get(2) - attempts.get(1) >= 200L);
+        assertEquals(Arrays.asList("peter@acme.org"), DummyTransport.getDelivered());
+    }
+
+    public void testFailureAfterTheLastRetry() throws Exception
+    {
+        this.queue = new MailSenderQueue(this.plugin, 1, 1, 1, 2, 10L);
+        DummyTransport.failTransiently("peter@acme.org", 5);
+
+        MailDeliveryStatus status = send(Arrays.asList(createMail("peter@acme.org")));
+
+        assertEquals(0, status.getSentCount());
+        assertEquals(1, status.getFailedCount());
+        assertEquals(2, status.getRetryCount());
+        assertEquals(3, DummyTransport.getAttempts("peter@acme.org").size());
+        assertTrue(DummyTransport.getDelivered().isEmpty());
+    }
+
+    public void testPermanentFailureIsNotRetried() throws Exception
+    {
+        this.queue = new MailSenderQueue(this.plugin, 1, 1, 1, 3, 10L);
+        DummyTransport.reject("invalid@acme.org");
+
+        MailDeliveryStatus status = send(Arrays.asList(createMail("invalid@acme.org"), createMail("peter@acme.org")));
+
+        assertEquals(1, status.getSentCount());
+        assertEquals(1, status.getFailedCount());
+        assertEquals(0, status.getRetryCount());
+        assertEquals(1, status.getSendFailedCount());
+        assertNotNull(status.getLastSendFailedException());
+        assertEquals(1, DummyTransport.getAttempts("invalid@acme.org").size());
+        assertEquals(Arrays.asList("peter@acme.org"), DummyTransport.getDelivered());
+        // The connection is still usable after a rejected recipient
+        assertEquals(1, DummyTransport.getConnectionCount());
+    }
+
+    public void testThrottlingPerDomain() throws Exception
+    {
+        this.queue = new MailSenderQueue(this.plugin, 4, 4, 1, 0, 0L);
+        DummyTransport.setSendTime(50L);
+
+        List<Mail> mails = new ArrayList<Mail>();
+        for (int i = 0; i < 4; i++) {
+            mails.add(createMail("user" + i + "@acme.org"));
+            mails.add(createMail("user" + i + "@example.org"));
+        }
+        MailDeliveryStatus status = send(mails);
+
+        assertEquals(8, status.getSentCount());
+        assertEquals(8, DummyTransport.getDelivered().size());
+        // A single mail is sent at a time to each domain
+        assertEquals(1, DummyTransport.getMaxActive("acme.org"));
+        assertEquals(1, DummyTransport.getMaxActive("example.org"));
+    }
+
+    public void testConnectionRenewedAfter100Mails() throws Exception
+    {
+        this.queue = new MailSenderQueue(this.plugin, 1, 1, 1, 0, 0L);
+
+        List<Mail> mails = new ArrayList<Mail>();
+        for (int i = 0; i < 250; i++) {
+            mails.add(createMail("peter@acme.org"));
+        }
+        MailDeliveryStatus status = send(mails);
+        assertEquals(250, status.getSentCount());
+
+        // The connections used for 100 mails are closed, the last one is closed on shutdown
+        this.queue.shutdown();
+        DummyTransport.waitForClosedConnections(3, TIMEOUT);
+        assertEquals(3, DummyTransport.getConnectionCount());
+        assertEquals(Arrays.asList(100, 100, 50), DummyTransport.getClosedConnections());
+    }
+
+    public void testConnectionReleasedAfterCloseIsClosed() throws Exception
+    {
+        SMTPConnectionPool pool =
+            new SMTPConnectionPool(Session.getInstance(this.plugin.initProperties(this.configuration), null),
+                this.configuration, 2);
+        PooledConnection connection = pool.borrow();
+        PooledConnection idleConnection = pool.borrow();
+        pool.release(idleConnection, false);
+
+        pool.close();
+        assertEquals(Arrays.asList(0), DummyTransport.getClosedConnections());
+
+        pool.release(connection, false);
+        assertEquals(Arrays.asList(0, 0), DummyTransport.getClosedConnections());
+    }
+
+    public void testSendMailsFailsWhenMoreThan10MailsAreRejected() throws Exception
+    {
+        List<Mail> mails = new ArrayList<Mail>();
+        for (int i = 0; i < 10; i++) {
+            DummyTransport.reject("invalid" + i + "@acme.org");
+            mails.add(createMail("invalid" + i + "@acme.org"));
+        }
+        mails.add(createMail("peter@acme.org"));
+        assertTrue(this.plugin.sendMails(mails, this.configuration, getContext()));
+
+        DummyTransport.reject("invalid10@acme.org");
+        mails.add(createMail("invalid10@acme.org"));
+        try {
+            this.plugin.sendMails(mails, this.configuration, getContext());
+            fail("Should have thrown an exception");
+        } catch (SendFailedException expected) {
+            // All the mails are still processed
+            assertEquals(Collections.nCopies(2, "peter@acme.org"), DummyTransport.getDelivered());
+        }
+    }
+
+    public void testSendMailFailsWhenTheMailCantBeSent() throws Exception
+    {
+        DummyTransport.failTransiently("peter@acme.org", 1);
+        try {
+            this.plugin.sendMail(createMail("peter@acme.org"), this.configuration, getContext());
+            fail("Should have thrown an exception");
+        } catch (MessagingException expected) {
+            // A single mail is not retried
+            assertEquals(1, DummyTransport.getAttempts("peter@acme.org").size());
+        }
+    }
+}
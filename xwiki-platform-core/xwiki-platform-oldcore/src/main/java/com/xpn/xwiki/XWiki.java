@@ -147,6 +147,8 @@
 import com.xpn.xwiki.internal.event.XObjectPropertyUpdatedEvent;
 import com.xpn.xwiki.internal.event.XObjectUpdatedEvent;
 import com.xpn.xwiki.internal.template.PrivilegedTemplateRenderer;
+import com.xpn.xwiki.internal.template.TemplateCache;
+import com.xpn.xwiki.internal.template.TemplateSource;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.objects.PropertyInterface;
 import com.xpn.xwiki.objects.classes.BaseClass;
@@ -1825,8 +1827,12 @@ public String evaluateTemplate(String template, XWikiContext context) throws IOE
             return "";
         }
 
-        String content = getResourceContent(template);
-        return privilegedTemplateRenderer.evaluateTemplate(content, template);
+        TemplateSource source = getResourceTemplateSource(template);
+        if (!source.exists()) {
+            throw new FileNotFoundException(template);
+        }
+
+        return privilegedTemplateRenderer.evaluateTemplate(source.getContent(), template);
     }
 
     public String parseTemplate(String template, String skin, XWikiContext context)
@@ -1835,33 +1841,18 @@ public String parseTemplate(String template, String skin, XWikiContext context)
             DocumentReference skinReference = this.currentMixedDocumentReferenceResolver.resolve(skin);
             XWikiDocument doc = getDocument(skinReference, context);
             if (!doc.isNew()) {
-                // Try parsing the object property
-                BaseObject object =
-                    doc.getXObject(new DocumentReference(doc.getDocumentReference().getWikiReference().getName(),
-                        SYSTEM_SPACE, "XWikiSkins"));
-                if (object != null) {
-                    String content = object.getStringValue(template);
-                    if (StringUtils.isNotBlank(content)) {
-                        // Let's use this template
-                        // Use "" as namespace to register macros in global namespace. That way it
-                        // can be used in a renderer content not parsed at the same level.
-                        return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"),
-                            context);
-                    }
+                TemplateSource source =
+                    getTemplateCache().getDocumentTemplate(skinReference, doc.getVersion(), template);
+                if (source == null) {
+                    source = getDocumentTemplateSource(doc, template, context);
+                    getTemplateCache().setDocumentTemplate(source, skinReference, doc.getVersion(), template);
                 }
-                // Try parsing a document attachment
-                XWikiAttachment attachment = doc.getAttachment(template);
-                if (attachment != null) {
-                    // It's impossible to know the real attachemtn encoding, but let's assume that they respect the
-                    // standard and use UTF-8 (which is required for the files located on the filesystem)
-                    String content = IOUtils.toString(attachment.getContentInputStream(context), DEFAULT_ENCODING);
-                    if (StringUtils.isNotBlank(content)) {
-                        // Let's use this template
-                        // Use "" as namespace to register macros in global namespace. That way it
-                        // can be used in a renderer content not parsed at the same level.
-                        return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"),
-                            context);
-                    }
+                if (source.exists()) {
+                    // Let's use this template
+                    // Use "" as namespace to register macros in global namespace. That way it
+                    // can be used in a renderer content not parsed at the same level.
+                    return XWikiVelocityRenderer.evaluate(source.getContent(), "",
+                        (VelocityContext) context.get("vcontext"), context);
                 }
             }
         } catch (Exception e) {
@@ -1876,10 +1867,13 @@ public String parseTemplate(String template, String skin, XWikiContext context)
             // This is a safe assumption, as templates found under /templates/ are treated
             // separately, and there is no need to have templates in another place.
             if (path.startsWith("/skins/")) {
-                String content = getResourceContent(path);
-                // Use "" as namespace to register macros in global namespace. That way it can be
-                // used in a renderer content not parsed at the same level.
-                return XWikiVelocityRenderer.evaluate(content, "", (VelocityContext) context.get("vcontext"), context);
+                TemplateSource source = getResourceTemplateSource(path);
+                if (source.exists()) {
+                    // Use "" as namespace to register macros in global namespace. That way it can be
+                    // used in a renderer content not parsed at the same level.
+                    return XWikiVelocityRenderer.evaluate(source.getContent(), "",
+                        (VelocityContext) context.get("vcontext"), context);
+                }
             } else {
                 LOGGER.warn("Illegal access, tried to use file [" + path + "] as a template."
                     + " Possible break-in attempt!");
@@ -1890,6 +1884,100 @@ public String parseTemplate(String template, String skin, XWikiContext context)
         return null;
     }
 
+    /**
+     * Look for the passed template in the skin document, first as a property of the skin object and then as an
+     * attachment.
+     * 
+     * @param doc the skin document
+     * @param template the name of the template
+     * @param context the XWiki context
+     * @return the source of the template, {@link TemplateSource#MISSING} if the skin document does not contain it
+     * @throws XWikiException when failing to read the attachment content
+     * @throws IOException when failing to read the attachment content
+     */
+    private TemplateSource getDocumentTemplateSource(XWikiDocument doc, String template, XWikiContext context)
+        throws XWikiException, IOException
+    {
+        // Try the object property
+        BaseObject object =
+            doc.getXObject(new DocumentReference(doc.getDocumentReference().getWikiReference().getName(), SYSTEM_SPACE,
+                "XWikiSkins"));
+        if (object != null) {
+            String content = object.getStringValue(template);
+            if (StringUtils.isNotBlank(content)) {
+                return new TemplateSource(content);
+            }
+        }
+        // Try a document attachment
+        XWikiAttachment attachment = doc.getAttachment(template);
+        if (attachment != null) {
+            // It's impossible to know the real attachemtn encoding, but let's assume that they respect the
+            // standard and use UTF-8 (which is required for the files located on the filesystem)
+            String content = IOUtils.toString(attachment.getContentInputStream(context), DEFAULT_ENCODING);
+            if (StringUtils.isNotBlank(content)) {
+                return new TemplateSource(content);
+            }
+        }
+
+        return TemplateSource.MISSING;
+    }
+
+    /**
+     * Get the content of a template located in the web application resources, using the template cache when the
+     * resource has not been modified since it was cached.
+     * 
+     * @param path the path of the template resource
+     * @return the source of the template, {@link TemplateSource#MISSING} if the resource does not exist
+     */
+    private TemplateSource getResourceTemplateSource(String path)
+    {
+        long version = getResourceVersion(path);
+
+        TemplateSource source = getTemplateCache().getResourceTemplate(path, version);
+        if (source == null) {
+            try {
+                source = new TemplateSource(getResourceContent(path));
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read template resource [{}]", path, e);
+
+                source = TemplateSource.MISSING;
+            }
+            getTemplateCache().setResourceTemplate(source, path, version);
+        }
+
+        return source;
+    }
+
+    /**
+     * @param path the path of a web application resource
+     * @return the modification date of the resource, 0 when it can't be known (packaged web application), in which
+     *         case the resource can't be modified anyway
+     */
+    private long getResourceVersion(String path)
+    {
+        if (getEngineContext() != null) {
+            try {
+                String realPath = getEngineContext().getRealPath(path);
+                if (realPath != null) {
+                    return new File(realPath).lastModified();
+                }
+            } catch (Exception e) {
+                // Probably a SecurityException
+                LOGGER.debug("Failed to get the modification date of resource [{}]", path, e);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * @return the cache of resolved template sources
+     */
+    private TemplateCache getTemplateCache()
+    {
+        return Utils.getComponent(TemplateCache.class);
+    }
+
     public String renderTemplate(String template, String skin, XWikiContext context)
     {
         try {
@@ -22,12 +22,13 @@
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -51,6 +52,11 @@ public class XWikiAttachment implements Cloneable
 {
     private static final Logger LOGGER = LoggerFactory.getLogger(XWikiAttachment.class);
 
+    /**
+     * Size of the chunks used when decoding base 64 content.
+     */
+    private static final int BASE64_BUFFER_SIZE = 4096;
+
     private XWikiDocument doc;
 
     private int filesize;
@@ -501,9 +507,12 @@ public void fromXML(Element docel) throws XWikiException
 
         Element contentel = docel.element("content");
         if (contentel != null) {
-            String base64content = contentel.getText();
-            byte[] content = Base64.decodeBase64(base64content.getBytes());
-            setContent(content);
+            try {
+                setBase64Content(contentel.getText());
+            } catch (IOException e) {
+                throw new XWikiException(XWikiException.MODULE_XWIKI_DOC, XWikiException.ERROR_DOC_XML_PARSING,
+                    "Error decoding attachment content", e, null);
+            }
         }
         Element archiveel = docel.element("versions");
         if (archiveel != null) {
@@ -517,6 +526,33 @@ public void fromXML(Element docel) throws XWikiException
         setMetaDataDirty(false);
     }
 
+    /**
+     * Decode the passed base 64 content directly into the attachment content storage, without creating intermediate
+     * copies of the whole (potentially huge) content in memory.
+     * 
+     * @param base64content the base 64 encoded content
+     * @throws IOException when failing to write the content
+     */
+    private void setBase64Content(String base64content) throws IOException
+    {
+        OutputStream stream = new Base64OutputStream(getContentOutputStream(), false);
+        try {
+            char[] chars = new char[BASE64_BUFFER_SIZE];
+            byte[] bytes = new byte[BASE64_BUFFER_SIZE];
+            for (int start = 0; start < base64content.length(); start += BASE64_BUFFER_SIZE) {
+                int end = Math.min(start + BASE64_BUFFER_SIZE, base64content.length());
+                base64content.getChars(start, end, chars, 0);
+                // Base 64 only use ASCII characters
+                for (int i = 0; i < end - start; ++i) {
+                    bytes[i] = (byte) chars[i];
+                }
+                stream.write(bytes, 0, end - start);
+            }
+        } finally {
+            stream.close();
+        }
+    }
+
     public XWikiAttachmentContent getAttachment_content()
     {
         return this.attachment_content;
@@ -698,6 +734,23 @@ public void setContent(InputStream is) throws IOException
         this.attachment_content.setContent(is);
     }
 
+    /**
+     * Set the content of the attachment by writing to the returned OutputStream. The content is stored in a temporary
+     * file (see {@link XWikiAttachmentContent#getContentOutputStream()}) and replaces the current content when the
+     * stream is closed.
+     * 
+     * @return an OutputStream into which the caller can write the content of the attachment
+     * @since 5.2M1
+     */
+    public OutputStream getContentOutputStream()
+    {
+        if (this.attachment_content == null) {
+            this.attachment_content = new XWikiAttachmentContent(this);
+        }
+
+        return this.attachment_content.getContentOutputStream();
+    }
+
     public void loadContent(XWikiContext context) throws XWikiException
     {
         if (this.attachment_content == null) {
@@ -4740,6 +4740,10 @@ public List<DocumentReference> getChildrenReferences(int nb, int start, XWikiCon
             query.bindValue("fullName", this.localEntityReferenceSerializer.serialize(getDocumentReference()));
             query.bindValue("name", getDocumentReference().getName());
             query.bindValue("space", getDocumentReference().getLastSpaceReference().getName());
+            if (nb > 0) {
+                query.setLimit(nb);
+            }
+            query.setOffset(start);
             List<Object[]> queryResults = query.execute();
 
             for (Object[] queryResult : queryResults) {
@@ -22,6 +22,7 @@
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.HashSet;
@@ -300,7 +301,21 @@ public void export(XWikiContext context) throws IOException, XWikiException
             "attachment; filename=" + Util.encodeURI(this.name, context) + ".zip");
         context.setFinished(true);
 
-        ZipOutputStream zos = new ZipOutputStream(context.getResponse().getOutputStream());
+        export(context.getResponse().getOutputStream(), context);
+    }
+
+    /**
+     * Apply export and write the ZIP package to the given stream.
+     * 
+     * @param out where to write the ZIP package
+     * @param context the XWiki context used to render pages.
+     * @throws IOException error when creating the package.
+     * @throws XWikiException error when render the pages.
+     * @since 5.2M1
+     */
+    public void export(OutputStream out, XWikiContext context) throws IOException, XWikiException
+    {
+        ZipOutputStream zos = new ZipOutputStream(out);
 
         File dir = this.environment.getTemporaryDirectory();
         File tempdir = new File(dir, RandomStringUtils.randomAlphanumeric(8));
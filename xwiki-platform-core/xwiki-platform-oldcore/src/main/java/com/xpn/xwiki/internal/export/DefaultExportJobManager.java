@@ -0,0 +1,318 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.servlet.http.HttpSession;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.Job;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.JobStatusStorage;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Default {@link ExportJobManager}. The exports run in their own thread pool, sized with the
+ * {@code xwiki.export.jobs} configuration property, and their results and statuses are purged once a day.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultExportJobManager implements ExportJobManager, Initializable, Disposable
+{
+    /**
+     * The name of the HTTP session attribute holding the ids of the exports started by a guest.
+     */
+    static final String SESSION_EXPORTS = "exportJobIds";
+
+    /**
+     * The number of milliseconds after which the result and the status of an export are purged.
+     */
+    static final long MAX_AGE = 24L * 60 * 60 * 1000;
+
+    /**
+     * The number of minutes between two purges.
+     */
+    private static final long PURGE_INTERVAL = 60;
+
+    /**
+     * Used to create the export jobs.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * Used to initialize the execution context of the export threads.
+     */
+    @Inject
+    private ExecutionContextManager executionContextManager;
+
+    /**
+     * Used to clean the execution context of the export threads.
+     */
+    @Inject
+    private Execution execution;
+
+    /**
+     * Used to purge the statuses of the old exports.
+     */
+    @Inject
+    private JobStatusStorage jobStatusStorage;
+
+    /**
+     * Used to get the directory holding the results of the exports.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Used to get the current user and HTTP session.
+     */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * The logger to log.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * The requests of the exports which are waiting or running.
+     */
+    private final ConcurrentMap<List<String>, ExportRequest> requests =
+        new ConcurrentHashMap<List<String>, ExportRequest>();
+
+    /**
+     * The exports which are running.
+     */
+    private final ConcurrentMap<List<String>, Job> jobs = new ConcurrentHashMap<List<String>, Job>();
+
+    /**
+     * The threads running the exports, created on first use since the size of the pool comes from the XWiki
+     * configuration.
+     */
+    private ExecutorService exportExecutor;
+
+    /**
+     * The thread purging the old exports.
+     */
+    private ScheduledExecutorService purgeExecutor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki export purge thread").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+        this.purgeExecutor = Executors.newSingleThreadScheduledExecutor(factory);
+        this.purgeExecutor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    purge();
+                } catch (Exception e) {
+                    logger.warn("Failed to purge the old exports: {}", e.getMessage());
+                }
+            }
+        }, PURGE_INTERVAL, PURGE_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.purgeExecutor.shutdownNow();
+        synchronized (this) {
+            if (this.exportExecutor != null) {
+                this.exportExecutor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @param xcontext the XWiki context
+     * @return the threads running the exports
+     */
+    private synchronized ExecutorService getExportExecutor(XWikiContext xcontext)
+    {
+        if (this.exportExecutor == null) {
+            int threads = (int) Math.max(1, xcontext.getWiki().ParamAsLong("xwiki.export.jobs", 2));
+            BasicThreadFactory factory =
+                new BasicThreadFactory.Builder().namingPattern("XWiki export job thread %d").daemon(true).build();
+            this.exportExecutor = Executors.newFixedThreadPool(threads, factory);
+        }
+
+        return this.exportExecutor;
+    }
+
+    @Override
+    public void startExport(final ExportRequest request) throws Exception
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+
+        if (request.getUserReference() == null) {
+            // Guests all have the same (null) user reference, so their exports are bound to their HTTP session
+            getGuestExports(xcontext, true).add(StringUtils.join(request.getId(), '-'));
+        }
+
+        final Job job = this.componentManager.getInstance(Job.class, ExportJob.JOBTYPE);
+        this.requests.put(request.getId(), request);
+        this.jobs.put(request.getId(), job);
+
+        getExportExecutor(xcontext).execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try {
+                    // Create a clean Execution Context
+                    executionContextManager.initialize(new ExecutionContext());
+
+                    job.start(request);
+                } catch (Exception e) {
+                    logger.error("Failed to run export [{}]", request.getId(), e);
+                } finally {
+                    // The status of the finished job is kept by the job status storage
+                    jobs.remove(request.getId());
+                    requests.remove(request.getId());
+                    execution.removeContext();
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean isAccessible(List<String> id)
+    {
+        ExportRequest request = this.requests.get(id);
+        if (request == null) {
+            JobStatus status = this.jobStatusStorage.getJobStatus(id);
+            if (status != null && status.getRequest() instanceof ExportRequest) {
+                request = (ExportRequest) status.getRequest();
+            }
+        }
+
+        if (request == null) {
+            return false;
+        }
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+        if (request.getUserReference() == null) {
+            Set<String> guestExports = getGuestExports(xcontext, false);
+            return xcontext.getUserReference() == null && guestExports != null
+                && guestExports.contains(StringUtils.join(id, '-'));
+        }
+
+        return ObjectUtils.equals(request.getUserReference(), xcontext.getUserReference());
+    }
+
+    @Override
+    public JobStatus getExportStatus(List<String> id)
+    {
+        if (this.requests.containsKey(id)) {
+            Job job = this.jobs.get(id);
+            return job != null ? job.getStatus() : null;
+        }
+
+        return this.jobStatusStorage.getJobStatus(id);
+    }
+
+    /**
+     * @param xcontext the XWiki context
+     * @param create {@code true} to create the set if the current HTTP session doesn't have one yet
+     * @return the ids of the exports started in the current HTTP session, {@code null} if there is none
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> getGuestExports(XWikiContext xcontext, boolean create)
+    {
+        if (xcontext.getRequest() == null) {
+            return null;
+        }
+
+        HttpSession session = xcontext.getRequest().getSession(create);
+        if (session == null) {
+            return null;
+        }
+
+        synchronized (session) {
+            Set<String> exports = (Set<String>) session.getAttribute(SESSION_EXPORTS);
+            if (exports == null && create) {
+                exports = Collections.synchronizedSet(new HashSet<String>());
+                session.setAttribute(SESSION_EXPORTS, exports);
+            }
+
+            return exports;
+        }
+    }
+
+    /**
+     * Delete the results and the statuses of the exports older than {@link #MAX_AGE}, which have most probably been
+     * downloaded or forgotten.
+     */
+    void purge()
+    {
+        File[] exports = ExportJob.getExportsDirectory(this.environment).listFiles();
+        if (exports != null) {
+            long limit = System.currentTimeMillis() - MAX_AGE;
+            String prefix = ExportJob.JOBTYPE + '-';
+            for (File export : exports) {
+                List<String> id = Arrays.asList(ExportJob.JOBTYPE, StringUtils.removeStart(export.getName(), prefix));
+                if (export.lastModified() < limit && !this.requests.containsKey(id)) {
+                    FileUtils.deleteQuietly(export);
+                    this.jobStatusStorage.remove(id);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,466 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.velocity.VelocityContext;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.annotation.InstantiationStrategy;
+import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.Request;
+import org.xwiki.job.internal.AbstractJob;
+import org.xwiki.job.internal.DefaultJobStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.velocity.VelocityManager;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.export.html.HtmlPackager;
+import com.xpn.xwiki.pdf.api.PdfExport;
+import com.xpn.xwiki.pdf.api.PdfExport.ExportType;
+import com.xpn.xwiki.pdf.impl.PdfExportImpl;
+import com.xpn.xwiki.pdf.impl.PdfURLFactory;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
+import com.xpn.xwiki.web.Utils;
+import com.xpn.xwiki.web.XWikiServletRequest;
+import com.xpn.xwiki.web.XWikiServletRequestStub;
+import com.xpn.xwiki.web.XWikiURLFactory;
+
+/**
+ * Exports documents in the background. PDF, RTF and office exports render the documents in parallel, each one to a
+ * temporary file, and the result is either the single exported file or a ZIP of all of them. HTML exports produce the
+ * usual HTML ZIP package. The result is written to a file in the {@link #getOutputDirectory(Environment, List) output
+ * directory} of the job, from which it can be downloaded once the job is finished.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named(ExportJob.JOBTYPE)
+@InstantiationStrategy(ComponentInstantiationStrategy.PER_LOOKUP)
+public class ExportJob extends AbstractJob<ExportRequest, DefaultJobStatus<ExportRequest>>
+{
+    /**
+     * The id of the job.
+     */
+    public static final String JOBTYPE = "export";
+
+    /**
+     * The name of the temporary directory holding the export results.
+     */
+    private static final String EXPORT_DIRECTORY = "export";
+
+    /**
+     * The format of HTML exports.
+     */
+    private static final String FORMAT_HTML = "html";
+
+    /**
+     * The extension of ZIP files.
+     */
+    private static final String ZIP_EXTENSION = ".zip";
+
+    /**
+     * Used to get the temporary directory.
+     */
+    @Inject
+    private Environment environment;
+
+    /**
+     * Used to get the XWiki context of the job thread.
+     */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * Used to serialize the references of the exported documents.
+     */
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    /**
+     * @param environment used to get the temporary directory
+     * @return the directory holding the output directories of all the export jobs
+     */
+    public static File getExportsDirectory(Environment environment)
+    {
+        return new File(environment.getTemporaryDirectory(), EXPORT_DIRECTORY);
+    }
+
+    /**
+     * @param environment used to get the temporary directory
+     * @param jobId the id of an export job
+     * @return the directory holding the result of the export job
+     */
+    public static File getOutputDirectory(Environment environment, List<String> jobId)
+    {
+        return new File(getExportsDirectory(environment), StringUtils.join(jobId, '-'));
+    }
+
+    /**
+     * @param environment used to get the temporary directory
+     * @param jobId the id of an export job
+     * @return the result of the export job, {@code null} if the job didn't produce any file (yet)
+     */
+    public static File getOutputFile(Environment environment, List<String> jobId)
+    {
+        File[] files = getOutputDirectory(environment, jobId).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isFile()) {
+                    return file;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    @Override
+    public String getType()
+    {
+        return JOBTYPE;
+    }
+
+    @Override
+    protected ExportRequest castRequest(Request request)
+    {
+        ExportRequest exportRequest;
+        if (request instanceof ExportRequest) {
+            exportRequest = (ExportRequest) request;
+        } else {
+            exportRequest = new ExportRequest(request);
+        }
+
+        return exportRequest;
+    }
+
+    @Override
+    protected void runInternal() throws Exception
+    {
+        ExportRequest request = getRequest();
+        List<DocumentReference> documents = request.getDocuments();
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+        xcontext.setUserReference(request.getUserReference());
+        xcontext.setDatabase(documents.get(0).getWikiReference().getName());
+        xcontext.setAction(JOBTYPE);
+
+        // Make the parameters of the request which started the export available to the export templates
+        XWikiServletRequestStub requestStub = new XWikiServletRequestStub();
+        if (xcontext.getRequest() != null) {
+            requestStub.setHost(xcontext.getRequest().getHeader("x-forwarded-host"));
+            requestStub.setScheme(xcontext.getRequest().getScheme());
+        }
+        requestStub.setRequestParameters(request.getParameters());
+        xcontext.setRequest(new XWikiServletRequest(requestStub));
+
+        File outputDirectory = getOutputDirectory(this.environment, request.getId());
+        File workDirectory = new File(outputDirectory, "work");
+        workDirectory.mkdirs();
+
+        String name = StringUtils.defaultIfBlank(request.getName(), JOBTYPE).replaceAll("[^\\w.-]", "_");
+        try {
+            File result;
+            if (FORMAT_HTML.equalsIgnoreCase(request.getFormat())) {
+                result = exportHTML(documents, name, workDirectory, xcontext);
+            } else {
+                result = exportDocuments(documents, name, workDirectory, xcontext);
+            }
+
+            FileUtils.moveFileToDirectory(result, outputDirectory, false);
+        } finally {
+            FileUtils.deleteQuietly(workDirectory);
+        }
+    }
+
+    /**
+     * Export the documents as an HTML ZIP package.
+     * 
+     * @param documents the documents to export
+     * @param name the name of the export
+     * @param workDirectory where to write the package
+     * @param xcontext the XWiki context
+     * @return the HTML package
+     * @throws Exception if the export fails
+     */
+    private File exportHTML(List<DocumentReference> documents, String name, File workDirectory,
+        XWikiContext xcontext) throws Exception
+    {
+        notifyPushLevelProgress(1);
+
+        try {
+            HtmlPackager packager = new HtmlPackager();
+            packager.setName(name);
+            if (getRequest().getDescription() != null) {
+                packager.setDescription(getRequest().getDescription());
+            }
+            for (DocumentReference document : documents) {
+                packager.addPage(this.serializer.serialize(document));
+            }
+
+            File file = new File(workDirectory, name + ZIP_EXTENSION);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                packager.export(out, xcontext);
+            } finally {
+                out.close();
+            }
+
+            notifyStepPropress();
+
+            return file;
+        } finally {
+            notifyPopLevelProgress();
+        }
+    }
+
+    /**
+     * Export the documents in parallel, each one to its own file, and assemble the result.
+     * 
+     * @param documents the documents to export
+     * @param name the name of the export
+     * @param workDirectory where to write the exported files
+     * @param xcontext the XWiki context
+     * @return the exported file if there's only one, a ZIP of the exported files otherwise
+     * @throws Exception if the export fails
+     */
+    private File exportDocuments(List<DocumentReference> documents, String name, File workDirectory,
+        XWikiContext xcontext) throws Exception
+    {
+        int threads =
+            (int) Math.max(1, Math.min(documents.size(), xcontext.getWiki().ParamAsLong("xwiki.export.threads", 2)));
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki export thread %d").daemon(true).build();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, factory);
+
+        notifyPushLevelProgress(documents.size() + 1);
+
+        try {
+            List<DocumentExportRunnable> tasks = new ArrayList<DocumentExportRunnable>();
+            List<Future< ? >> futures = new ArrayList<Future< ? >>();
+            for (int i = 0; i < documents.size(); i++) {
+                DocumentExportRunnable task =
+                    new DocumentExportRunnable(documents.get(i), new File(workDirectory, String.valueOf(i)), xcontext);
+                tasks.add(task);
+                futures.add(executor.submit(task));
+            }
+
+            // Progress is reported from the job thread, in document order
+            List<DocumentExportRunnable> exported = new ArrayList<DocumentExportRunnable>();
+            for (int i = 0; i < tasks.size(); i++) {
+                futures.get(i).get();
+                DocumentExportRunnable task = tasks.get(i);
+                if (task.error != null) {
+                    this.logger.error("Failed to export document [{}]", task.documentReference, task.error);
+                } else if (task.outputFile != null) {
+                    exported.add(task);
+                }
+                notifyStepPropress();
+            }
+
+            if (exported.isEmpty()) {
+                throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_UNKNOWN,
+                    "None of the requested documents could be exported");
+            }
+
+            File result;
+            if (exported.size() == 1) {
+                result = new File(workDirectory, name + '.' + exported.get(0).exportType.getExtension());
+                FileUtils.moveFile(exported.get(0).outputFile, result);
+            } else {
+                result = new File(workDirectory, name + ZIP_EXTENSION);
+                zip(exported, result);
+            }
+
+            notifyStepPropress();
+
+            return result;
+        } finally {
+            executor.shutdownNow();
+            notifyPopLevelProgress();
+        }
+    }
+
+    /**
+     * Assemble the exported documents in a ZIP file.
+     * 
+     * @param exported the exported documents
+     * @param zipFile the ZIP file to create
+     * @throws IOException if the ZIP file cannot be written
+     */
+    private void zip(List<DocumentExportRunnable> exported, File zipFile) throws IOException
+    {
+        ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(zipFile)));
+        try {
+            for (DocumentExportRunnable task : exported) {
+                String entryName =
+                    this.serializer.serialize(task.documentReference).replaceAll("[^\\w.-]", "_") + '.'
+                        + task.exportType.getExtension();
+                zos.putNextEntry(new ZipEntry(entryName));
+                InputStream in = new FileInputStream(task.outputFile);
+                try {
+                    IOUtils.copy(in, zos);
+                } finally {
+                    in.close();
+                }
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+    }
+
+    /**
+     * Exports a document to a file, in its own thread and XWiki context.
+     */
+    private class DocumentExportRunnable extends AbstractXWikiRunnable
+    {
+        /** The document to export. */
+        private final DocumentReference documentReference;
+
+        /** The work directory of the document export. */
+        private final File workDirectory;
+
+        /** The XWiki context used by the export thread. */
+        private final XWikiContext xcontext;
+
+        /** The type of the exported file, set once the export is done. */
+        private ExportType exportType;
+
+        /** The exported file, set once the export is done. */
+        private File outputFile;
+
+        /** The error which made the export fail, if any. */
+        private Exception error;
+
+        /**
+         * @param documentReference the document to export
+         * @param workDirectory the work directory of the document export
+         * @param context the job XWiki context, cloned for the export thread
+         */
+        DocumentExportRunnable(DocumentReference documentReference, File workDirectory, XWikiContext context)
+        {
+            this.documentReference = documentReference;
+            this.workDirectory = workDirectory;
+            this.xcontext = context.clone();
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                export();
+            } catch (Exception e) {
+                this.error = e;
+            } finally {
+                this.xcontext.getWiki().getStore().cleanUp(this.xcontext);
+            }
+        }
+
+        /**
+         * Export the document, the same way the export action does.
+         * 
+         * @throws Exception if the export fails
+         */
+        private void export() throws Exception
+        {
+            String documentName = serializer.serialize(this.documentReference);
+            if (!this.xcontext.getWiki().getRightService()
+                .hasAccessLevel("view", this.xcontext.getUser(), documentName, this.xcontext)) {
+                logger.warn("Skipping document [{}] which the user is not allowed to view", documentName);
+                return;
+            }
+
+            XWikiDocument document = this.xcontext.getWiki().getDocument(this.documentReference, this.xcontext);
+            if (document.isNew()) {
+                logger.warn("Skipping document [{}] which does not exist", documentName);
+                return;
+            }
+
+            this.xcontext.setDatabase(this.documentReference.getWikiReference().getName());
+            this.xcontext.setDoc(document);
+            XWikiDocument translatedDocument = document.getTranslatedDocument(this.xcontext);
+            this.xcontext.put("tdoc", translatedDocument);
+            VelocityContext vcontext = Utils.getComponent(VelocityManager.class).getVelocityContext();
+            vcontext.put("doc", document.newDocument(this.xcontext));
+            vcontext.put("cdoc", vcontext.get("doc"));
+            vcontext.put("tdoc", translatedDocument.newDocument(this.xcontext));
+
+            // We currently use the PDF export infrastructure but we have to redesign the export code.
+            String format = getRequest().getFormat();
+            XWikiURLFactory urlFactory = new OfficeExporterURLFactory();
+            OfficeExporter officeExporter = new OfficeExporter();
+            PdfExport exporter = officeExporter;
+            ExportType type = officeExporter.getExportType(format);
+            if ("pdf".equalsIgnoreCase(format) || type == null) {
+                urlFactory = new PdfURLFactory();
+                exporter = new PdfExportImpl();
+                type = "rtf".equalsIgnoreCase(format) ? ExportType.RTF : ExportType.PDF;
+            }
+            urlFactory.init(this.xcontext);
+            this.xcontext.setURLFactory(urlFactory);
+
+            this.workDirectory.mkdirs();
+            File file = new File(this.workDirectory, "export." + type.getExtension());
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                exporter.export(document, out, type, this.xcontext);
+            } finally {
+                out.close();
+            }
+
+            this.exportType = type;
+            this.outputFile = file;
+        }
+    }
+}
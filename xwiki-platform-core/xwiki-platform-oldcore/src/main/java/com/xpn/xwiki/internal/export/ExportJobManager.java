@@ -0,0 +1,58 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import java.util.List;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.job.event.status.JobStatus;
+
+/**
+ * Runs the background exports, independently of the job manager so that long exports don't delay the other jobs, and
+ * restricts the access to their status and result to the user who started them.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface ExportJobManager
+{
+    /**
+     * Start an export in the background. The export is bound to the user of the request, or to the current HTTP
+     * session when the export is started by a guest.
+     * 
+     * @param request the export request
+     * @throws Exception if the export job can't be created
+     */
+    void startExport(ExportRequest request) throws Exception;
+
+    /**
+     * @param id the id of an export job
+     * @return {@code true} if the export exists and has been started by the current user (or in the current HTTP
+     *         session for guests)
+     */
+    boolean isAccessible(List<String> id);
+
+    /**
+     * @param id the id of an export job
+     * @return the status of the export job, {@code null} if the export is unknown or hasn't started yet
+     */
+    JobStatus getExportStatus(List<String> id);
+}
@@ -0,0 +1,184 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import java.util.List;
+import java.util.Map;
+
+import org.xwiki.job.AbstractRequest;
+import org.xwiki.job.Request;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * The request used to configure {@link ExportJob}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ExportRequest extends AbstractRequest
+{
+    /**
+     * Serialization identifier.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @see #getDocuments()
+     */
+    private static final String PROPERTY_DOCUMENTS = "documents";
+
+    /**
+     * @see #getFormat()
+     */
+    private static final String PROPERTY_FORMAT = "format";
+
+    /**
+     * @see #getName()
+     */
+    private static final String PROPERTY_NAME = "name";
+
+    /**
+     * @see #getDescription()
+     */
+    private static final String PROPERTY_DESCRIPTION = "description";
+
+    /**
+     * @see #getUserReference()
+     */
+    private static final String PROPERTY_USER = "user";
+
+    /**
+     * @see #getParameters()
+     */
+    private static final String PROPERTY_PARAMETERS = "parameters";
+
+    /**
+     * The default constructor.
+     */
+    public ExportRequest()
+    {
+    }
+
+    /**
+     * @param request the request to copy
+     */
+    public ExportRequest(Request request)
+    {
+        super(request);
+    }
+
+    /**
+     * @return the documents to export
+     */
+    public List<DocumentReference> getDocuments()
+    {
+        return getProperty(PROPERTY_DOCUMENTS);
+    }
+
+    /**
+     * @param documents the documents to export
+     */
+    public void setDocuments(List<DocumentReference> documents)
+    {
+        setProperty(PROPERTY_DOCUMENTS, documents);
+    }
+
+    /**
+     * @return the export format: {@code html}, {@code pdf}, {@code rtf} or any format supported by the office server
+     */
+    public String getFormat()
+    {
+        return getProperty(PROPERTY_FORMAT);
+    }
+
+    /**
+     * @param format the export format: {@code html}, {@code pdf}, {@code rtf} or any format supported by the office
+     *            server
+     */
+    public void setFormat(String format)
+    {
+        setProperty(PROPERTY_FORMAT, format);
+    }
+
+    /**
+     * @return the name of the export, used as the name of the downloaded file
+     */
+    public String getName()
+    {
+        return getProperty(PROPERTY_NAME);
+    }
+
+    /**
+     * @param name the name of the export, used as the name of the downloaded file
+     */
+    public void setName(String name)
+    {
+        setProperty(PROPERTY_NAME, name);
+    }
+
+    /**
+     * @return the description of the HTML export package
+     */
+    public String getDescription()
+    {
+        return getProperty(PROPERTY_DESCRIPTION);
+    }
+
+    /**
+     * @param description the description of the HTML export package
+     */
+    public void setDescription(String description)
+    {
+        setProperty(PROPERTY_DESCRIPTION, description);
+    }
+
+    /**
+     * @return the user performing the export, the only one allowed to download the result
+     */
+    public DocumentReference getUserReference()
+    {
+        return getProperty(PROPERTY_USER);
+    }
+
+    /**
+     * @param userReference the user performing the export, the only one allowed to download the result
+     */
+    public void setUserReference(DocumentReference userReference)
+    {
+        setProperty(PROPERTY_USER, userReference);
+    }
+
+    /**
+     * @return the parameters of the HTTP request which started the export (e.g. the PDF template to use), made
+     *         available to the export templates
+     */
+    public Map<String, String[]> getParameters()
+    {
+        return getProperty(PROPERTY_PARAMETERS);
+    }
+
+    /**
+     * @param parameters the parameters of the HTTP request which started the export
+     */
+    public void setParameters(Map<String, String[]> parameters)
+    {
+        setProperty(PROPERTY_PARAMETERS, parameters);
+    }
+}
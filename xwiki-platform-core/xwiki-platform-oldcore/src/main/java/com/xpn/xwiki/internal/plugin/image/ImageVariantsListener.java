@@ -0,0 +1,189 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.concurrent.ExecutionContextRunnable;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AbstractAttachmentEvent;
+import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
+import com.xpn.xwiki.internal.event.AttachmentUpdatedEvent;
+import com.xpn.xwiki.plugin.image.ImagePlugin;
+
+/**
+ * Generates the variants of the images in the background as soon as they are attached, so that the first page views
+ * don't have to wait for the images to be scaled.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("imageVariants")
+@Singleton
+public class ImageVariantsListener implements EventListener, Initializable, Disposable
+{
+    /**
+     * The events to listen to.
+     */
+    private static final List<Event> EVENTS = Arrays.<Event> asList(new AttachmentAddedEvent(),
+        new AttachmentUpdatedEvent());
+
+    /**
+     * The maximum number of images waiting for their variants to be generated. The images attached while the queue is
+     * full get their variants generated when they are first requested.
+     */
+    private static final int MAX_PENDING_IMAGES = 100;
+
+    /**
+     * Used to log errors.
+     */
+    @Inject
+    private Logger logger;
+
+    /**
+     * Used to get the image plugin and load the attachments.
+     */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * Used to initialize the execution context of the background thread.
+     */
+    @Inject
+    private ComponentManager componentManager;
+
+    /**
+     * Thread in which the variants are generated.
+     */
+    private ExecutorService variantsExecutor;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki image variants thread").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+        this.variantsExecutor =
+            new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(
+                MAX_PENDING_IMAGES), factory);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.variantsExecutor.shutdownNow();
+    }
+
+    @Override
+    public String getName()
+    {
+        return "imageVariants";
+    }
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        if (xcontext == null || xcontext.getWiki() == null
+            || !(xcontext.getWiki().getPlugin("image", xcontext) instanceof ImagePlugin)) {
+            return;
+        }
+
+        final DocumentReference documentReference = ((XWikiDocument) source).getDocumentReference();
+        final String fileName = ((AbstractAttachmentEvent) event).getName();
+
+        Runnable generation = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                generateVariants(documentReference, fileName);
+            }
+        };
+
+        try {
+            this.variantsExecutor.execute(new ExecutionContextRunnable(generation, this.componentManager));
+        } catch (RejectedExecutionException e) {
+            // Don't keep an unbounded number of images in memory when many images are attached at once (e.g. import)
+            this.logger.warn("Too many images waiting for their variants to be generated. The variants of image [{}]"
+                + " attached to [{}] will be generated when requested.", fileName, documentReference);
+        }
+    }
+
+    /**
+     * Generates the variants of an attached image.
+     * 
+     * @param documentReference the document holding the image
+     * @param fileName the name of the image
+     */
+    private void generateVariants(DocumentReference documentReference, String fileName)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        String currentWiki = xcontext.getDatabase();
+        try {
+            xcontext.setDatabase(documentReference.getWikiReference().getName());
+
+            XWikiDocument document = xcontext.getWiki().getDocument(documentReference, xcontext);
+            // The attachment might have been deleted in the meantime
+            XWikiAttachment attachment = document.getAttachment(fileName);
+            if (attachment != null) {
+                ((ImagePlugin) xcontext.getWiki().getPlugin("image", xcontext)).generateVariants(attachment,
+                    xcontext);
+            }
+        } catch (Exception e) {
+            this.logger.warn("Failed to generate the variants of image [{}] attached to [{}]: {}", fileName,
+                documentReference, e.getMessage());
+        } finally {
+            xcontext.setDatabase(currentWiki);
+        }
+    }
+}
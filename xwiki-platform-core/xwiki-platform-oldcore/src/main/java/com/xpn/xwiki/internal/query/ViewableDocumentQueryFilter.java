@@ -0,0 +1,256 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.query;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.query.internal.AbstractWhereQueryFilter;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Query filter returning only the documents the current user is allowed to view. The view right is evaluated once
+ * per space, and once per document having its own rights, and turned into a where clause so that the paginated
+ * results are complete.
+ * <p>
+ * The clause is computed for each query, so that it reflects the rights modified since the previous query. When the
+ * clause would list too many spaces or documents, the documents allowed by their own rights in a denied space are left
+ * out, and if that's not enough no document is returned.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("viewable")
+@Singleton
+public class ViewableDocumentQueryFilter extends AbstractWhereQueryFilter
+{
+    /**
+     * Maximum number of values in a single "in" expression, some databases don't support more.
+     */
+    private static final int MAX_IN_VALUES = 500;
+
+    /**
+     * Maximum number of values in the whole clause, to keep the statement size reasonable.
+     */
+    static final int MAX_CLAUSE_VALUES = 5000;
+
+    /**
+     * Clause matching no document.
+     */
+    private static final String NO_DOCUMENT = "1=0";
+
+    /**
+     * Query listing the spaces of the wiki.
+     */
+    private static final String SPACES_QUERY = "select distinct doc.space from XWikiDocument as doc";
+
+    /**
+     * Query listing the documents having their own rights.
+     */
+    private static final String DOCUMENTS_WITH_RIGHTS_QUERY =
+        "select distinct obj.name from BaseObject as obj where obj.className = 'XWiki.XWikiRights'";
+
+    /**
+     * Used to evaluate the view right.
+     */
+    @Inject
+    private AuthorizationManager authorizationManager;
+
+    /**
+     * Used to list the spaces and the documents with rights. Lazily loaded since the query manager uses the filters.
+     */
+    @Inject
+    private Provider<QueryManager> queryManagerProvider;
+
+    /**
+     * Used to get the current user and wiki.
+     */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * Used to log errors.
+     */
+    @Inject
+    private Logger logger;
+
+    @Override
+    public String filterStatement(String statement, String language)
+    {
+        if (!Query.HQL.equals(language) || !isFilterable(statement.trim().toLowerCase())) {
+            return statement;
+        }
+
+        XWikiContext xcontext = this.xcontextProvider.get();
+        String wiki = xcontext.getDatabase();
+        DocumentReference user = xcontext.getUserReference();
+
+        String clause;
+        try {
+            clause = getViewableClause(user, new WikiReference(wiki));
+        } catch (QueryException e) {
+            // Don't return anything rather than documents which may not be viewable
+            this.logger.error("Failed to compute the documents viewable by [{}] in wiki [{}]", user, wiki, e);
+            clause = NO_DOCUMENT;
+        }
+
+        return clause.isEmpty() ? statement : insertWhereClause(clause, statement, language);
+    }
+
+    @Override
+    public List filterResults(List results)
+    {
+        return results;
+    }
+
+    /**
+     * @param user the user, null for guest
+     * @param wiki the wiki
+     * @return the where clause matching the documents the user can view, empty if the user can view everything
+     * @throws QueryException if the spaces or the documents with rights can't be listed
+     */
+    private String getViewableClause(DocumentReference user, WikiReference wiki) throws QueryException
+    {
+        if (this.authorizationManager.hasAccess(Right.ADMIN, user, wiki)) {
+            return StringUtils.EMPTY;
+        }
+
+        List<String> allowedSpaces = new ArrayList<String>();
+        List<String> deniedSpaces = new ArrayList<String>();
+        List<String> spaces = this.queryManagerProvider.get().createQuery(SPACES_QUERY, Query.HQL)
+            .setWiki(wiki.getName()).execute();
+        for (String space : spaces) {
+            if (this.authorizationManager.hasAccess(Right.VIEW, user, new SpaceReference(space, wiki))) {
+                allowedSpaces.add(space);
+            } else {
+                deniedSpaces.add(space);
+            }
+        }
+
+        // The rights of a document override the ones of its space
+        List<String> allowedDocuments = new ArrayList<String>();
+        List<String> deniedDocuments = new ArrayList<String>();
+        List<String> documents = this.queryManagerProvider.get().createQuery(DOCUMENTS_WITH_RIGHTS_QUERY, Query.HQL)
+            .setWiki(wiki.getName()).execute();
+        for (String document : documents) {
+            String space = StringUtils.substringBefore(document, ".");
+            String name = StringUtils.substringAfter(document, ".");
+            boolean allowed =
+                this.authorizationManager.hasAccess(Right.VIEW, user, new DocumentReference(wiki.getName(), space,
+                    name));
+            if (allowed && deniedSpaces.contains(space)) {
+                allowedDocuments.add(document);
+            } else if (!allowed && allowedSpaces.contains(space)) {
+                deniedDocuments.add(document);
+            }
+        }
+
+        if (deniedSpaces.isEmpty() && deniedDocuments.isEmpty()) {
+            return StringUtils.EMPTY;
+        }
+
+        if (allowedSpaces.isEmpty() && allowedDocuments.isEmpty()) {
+            return NO_DOCUMENT;
+        }
+
+        // Keep the clause bounded. Leaving out allowed documents only hides documents, never the contrary.
+        int size = Math.min(allowedSpaces.size(), deniedSpaces.size()) + deniedDocuments.size();
+        if (size > MAX_CLAUSE_VALUES) {
+            this.logger.warn("Too many spaces and documents with rights to filter the documents viewable by [{}] in "
+                + "wiki [{}], no document is returned", user, wiki);
+            return NO_DOCUMENT;
+        } else if (size + allowedDocuments.size() > MAX_CLAUSE_VALUES) {
+            this.logger.warn("Too many documents with rights to filter the documents viewable by [{}] in wiki [{}], "
+                + "the documents of the denied spaces are not returned", user, wiki);
+            allowedDocuments.clear();
+        }
+
+        // Use the shortest list of spaces
+        String spaceClause;
+        if (allowedSpaces.isEmpty()) {
+            spaceClause = NO_DOCUMENT;
+        } else if (deniedSpaces.size() < allowedSpaces.size()) {
+            spaceClause = "not " + getInClause("doc.space", deniedSpaces);
+        } else {
+            spaceClause = getInClause("doc.space", allowedSpaces);
+        }
+
+        StringBuilder clause = new StringBuilder("((");
+        clause.append(spaceClause);
+        if (!deniedDocuments.isEmpty()) {
+            clause.append(" and not ").append(getInClause("doc.fullName", deniedDocuments));
+        }
+        clause.append(')');
+        if (!allowedDocuments.isEmpty()) {
+            clause.append(" or ").append(getInClause("doc.fullName", allowedDocuments));
+        }
+        clause.append(')');
+
+        return clause.toString();
+    }
+
+    /**
+     * @param field the field to compare
+     * @param values the values to look for
+     * @return a clause matching the given values, split in several "in" expressions if needed
+     */
+    private String getInClause(String field, Collection<String> values)
+    {
+        StringBuilder clause = new StringBuilder("(");
+
+        Iterator<String> it = values.iterator();
+        for (int i = 0; it.hasNext(); i++) {
+            if (i % MAX_IN_VALUES == 0) {
+                if (i > 0) {
+                    clause.append(") or ");
+                }
+                clause.append(field).append(" in (");
+            } else {
+                clause.append(", ");
+            }
+            // Escape the quotes so that names can't be used to inject HQL
+            clause.append('\'').append(StringUtils.replace(it.next(), "'", "''")).append('\'');
+        }
+
+        clause.append("))");
+
+        return clause.toString();
+    }
+}
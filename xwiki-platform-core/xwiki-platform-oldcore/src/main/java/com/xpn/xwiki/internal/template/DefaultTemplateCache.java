@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+
+import com.xpn.xwiki.internal.cache.DocumentCache;
+
+/**
+ * Default implementation of {@link TemplateCache}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultTemplateCache implements TemplateCache, Initializable
+{
+    /**
+     * Identifier of the template cache.
+     */
+    private static final String NAME = "core.templatecache";
+
+    /**
+     * Name of the property indicating if the cache is enabled or not.
+     */
+    private static final String PROPNAME_ENABLED = NAME + ".enabled";
+
+    /**
+     * Name of the property indicating the size of the cache.
+     */
+    private static final String PROPNAME_SIZE = NAME + ".size";
+
+    /**
+     * The default size of the cache.
+     */
+    private static final int PROPVALUE_SIZE = 1000;
+
+    /**
+     * xwiki.properties file configurations.
+     */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /**
+     * Used to create the resource templates cache.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
+    /**
+     * The cache of templates located in skin documents, automatically cleaned when the skin document is modified.
+     */
+    @Inject
+    private DocumentCache<TemplateSource> documentCache;
+
+    /**
+     * The cache of templates located in the skin and templates directories.
+     */
+    private Cache<TemplateSource> resourceCache;
+
+    /**
+     * Indicate if the cache is enabled.
+     */
+    private boolean enabled;
+
+    /**
+     * @see #getHitCount()
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * @see #getMissCount()
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.enabled = this.configuration.getProperty(PROPNAME_ENABLED, true);
+
+        if (this.enabled) {
+            int size = this.configuration.getProperty(PROPNAME_SIZE, PROPVALUE_SIZE);
+
+            try {
+                this.documentCache.create(createConfiguration(NAME + ".documents", size));
+                this.resourceCache = this.cacheManager.createNewCache(createConfiguration(NAME + ".resources", size));
+            } catch (CacheException e) {
+                throw new InitializationException("Failed to initialize core template cache", e);
+            }
+        }
+    }
+
+    /**
+     * @param id the identifier of the cache
+     * @param size the maximum number of entries in the cache
+     * @return the cache configuration
+     */
+    private CacheConfiguration createConfiguration(String id, int size)
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId(id);
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(size);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        return cacheConfiguration;
+    }
+
+    @Override
+    public TemplateSource getDocumentTemplate(DocumentReference skinReference, String version, String template)
+    {
+        if (this.enabled) {
+            return count(this.documentCache.get(skinReference, version, template));
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setDocumentTemplate(TemplateSource source, DocumentReference skinReference, String version,
+        String template)
+    {
+        if (this.enabled) {
+            this.documentCache.set(source, skinReference, version, template);
+        }
+    }
+
+    @Override
+    public TemplateSource getResourceTemplate(String path, long version)
+    {
+        if (this.enabled) {
+            return count(this.resourceCache.get(getResourceKey(path, version)));
+        }
+
+        return null;
+    }
+
+    @Override
+    public void setResourceTemplate(TemplateSource source, String path, long version)
+    {
+        if (this.enabled) {
+            this.resourceCache.set(getResourceKey(path, version), source);
+        }
+    }
+
+    /**
+     * @param path the path of the template resource
+     * @param version the modification date of the resource
+     * @return the cache key
+     */
+    private String getResourceKey(String path, long version)
+    {
+        return path + ':' + version;
+    }
+
+    /**
+     * Update the hit/miss counters.
+     * 
+     * @param source the source found in the cache
+     * @return the passed source
+     */
+    private TemplateSource count(TemplateSource source)
+    {
+        if (source != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+
+        return source;
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return this.hits.get();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return this.misses.get();
+    }
+
+    @Override
+    public void clear()
+    {
+        if (this.enabled) {
+            this.documentCache.removeAll();
+            this.resourceCache.removeAll();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Cache the resolved sources of the templates located in skin documents and in the skin and templates directories so
+ * that including a template does not require looking it up again in every possible location.
+ * <p>
+ * Each entry is associated to the version of its source (document version or file modification date) so that a
+ * modified template is never served from the cache. Entries related to a skin document are also removed as soon as
+ * the document is modified or deleted.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface TemplateCache
+{
+    /**
+     * @param skinReference the reference of the skin document
+     * @param version the current version of the skin document
+     * @param template the name of the template
+     * @return the cached source, {@code null} if nothing has been cached yet
+     */
+    TemplateSource getDocumentTemplate(DocumentReference skinReference, String version, String template);
+
+    /**
+     * @param source the resolved source of the template (use {@link TemplateSource#MISSING} when not found)
+     * @param skinReference the reference of the skin document
+     * @param version the current version of the skin document
+     * @param template the name of the template
+     */
+    void setDocumentTemplate(TemplateSource source, DocumentReference skinReference, String version, String template);
+
+    /**
+     * @param path the path of the template resource (for example {@code /skins/colibri/view.vm})
+     * @param version the modification date of the resource
+     * @return the cached source, {@code null} if nothing has been cached yet
+     */
+    TemplateSource getResourceTemplate(String path, long version);
+
+    /**
+     * @param source the resolved source of the template (use {@link TemplateSource#MISSING} when not found)
+     * @param path the path of the template resource (for example {@code /skins/colibri/view.vm})
+     * @param version the modification date of the resource
+     */
+    void setResourceTemplate(TemplateSource source, String path, long version);
+
+    /**
+     * @return the number of template lookups answered by the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of template lookups which were not found in the cache
+     */
+    long getMissCount();
+
+    /**
+     * Remove all the entries from the cache.
+     */
+    void clear();
+}
@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+/**
+ * The resolved source of a template, as stored in the {@link TemplateCache}. A source without content indicates that
+ * the template could not be found in the location it was looked for, which is worth remembering too since templates
+ * are searched in several locations (skin document, skin directory, base skins) on each inclusion.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public final class TemplateSource
+{
+    /**
+     * The source used to indicate that a template does not exist in a location.
+     */
+    public static final TemplateSource MISSING = new TemplateSource(null);
+
+    /**
+     * @see #getContent()
+     */
+    private final String content;
+
+    /**
+     * @param content the content of the template, {@code null} if the template does not exist
+     */
+    public TemplateSource(String content)
+    {
+        this.content = content;
+    }
+
+    /**
+     * @return the content of the template, {@code null} if the template does not exist
+     */
+    public String getContent()
+    {
+        return this.content;
+    }
+
+    /**
+     * @return true if the template has been found
+     */
+    public boolean exists()
+    {
+        return this.content != null;
+    }
+}
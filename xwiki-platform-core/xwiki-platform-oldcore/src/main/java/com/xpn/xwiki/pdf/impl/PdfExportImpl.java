@@ -25,6 +25,7 @@
 import info.informatica.doc.dom4j.XHTMLDocumentFactory;
 import info.informatica.doc.xml.dtd.DefaultEntityResolver;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,22 +35,34 @@
 import java.io.StringWriter;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
+import javax.xml.transform.Templates;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.sax.SAXResult;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 
 import org.apache.avalon.framework.configuration.DefaultConfigurationBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.RandomStringUtils;
@@ -75,12 +88,18 @@
 import org.w3c.dom.ls.LSSerializer;
 import org.w3c.tidy.Tidy;
 import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.context.Execution;
 import org.xwiki.environment.Environment;
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.job.event.status.StepProgressEvent;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 import org.xwiki.velocity.VelocityEngine;
 import org.xwiki.velocity.VelocityManager;
 import org.xwiki.velocity.XWikiVelocityException;
@@ -116,6 +135,30 @@ public class PdfExportImpl implements PdfExport
     /** Tidy configuration. */
     private static final Properties TIDY_CONFIGURATION;
 
+    /** Maximum number of compiled XSLT templates kept in memory. */
+    private static final int TEMPLATES_CACHE_SIZE = 20;
+
+    /**
+     * Compiled XSLT templates, by hash of the XSLT source, so that each version of the skin or PDFTemplate XSLT is only
+     * compiled once. {@link Templates} are thread safe, unlike the {@link Transformer}s created from them.
+     */
+    @SuppressWarnings("serial")
+    private static final Map<String, Templates> TEMPLATES_CACHE = Collections
+        .synchronizedMap(new LinkedHashMap<String, Templates>(TEMPLATES_CACHE_SIZE, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest)
+            {
+                return size() > TEMPLATES_CACHE_SIZE;
+            }
+        });
+
+    /** Limits the number of conversions running at the same time, the other ones wait for a slot in FIFO order. */
+    private static Semaphore conversionSlots;
+
+    /** The number of slots {@link #conversionSlots} was created with, to detect configuration changes. */
+    private static int conversionSlotsSize;
+
     /** Document name resolver. */
     private static DocumentReferenceResolver<String> referenceResolver = Utils.getComponent(
         DocumentReferenceResolver.TYPE_STRING, "currentmixed");
@@ -133,6 +176,9 @@ public class PdfExportImpl implements PdfExport
     /** DOM parser factory. */
     private static DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
 
+    /** SAX parser factory, used to stream XML documents through the XSLT transformations. */
+    private static SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+
     /** DOM Serializer factory. */
     private static DOMImplementationLS lsImpl;
 
@@ -142,9 +188,6 @@ public class PdfExportImpl implements PdfExport
     /** The Apache FOP instance used for XSL-FO processing. */
     private static FopFactory fopFactory;
 
-    /** The JTidy instance used for cleaning up HTML documents. */
-    private Tidy tidy;
-
     /**
      * Used to get the temporary directory.
      */
@@ -157,6 +200,8 @@ public class PdfExportImpl implements PdfExport
         // ----------------------------------------------------------------------
         dbFactory.setNamespaceAware(true);
         dbFactory.setValidating(false);
+        saxParserFactory.setNamespaceAware(true);
+        saxParserFactory.setValidating(false);
 
         try {
             lsImpl = (DOMImplementationLS) DOMImplementationRegistry.newInstance().getDOMImplementation("LS 3.0");
@@ -235,8 +280,6 @@ public class PdfExportImpl implements PdfExport
     /** Default constructor. */
     public PdfExportImpl()
     {
-        this.tidy = new Tidy();
-        this.tidy.setConfigurationFromProps(TIDY_CONFIGURATION);
     }
 
     @Override
@@ -256,8 +299,6 @@ public void export(XWikiDocument doc, OutputStream out, ExportType type, XWikiCo
 
         File dir = this.environment.getTemporaryDirectory();
         File tempdir = new File(dir, RandomStringUtils.randomAlphanumeric(8));
-        this.tidy.setOutputEncoding(context.getWiki().getEncoding());
-        this.tidy.setInputEncoding(context.getWiki().getEncoding());
         try {
             tempdir.mkdirs();
             context.put("pdfexportdir", tempdir);
@@ -285,25 +326,106 @@ public void export(XWikiDocument doc, OutputStream out, ExportType type, XWikiCo
     @Override
     public void exportHtml(String html, OutputStream out, ExportType type, XWikiContext context) throws XWikiException
     {
-        exportXHTML(applyCSS(convertToStrictXHtml(html), context), out, type, context);
+        Semaphore slots = getConversionSlots(context);
+        acquireConversionSlot(slots, type, context);
+        try {
+            notifyProgress(new PushLevelProgressEvent(3));
+            String xhtml = convertToStrictXHtml(html, context);
+            notifyProgress(new StepProgressEvent());
+            xhtml = applyCSS(xhtml, context);
+            notifyProgress(new StepProgressEvent());
+            exportXHTML(xhtml, out, type, context);
+            notifyProgress(new StepProgressEvent());
+        } finally {
+            notifyProgress(new PopLevelProgressEvent());
+            slots.release();
+        }
+    }
+
+    /**
+     * The semaphore is created again when the {@code xwiki.export.pdf.maxConcurrentConversions} configuration property
+     * changes. The conversions running at that time release their slot to the semaphore they acquired it from.
+     * 
+     * @param context the current request context
+     * @return the semaphore limiting the number of conversions running at the same time
+     */
+    static synchronized Semaphore getConversionSlots(XWikiContext context)
+    {
+        long slots = Runtime.getRuntime().availableProcessors();
+        if (context != null && context.getWiki() != null) {
+            slots = context.getWiki().ParamAsLong("xwiki.export.pdf.maxConcurrentConversions", slots);
+        }
+        int size = (int) Math.max(1, slots);
+
+        if (conversionSlots == null || size != conversionSlotsSize) {
+            conversionSlots = new Semaphore(size, true);
+            conversionSlotsSize = size;
+        }
+
+        return conversionSlots;
+    }
+
+    /**
+     * Wait for a free conversion slot, at most {@code xwiki.export.pdf.queueTimeout} seconds.
+     * 
+     * @param slots the conversion slots
+     * @param type the type of the export
+     * @param context the current request context
+     * @throws XWikiException if no slot was freed in time
+     */
+    private void acquireConversionSlot(Semaphore slots, ExportType type, XWikiContext context) throws XWikiException
+    {
+        long timeout = 300;
+        if (context != null && context.getWiki() != null) {
+            timeout = context.getWiki().ParamAsLong("xwiki.export.pdf.queueTimeout", timeout);
+        }
+
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_UNKNOWN,
+                "Too many concurrent exports, failed to start the " + type.getExtension() + " export in time");
+        }
+    }
+
+    /**
+     * Report the progress of the export, to the job running it if any.
+     * 
+     * @param event the progress event
+     */
+    private void notifyProgress(Event event)
+    {
+        Utils.getComponent(ObservationManager.class).notify(event, this);
     }
 
     /**
      * Cleans up an HTML document, turning it into valid XHTML.
      * 
      * @param input the source HTML to process
+     * @param context the current request context
      * @return the cleaned up source
      */
-    private String convertToStrictXHtml(String input)
+    private String convertToStrictXHtml(String input, XWikiContext context)
     {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Cleaning HTML: " + input);
         }
 
         try {
-            // First step, Tidy the document
+            // First step, Tidy the document. Tidy is not thread safe so each conversion gets its own instance.
+            Tidy tidy = new Tidy();
+            tidy.setConfigurationFromProps(TIDY_CONFIGURATION);
+            if (context != null && context.getWiki() != null) {
+                tidy.setOutputEncoding(context.getWiki().getEncoding());
+                tidy.setInputEncoding(context.getWiki().getEncoding());
+            }
             StringWriter tidyOutput = new StringWriter(input.length());
-            this.tidy.parse(new StringReader(input), tidyOutput);
+            tidy.parse(new StringReader(input), tidyOutput);
 
             // Tidy can't solve duplicate IDs, so it needs to be done manually
             DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
@@ -377,23 +499,28 @@ private void cleanIDs(org.w3c.dom.Element e, List<String> seenIDs)
     protected void exportXHTML(String xhtml, OutputStream out, ExportType type, XWikiContext context)
         throws XWikiException
     {
+        List<Templates> transformations = getXSLFOTransformations(context);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Final XHTML for export: " + xhtml);
-        }
 
-        // XSL Transformation to XML-FO
-        String xmlfo = convertXHtmlToXMLFO(xhtml, context);
-
-        // Debug output
-        if (LOGGER.isDebugEnabled()) {
+            // The debug output needs the intermediate XSL-FO, which is produced by the same transformation chain
+            StringWriter xmlfo = new StringWriter(xhtml.length());
+            try {
+                transform(createXMLSource(xhtml), transformations, new StreamResult(xmlfo));
+            } catch (Exception e) {
+                throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT,
+                    XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED, "XSL Transformation Failed", e);
+            }
             LOGGER.debug("XSL-FO source: " + xmlfo);
+            renderXSLFO(createXMLSource(xmlfo.toString()), Collections.<Templates>emptyList(), out, type, context);
+        } else {
+            // Stream the XHTML through both XSLT transformations and into FOP, without intermediate documents
+            renderXSLFO(createXMLSource(xhtml), transformations, out, type, context);
         }
-
-        renderXSLFO(xmlfo, out, type, context);
     }
 
     /**
-     * Convert a valid XHTML document into an XSL-FO document through XSLT transformations. Two transformations are
+     * Get the XSLT transformations converting a valid XHTML document into an XSL-FO document. Two transformations are
      * involved:
      * <ol>
      * <li>A base transformation which converts the XHTML into a temporary XSL-FO; it uses the <tt>xhtml2fo.xsl</tt>
@@ -402,28 +529,28 @@ protected void exportXHTML(String xhtml, OutputStream out, ExportType type, XWik
      * it uses the <tt>fop.xsl</tt> file, or the <tt>fopxsl</tt> property of the applied PDFTemplate.</li>
      * </ol>
      * 
-     * @param xhtml the XHTML document to convert
      * @param context the current request context
-     * @return the resulting XML-FO document
-     * @throws XWikiException if the conversion fails for any reason
+     * @return the compiled transformations, in the order they must be applied
+     * @throws XWikiException if the XSLTs cannot be read or compiled
      */
-    private String convertXHtmlToXMLFO(String xhtml, XWikiContext context) throws XWikiException
+    private List<Templates> getXSLFOTransformations(XWikiContext context) throws XWikiException
     {
-        String xmlfo = applyXSLT(xhtml, getXhtml2FopXslt(context));
-        return applyXSLT(xmlfo, getFopCleanupXslt(context));
+        return Arrays.asList(getTemplates(getXhtml2FopXslt(context)), getTemplates(getFopCleanupXslt(context)));
     }
 
     /**
-     * Convert an XSL-FO document into PDF.
+     * Convert a document into PDF, streaming it through a chain of XSLT transformations which must output XSL-FO.
      * 
-     * @param xmlfo the source FO to render
+     * @param source the source document to render
+     * @param transformations the XSLT transformations to apply, in order, before handing the result to FOP; no
+     *            transformation means the source is already XSL-FO
      * @param out where to write the resulting document
      * @param type the type of the output: PDF or RTF
      * @param context the XWiki Context used by the custom URI Resolver we use to locate image attachment data
      * @throws XWikiException if the conversion fails for any reason
      */
-    private void renderXSLFO(String xmlfo, OutputStream out, ExportType type, final XWikiContext context)
-        throws XWikiException
+    private void renderXSLFO(Source source, List<Templates> transformations, OutputStream out, ExportType type,
+        final XWikiContext context) throws XWikiException
     {
         try {
             FOUserAgent foUserAgent = fopFactory.newFOUserAgent();
@@ -434,17 +561,8 @@ private void renderXSLFO(String xmlfo, OutputStream out, ExportType type, final
             // Construct fop with desired output format
             Fop fop = fopFactory.newFop(type.getMimeType(), foUserAgent, out);
 
-            // Identity transformer
-            Transformer transformer = transformerFactory.newTransformer();
-
-            // Setup input stream
-            Source source = new StreamSource(new StringReader(xmlfo));
-
-            // Resulting SAX events (the generated FO) must be piped through to FOP
-            Result res = new SAXResult(fop.getDefaultHandler());
-
-            // Start XSLT transformation and FOP processing
-            transformer.transform(source, res);
+            // Start XSLT transformations and FOP processing, the generated FO being piped through to FOP
+            transform(source, transformations, new SAXResult(fop.getDefaultHandler()));
 
             // Result processing
             FormattingResults foResults = fop.getResults();
@@ -464,6 +582,27 @@ private void renderXSLFO(String xmlfo, OutputStream out, ExportType type, final
         }
     }
 
+    /**
+     * Stream a document through a chain of XSLT transformations, without intermediate documents.
+     * 
+     * @param source the document to transform
+     * @param transformations the XSLT transformations to apply, in order; no transformation copies the source
+     * @param result where to write the output of the last transformation
+     * @throws TransformerException if a transformation fails
+     */
+    void transform(Source source, List<Templates> transformations, Result result) throws TransformerException
+    {
+        SAXTransformerFactory saxTransformerFactory = (SAXTransformerFactory) transformerFactory;
+        Result handlerResult = result;
+        for (int i = transformations.size() - 1; i >= 0; i--) {
+            TransformerHandler transformerHandler = saxTransformerFactory.newTransformerHandler(transformations.get(i));
+            transformerHandler.setResult(handlerResult);
+            handlerResult = new SAXResult(transformerHandler);
+        }
+
+        transformerFactory.newTransformer().transform(source, handlerResult);
+    }
+
     /**
      * Applies an XSLT transformation to an XML document.
      * 
@@ -477,12 +616,9 @@ protected String applyXSLT(String xml, InputStream xslt) throws XWikiException
         StringWriter output = new StringWriter(xml.length());
 
         try {
-            DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
-            docBuilder.setEntityResolver(Utils.getComponent(EntityResolver.class));
-            Document xsltDocument = docBuilder.parse(new InputSource(xslt));
-            Document xmlDocument = docBuilder.parse(new InputSource(new StringReader(xml)));
-            Transformer transformer = transformerFactory.newTransformer(new DOMSource(xsltDocument));
-            transformer.transform(new DOMSource(xmlDocument), new StreamResult(output));
+            transform(createXMLSource(xml), Collections.singletonList(getTemplates(xslt)), new StreamResult(output));
+        } catch (XWikiException e) {
+            throw e;
         } catch (Exception e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED,
                 "XSL Transformation Failed", e);
@@ -491,6 +627,57 @@ protected String applyXSLT(String xml, InputStream xslt) throws XWikiException
         return output.toString();
     }
 
+    /**
+     * Get the compiled version of an XSLT, compiling it only if this version of the XSLT was not compiled before.
+     * 
+     * @param xslt the XSLT, closed by this method
+     * @return the compiled XSLT
+     * @throws XWikiException if the XSLT cannot be read or compiled
+     */
+    Templates getTemplates(InputStream xslt) throws XWikiException
+    {
+        try {
+            byte[] content = IOUtils.toByteArray(xslt);
+            String key = DigestUtils.sha1Hex(content);
+
+            Templates templates = TEMPLATES_CACHE.get(key);
+            if (templates == null) {
+                DocumentBuilder docBuilder = dbFactory.newDocumentBuilder();
+                docBuilder.setEntityResolver(Utils.getComponent(EntityResolver.class));
+                Document xsltDocument = docBuilder.parse(new InputSource(new ByteArrayInputStream(content)));
+                templates = transformerFactory.newTemplates(new DOMSource(xsltDocument));
+                TEMPLATES_CACHE.put(key, templates);
+            }
+
+            return templates;
+        } catch (Exception e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED,
+                "Failed to compile XSL Transformation", e);
+        } finally {
+            IOUtils.closeQuietly(xslt);
+        }
+    }
+
+    /**
+     * Create a streamed source for an XML document, resolving its entities locally.
+     * 
+     * @param xml the XML document
+     * @return the source to give to an XSLT transformation
+     * @throws XWikiException if the XML parser cannot be created
+     */
+    private Source createXMLSource(String xml) throws XWikiException
+    {
+        try {
+            XMLReader reader = saxParserFactory.newSAXParser().getXMLReader();
+            reader.setEntityResolver(Utils.getComponent(EntityResolver.class));
+
+            return new SAXSource(reader, new InputSource(new StringReader(xml)));
+        } catch (Exception e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_EXPORT, XWikiException.ERROR_XWIKI_EXPORT_XSL_FAILED,
+                "Failed to create XML parser", e);
+        }
+    }
+
     /**
      * Apply CSS styling to an XHTML document. The style to apply is taken from:
      * <ol>
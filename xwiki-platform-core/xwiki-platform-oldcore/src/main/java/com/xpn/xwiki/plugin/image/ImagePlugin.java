@@ -21,19 +21,40 @@
 
 import java.awt.Image;
 import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
-
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.comparator.LastModifiedFileComparator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.config.CacheConfiguration;
 import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
 import org.xwiki.environment.Environment;
 
 import com.xpn.xwiki.XWikiContext;
@@ -42,6 +63,7 @@
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.plugin.XWikiDefaultPlugin;
 import com.xpn.xwiki.plugin.XWikiPluginInterface;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
 import com.xpn.xwiki.web.Utils;
 
 /**
@@ -64,9 +86,10 @@ public class ImagePlugin extends XWikiDefaultPlugin
     private static final String PLUGIN_NAME = "image";
 
     /**
-     * Cache for already served images.
+     * Cache of the files where the already served thumbnails are stored, indexed by thumbnail key. Only the location of
+     * the thumbnails is kept in memory, their content is read from disk.
      */
-    private Cache<XWikiAttachment> imageCache;
+    private Cache<File> imageCache;
 
     /**
      * The size of the cache. This parameter can be configured using the key {@code xwiki.plugin.image.cache.capacity}.
@@ -84,10 +107,47 @@ public class ImagePlugin extends XWikiDefaultPlugin
     private final ImageProcessor imageProcessor = Utils.getComponent(ImageProcessor.class);
 
     /**
-     * Used to get the temporary directory.
+     * Used to get the permanent directory, where the thumbnails are stored.
      */
     private Environment environment = Utils.getComponent((Type) Environment.class);
 
+    /**
+     * The directory where the thumbnails are stored, so that they survive cache evictions and restarts. {@code null}
+     * if thumbnails can't be stored, in which case they are generated for each request.
+     */
+    private File thumbnailDirectory;
+
+    /**
+     * The maximum number of bytes of thumbnails stored on disk, above which the least recently used thumbnails are
+     * deleted. Can be configured in megabytes using the key {@code xwiki.plugin.image.thumbnails.maxDiskSize}.
+     */
+    private long maxThumbnailDiskSize = 500L * 1024 * 1024;
+
+    /**
+     * The number of bytes of thumbnails currently stored on disk.
+     */
+    private final AtomicLong thumbnailDiskSize = new AtomicLong();
+
+    /**
+     * The thumbnails being generated, indexed by cache key, so that concurrent requests for the same thumbnail wait for
+     * a single generation instead of resizing the same image several times.
+     */
+    private final ConcurrentMap<String, FutureTask<XWikiAttachment>> thumbnailsInProgress =
+        new ConcurrentHashMap<String, FutureTask<XWikiAttachment>>();
+
+    /**
+     * The threads generating the thumbnails. Its size bounds the CPU and memory used by image resizing, whatever the
+     * number of concurrent requests. Can be configured using the key {@code xwiki.plugin.image.thumbnails.threads}.
+     * Created on first use and shut down when the cache is flushed.
+     */
+    private ExecutorService thumbnailExecutor;
+
+    /**
+     * The widths of the image variants generated in advance when an image is attached. Can be configured using the key
+     * {@code xwiki.plugin.image.variants} (a comma separated list of widths, empty to disable the generation).
+     */
+    private int[] variantWidths = new int[] {160, 320, 800, 1600};
+
     /**
      * Creates a new instance of this plugin.
      * 
@@ -121,6 +181,7 @@ public void init(XWikiContext context)
         super.init(context);
 
         initCache(context);
+        initThumbnails(context);
 
         String defaultQualityParam = context.getWiki().Param("xwiki.plugin.image.defaultQuality");
         if (!StringUtils.isBlank(defaultQualityParam)) {
@@ -131,6 +192,22 @@ public void init(XWikiContext context)
                     + "Using {} as the default image quality.", this.defaultQuality);
             }
         }
+
+        String variantsParam = context.getWiki().Param("xwiki.plugin.image.variants");
+        if (variantsParam != null) {
+            List<Integer> widths = new ArrayList<Integer>();
+            for (String width : StringUtils.split(variantsParam, ", ")) {
+                if (StringUtils.isNumeric(width)) {
+                    widths.add(Integer.valueOf(width));
+                } else {
+                    LOG.warn("Ignoring invalid image variant width [{}].", width);
+                }
+            }
+            this.variantWidths = new int[widths.size()];
+            for (int i = 0; i < this.variantWidths.length; i++) {
+                this.variantWidths[i] = widths.get(i);
+            }
+        }
     }
 
     /**
@@ -169,13 +246,64 @@ private void initCache(XWikiContext context)
         }
     }
 
+    /**
+     * Initializes the thumbnail directory.
+     * 
+     * @param context the XWiki context
+     */
+    private synchronized void initThumbnails(XWikiContext context)
+    {
+        if (this.thumbnailDirectory == null && this.environment != null
+            && this.environment.getPermanentDirectory() != null) {
+            File directory = new File(this.environment.getPermanentDirectory(), "cache/image/thumbnails");
+            if (directory.isDirectory() || directory.mkdirs()) {
+                String maxSizeParam = context.getWiki().Param("xwiki.plugin.image.thumbnails.maxDiskSize");
+                if (!StringUtils.isBlank(maxSizeParam) && StringUtils.isNumeric(maxSizeParam.trim())) {
+                    this.maxThumbnailDiskSize = Long.parseLong(maxSizeParam.trim()) * 1024 * 1024;
+                }
+                this.thumbnailDiskSize.set(FileUtils.sizeOfDirectory(directory));
+                this.thumbnailDirectory = directory;
+            } else {
+                LOG.warn("Failed to create the thumbnail directory [{}]. Thumbnails won't be cached.", directory);
+            }
+        }
+    }
+
+    /**
+     * @param context the XWiki context
+     * @return the threads generating the thumbnails, created if needed
+     */
+    private synchronized ExecutorService getThumbnailExecutor(XWikiContext context)
+    {
+        if (this.thumbnailExecutor == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+            String threadsParam = context.getWiki().Param("xwiki.plugin.image.thumbnails.threads");
+            if (!StringUtils.isBlank(threadsParam) && StringUtils.isNumeric(threadsParam.trim())) {
+                threads = Math.max(1, Integer.parseInt(threadsParam.trim()));
+            }
+
+            BasicThreadFactory factory =
+                new BasicThreadFactory.Builder().namingPattern("XWiki image thumbnail thread %d").daemon(true)
+                    .priority(Thread.NORM_PRIORITY - 1).build();
+            this.thumbnailExecutor = Executors.newFixedThreadPool(threads, factory);
+        }
+
+        return this.thumbnailExecutor;
+    }
+
     @Override
-    public void flushCache()
+    public synchronized void flushCache()
     {
         if (this.imageCache != null) {
             this.imageCache.dispose();
         }
         this.imageCache = null;
+
+        // The thumbnails being generated are still generated, the threads stop afterwards
+        if (this.thumbnailExecutor != null) {
+            this.thumbnailExecutor.shutdown();
+        }
+        this.thumbnailExecutor = null;
     }
 
     /**
@@ -248,12 +376,14 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
         XWikiContext context) throws Exception
     {
         initCache(context);
+        initThumbnails(context);
 
         boolean keepAspectRatio = Boolean.valueOf(context.getRequest().getParameter("keepAspectRatio"));
 
-        XWikiAttachment thumbnail = (this.imageCache == null)
-                ? shrinkImage(image, width, height, keepAspectRatio, quality, context)
-                : downloadImageFromCache(image, width, height, keepAspectRatio, quality, context);
+        String key = getCacheKey(image, width, height, keepAspectRatio, quality);
+        XWikiAttachment thumbnail = (this.thumbnailDirectory == null)
+                ? generateThumbnail(image, width, height, keepAspectRatio, quality, key, context)
+                : downloadImageFromCache(image, width, height, keepAspectRatio, quality, key, context);
 
         // If the image has been transformed, update the file name extension to match the image format.
         String fileName = thumbnail.getFilename();
@@ -266,7 +396,8 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
     }
 
     /**
-     * Downloads the given image from cache.
+     * Downloads the given image from cache. The thumbnails are read from disk, and are generated only if they cannot be
+     * found there.
      * 
      * @param image the image to be downloaded
      * @param width the desired image width; this value is taken into account only if it is greater than zero and less
@@ -275,25 +406,269 @@ private XWikiAttachment downloadImage(XWikiAttachment image, int width, int heig
      *            than the current image height
      * @param keepAspectRatio {@code true} to preserve aspect ratio when resizing the image, {@code false} otherwise
      * @param quality the desired compression quality
+     * @param key the cache key of the thumbnail
      * @param context the XWiki context
      * @return the transformed image
      * @throws Exception if transforming the image fails
      */
     private XWikiAttachment downloadImageFromCache(XWikiAttachment image, int width, int height,
-        boolean keepAspectRatio, float quality, XWikiContext context) throws Exception
+        boolean keepAspectRatio, float quality, String key, XWikiContext context) throws Exception
     {
-        String key =
-            String.format("%s;%s;%s;%s;%s;%s", image.getId(), image.getVersion(), width, height, keepAspectRatio,
-                quality);
+        Cache<File> cache = this.imageCache;
+        File file = (cache == null) ? null : cache.get(key);
+        if (file == null) {
+            file = getThumbnailFile(key);
+        }
 
-        XWikiAttachment thumbnail = this.imageCache.get(key);
+        XWikiAttachment thumbnail = readThumbnail(image, file);
         if (thumbnail == null) {
-            thumbnail = shrinkImage(image, width, height, keepAspectRatio, quality, context);
-            this.imageCache.set(key, thumbnail);
+            thumbnail = generateThumbnail(image, width, height, keepAspectRatio, quality, key, context);
+        }
+        if (cache != null && thumbnail != image) {
+            cache.set(key, file);
         }
         return thumbnail;
     }
 
+    /**
+     * @param image the image to be downloaded
+     * @param width the desired image width
+     * @param height the desired image height
+     * @param keepAspectRatio {@code true} to preserve aspect ratio when resizing the image, {@code false} otherwise
+     * @param quality the desired compression quality
+     * @return the key identifying the transformed image in the caches
+     */
+    private String getCacheKey(XWikiAttachment image, int width, int height, boolean keepAspectRatio, float quality)
+    {
+        // The date distinguishes an attachment re-uploaded after being deleted, whose version starts again at 1.1
+        long date = image.getDate() != null ? image.getDate().getTime() : 0;
+
+        return String.format("%s;%s;%s;%s;%s;%s;%s", image.getId(), image.getVersion(), date, width, height,
+            keepAspectRatio, quality);
+    }
+
+    /**
+     * Generates the configured variants of an image (i.e. the image scaled to the configured widths) so that they are
+     * available on disk before they are requested. Variants that are not smaller than the image are skipped.
+     * 
+     * @param image the image
+     * @param context the XWiki context
+     * @since 5.2M1
+     */
+    public void generateVariants(XWikiAttachment image, XWikiContext context)
+    {
+        initThumbnails(context);
+
+        if (this.thumbnailDirectory == null || this.variantWidths.length == 0
+            || !this.imageProcessor.isMimeTypeSupported(image.getMimeType(context))) {
+            return;
+        }
+
+        for (int width : this.variantWidths) {
+            // Use the same key as a download with only the width parameter
+            String key = getCacheKey(image, width, -1, false, -1);
+            if (!getThumbnailFile(key).isFile()) {
+                try {
+                    generateThumbnail(image, width, -1, false, -1, key, context);
+                } catch (Exception e) {
+                    LOG.warn("Failed to generate the variant of width [{}] of image [{}].", width,
+                        image.getFilename(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param image the image
+     * @return the widths of the variants of the image that are available on disk, in increasing order
+     * @since 5.2M1
+     */
+    public List<Integer> getAvailableVariants(XWikiAttachment image)
+    {
+        List<Integer> widths = new ArrayList<Integer>();
+        if (this.thumbnailDirectory != null) {
+            int[] sortedWidths = this.variantWidths.clone();
+            Arrays.sort(sortedWidths);
+            for (int width : sortedWidths) {
+                if (getThumbnailFile(getCacheKey(image, width, -1, false, -1)).isFile()) {
+                    widths.add(width);
+                }
+            }
+        }
+        return widths;
+    }
+
+    /**
+     * Generates a thumbnail using the thumbnail threads. Only one thread generates a given thumbnail, the concurrent
+     * requests for the same thumbnail wait for it.
+     * 
+     * @param image the image to be downloaded
+     * @param width the desired image width
+     * @param height the desired image height
+     * @param keepAspectRatio {@code true} to preserve aspect ratio when resizing the image, {@code false} otherwise
+     * @param quality the desired compression quality
+     * @param key the cache key of the thumbnail
+     * @param context the XWiki context
+     * @return the transformed image
+     * @throws Exception if transforming the image fails
+     */
+    private XWikiAttachment generateThumbnail(final XWikiAttachment image, final int width, final int height,
+        final boolean keepAspectRatio, final float quality, final String key, XWikiContext context)
+        throws Exception
+    {
+        // The thumbnail is generated in another thread, which needs its own context
+        final XWikiContext threadContext = context.clone();
+        FutureTask<XWikiAttachment> task = new FutureTask<XWikiAttachment>(new Callable<XWikiAttachment>()
+        {
+            @Override
+            public XWikiAttachment call() throws Exception
+            {
+                XWikiAttachment thumbnail =
+                    shrinkImage(image, width, height, keepAspectRatio, quality, threadContext);
+                if (thumbnail != image) {
+                    writeThumbnail(thumbnail, key, threadContext);
+                }
+                return thumbnail;
+            }
+        });
+
+        FutureTask<XWikiAttachment> runningTask = this.thumbnailsInProgress.putIfAbsent(key, task);
+        if (runningTask == null) {
+            runningTask = task;
+            try {
+                getThumbnailExecutor(context).execute(new ThumbnailRunnable(task, threadContext));
+            } catch (RuntimeException e) {
+                this.thumbnailsInProgress.remove(key, task);
+                throw e;
+            }
+        }
+
+        try {
+            return runningTask.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            this.thumbnailsInProgress.remove(key, runningTask);
+        }
+    }
+
+    /**
+     * @param key the cache key of a thumbnail
+     * @return the file where the thumbnail is stored, named after the hash of the key
+     */
+    private File getThumbnailFile(String key)
+    {
+        String hash = DigestUtils.sha1Hex(key);
+
+        return new File(new File(this.thumbnailDirectory, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Reads a thumbnail previously stored on disk.
+     * 
+     * @param image the image the thumbnail was generated from
+     * @param file the file where the thumbnail is stored
+     * @return the thumbnail, or {@code null} if it's not stored on disk
+     */
+    private XWikiAttachment readThumbnail(XWikiAttachment image, File file)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        InputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            XWikiAttachment thumbnail = (XWikiAttachment) image.clone();
+            thumbnail.setContent(input);
+            // Used to evict the least recently used thumbnails when the disk store is full
+            file.setLastModified(System.currentTimeMillis());
+            return thumbnail;
+        } catch (IOException e) {
+            LOG.warn("Failed to read the thumbnail file [{}].", file, e);
+            return null;
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Stores a thumbnail on disk. The file is written under a temporary name and then renamed, so that a partially
+     * written thumbnail is never read.
+     * 
+     * @param thumbnail the thumbnail to store
+     * @param key the cache key of the thumbnail
+     * @param context the XWiki context
+     */
+    private void writeThumbnail(XWikiAttachment thumbnail, String key, XWikiContext context)
+    {
+        if (this.thumbnailDirectory == null) {
+            return;
+        }
+
+        File file = getThumbnailFile(key);
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        InputStream input = null;
+        OutputStream output = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            input = thumbnail.getContentInputStream(context);
+            output = new FileOutputStream(tmpFile);
+            IOUtils.copy(input, output);
+            output.close();
+            if (tmpFile.renameTo(file)) {
+                if (this.thumbnailDiskSize.addAndGet(file.length()) > this.maxThumbnailDiskSize) {
+                    evictThumbnails();
+                }
+            } else {
+                FileUtils.deleteQuietly(tmpFile);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to store the thumbnail file [{}].", file, e);
+            FileUtils.deleteQuietly(tmpFile);
+        } finally {
+            IOUtils.closeQuietly(input);
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Deletes the least recently used thumbnails from disk until they use less than 90% of the maximum disk size. This
+     * bounds the disk space used by thumbnails whatever the sizes requested.
+     */
+    private synchronized void evictThumbnails()
+    {
+        if (this.thumbnailDiskSize.get() <= this.maxThumbnailDiskSize) {
+            // Already evicted by another thread
+            return;
+        }
+
+        List<File> files = new ArrayList<File>();
+        long size = 0;
+        for (File file : FileUtils.listFiles(this.thumbnailDirectory, null, true)) {
+            // Skip the thumbnails being written
+            if (!file.getName().endsWith(".tmp")) {
+                files.add(file);
+                size += file.length();
+            }
+        }
+        Collections.sort(files, LastModifiedFileComparator.LASTMODIFIED_COMPARATOR);
+
+        long targetSize = this.maxThumbnailDiskSize / 10 * 9;
+        for (File file : files) {
+            if (size <= targetSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                size -= length;
+            }
+        }
+
+        this.thumbnailDiskSize.set(size);
+        LOG.debug("Evicted thumbnails from disk, [{}] bytes left.", size);
+    }
+
     /**
      * Reduces the size (i.e. the number of bytes) of an image by scaling its width and height and by reducing its
      * compression quality. This helps decreasing the time needed to download the image attachment.
@@ -427,4 +802,55 @@ public int getHeight(XWikiAttachment attachment, XWikiContext context) throws IO
     {
         return this.imageProcessor.readImage(attachment.getContentInputStream(context)).getHeight(null);
     }
+
+    /**
+     * Generates a thumbnail in a thumbnail thread, within an execution context initialized with a clone of the XWiki
+     * context of the request asking for the thumbnail.
+     */
+    private static class ThumbnailRunnable extends AbstractXWikiRunnable
+    {
+        /**
+         * The generation of the thumbnail.
+         */
+        private final FutureTask<XWikiAttachment> task;
+
+        /**
+         * The XWiki context used to generate the thumbnail.
+         */
+        private final XWikiContext xcontext;
+
+        /**
+         * @param task the generation of the thumbnail
+         * @param xcontext the XWiki context used to generate the thumbnail
+         */
+        ThumbnailRunnable(FutureTask<XWikiAttachment> task, XWikiContext xcontext)
+        {
+            this.task = task;
+            this.xcontext = xcontext;
+        }
+
+        @Override
+        protected ExecutionContext initExecutionContext() throws ExecutionContextException
+        {
+            try {
+                return super.initExecutionContext();
+            } catch (ExecutionContextException e) {
+                // Don't let the requests waiting for the thumbnail wait forever
+                this.task.cancel(false);
+                throw e;
+            }
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            this.task.run();
+        }
+    }
 }
@@ -94,6 +94,38 @@ public int getWidth(String pageName, String attachmentName)
         }
     }
 
+    /**
+     * Builds the value of the {@code srcset} attribute of an image attached to a wiki page, listing the variants of the
+     * image that have already been generated.
+     * 
+     * @param pageName the name of a wiki page
+     * @param attachmentName the name of an image attached to the specified page
+     * @return the {@code srcset} attribute value (e.g. {@code .../image.png?width=160 160w, ...}), empty if no variant
+     *         is available
+     * @since 5.2M1
+     */
+    public String getSrcset(String pageName, String attachmentName)
+    {
+        StringBuilder srcset = new StringBuilder();
+        try {
+            XWikiAttachment attachment = getAttachment(pageName, attachmentName);
+            if (attachment != null) {
+                XWikiDocument document = attachment.getDoc();
+                for (Integer width : getProtectedPlugin().getAvailableVariants(attachment)) {
+                    if (srcset.length() > 0) {
+                        srcset.append(", ");
+                    }
+                    srcset.append(document.getAttachmentURL(attachmentName, "download", "width=" + width,
+                        getXWikiContext()));
+                    srcset.append(' ').append(width).append('w');
+                }
+            }
+        } catch (Exception e) {
+            LOG.error(String.format("Failed to list the variants of %s attached to %s.", attachmentName, pageName), e);
+        }
+        return srcset.toString();
+    }
+
     /**
      * @param pageName the name of a wiki page
      * @param attachmentName the name of an attachment of the specified page
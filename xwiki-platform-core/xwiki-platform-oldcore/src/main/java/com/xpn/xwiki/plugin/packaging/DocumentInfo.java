@@ -32,6 +32,22 @@
 
     private XWikiDocument doc;
 
+    /**
+     * The lightweight version of the document kept in memory when the complete document is loaded from the package file
+     * only when needed.
+     */
+    private XWikiDocument lightDoc;
+
+    /**
+     * The package from which to load the complete document.
+     */
+    private Package pack;
+
+    /**
+     * The name of the package file entry containing the complete document.
+     */
+    private String packageEntry;
+
     private int installable = INSTALL_IMPOSSIBLE;
 
     private int action = ACTION_NOT_DEFINED;
@@ -65,9 +81,75 @@ public DocumentInfo(XWikiDocument doc)
 
     public XWikiDocument getDoc()
     {
+        load();
+
         return doc;
     }
 
+    /**
+     * @return the document, without loading the complete document if only a lightweight version is in memory
+     */
+    XWikiDocument getLoadedDoc()
+    {
+        return doc;
+    }
+
+    /**
+     * Indicate that only a lightweight version of the document (reference and language) is kept in memory, the complete
+     * document being loaded from the package file when needed.
+     * 
+     * @param pack the package from which to load the complete document
+     * @param packageEntry the name of the package file entry containing the complete document
+     */
+    void setPackageEntry(Package pack, String packageEntry)
+    {
+        this.pack = pack;
+        this.packageEntry = packageEntry;
+        this.lightDoc = this.doc;
+    }
+
+    /**
+     * @return true if only the lightweight version of the document is currently in memory
+     */
+    boolean isLight()
+    {
+        return lightDoc != null && doc == lightDoc;
+    }
+
+    /**
+     * Load the complete document from the package file if it's not already in memory.
+     * 
+     * @return false if the document failed to be loaded
+     */
+    boolean load()
+    {
+        if (isLight()) {
+            XWikiDocument completeDoc = pack.loadDocument(packageEntry);
+            if (completeDoc == null) {
+                return false;
+            }
+
+            // Keep modifications made through #changeSpace
+            if (!completeDoc.getSpace().equals(lightDoc.getSpace())) {
+                completeDoc.setSpace(lightDoc.getSpace());
+            }
+
+            doc = completeDoc;
+        }
+
+        return true;
+    }
+
+    /**
+     * Release the complete document if it can be loaded again from the package file.
+     */
+    void release()
+    {
+        if (lightDoc != null) {
+            doc = lightDoc;
+        }
+    }
+
     public boolean isNew()
     {
         return doc.isNew();
@@ -201,5 +283,6 @@ public void setAction(int action)
     public void setDoc(XWikiDocument doc)
     {
         this.doc = doc;
+        this.lightDoc = null;
     }
 }
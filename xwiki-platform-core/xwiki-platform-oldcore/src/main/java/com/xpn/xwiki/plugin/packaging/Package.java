@@ -30,8 +30,8 @@
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.zip.ZipEntry;
@@ -39,11 +39,10 @@
 
 import net.sf.json.JSONObject;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
-import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
@@ -54,6 +53,7 @@
 import org.dom4j.io.SAXReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.environment.Environment;
 import org.xwiki.extension.Extension;
 import org.xwiki.extension.ExtensionId;
 import org.xwiki.extension.InstalledExtension;
@@ -93,6 +93,11 @@
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Package.class);
 
+    /**
+     * The key under which the packages imported from a stream during the current request are stored in the context.
+     */
+    private static final String IMPORTED_PACKAGES_KEY = "packaging.importedPackages";
+
     private String name = "My package";
 
     private String description = "";
@@ -124,6 +129,21 @@
 
     private List<DocumentFilter> documentFilters = new ArrayList<DocumentFilter>();
 
+    /**
+     * The package file from which documents are loaded at install time, see {@link #Import(File, XWikiContext)}.
+     */
+    private File packageFile;
+
+    /**
+     * Indicate if {@link #packageFile} is a temporary copy which should be deleted when not needed anymore.
+     */
+    private boolean temporaryPackageFile;
+
+    /**
+     * The package file opened during the installation.
+     */
+    private ZipFile installPackageFile;
+
     public String getName()
     {
         return this.name;
@@ -448,7 +468,12 @@ public String Import(byte file[], XWikiContext context) throws IOException, XWik
     }
 
     /**
-     * Load this package in memory from an InputStream. It may be installed later using {@link #install(XWikiContext)}.
+     * Load this package from an InputStream. It may be installed later using {@link #install(XWikiContext)}.
+     * <p>
+     * The package is copied in a temporary file and then read like {@link #Import(File, XWikiContext)} does, so that
+     * the documents are not all kept in memory until they are installed. The temporary file is deleted once the package
+     * is installed; call {@link #dispose()} to delete it when the package is not going to be installed. Otherwise it is
+     * deleted at the end of the request, see {@link #disposeImportedPackages(XWikiContext)}.
      * 
      * @param file an InputStream of a zipped package file
      * @param context current XWikiContext
@@ -459,78 +484,273 @@ public String Import(byte file[], XWikiContext context) throws IOException, XWik
      */
     public String Import(InputStream file, XWikiContext context) throws IOException, XWikiException
     {
-        ZipArchiveInputStream zis;
-        ArchiveEntry entry;
-        Document description = null;
+        dispose();
+
+        File temporaryFile =
+            File.createTempFile("package", ".xar", Utils.getComponent(Environment.class).getTemporaryDirectory());
 
+        boolean imported = false;
         try {
-            zis = new ZipArchiveInputStream(file, XAR_FILENAME_ENCODING, false);
+            OutputStream os = new FileOutputStream(temporaryFile);
+            try {
+                IOUtils.copyLarge(file, os);
+            } finally {
+                os.close();
+            }
 
-            List<XWikiDocument> docsToLoad = new LinkedList<XWikiDocument>();
-            /*
-             * Loop 1: Cycle through the zip input stream and load out all of the documents, when we find the
-             * package.xml file we put it aside to so that we only include documents which are in the file.
-             */
-            while ((entry = zis.getNextEntry()) != null) {
-                if (entry.isDirectory() || (entry.getName().indexOf("META-INF") != -1)) {
-                    // The entry is either a directory or is something inside of the META-INF dir.
-                    // (we use that directory to put meta data such as LICENSE/NOTICE files.)
-                    continue;
-                } else if (entry.getName().compareTo(DefaultPackageFileName) == 0) {
-                    // The entry is the manifest (package.xml). Read this differently.
-                    description = fromXml(new CloseShieldInputStream(zis));
-                } else {
-                    XWikiDocument doc = null;
-                    try {
-                        doc = readFromXML(new CloseShieldInputStream(zis));
-                    } catch (Throwable ex) {
-                        LOGGER.warn("Failed to parse document [" + entry.getName()
-                            + "] from XML during import, thus it will not be installed. " + "The error was: "
-                            + ex.getMessage());
-                        // It will be listed in the "failed documents" section after the import.
-                        addToErrors(entry.getName().replaceAll("/", "."), context);
-
-                        continue;
-                    }
+            String result = importFile(temporaryFile, context);
 
-                    // Run all of the registered DocumentFilters on this document and
-                    // if no filters throw exceptions, add it to the list to import.
-                    try {
-                        this.filter(doc, context);
-                        docsToLoad.add(doc);
-                    } catch (ExcludeDocumentException e) {
-                        LOGGER.info("Skip the document '" + doc.getDocumentReference() + "'");
-                    }
-                }
+            this.temporaryPackageFile = true;
+            imported = true;
+
+            // Make sure the temporary file is deleted at the end of the request if the package is abandoned
+            @SuppressWarnings("unchecked")
+            List<Package> importedPackages = (List<Package>) context.get(IMPORTED_PACKAGES_KEY);
+            if (importedPackages == null) {
+                importedPackages = new ArrayList<Package>();
+                context.put(IMPORTED_PACKAGES_KEY, importedPackages);
+            }
+            if (!importedPackages.contains(this)) {
+                importedPackages.add(this);
             }
+
+            return result;
+        } finally {
+            if (!imported) {
+                temporaryFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Load this package from a file. It may be installed later using {@link #install(XWikiContext)}.
+     * <p>
+     * The manifest is read first and then each document is parsed, filtered and released one at a time: only the
+     * documents containing a class definition are kept in memory, the others are loaded again from the file when
+     * installed. Memory usage is thus bounded by the biggest document of the package instead of the whole package.
+     * 
+     * @param file a zipped package file, it should not be modified or deleted before the package is installed
+     * @param context current XWikiContext
+     * @return an empty string, useless.
+     * @throws IOException while reading the ZipFile
+     * @throws XWikiException when package content is broken
+     * @since 5.2M1
+     */
+    public String Import(File file, XWikiContext context) throws IOException, XWikiException
+    {
+        dispose();
+
+        return importFile(file, context);
+    }
+
+    private String importFile(File file, XWikiContext context) throws IOException, XWikiException
+    {
+        ZipFile zipFile = new ZipFile(file, XAR_FILENAME_ENCODING, false);
+
+        try {
+            /*
+             * Pass 1: Read the manifest (package.xml) so that we only include documents which are in it.
+             */
+            ZipArchiveEntry manifestEntry = zipFile.getEntry(DefaultPackageFileName);
             // Make sure a manifest was included in the package...
-            if (description == null) {
+            if (manifestEntry == null) {
                 throw new PackageException(XWikiException.ERROR_XWIKI_UNKNOWN, "Could not find the package definition");
             }
+            Document description;
+            InputStream manifestStream = zipFile.getInputStream(manifestEntry);
+            try {
+                description = fromXml(manifestStream);
+            } finally {
+                manifestStream.close();
+            }
+
             /*
-             * Loop 2: Cycle through the list of documents and if they are in the manifest then add them, otherwise log
-             * a warning and add them to the skipped list.
+             * Pass 2: Cycle through the zip entries and parse the documents one by one. If they are in the manifest
+             * then add them, otherwise log a warning and add them to the skipped list.
              */
-            for (XWikiDocument doc : docsToLoad) {
-                if (documentExistInPackageFile(doc.getFullName(), doc.getLanguage(), description)) {
-                    this.add(doc, context);
-                } else {
-                    LOGGER.warn("document " + doc.getDocumentReference() + " does not exist in package definition."
-                        + " It will not be installed.");
-                    // It will be listed in the "skipped documents" section after the
-                    // import.
-                    addToSkipped(doc.getFullName(), context);
+            for (Enumeration<ZipArchiveEntry> en = zipFile.getEntriesInPhysicalOrder(); en.hasMoreElements();) {
+                ZipArchiveEntry entry = en.nextElement();
+
+                if (entry.isDirectory() || (entry.getName().indexOf("META-INF") != -1)
+                    || entry.getName().equals(DefaultPackageFileName)) {
+                    // The entry is either a directory, something inside of the META-INF dir (we use that directory to
+                    // put meta data such as LICENSE/NOTICE files) or the manifest.
+                    continue;
+                }
+
+                XWikiDocument doc = readFromZip(zipFile, entry.getName(), this.withVersions, context);
+                if (doc != null) {
+                    addFromFile(doc, entry.getName(), description, context);
                 }
             }
 
             updateFileInfos(description);
         } catch (DocumentException e) {
             throw new PackageException(XWikiException.ERROR_XWIKI_UNKNOWN, "Error when reading the XML");
+        } finally {
+            zipFile.close();
         }
 
+        this.packageFile = file;
+
         return "";
     }
 
+    /**
+     * @return the parsed document or null if it can't be parsed or if it's excluded by a filter
+     */
+    private XWikiDocument readFromZip(ZipFile zipFile, String entryName, boolean withArchive, XWikiContext context)
+        throws IOException
+    {
+        XWikiDocument doc;
+
+        InputStream stream = zipFile.getInputStream(zipFile.getEntry(entryName));
+        try {
+            doc = readFromXML(stream, withArchive);
+        } catch (Throwable ex) {
+            LOGGER.warn("Failed to parse document [" + entryName + "] from XML during import, thus it will not be "
+                + "installed. " + "The error was: " + ex.getMessage());
+            // It will be listed in the "failed documents" section after the import.
+            addToErrors(entryName.replaceAll("/", "."), context);
+
+            return null;
+        } finally {
+            stream.close();
+        }
+
+        // Run all of the registered DocumentFilters on this document
+        try {
+            this.filter(doc, context);
+        } catch (ExcludeDocumentException e) {
+            LOGGER.info("Skip the document '" + doc.getDocumentReference() + "'");
+
+            return null;
+        }
+
+        return doc;
+    }
+
+    private void addFromFile(XWikiDocument doc, String entryName, Document description, XWikiContext context)
+        throws XWikiException
+    {
+        if (!documentExistInPackageFile(doc.getFullName(), doc.getLanguage(), description)) {
+            LOGGER.warn("document " + doc.getDocumentReference() + " does not exist in package definition."
+                + " It will not be installed.");
+            // It will be listed in the "skipped documents" section after the import.
+            addToSkipped(doc.getFullName(), context);
+        } else if (this.add(doc, context)) {
+            DocumentInfo docInfo = getDocumentInfo(doc.getFullName(), doc.getLanguage());
+
+            // Documents containing a class definition are needed before the installation starts. The other ones are
+            // replaced by a lightweight document and loaded again when needed.
+            if (docInfo != null && !this.classFiles.contains(docInfo) && !this.customMappingFiles.contains(docInfo)) {
+                XWikiDocument lightDocument = new XWikiDocument(doc.getDocumentReference());
+                lightDocument.setLanguage(doc.getLanguage());
+                lightDocument.setDefaultLanguage(doc.getDefaultLanguage());
+                lightDocument.setTranslation(doc.getTranslation());
+
+                docInfo.setDoc(lightDocument);
+                docInfo.setPackageEntry(this, entryName);
+            }
+        }
+    }
+
+    private DocumentInfo getDocumentInfo(String fullName, String language)
+    {
+        for (DocumentInfo docInfo : this.files) {
+            if (docInfo.getFullName().equals(fullName) && docInfo.getLanguage().equals(language)) {
+                return docInfo;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Load a complete document from the package file.
+     * 
+     * @param entryName the name of the package file entry containing the document
+     * @return the document, null if it can't be loaded
+     */
+    XWikiDocument loadDocument(String entryName)
+    {
+        if (this.packageFile == null) {
+            LOGGER.error("Failed to load document [{}]: the package file has been disposed", entryName);
+
+            return null;
+        }
+
+        try {
+            ZipFile zipFile = this.installPackageFile;
+            if (zipFile == null) {
+                zipFile = new ZipFile(this.packageFile, XAR_FILENAME_ENCODING, false);
+            }
+
+            XWikiDocument doc;
+            try {
+                InputStream stream = zipFile.getInputStream(zipFile.getEntry(entryName));
+                try {
+                    // The archive is not needed when the existing history is preserved (see #installDocument)
+                    doc = readFromXML(stream, this.withVersions && !this.preserveVersion);
+                } finally {
+                    stream.close();
+                }
+            } finally {
+                if (zipFile != this.installPackageFile) {
+                    zipFile.close();
+                }
+            }
+
+            // Apply the same modifications as when the document was first read from the package
+            filter(doc, Utils.getContext());
+
+            return doc;
+        } catch (ExcludeDocumentException e) {
+            LOGGER.info("Skip the document [{}]", entryName);
+
+            return null;
+        } catch (Exception e) {
+            LOGGER.error("Failed to load document [{}] from package file [{}]", entryName, this.packageFile, e);
+
+            return null;
+        }
+    }
+
+    /**
+     * Release the resources (like the temporary copy of the package file) used to install the documents of a package
+     * loaded with {@link #Import(InputStream, XWikiContext)}. The documents which are not kept in memory can't be
+     * installed anymore after that. This is done automatically at the end of {@link #install(XWikiContext)}.
+     * 
+     * @since 5.2M1
+     */
+    public void dispose()
+    {
+        if (this.packageFile != null && this.temporaryPackageFile) {
+            this.packageFile.delete();
+        }
+
+        this.packageFile = null;
+        this.temporaryPackageFile = false;
+    }
+
+    /**
+     * Release the resources of the packages imported from a stream during the current request, like
+     * {@link #dispose()}, whether they have been installed or not.
+     * 
+     * @param context current XWikiContext
+     * @since 5.2M1
+     */
+    public static void disposeImportedPackages(XWikiContext context)
+    {
+        @SuppressWarnings("unchecked")
+        List<Package> importedPackages = (List<Package>) context.remove(IMPORTED_PACKAGES_KEY);
+        if (importedPackages != null) {
+            for (Package importedPackage : importedPackages) {
+                importedPackage.dispose();
+            }
+        }
+    }
+
     private boolean documentExistInPackageFile(String docName, String language, Document xml)
     {
         Element docFiles = xml.getRootElement();
@@ -651,6 +871,10 @@ public int install(XWikiContext context) throws XWikiException
         om.notify(new XARImportingEvent(), null, context);
 
         try {
+            if (this.packageFile != null) {
+                this.installPackageFile = new ZipFile(this.packageFile, XAR_FILENAME_ENCODING, false);
+            }
+
             // Start by installing all documents having a class definition so that their
             // definitions are available when installing documents using them.
             for (DocumentInfo classFile : this.classFiles) {
@@ -669,7 +893,21 @@ public int install(XWikiContext context) throws XWikiException
             }
             setStatus(status, context);
 
+        } catch (IOException e) {
+            throw new PackageException(XWikiException.ERROR_XWIKI_UNKNOWN, "Failed to read the package file", e);
         } finally {
+            if (this.installPackageFile != null) {
+                try {
+                    this.installPackageFile.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close package file [{}]", this.packageFile, e);
+                }
+                this.installPackageFile = null;
+            }
+
+            // The documents of the package are not needed anymore
+            dispose();
+
             // FIXME: should be able to pass some sort of source here, the name of the attachment or the list of
             // imported documents. But for the moment it's fine
             om.notify(new XARImportedEvent(), null, context);
@@ -739,8 +977,32 @@ private boolean isFarmAdmin(XWikiContext context)
         }
     }
 
+    /**
+     * Install a document, loading it from the package file first if it was not kept in memory.
+     */
     private int installDocument(DocumentInfo doc, boolean isAdmin, boolean backup, XWikiContext context)
         throws XWikiException
+    {
+        if (!doc.isLight() || doc.getAction() == DocumentInfo.ACTION_SKIP) {
+            return installLoadedDocument(doc, isAdmin, backup, context);
+        }
+
+        try {
+            if (!doc.load()) {
+                addToErrors(doc.getFullName() + ":" + doc.getLanguage(), context);
+
+                return DocumentInfo.INSTALL_ERROR;
+            }
+
+            return installLoadedDocument(doc, isAdmin, backup, context);
+        } finally {
+            // Release the complete document
+            doc.release();
+        }
+    }
+
+    private int installLoadedDocument(DocumentInfo doc, boolean isAdmin, boolean backup, XWikiContext context)
+        throws XWikiException
     {
         if (this.preserveVersion && this.withVersions) {
             // Right now importing an archive and the history revisions it contains
@@ -963,14 +1225,15 @@ public int getStatus(XWikiContext context)
      * Create a {@link XWikiDocument} from xml stream.
      * 
      * @param is the xml stream.
+     * @param withArchive true if the document history should be read too
      * @return the {@link XWikiDocument}.
      * @throws XWikiException error when creating the {@link XWikiDocument}.
      */
-    private XWikiDocument readFromXML(InputStream is) throws XWikiException
+    private XWikiDocument readFromXML(InputStream is, boolean withArchive) throws XWikiException
     {
         XWikiDocument doc = new XWikiDocument();
 
-        doc.fromXML(is, this.withVersions);
+        doc.fromXML(is, withArchive);
 
         return doc;
     }
@@ -1420,20 +1683,22 @@ public JSONObject toJSON(XWikiContext wikiContext)
             fileInfos.put("language", String.valueOf(docInfo.getLanguage()));
             fileInfos.put("fullName", docInfo.getFullName());
 
+            // Don't load the complete document, only its reference is needed
+            XWikiDocument doc = docInfo.getLoadedDoc();
+
             // If the space does not exist in the map of spaces, we create it.
-            if (files.get(docInfo.getDoc().getSpace()) == null) {
-                files.put(docInfo.getDoc().getSpace(), new HashMap<String, List<Map<String, String>>>());
+            if (files.get(doc.getSpace()) == null) {
+                files.put(doc.getSpace(), new HashMap<String, List<Map<String, String>>>());
             }
 
             // If the document name does not exists in the space map of docs, we create it.
-            if (files.get(docInfo.getDoc().getSpace()).get(docInfo.getDoc().getName()) == null) {
-                files.get(docInfo.getDoc().getSpace()).put(docInfo.getDoc().getName(),
-                    new ArrayList<Map<String, String>>());
+            if (files.get(doc.getSpace()).get(doc.getName()) == null) {
+                files.get(doc.getSpace()).put(doc.getName(), new ArrayList<Map<String, String>>());
             }
 
             // Finally we add the file infos (language, fullname and action) to the list of translations
             // for that document.
-            files.get(docInfo.getDoc().getSpace()).get(docInfo.getDoc().getName()).add(fileInfos);
+            files.get(doc.getSpace()).get(doc.getName()).add(fileInfos);
         }
 
         json.put("infos", infos);
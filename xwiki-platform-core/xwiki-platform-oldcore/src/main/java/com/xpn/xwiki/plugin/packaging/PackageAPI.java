@@ -280,6 +280,17 @@ public String Import(InputStream file) throws IOException, XWikiException
         return this.plugin.Import(file, getXWikiContext());
     }
 
+    /**
+     * Release the resources (like the temporary copy of the package file) used to install the package. The package
+     * can't be installed anymore after that.
+     * 
+     * @since 5.2M1
+     */
+    public void dispose()
+    {
+        this.plugin.dispose();
+    }
+
     public int testInstall()
     {
         return this.plugin.testInstall(false, getXWikiContext());
@@ -31,6 +31,8 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.GroupClosureIndex;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -1067,6 +1069,20 @@ public void removeDirectRights(String spaceOrPage, List<String> levelNames, Stri
     public boolean groupContainsMember(String groupName, String memberName,
         Map<String, Collection<String>> groupCacheIn, XWikiContext context) throws XWikiException
     {
+        if (Utils.getComponentManager().hasComponent(GroupClosureIndex.class)) {
+            // Use the group membership indexed by the security module
+            DocumentReference groupReference = this.currentDocumentReferenceResolver.resolve(groupName);
+            DocumentReference memberReference = this.currentDocumentReferenceResolver.resolve(memberName);
+            try {
+                GroupClosureIndex groupClosureIndex = Utils.getComponent(GroupClosureIndex.class);
+                return groupClosureIndex.getAllGroupsFor(memberReference, groupReference.getWikiReference())
+                    .contains(groupReference);
+            } catch (AuthorizationException e) {
+                throw new XWikiException(XWikiException.MODULE_XWIKI_ACCESS, XWikiException.ERROR_XWIKI_UNKNOWN,
+                    "Failed to get the groups of member [" + memberName + "]", e);
+            }
+        }
+
         boolean found = false;
 
         Map<String, Collection<String>> groupCache = groupCacheIn;
@@ -38,6 +38,7 @@
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
@@ -676,24 +677,15 @@ public void setDatabase(Session session, XWikiContext context) throws XWikiExcep
             }
 
             if (context.getDatabase() != null) {
-                String schemaName = getSchemaFromWikiName(context);
-                String escapedSchemaName = escapeSchema(schemaName, context);
-
-                DatabaseProduct databaseProduct = getDatabaseProductName();
-                if (DatabaseProduct.ORACLE == databaseProduct) {
-                    executeSQL("alter session set current_schema = " + escapedSchemaName, session);
-                } else if (DatabaseProduct.DERBY == databaseProduct || DatabaseProduct.HSQLDB == databaseProduct
-                    || DatabaseProduct.DB2 == databaseProduct) {
-                    executeSQL("SET SCHEMA " + escapedSchemaName, session);
-                } else if (DatabaseProduct.POSTGRESQL == databaseProduct && isInSchemaMode()) {
-                    executeSQL("SET search_path TO " + escapedSchemaName, session);
-                } else {
-                    String catalog = session.connection().getCatalog();
-                    catalog = (catalog == null) ? null : catalog.replace('_', '-');
-                    if (!schemaName.equals(catalog)) {
-                        session.connection().setCatalog(schemaName);
+                final XWikiContext xcontext = context;
+                session.doWork(new Work()
+                {
+                    @Override
+                    public void execute(Connection connection) throws SQLException
+                    {
+                        setDatabase(connection, xcontext);
                     }
-                }
+                });
                 setCurrentDatabase(context, context.getDatabase());
             }
 
@@ -708,31 +700,83 @@ public void setDatabase(Session session, XWikiContext context) throws XWikiExcep
     }
 
     /**
-     * Execute an SQL statement using Hibernate.
+     * Switch the given JDBC connection to the database of the current wiki.
+     * 
+     * @param connection the connection to switch
+     * @param context the XWiki context
+     * @throws SQLException when failing to switch the database
+     */
+    private void setDatabase(Connection connection, XWikiContext context) throws SQLException
+    {
+        String schemaName = getSchemaFromWikiName(context);
+        String escapedSchemaName = escapeSchema(schemaName, context);
+
+        DatabaseProduct databaseProduct = getDatabaseProductName();
+        if (DatabaseProduct.ORACLE == databaseProduct) {
+            executeSQL("alter session set current_schema = " + escapedSchemaName, connection);
+        } else if (DatabaseProduct.DERBY == databaseProduct || DatabaseProduct.HSQLDB == databaseProduct
+            || DatabaseProduct.DB2 == databaseProduct) {
+            executeSQL("SET SCHEMA " + escapedSchemaName, connection);
+        } else if (DatabaseProduct.POSTGRESQL == databaseProduct && isInSchemaMode()) {
+            executeSQL("SET search_path TO " + escapedSchemaName, connection);
+        } else {
+            String catalog = connection.getCatalog();
+            catalog = (catalog == null) ? null : catalog.replace('_', '-');
+            if (!schemaName.equals(catalog)) {
+                connection.setCatalog(schemaName);
+            }
+        }
+    }
+
+    /**
+     * Open a stateless session on the database of the current wiki. The session is independent of the session and
+     * transaction stored in the context: it doesn't join the current transaction and it doesn't keep the loaded
+     * entities in a first-level cache. It's the responsibility of the caller to close it.
+     * 
+     * @param context the XWiki context
+     * @return the stateless session
+     * @throws XWikiException when failing to switch the session to the database of the current wiki
+     * @since 5.2M1
+     */
+    public StatelessSession openStatelessSession(XWikiContext context) throws XWikiException
+    {
+        StatelessSession session = getSessionFactory().openStatelessSession();
+        if (context.getDatabase() != null) {
+            try {
+                setDatabase(session.connection(), context);
+            } catch (Exception e) {
+                session.close();
+                Object[] args = {context.getDatabase()};
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_SWITCH_DATABASE,
+                    "Exception while switching to database {0}", e, args);
+            }
+        }
+
+        return session;
+    }
+
+    /**
+     * Execute an SQL statement on a JDBC connection.
      *
      * @param sql the SQL statement to execute
-     * @param session the Hibernate Session in which to execute the statement
+     * @param connection the connection on which to execute the statement
+     * @throws SQLException when failing to execute the statement
      */
-    private void executeSQL(final String sql, Session session)
+    private void executeSQL(String sql, Connection connection) throws SQLException
     {
-        session.doWork(new Work() {
-            @Override
-            public void execute(Connection connection) throws SQLException
-            {
-                Statement stmt = null;
-                try {
-                    stmt = connection.createStatement();
-                    stmt.execute(sql);
-                } finally {
-                    try {
-                        if (stmt != null) {
-                            stmt.close();
-                        }
-                    } catch (Exception e) {
-                    }
+        Statement stmt = null;
+        try {
+            stmt = connection.createStatement();
+            stmt.execute(sql);
+        } finally {
+            try {
+                if (stmt != null) {
+                    stmt.close();
                 }
+            } catch (Exception e) {
             }
-        });
+        }
     }
 
     /**
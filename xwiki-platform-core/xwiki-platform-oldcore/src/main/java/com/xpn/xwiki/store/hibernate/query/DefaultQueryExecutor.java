@@ -29,6 +29,9 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryIterator;
+import org.xwiki.query.StreamingQueryExecutor;
+import org.xwiki.query.internal.ListQueryIterator;
 
 /**
  * The default QueryExecutor, this uses The HqlQueryExecutor since XWikiHibernateStore is the default store. Wrapping
@@ -39,7 +42,7 @@
  */
 @Component
 @Singleton
-public class DefaultQueryExecutor implements QueryExecutor
+public class DefaultQueryExecutor implements StreamingQueryExecutor
 {
     /** The Hibernate HQL query executor. */
     @Inject
@@ -51,4 +54,10 @@ public <T> List<T> execute(final Query query) throws QueryException
     {
         return this.executor.execute(query);
     }
+
+    @Override
+    public <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        return ListQueryIterator.iterate(this.executor, query);
+    }
 }
@@ -21,13 +21,19 @@
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.inject.Singleton;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
@@ -35,7 +41,8 @@
 import org.xwiki.context.Execution;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -54,8 +61,13 @@
 @Component
 @Named("hql")
 @Singleton
-public class HqlQueryExecutor implements QueryExecutor, Initializable
+public class HqlQueryExecutor implements StreamingQueryExecutor, Initializable
 {
+    /**
+     * Number of rows fetched at once from the database when iterating over the results of a query.
+     */
+    private static final int ITERATION_FETCH_SIZE = 100;
+
     /**
      * Session factory needed for register named queries mapping.
      */
@@ -67,6 +79,12 @@ public class HqlQueryExecutor implements QueryExecutor, Initializable
      */
     private String mappingPath = "queries.hbm.xml";
 
+    /**
+     * The statements of the named queries, indexed by name. Used to apply the query filters without asking Hibernate to
+     * prepare the named query first.
+     */
+    private final Map<String, String> namedQueryStatements = new ConcurrentHashMap<String, String>();
+
     /**
      * Used for access to XWikiContext.
      */
@@ -103,7 +121,7 @@ public List<T> doInHibernate(Session session)
                     populateParameters(hquery, query);
 
                     List results = hquery.list();
-                    if (query.getFilters() != null && !query.getFilters().isEmpty()) {
+                    if (hasFilters(query)) {
                         for (QueryFilter filter : query.getFilters()) {
                             results = filter.filterResults(results);
                         }
@@ -118,6 +136,45 @@ public List<T> doInHibernate(Session session)
         }
     }
 
+    @Override
+    public <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        XWikiContext context = getContext();
+        XWikiHibernateStore store = getStore();
+        String oldDatabase = context.getDatabase();
+        StatelessSession session = null;
+        try {
+            if (query.getWiki() != null) {
+                context.setDatabase(query.getWiki());
+            }
+
+            // The results are scrolled in a dedicated session, which is never put in the context: documents saved
+            // while iterating are saved in their own transaction and the scrolled entities are not cached.
+            store.checkHibernate(context);
+            session = store.openStatelessSession(context);
+            Transaction transaction = session.beginTransaction();
+
+            org.hibernate.Query hquery = createHibernateQuery(session, query);
+            populateParameters(hquery, query);
+            hquery.setFetchSize(ITERATION_FETCH_SIZE);
+            ScrollableResults results = hquery.scroll(ScrollMode.FORWARD_ONLY);
+
+            // The session opened here is closed by the iterator once all the results have been read
+            QueryIterator<T> iterator =
+                new ScrollableQueryIterator<T>(results, query.getFilters(), session, transaction);
+            session = null;
+
+            return iterator;
+        } catch (Exception e) {
+            throw new QueryException("Exception while execute query", query, e);
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+            context.setDatabase(oldDatabase);
+        }
+    }
+
     /**
      * Append the required select clause to HQL short query statements. Short statements are the only way for users
      * without programming rights to perform queries. Such statements can be for example:
@@ -146,36 +203,74 @@ protected String completeShortFormStatement(String statement)
      */
     protected org.hibernate.Query createHibernateQuery(Session session, Query query)
     {
-        org.hibernate.Query hquery;
-        String statement = query.getStatement();
+        if (query.isNamed()) {
+            if (!hasFilters(query)) {
+                return session.getNamedQuery(query.getStatement());
+            }
+            if (!this.namedQueryStatements.containsKey(query.getStatement())) {
+                this.namedQueryStatements.put(query.getStatement(), session.getNamedQuery(query.getStatement())
+                    .getQueryString());
+            }
+        }
 
-        if (!query.isNamed()) {
-            // handle short queries
-            statement = completeShortFormStatement(statement);
+        return session.createQuery(getStatement(query));
+    }
 
-            // Handle query filters
-            if (query.getFilters() != null) {
-                for (QueryFilter filter : query.getFilters()) {
-                    statement = filter.filterStatement(statement, Query.HQL);
-                }
+    /**
+     * @param session stateless hibernate session
+     * @param query Query object
+     * @return hibernate query
+     */
+    protected org.hibernate.Query createHibernateQuery(StatelessSession session, Query query)
+    {
+        if (query.isNamed()) {
+            if (!hasFilters(query)) {
+                return session.getNamedQuery(query.getStatement());
+            }
+            if (!this.namedQueryStatements.containsKey(query.getStatement())) {
+                this.namedQueryStatements.put(query.getStatement(), session.getNamedQuery(query.getStatement())
+                    .getQueryString());
             }
-            hquery = session.createQuery(statement);
+        }
+
+        return session.createQuery(getStatement(query));
+    }
+
+    /**
+     * @param query Query object
+     * @return the HQL statement of the query, transformed by the query filters
+     */
+    private String getStatement(Query query)
+    {
+        String statement;
+        if (query.isNamed()) {
+            // Since we can't modify the hibernate query statement of a named query we need to create a new one to
+            // apply the query filters. This comes with a performance cost, we could fix it by handling named queries
+            // ourselves and not delegate them to hibernate. This way we would always get a statement that we can
+            // transform before the execution.
+            statement = this.namedQueryStatements.get(query.getStatement());
         } else {
-            hquery = session.getNamedQuery(query.getStatement());
-            if (query.getFilters() != null && !query.getFilters().isEmpty()) {
-                // Since we can't modify the hibernate query statement at this point we need to create a new one to
-                // apply the query filter. This comes with a performance cost, we could fix it by handling named queries
-                // ourselves and not delegate them to hibernate. This way we would always get a statement that we can
-                // transform before the execution.
-                statement = hquery.getQueryString();
-                for (QueryFilter filter : query.getFilters()) {
-                    statement = filter.filterStatement(statement, Query.HQL);
-                }
-                hquery = session.createQuery(statement);
+            // handle short queries
+            statement = completeShortFormStatement(query.getStatement());
+        }
+
+        // Handle query filters
+        if (query.getFilters() != null) {
+            for (QueryFilter filter : query.getFilters()) {
+                statement = filter.filterStatement(statement, Query.HQL);
             }
         }
 
-        return hquery;
+        return statement;
+    }
+
+    /**
+     * @param query Query object
+     * @return true if the query has filters
+     */
+    private boolean hasFilters(Query query)
+    {
+        return query.getFilters() != null && !query.getFilters().isEmpty();
     }
 
     /**
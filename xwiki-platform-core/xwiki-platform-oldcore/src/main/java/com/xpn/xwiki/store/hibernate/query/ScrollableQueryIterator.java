@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.store.hibernate.query;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
+
+/**
+ * {@link QueryIterator} fetching the results of a Hibernate query while they are iterated. The query filters are
+ * applied on each result when it's fetched. The query is executed in a dedicated stateless session, closed with the
+ * iterator, so that it doesn't interfere with the transaction of the current context.
+ * 
+ * @param <T> expected type of elements in the result
+ * @version $Id$
+ * @since 5.2M1
+ */
+class ScrollableQueryIterator<T> implements QueryIterator<T>
+{
+    /**
+     * The results of the query.
+     */
+    private final ScrollableResults results;
+
+    /**
+     * The filters to apply on each result.
+     */
+    private final List<QueryFilter> filters;
+
+    /**
+     * The session in which the query is executed.
+     */
+    private final StatelessSession session;
+
+    /**
+     * The read-only transaction in which the query is executed.
+     */
+    private final Transaction transaction;
+
+    /**
+     * The filtered results fetched but not yet returned.
+     */
+    private final LinkedList<T> pending = new LinkedList<T>();
+
+    /**
+     * True when the results and the session have been released.
+     */
+    private boolean closed;
+
+    /**
+     * @param results the results of the query
+     * @param filters the filters to apply on each result, can be null
+     * @param session the session in which the query is executed, closed with the iterator
+     * @param transaction the transaction in which the query is executed, ended with the iterator
+     */
+    ScrollableQueryIterator(ScrollableResults results, List<QueryFilter> filters, StatelessSession session,
+        Transaction transaction)
+    {
+        this.results = results;
+        this.filters = filters;
+        this.session = session;
+        this.transaction = transaction;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean hasNext()
+    {
+        while (this.pending.isEmpty() && !this.closed) {
+            if (this.results.next()) {
+                // Same as Query#list(), which returns the selected field instead of an array when there is only one
+                Object[] row = this.results.get();
+                List filteredResults = Collections.singletonList(row.length == 1 ? row[0] : row);
+                if (this.filters != null) {
+                    for (QueryFilter filter : this.filters) {
+                        filteredResults = filter.filterResults(filteredResults);
+                    }
+                }
+                this.pending.addAll(filteredResults);
+            } else {
+                close();
+            }
+        }
+
+        return !this.pending.isEmpty();
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this.pending.removeFirst();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close()
+    {
+        if (!this.closed) {
+            this.closed = true;
+            try {
+                this.results.close();
+            } finally {
+                try {
+                    // Nothing has been written in this session
+                    this.transaction.rollback();
+                } finally {
+                    this.session.close();
+                }
+            }
+        }
+    }
+}
@@ -84,6 +84,18 @@ public class MyPersistentLoginManager extends DefaultPersistentLoginManager
     /** For performance, cache the often used epoch date which forces a cookie to be removed. */
     private static final String COOKIE_EXPIRE_NOW = COOKIE_EXPIRE_FORMAT.format(new Date(0));
 
+    /**
+     * The ciphers used to encrypt the cookie values, one per thread since {@link Cipher} is not thread safe and costly
+     * to create.
+     */
+    private final ThreadLocal<CipherHolder> encryptCiphers = new ThreadLocal<CipherHolder>();
+
+    /**
+     * The ciphers used to decrypt the cookie values, one per thread since {@link Cipher} is not thread safe and costly
+     * to create.
+     */
+    private final ThreadLocal<CipherHolder> decryptCiphers = new ThreadLocal<CipherHolder>();
+
     /**
      * The domain generalization for which the cookies are active. Configured by the xwiki.authentication.cookiedomains
      * parameter. If a request comes from a host not in this list, then the cookie is valid only for the requested
@@ -385,14 +397,12 @@ private String getValidationHash(String username, String password, String client
      * 
      * @param clearText The text to be encrypted.
      * @return clearText, encrypted.
-     * @todo Optimize this code by creating the Cipher only once.
      */
     public String encryptText(String clearText)
     {
         try {
-            Cipher c1 = Cipher.getInstance(this.cipherParameters);
             if (this.secretKey != null) {
-                c1.init(Cipher.ENCRYPT_MODE, this.secretKey);
+                Cipher c1 = getCipher(this.encryptCiphers, Cipher.ENCRYPT_MODE);
                 byte[] clearTextBytes;
                 clearTextBytes = clearText.getBytes();
                 byte[] encryptedText = c1.doFinal(clearTextBytes);
@@ -547,17 +557,7 @@ private boolean checkValidation(HttpServletRequest request, HttpServletResponse
     @Override
     public String getRememberedUsername(HttpServletRequest request, HttpServletResponse response)
     {
-        String username = getCookieValue(request.getCookies(), getCookiePrefix() + COOKIE_USERNAME, DEFAULT_VALUE);
-
-        if (!username.equals(DEFAULT_VALUE)) {
-            if (checkValidation(request, response)) {
-                if (this.protection.equals(PROTECTION_ALL) || this.protection.equals(PROTECTION_ENCRYPTION)) {
-                    username = decryptText(username);
-                }
-                return username;
-            }
-        }
-        return null;
+        return getRememberedValue(request, response, COOKIE_USERNAME);
     }
 
     /**
@@ -571,18 +571,52 @@ public String getRememberedUsername(HttpServletRequest request, HttpServletRespo
     @Override
     public String getRememberedPassword(HttpServletRequest request, HttpServletResponse response)
     {
-        String password = getCookieValue(request.getCookies(), getCookiePrefix() + COOKIE_PASSWORD, DEFAULT_VALUE);
-        if (!password.equals(DEFAULT_VALUE)) {
+        return getRememberedValue(request, response, COOKIE_PASSWORD);
+    }
+
+    /**
+     * Get a value stored (in a cookie) in the request. Also checks the validity of the cookie.
+     * 
+     * @param request The servlet request.
+     * @param response The servlet response.
+     * @param cookieName The name of the cookie holding the value, without the prefix.
+     * @return The decrypted value, or <tt>null</tt> if not found or the cookie isn't valid.
+     */
+    private String getRememberedValue(HttpServletRequest request, HttpServletResponse response, String cookieName)
+    {
+        String value = getCookieValue(request.getCookies(), getCookiePrefix() + cookieName, DEFAULT_VALUE);
+        if (!value.equals(DEFAULT_VALUE)) {
             if (checkValidation(request, response)) {
                 if (this.protection.equals(PROTECTION_ALL) || this.protection.equals(PROTECTION_ENCRYPTION)) {
-                    password = decryptText(password);
+                    value = decryptText(value);
                 }
-                return password;
+                return value;
             }
         }
         return null;
     }
 
+    /**
+     * Get the cipher of the current thread for the passed mode, initialized with the current secret key.
+     * 
+     * @param ciphers The ciphers of the passed mode.
+     * @param mode The cipher mode ({@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}).
+     * @return The initialized cipher.
+     * @throws Exception if the cipher cannot be created or initialized.
+     */
+    private Cipher getCipher(ThreadLocal<CipherHolder> ciphers, int mode) throws Exception
+    {
+        CipherHolder holder = ciphers.get();
+        if (holder == null || !holder.parameters.equals(this.cipherParameters)) {
+            holder = new CipherHolder(Cipher.getInstance(this.cipherParameters), this.cipherParameters);
+            ciphers.set(holder);
+        }
+        // Re-initializing an existing cipher is much cheaper than creating a new one, and guarantees a clean state
+        holder.cipher.init(mode, this.secretKey);
+
+        return holder.cipher;
+    }
+
     @Override
     public boolean rememberingLogin(HttpServletRequest request)
     {
@@ -609,8 +643,7 @@ private String decryptText(String encryptedText)
             // See XWIKI-2211
             byte[] decodedEncryptedText =
                 Base64.decodeBase64(encryptedText.replaceAll("_", "=").getBytes("ISO-8859-1"));
-            Cipher c1 = Cipher.getInstance(this.cipherParameters);
-            c1.init(Cipher.DECRYPT_MODE, this.secretKey);
+            Cipher c1 = getCipher(this.decryptCiphers, Cipher.DECRYPT_MODE);
             byte[] decryptedText = c1.doFinal(decodedEncryptedText);
             String decryptedTextString = new String(decryptedText);
             return decryptedTextString;
@@ -660,4 +693,30 @@ public String getCookiePrefix()
     {
         return this.cookiePrefix;
     }
+
+    /**
+     * A cipher and the parameters it was created with.
+     */
+    private static final class CipherHolder
+    {
+        /**
+         * The cipher.
+         */
+        private final Cipher cipher;
+
+        /**
+         * The parameters used to create the cipher.
+         */
+        private final String parameters;
+
+        /**
+         * @param cipher The cipher.
+         * @param parameters The parameters used to create the cipher.
+         */
+        CipherHolder(Cipher cipher, String parameters)
+        {
+            this.cipher = cipher;
+            this.parameters = parameters;
+        }
+    }
 }
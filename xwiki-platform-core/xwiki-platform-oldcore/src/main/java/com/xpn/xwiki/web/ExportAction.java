@@ -19,18 +19,33 @@
  */
 package com.xpn.xwiki.web;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
+import javax.servlet.http.HttpServletResponse;
+
+import net.sf.json.JSONObject;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.export.html.HtmlPackager;
+import com.xpn.xwiki.internal.export.ExportJob;
+import com.xpn.xwiki.internal.export.ExportJobManager;
+import com.xpn.xwiki.internal.export.ExportRequest;
 import com.xpn.xwiki.internal.export.OfficeExporter;
 import com.xpn.xwiki.internal.export.OfficeExporterURLFactory;
 import com.xpn.xwiki.pdf.api.PdfExport;
@@ -42,11 +57,26 @@
 
 /**
  * Exports in XAR, PDF, RTF or HTML formats.
+ * <p>
+ * PDF, RTF, office and HTML exports can also run in the background by passing {@code async=true}: the request only
+ * starts an export job and returns its id, whose status can then be polled and whose result can be downloaded by
+ * passing the {@code jobId} parameter.
  * 
  * @version $Id$
  */
 public class ExportAction extends XWikiAction
 {
+    /**
+     * The name of the request parameter holding the id of a background export.
+     */
+    private static final String JOBID_PARAMETER = "jobId";
+
+    /**
+     * The request parameters used by the export templates, which are passed to the background exports.
+     */
+    private static final String[] EXPORT_PARAMETERS = {"attachments", "comments", "includechilds", "includelinks",
+        "language", "pagebreaks", "pages", "pdfcover", "pdftemplate", "pdftoc"};
+
     @Override
     public String render(XWikiContext context) throws XWikiException
     {
@@ -56,7 +86,11 @@ public String render(XWikiContext context) throws XWikiException
             XWikiRequest request = context.getRequest();
             String format = request.get("format");
 
-            if ((format == null) || (format.equals("xar"))) {
+            if (request.get(JOBID_PARAMETER) != null) {
+                defaultPage = getExportJobResult(request.get(JOBID_PARAMETER), context);
+            } else if (format != null && !format.equals("xar") && "true".equals(request.get("async"))) {
+                defaultPage = startExportJob(format, context);
+            } else if ((format == null) || (format.equals("xar"))) {
                 defaultPage = exportXAR(context);
             } else if (format.equals("html")) {
                 defaultPage = exportHTML(context);
@@ -88,71 +122,16 @@ private String exportHTML(XWikiContext context) throws XWikiException, IOExcepti
         String name = request.get("name");
         String[] pages = request.getParameterValues("pages");
 
-        List<String> pageList = new ArrayList<String>();
+        List<String> pageList;
         if (pages == null || pages.length == 0) {
+            pageList = new ArrayList<String>();
             pageList.add(context.getDoc().getFullName());
 
             if (StringUtils.isBlank(name)) {
                 name = context.getDoc().getFullName();
             }
         } else {
-            Map<String, Object[]> wikiQueries = new HashMap<String, Object[]>();
-            for (int i = 0; i < pages.length; ++i) {
-                String pattern = pages[i];
-
-                String wikiName;
-                if (pattern.contains(":")) {
-                    int index = pattern.indexOf(':');
-                    wikiName = pattern.substring(0, index);
-                    pattern = pattern.substring(index + 1);
-                } else {
-                    wikiName = context.getDatabase();
-                }
-
-                StringBuffer where;
-                List<String> params;
-
-                if (!wikiQueries.containsKey(wikiName)) {
-                    Object[] query = new Object[2];
-                    query[0] = where = new StringBuffer("where ");
-                    query[1] = params = new ArrayList<String>();
-                    wikiQueries.put(wikiName, query);
-                } else {
-                    Object[] query = wikiQueries.get(wikiName);
-                    where = (StringBuffer) query[0];
-                    params = (List<String>) query[1];
-                }
-
-                if (i > 0) {
-                    where.append(" or ");
-                }
-
-                where.append("doc.fullName like ?");
-                params.add(pattern);
-            }
-
-            String database = context.getDatabase();
-            try {
-                for (Map.Entry<String, Object[]> entry : wikiQueries.entrySet()) {
-                    String wikiName = entry.getKey();
-                    Object[] query = entry.getValue();
-                    String where = ((StringBuffer) query[0]).toString();
-                    @SuppressWarnings("unchecked")
-                    List<String> params = (List<String>) query[1];
-
-                    context.setDatabase(wikiName);
-                    List<String> docsNames = context.getWiki().getStore().searchDocumentsNames(where, params, context);
-                    for (String docName : docsNames) {
-                        String pageReference = wikiName + XWikiDocument.DB_SPACE_SEP + docName;
-                        if (context.getWiki().getRightService()
-                            .hasAccessLevel("view", context.getUser(), pageReference, context)) {
-                            pageList.add(pageReference);
-                        }
-                    }
-                }
-            } finally {
-                context.setDatabase(database);
-            }
+            pageList = resolvePages(pages, context);
         }
 
         if (pageList.size() == 0) {
@@ -176,6 +155,80 @@ private String exportHTML(XWikiContext context) throws XWikiException, IOExcepti
         return null;
     }
 
+    /**
+     * Resolve the page patterns passed to the export to the names of the matching documents the current user is
+     * allowed to view.
+     * 
+     * @param pages the page patterns, optionally prefixed by the wiki name (e.g. {@code xwiki:Main.%})
+     * @param context the XWiki context
+     * @return the full names, prefixed by the wiki name, of the matching documents
+     * @throws XWikiException when failing to search the documents
+     */
+    private List<String> resolvePages(String[] pages, XWikiContext context) throws XWikiException
+    {
+        List<String> pageList = new ArrayList<String>();
+
+        Map<String, Object[]> wikiQueries = new HashMap<String, Object[]>();
+        for (int i = 0; i < pages.length; ++i) {
+            String pattern = pages[i];
+
+            String wikiName;
+            if (pattern.contains(":")) {
+                int index = pattern.indexOf(':');
+                wikiName = pattern.substring(0, index);
+                pattern = pattern.substring(index + 1);
+            } else {
+                wikiName = context.getDatabase();
+            }
+
+            StringBuffer where;
+            List<String> params;
+
+            if (!wikiQueries.containsKey(wikiName)) {
+                Object[] query = new Object[2];
+                query[0] = where = new StringBuffer("where ");
+                query[1] = params = new ArrayList<String>();
+                wikiQueries.put(wikiName, query);
+            } else {
+                Object[] query = wikiQueries.get(wikiName);
+                where = (StringBuffer) query[0];
+                params = (List<String>) query[1];
+            }
+
+            if (i > 0) {
+                where.append(" or ");
+            }
+
+            where.append("doc.fullName like ?");
+            params.add(pattern);
+        }
+
+        String database = context.getDatabase();
+        try {
+            for (Map.Entry<String, Object[]> entry : wikiQueries.entrySet()) {
+                String wikiName = entry.getKey();
+                Object[] query = entry.getValue();
+                String where = ((StringBuffer) query[0]).toString();
+                @SuppressWarnings("unchecked")
+                List<String> params = (List<String>) query[1];
+
+                context.setDatabase(wikiName);
+                List<String> docsNames = context.getWiki().getStore().searchDocumentsNames(where, params, context);
+                for (String docName : docsNames) {
+                    String pageReference = wikiName + XWikiDocument.DB_SPACE_SEP + docName;
+                    if (context.getWiki().getRightService()
+                        .hasAccessLevel("view", context.getUser(), pageReference, context)) {
+                        pageList.add(pageReference);
+                    }
+                }
+            }
+        } finally {
+            context.setDatabase(database);
+        }
+
+        return pageList;
+    }
+
     private String export(String format, XWikiContext context) throws XWikiException, IOException
     {
         // We currently use the PDF export infrastructure but we have to redesign the export code.
@@ -210,6 +263,133 @@ private String export(String format, XWikiContext context) throws XWikiException
         return null;
     }
 
+    /**
+     * Start a background export job for the requested pages and return its id, along with the URL to poll to get its
+     * status and download its result.
+     * 
+     * @param format the export format
+     * @param context the XWiki context
+     * @return always return null
+     * @throws Exception when failing to start the export job
+     */
+    private String startExportJob(String format, XWikiContext context) throws Exception
+    {
+        XWikiRequest request = context.getRequest();
+        XWikiDocument doc = context.getDoc();
+
+        String name = request.get("name");
+        String[] pages = request.getParameterValues("pages");
+
+        List<DocumentReference> documents = new ArrayList<DocumentReference>();
+        if (pages == null || pages.length == 0) {
+            documents.add(doc.getDocumentReference());
+        } else {
+            DocumentReferenceResolver<String> resolver =
+                Utils.getComponent(DocumentReferenceResolver.TYPE_STRING, "current");
+            for (String page : resolvePages(pages, context)) {
+                documents.add(resolver.resolve(page));
+            }
+        }
+        if (documents.isEmpty()) {
+            return null;
+        }
+        if (StringUtils.isBlank(name)) {
+            name = documents.size() == 1 ? documents.get(0).getName() : ExportJob.JOBTYPE;
+        }
+
+        // Keep only the parameters used by the export templates, since the request is stored with the job status
+        Map<String, String[]> parameters = new HashMap<String, String[]>();
+        for (String parameter : EXPORT_PARAMETERS) {
+            String[] values = request.getParameterValues(parameter);
+            if (values != null) {
+                parameters.put(parameter, values);
+            }
+        }
+
+        ExportRequest exportRequest = new ExportRequest();
+        String id = UUID.randomUUID().toString();
+        exportRequest.setId(Arrays.asList(ExportJob.JOBTYPE, id));
+        exportRequest.setDocuments(documents);
+        exportRequest.setFormat(format);
+        exportRequest.setName(name);
+        exportRequest.setDescription(request.get("description"));
+        exportRequest.setUserReference(context.getUserReference());
+        exportRequest.setParameters(parameters);
+
+        Utils.getComponent(ExportJobManager.class).startExport(exportRequest);
+
+        JSONObject json = new JSONObject();
+        json.put(JOBID_PARAMETER, id);
+        json.put("url", doc.getURL(ExportJob.JOBTYPE, JOBID_PARAMETER + '=' + id, context));
+        writeJSON(json, context);
+
+        return null;
+    }
+
+    /**
+     * Send the result of a background export job if it's finished, its status otherwise.
+     * 
+     * @param id the id of the export job
+     * @param context the XWiki context
+     * @return always return null
+     * @throws Exception when failing to send the result of the export job
+     */
+    private String getExportJobResult(String id, XWikiContext context) throws Exception
+    {
+        List<String> jobId = Arrays.asList(ExportJob.JOBTYPE, id);
+        ExportJobManager exportJobManager = Utils.getComponent(ExportJobManager.class);
+
+        // Only the user who started the export is allowed to see it
+        XWikiResponse response = context.getResponse();
+        if (!exportJobManager.isAccessible(jobId)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return null;
+        }
+
+        JobStatus jobStatus = exportJobManager.getExportStatus(jobId);
+        if (jobStatus != null && jobStatus.getState() == JobStatus.State.FINISHED) {
+            File file = ExportJob.getOutputFile(Utils.getComponent(Environment.class), jobId);
+            if (file == null) {
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "The export failed");
+            } else {
+                response.setContentType(context.getEngineContext().getMimeType(file.getName()));
+                response.addHeader("Content-disposition",
+                    String.format("attachment; filename=%s", Util.encodeURI(file.getName(), context)));
+                if (file.length() <= Integer.MAX_VALUE) {
+                    response.setContentLength((int) file.length());
+                }
+                FileUtils.copyFile(file, response.getOutputStream());
+            }
+        } else {
+            JSONObject json = new JSONObject();
+            json.put(JOBID_PARAMETER, id);
+            if (jobStatus == null) {
+                // The export is waiting for a free export thread
+                json.put("state", "WAITING");
+                json.put("progress", 0);
+            } else {
+                json.put("state", jobStatus.getState().name());
+                json.put("progress", jobStatus.getProgress().getOffset());
+            }
+            writeJSON(json, context);
+        }
+
+        return null;
+    }
+
+    /**
+     * @param json the JSON object to send
+     * @param context the XWiki context
+     * @throws IOException when failing to write the response
+     */
+    private void writeJSON(JSONObject json, XWikiContext context) throws IOException
+    {
+        XWikiResponse response = context.getResponse();
+        response.setContentType("application/json");
+        response.setCharacterEncoding(context.getWiki().getEncoding());
+        response.getWriter().print(json.toString());
+    }
+
     private String exportXAR(XWikiContext context) throws XWikiException, IOException
     {
         XWikiRequest request = context.getRequest();
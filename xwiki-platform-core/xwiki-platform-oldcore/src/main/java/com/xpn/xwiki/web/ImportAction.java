@@ -61,84 +61,89 @@ public String render(XWikiContext context) throws XWikiException
 
             PackageAPI importer = ((PackageAPI) context.getWiki().getPluginApi("package", context));
 
-            if ("getPackageInfos".equals(action)) {
-                // List the documents present in the selected archive
-                String encoding = context.getWiki().getEncoding();
-                response.setContentType("text/xml");
-                response.setCharacterEncoding(encoding);
-                XWikiAttachment packFile = doc.getAttachment(name);
-                importer.Import(packFile.getContentInputStream(context));
-                String xml = importer.toXml();
-                byte[] result = xml.getBytes(encoding);
-                response.setContentLength(result.length);
-                response.getOutputStream().write(result);
-                return null;
-            } else if ("import".equals(action)) {
-                // Do the actual import
-                XWikiAttachment packFile = doc.getAttachment(name);
-                importer.Import(packFile.getContentInputStream(context));
-                String all = request.get("all");
-                if (!"1".equals(all)) {
-                    if (pages != null) {
-                        List<DocumentInfoAPI> filelist = importer.getFiles();
-                        for (DocumentInfoAPI dia : filelist) {
-                            dia.setAction(DocumentInfo.ACTION_SKIP);
-                        }
-
-                        for (String pageName : pages) {
-                            String language = Util.normalizeLanguage(request.get("language_" + pageName));
-                            String actionName = "action_" + pageName;
-                            if (!StringUtils.isBlank(language)) {
-                                actionName += ("_" + language);
+            try {
+                if ("getPackageInfos".equals(action)) {
+                    // List the documents present in the selected archive
+                    String encoding = context.getWiki().getEncoding();
+                    response.setContentType("text/xml");
+                    response.setCharacterEncoding(encoding);
+                    XWikiAttachment packFile = doc.getAttachment(name);
+                    importer.Import(packFile.getContentInputStream(context));
+                    String xml = importer.toXml();
+                    byte[] result = xml.getBytes(encoding);
+                    response.setContentLength(result.length);
+                    response.getOutputStream().write(result);
+                    return null;
+                } else if ("import".equals(action)) {
+                    // Do the actual import
+                    XWikiAttachment packFile = doc.getAttachment(name);
+                    importer.Import(packFile.getContentInputStream(context));
+                    String all = request.get("all");
+                    if (!"1".equals(all)) {
+                        if (pages != null) {
+                            List<DocumentInfoAPI> filelist = importer.getFiles();
+                            for (DocumentInfoAPI dia : filelist) {
+                                dia.setAction(DocumentInfo.ACTION_SKIP);
                             }
-                            String defaultAction = request.get(actionName);
-                            int iAction;
-                            if (StringUtils.isBlank(defaultAction)) {
-                                iAction = DocumentInfo.ACTION_OVERWRITE;
-                            } else {
-                                try {
-                                    iAction = Integer.parseInt(defaultAction);
-                                } catch (Exception e) {
-                                    iAction = DocumentInfo.ACTION_SKIP;
+
+                            for (String pageName : pages) {
+                                String language = Util.normalizeLanguage(request.get("language_" + pageName));
+                                String actionName = "action_" + pageName;
+                                if (!StringUtils.isBlank(language)) {
+                                    actionName += ("_" + language);
+                                }
+                                String defaultAction = request.get(actionName);
+                                int iAction;
+                                if (StringUtils.isBlank(defaultAction)) {
+                                    iAction = DocumentInfo.ACTION_OVERWRITE;
+                                } else {
+                                    try {
+                                        iAction = Integer.parseInt(defaultAction);
+                                    } catch (Exception e) {
+                                        iAction = DocumentInfo.ACTION_SKIP;
+                                    }
                                 }
-                            }
 
-                            String docName = pageName.replaceAll(":[^:]*$", "");
-                            if (language == null) {
-                                importer.setDocumentAction(docName, iAction);
-                            } else {
-                                importer.setDocumentAction(docName, language, iAction);
+                                String docName = pageName.replaceAll(":[^:]*$", "");
+                                if (language == null) {
+                                    importer.setDocumentAction(docName, iAction);
+                                } else {
+                                    importer.setDocumentAction(docName, language, iAction);
+                                }
                             }
                         }
-                    }
-                    // Set the appropriate strategy to handle versions
-                    if (StringUtils.equals(request.getParameter("historyStrategy"), "reset")) {
-                        importer.setPreserveVersion(false);
-                        importer.setWithVersions(false);
-                    } else if (StringUtils.equals(request.getParameter("historyStrategy"), "replace")) {
-                        importer.setPreserveVersion(false);
-                        importer.setWithVersions(true);
-                    } else {
-                        importer.setPreserveVersion(true);
-                        importer.setWithVersions(false);
-                    }
-                    // Set the backup pack option
-                    if (StringUtils.equals(request.getParameter("importAsBackup"), "true")) {
-                        importer.setBackupPack(true);
-                    } else {
-                        importer.setBackupPack(false);
-                    }
-                    // Import files
-                    importer.install();
-                    if (!StringUtils.isBlank(request.getParameter("ajax"))) {
-                        // If the import is done from an AJAX request we don't want to return a whole HTML page,
-                        // instead we return "inline" the list of imported documents,
-                        // evaluating imported.vm template.
-                        return "imported";
-                    } else {
-                        return "admin";
+                        // Set the appropriate strategy to handle versions
+                        if (StringUtils.equals(request.getParameter("historyStrategy"), "reset")) {
+                            importer.setPreserveVersion(false);
+                            importer.setWithVersions(false);
+                        } else if (StringUtils.equals(request.getParameter("historyStrategy"), "replace")) {
+                            importer.setPreserveVersion(false);
+                            importer.setWithVersions(true);
+                        } else {
+                            importer.setPreserveVersion(true);
+                            importer.setWithVersions(false);
+                        }
+                        // Set the backup pack option
+                        if (StringUtils.equals(request.getParameter("importAsBackup"), "true")) {
+                            importer.setBackupPack(true);
+                        } else {
+                            importer.setBackupPack(false);
+                        }
+                        // Import files
+                        importer.install();
+                        if (!StringUtils.isBlank(request.getParameter("ajax"))) {
+                            // If the import is done from an AJAX request we don't want to return a whole HTML page,
+                            // instead we return "inline" the list of imported documents,
+                            // evaluating imported.vm template.
+                            return "imported";
+                        } else {
+                            return "admin";
+                        }
                     }
                 }
+            } finally {
+                // Delete the temporary copy of the package
+                importer.dispose();
             }
         } catch (Exception e) {
             throw new XWikiException(XWikiException.MODULE_XWIKI_APP, XWikiException.ERROR_XWIKI_APP_EXPORT,
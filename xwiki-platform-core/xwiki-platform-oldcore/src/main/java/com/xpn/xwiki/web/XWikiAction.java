@@ -56,6 +56,7 @@
 import com.xpn.xwiki.monitor.api.MonitorPlugin;
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.plugin.fileupload.FileUploadPlugin;
+import com.xpn.xwiki.plugin.packaging.Package;
 
 /**
  * <p>
@@ -404,6 +405,9 @@ public ActionForward execute(XWikiContext context) throws Exception
                 if (fileupload != null) {
                     fileupload.cleanFileList(context);
                 }
+
+                // Delete the temporary copies of the packages imported but neither installed nor disposed
+                Package.disposeImportedPackages(context);
             }
         }
     }
@@ -23,6 +23,7 @@
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.Principal;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Map;
@@ -51,11 +52,24 @@ public XWikiServletRequestStub()
 
     private String host;
 
+    /** The request parameters, {@code null} if no parameters have been set. */
+    private Map<String, String[]> parameters;
+
     public void setHost(String host)
     {
         this.host = host;
     }
 
+    /**
+     * @param parameters the request parameters to simulate, e.g. copied from the request which started a background
+     *            task
+     * @since 5.2M1
+     */
+    public void setRequestParameters(Map<String, String[]> parameters)
+    {
+        this.parameters = parameters;
+    }
+
     @Override
     public String getHeader(String s)
     {
@@ -68,7 +82,8 @@ public String getHeader(String s)
     @Override
     public String get(String name)
     {
-        return "";
+        String value = getParameter(name);
+        return value != null ? value : "";
     }
 
     @Override
@@ -276,25 +291,27 @@ public ServletInputStream getInputStream() throws IOException
     @Override
     public String getParameter(String s)
     {
-        return null;
+        String[] values = getParameterValues(s);
+        return values.length > 0 ? values[0] : null;
     }
 
     @Override
     public Enumeration getParameterNames()
     {
-        return null;
+        return this.parameters != null ? Collections.enumeration(this.parameters.keySet()) : null;
     }
 
     @Override
     public String[] getParameterValues(String s)
     {
-        return new String[0];
+        String[] values = this.parameters != null ? this.parameters.get(s) : null;
+        return values != null ? values : new String[0];
     }
 
     @Override
     public Map getParameterMap()
     {
-        return null;
+        return this.parameters;
     }
 
     @Override
@@ -96,6 +96,30 @@ public void testSetContentViaOutputStream() throws Exception
         assertTrue(xac.isContentDirty());
     }
 
+    /**
+     * Serialize an attachment bigger than the buffer used to decode its base 64 content, parse it back and make sure
+     * the content is the same.
+     */
+    @Test
+    public void testBase64ContentRoundTrip() throws Exception
+    {
+        int attachLength = 20000;
+        int seed = (int) System.currentTimeMillis();
+        final XWikiAttachment attach = new XWikiAttachment();
+        attach.setFilename("file.bin");
+        attach.setAuthor("xwiki:XWiki.Admin");
+        attach.setComment("");
+        attach.setContent(new RandomInputStream(attachLength, seed));
+
+        final XWikiAttachment parsed = new XWikiAttachment();
+        parsed.fromXML(attach.toStringXML(true, false, getContext()));
+
+        assertEquals(attachLength, parsed.getFilesize());
+        assertTrue(IOUtils.contentEquals(new RandomInputStream(attachLength, seed),
+            parsed.getAttachment_content().getContentInputStream()));
+        assertTrue(parsed.isContentDirty());
+    }
+
     /**
      * Unit test for <a href="http://jira.xwiki.org/browse/XWIKI-9075">XWIKI-9075</a> to prove that calling
      * {@code fromXML} doesn't set the metadata dirty flag.
@@ -0,0 +1,181 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.inject.Provider;
+import javax.servlet.http.HttpSession;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+import org.xwiki.job.event.status.JobStatus;
+import org.xwiki.job.internal.JobStatusStorage;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.XWikiRequest;
+
+/**
+ * Unit tests for {@link DefaultExportJobManager}.
+ * 
+ * @version $Id$
+ */
+public class DefaultExportJobManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<ExportJobManager> mocker =
+        new MockitoComponentMockingRule<ExportJobManager>(DefaultExportJobManager.class);
+
+    private final List<String> id = Arrays.asList(ExportJob.JOBTYPE, "abc");
+
+    private XWikiContext xcontext;
+
+    private XWikiRequest request;
+
+    private JobStatusStorage storage;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.xcontext = mock(XWikiContext.class);
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+
+        this.request = mock(XWikiRequest.class);
+        when(this.xcontext.getRequest()).thenReturn(this.request);
+
+        this.storage = this.mocker.getInstance(JobStatusStorage.class);
+    }
+
+    private void storeExport(DocumentReference userReference)
+    {
+        ExportRequest exportRequest = new ExportRequest();
+        exportRequest.setId(this.id);
+        exportRequest.setUserReference(userReference);
+
+        JobStatus status = mock(JobStatus.class);
+        when(status.getRequest()).thenReturn(exportRequest);
+        when(this.storage.getJobStatus(this.id)).thenReturn(status);
+    }
+
+    @Test
+    public void isAccessibleToOwner() throws Exception
+    {
+        DocumentReference alice = new DocumentReference("wiki", "XWiki", "Alice");
+        storeExport(alice);
+        when(this.xcontext.getUserReference()).thenReturn(alice);
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().isAccessible(this.id));
+    }
+
+    @Test
+    public void isNotAccessibleToOtherUsers() throws Exception
+    {
+        storeExport(new DocumentReference("wiki", "XWiki", "Alice"));
+        when(this.xcontext.getUserReference()).thenReturn(new DocumentReference("wiki", "XWiki", "Bob"));
+
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(this.id));
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(Arrays.asList(ExportJob.JOBTYPE, "x")));
+    }
+
+    @Test
+    public void isNotAccessibleToGuestsForUserExports() throws Exception
+    {
+        storeExport(new DocumentReference("wiki", "XWiki", "Alice"));
+
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(this.id));
+    }
+
+    @Test
+    public void isAccessibleToGuestInSameSession() throws Exception
+    {
+        storeExport(null);
+        HttpSession session = mock(HttpSession.class);
+        when(this.request.getSession(false)).thenReturn(session);
+        when(session.getAttribute(DefaultExportJobManager.SESSION_EXPORTS)).thenReturn(
+            Collections.singleton("export-abc"));
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().isAccessible(this.id));
+    }
+
+    @Test
+    public void isNotAccessibleToGuestInOtherSession() throws Exception
+    {
+        storeExport(null);
+        HttpSession session = mock(HttpSession.class);
+        when(this.request.getSession(false)).thenReturn(session);
+        when(session.getAttribute(DefaultExportJobManager.SESSION_EXPORTS)).thenReturn(
+            Collections.singleton("export-other"));
+
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(this.id));
+
+        when(this.request.getSession(false)).thenReturn(null);
+
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(this.id));
+    }
+
+    @Test
+    public void isNotAccessibleToUsersForGuestExports() throws Exception
+    {
+        storeExport(null);
+        HttpSession session = mock(HttpSession.class);
+        when(this.request.getSession(false)).thenReturn(session);
+        when(session.getAttribute(DefaultExportJobManager.SESSION_EXPORTS)).thenReturn(
+            Collections.singleton("export-abc"));
+        when(this.xcontext.getUserReference()).thenReturn(new DocumentReference("wiki", "XWiki", "Bob"));
+
+        Assert.assertFalse(this.mocker.getComponentUnderTest().isAccessible(this.id));
+    }
+
+    @Test
+    public void purgeOldExports() throws Exception
+    {
+        File temporaryDirectory = new File("target/test-" + new Date().getTime());
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getTemporaryDirectory()).thenReturn(temporaryDirectory);
+
+        File oldExport = ExportJob.getOutputDirectory(environment, Arrays.asList(ExportJob.JOBTYPE, "old"));
+        oldExport.mkdirs();
+        oldExport.setLastModified(System.currentTimeMillis() - DefaultExportJobManager.MAX_AGE - 60000);
+        File newExport = ExportJob.getOutputDirectory(environment, Arrays.asList(ExportJob.JOBTYPE, "new"));
+        newExport.mkdirs();
+
+        ((DefaultExportJobManager) this.mocker.getComponentUnderTest()).purge();
+
+        Assert.assertFalse(oldExport.exists());
+        Assert.assertTrue(newExport.exists());
+        verify(this.storage).remove(Arrays.asList(ExportJob.JOBTYPE, "old"));
+        verify(this.storage, never()).remove(Arrays.asList(ExportJob.JOBTYPE, "new"));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.export;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xwiki.environment.Environment;
+
+/**
+ * Unit tests for {@link ExportJob}.
+ * 
+ * @version $Id$
+ */
+public class ExportJobTest
+{
+    @Test
+    public void getOutputFile() throws Exception
+    {
+        Environment environment = mock(Environment.class);
+        when(environment.getTemporaryDirectory()).thenReturn(new File("target/test-" + new Date().getTime()));
+        List<String> id = Arrays.asList(ExportJob.JOBTYPE, "abc");
+
+        Assert.assertNull(ExportJob.getOutputFile(environment, id));
+
+        File outputDirectory = ExportJob.getOutputDirectory(environment, id);
+        Assert.assertEquals(new File(ExportJob.getExportsDirectory(environment), "export-abc"), outputDirectory);
+
+        // The work directory of a running export is not a result
+        new File(outputDirectory, "work").mkdirs();
+        Assert.assertNull(ExportJob.getOutputFile(environment, id));
+
+        File result = new File(outputDirectory, "Page.pdf");
+        FileUtils.write(result, "content");
+        Assert.assertEquals(result, ExportJob.getOutputFile(environment, id));
+    }
+
+    @Test
+    public void castRequest()
+    {
+        ExportJob job = new ExportJob();
+        ExportRequest request = new ExportRequest();
+
+        Assert.assertSame(request, job.castRequest(request));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.plugin.image;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Provider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.internal.event.AttachmentAddedEvent;
+import com.xpn.xwiki.plugin.image.ImagePlugin;
+
+/**
+ * Unit tests for {@link ImageVariantsListener}.
+ * 
+ * @version $Id$
+ */
+public class ImageVariantsListenerTest
+{
+    private static final int TIMEOUT = 5000;
+
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker = new MockitoComponentMockingRule<EventListener>(
+        ImageVariantsListener.class);
+
+    private final DocumentReference documentReference = new DocumentReference("wiki", "Space", "Page");
+
+    private XWikiContext xcontext;
+
+    private XWiki xwiki;
+
+    private ImagePlugin imagePlugin;
+
+    private XWikiDocument document;
+
+    private XWikiAttachment attachment;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class);
+        when(componentManager.getInstance(ExecutionContextManager.class)).thenReturn(
+            mock(ExecutionContextManager.class));
+        when(componentManager.getInstance(Execution.class)).thenReturn(mock(Execution.class));
+
+        this.xcontext = mock(XWikiContext.class);
+        when(this.xcontext.getDatabase()).thenReturn("xwiki");
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+
+        this.xwiki = mock(XWiki.class);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+
+        this.imagePlugin = mock(ImagePlugin.class);
+        when(this.xwiki.getPlugin("image", this.xcontext)).thenReturn(this.imagePlugin);
+
+        this.document = mock(XWikiDocument.class);
+        when(this.document.getDocumentReference()).thenReturn(this.documentReference);
+        when(this.xwiki.getDocument(this.documentReference, this.xcontext)).thenReturn(this.document);
+
+        this.attachment = mock(XWikiAttachment.class);
+        when(this.document.getAttachment("image.png")).thenReturn(this.attachment);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        ((Disposable) this.mocker.getComponentUnderTest()).dispose();
+    }
+
+    private void attach(String fileName) throws Exception
+    {
+        this.mocker.getComponentUnderTest().onEvent(new AttachmentAddedEvent("wiki:Space.Page", fileName),
+            this.document, this.xcontext);
+    }
+
+    @Test
+    public void variantsAreGeneratedInTheBackground() throws Exception
+    {
+        attach("image.png");
+
+        verify(this.imagePlugin, timeout(TIMEOUT)).generateVariants(this.attachment, this.xcontext);
+        // The database of the document is used and then restored.
+        verify(this.xcontext, timeout(TIMEOUT)).setDatabase("wiki");
+        verify(this.xcontext, timeout(TIMEOUT)).setDatabase("xwiki");
+    }
+
+    @Test
+    public void nothingIsGeneratedWithoutTheImagePlugin() throws Exception
+    {
+        when(this.xwiki.getPlugin("image", this.xcontext)).thenReturn(null);
+
+        attach("image.png");
+
+        // The generation is not even scheduled.
+        verify(this.xwiki, never()).getDocument(any(DocumentReference.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void deletedAttachmentsAreSkipped() throws Exception
+    {
+        attach("deleted.png");
+        attach("image.png");
+
+        // The images are handled in order so the deleted one has been skipped once the other one is generated.
+        verify(this.imagePlugin, timeout(TIMEOUT)).generateVariants(this.attachment, this.xcontext);
+        verify(this.imagePlugin).generateVariants(any(XWikiAttachment.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void imagesAreDroppedWhenTooManyAreWaiting() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                started.countDown();
+                release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                return null;
+            }
+        }).when(this.imagePlugin).generateVariants(this.attachment, this.xcontext);
+
+        // Block the background thread.
+        attach("image.png");
+        Assert.assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // Fill the queue.
+        for (int i = 0; i < 100; i++) {
+            attach("image.png");
+        }
+        verify(this.mocker.getMockedLogger(), never()).warn(anyString(), any(), any());
+
+        // This one doesn't fit anymore.
+        attach("image.png");
+        verify(this.mocker.getMockedLogger()).warn(
+            "Too many images waiting for their variants to be generated. The variants of image [{}] attached to [{}]"
+                + " will be generated when requested.", "image.png", this.documentReference);
+
+        release.countDown();
+        verify(this.imagePlugin, timeout(TIMEOUT).times(101)).generateVariants(this.attachment, this.xcontext);
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link ViewableDocumentQueryFilter}.
+ *
+ * @version $Id$
+ */
+public class ViewableDocumentQueryFilterTest
+{
+    @Rule
+    public MockitoComponentMockingRule<ViewableDocumentQueryFilter> mocker =
+        new MockitoComponentMockingRule<ViewableDocumentQueryFilter>(ViewableDocumentQueryFilter.class);
+
+    private static final String STATEMENT = "select doc.fullName from XWikiDocument doc where doc.name = 'WebHome'";
+
+    private static final String FILTERED_STATEMENT = "select doc.fullName from XWikiDocument doc where %s and "
+        + "(doc.name = 'WebHome')";
+
+    private final WikiReference wiki = new WikiReference("wiki");
+
+    private final DocumentReference user = new DocumentReference("wiki", "XWiki", "User");
+
+    private AuthorizationManager authorizationManager;
+
+    private Query spacesQuery;
+
+    private Query documentsQuery;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontext.getDatabase()).thenReturn(this.wiki.getName());
+        when(xcontext.getUserReference()).thenReturn(this.user);
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+
+        this.spacesQuery = mock(Query.class, "spaces");
+        when(this.spacesQuery.setWiki(anyString())).thenReturn(this.spacesQuery);
+        this.documentsQuery = mock(Query.class, "documents");
+        when(this.documentsQuery.setWiki(anyString())).thenReturn(this.documentsQuery);
+        when(this.documentsQuery.execute()).thenReturn(Collections.emptyList());
+
+        QueryManager queryManager = mock(QueryManager.class);
+        when(queryManager.createQuery(eq("select distinct doc.space from XWikiDocument as doc"), eq(Query.HQL)))
+            .thenReturn(this.spacesQuery);
+        when(queryManager.createQuery(eq("select distinct obj.name from BaseObject as obj "
+            + "where obj.className = 'XWiki.XWikiRights'"), eq(Query.HQL))).thenReturn(this.documentsQuery);
+        Provider<QueryManager> queryManagerProvider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, QueryManager.class));
+        when(queryManagerProvider.get()).thenReturn(queryManager);
+
+        this.authorizationManager = this.mocker.getInstance(AuthorizationManager.class);
+    }
+
+    private void setSpaces(List<String> spaces, String... allowedSpaces) throws Exception
+    {
+        when(this.spacesQuery.execute()).thenReturn(new ArrayList<Object>(spaces));
+        for (String space : allowedSpaces) {
+            when(this.authorizationManager.hasAccess(Right.VIEW, this.user, new SpaceReference(space, this.wiki)))
+                .thenReturn(true);
+        }
+    }
+
+    private String filter(String statement) throws Exception
+    {
+        return this.mocker.getComponentUnderTest().filterStatement(statement, Query.HQL);
+    }
+
+    @Test
+    public void filterStatementWhenAdmin() throws Exception
+    {
+        when(this.authorizationManager.hasAccess(Right.ADMIN, this.user, this.wiki)).thenReturn(true);
+
+        assertEquals(STATEMENT, filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWhenEverythingIsViewable() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox"), "Main", "Sandbox");
+
+        assertEquals(STATEMENT, filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWhenNothingIsViewable() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox"));
+
+        assertEquals(String.format(FILTERED_STATEMENT, "1=0"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWithDeniedSpace() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox", "Secret"), "Main", "Sandbox");
+
+        assertEquals(String.format(FILTERED_STATEMENT, "((not (doc.space in ('Secret'))))"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWithAllowedSpace() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox", "Secret"), "Main");
+
+        assertEquals(String.format(FILTERED_STATEMENT, "(((doc.space in ('Main'))))"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWithDocumentRights() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox", "Secret"), "Main", "Sandbox");
+        when(this.documentsQuery.execute()).thenReturn(Arrays.<Object>asList("Main.Private", "Secret.Public"));
+        when(this.authorizationManager.hasAccess(Right.VIEW, this.user,
+            new DocumentReference("wiki", "Secret", "Public"))).thenReturn(true);
+
+        assertEquals(String.format(FILTERED_STATEMENT, "((not (doc.space in ('Secret')) and not (doc.fullName in "
+            + "('Main.Private'))) or (doc.fullName in ('Secret.Public')))"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementEscapesQuotes() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Sandbox", "O'Brien"), "Main", "Sandbox");
+
+        assertEquals(String.format(FILTERED_STATEMENT, "((not (doc.space in ('O''Brien'))))"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementReflectsRightsChanges() throws Exception
+    {
+        setSpaces(Arrays.asList("Main", "Secret"), "Main");
+        assertEquals(String.format(FILTERED_STATEMENT, "(((doc.space in ('Main'))))"), filter(STATEMENT));
+
+        setSpaces(Arrays.asList("Main", "Secret"), "Secret");
+        assertEquals(STATEMENT, filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementWithTooManySpaces() throws Exception
+    {
+        List<Object> spaces = new ArrayList<Object>();
+        for (int i = 0; i <= ViewableDocumentQueryFilter.MAX_CLAUSE_VALUES; i++) {
+            spaces.add("Allowed" + i);
+            spaces.add("Denied" + i);
+        }
+        when(this.spacesQuery.execute()).thenReturn(spaces);
+        when(this.authorizationManager.hasAccess(eq(Right.VIEW), eq(this.user), any(SpaceReference.class)))
+            .thenAnswer(new Answer<Boolean>()
+            {
+                @Override
+                public Boolean answer(InvocationOnMock invocation)
+                {
+                    return ((SpaceReference) invocation.getArguments()[2]).getName().startsWith("Allowed");
+                }
+            });
+
+        assertEquals(String.format(FILTERED_STATEMENT, "1=0"), filter(STATEMENT));
+    }
+
+    @Test
+    public void filterStatementIgnoresOtherLanguages() throws Exception
+    {
+        assertEquals(STATEMENT, this.mocker.getComponentUnderTest().filterStatement(STATEMENT, Query.XWQL));
+    }
+}
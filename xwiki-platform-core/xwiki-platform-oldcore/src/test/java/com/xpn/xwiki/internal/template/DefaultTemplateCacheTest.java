@@ -0,0 +1,108 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.internal.template;
+
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import com.xpn.xwiki.internal.cache.DocumentCache;
+
+/**
+ * Unit tests for {@link DefaultTemplateCache}.
+ * 
+ * @version $Id$
+ */
+public class DefaultTemplateCacheTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<TemplateCache> mocker = new MockitoComponentMockingRule<TemplateCache>(
+        DefaultTemplateCache.class);
+
+    private Cache<TemplateSource> resourceCache;
+
+    private DocumentCache<TemplateSource> documentCache;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("core.templatecache.enabled", true)).thenReturn(true);
+        when(configuration.getProperty("core.templatecache.size", 1000)).thenReturn(1000);
+
+        this.resourceCache = mock(Cache.class);
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.<TemplateSource> createNewCache(any(CacheConfiguration.class))).thenReturn(
+            this.resourceCache);
+
+        this.documentCache = this.mocker.getInstance(DocumentCache.class);
+    }
+
+    @Test
+    public void getResourceTemplate() throws Exception
+    {
+        TemplateSource source = new TemplateSource("content");
+        when(this.resourceCache.get("/skins/colibri/view.vm:42")).thenReturn(source);
+
+        TemplateCache cache = this.mocker.getComponentUnderTest();
+
+        Assert.assertSame(source, cache.getResourceTemplate("/skins/colibri/view.vm", 42));
+        Assert.assertNull(cache.getResourceTemplate("/skins/colibri/view.vm", 43));
+
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void setResourceTemplate() throws Exception
+    {
+        this.mocker.getComponentUnderTest().setResourceTemplate(TemplateSource.MISSING, "/templates/missing.vm", 0);
+
+        verify(this.resourceCache).set("/templates/missing.vm:0", TemplateSource.MISSING);
+    }
+
+    @Test
+    public void getAndSetDocumentTemplate() throws Exception
+    {
+        DocumentReference skinReference = new DocumentReference("wiki", "XWiki", "DefaultSkin");
+        TemplateSource source = new TemplateSource("content");
+        when(this.documentCache.get(skinReference, "1.1", "view.vm")).thenReturn(source);
+
+        TemplateCache cache = this.mocker.getComponentUnderTest();
+
+        Assert.assertSame(source, cache.getDocumentTemplate(skinReference, "1.1", "view.vm"));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.setDocumentTemplate(source, skinReference, "1.2", "view.vm");
+
+        verify(this.documentCache).set(source, skinReference, "1.2", "view.vm");
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.pdf.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.commons.io.IOUtils;
+import org.jmock.Mock;
+import org.xwiki.job.event.status.PopLevelProgressEvent;
+import org.xwiki.job.event.status.PushLevelProgressEvent;
+import org.xwiki.job.event.status.StepProgressEvent;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.AllEvent;
+import org.xwiki.observation.event.Event;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.pdf.api.PdfExport.ExportType;
+import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
+import com.xpn.xwiki.web.XWikiRequest;
+
+/**
+ * Unit tests for the XSLT handling and the conversion slots of {@link PdfExportImpl}.
+ * 
+ * @version $Id$
+ */
+public class PdfExportImplTest extends AbstractBridgedXWikiComponentTestCase
+{
+    private static final String XSLT = "<xsl:stylesheet version=\"1.0\" "
+        + "xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\"><xsl:output omit-xml-declaration=\"yes\"/>"
+        + "<xsl:template match=\"/\"><%1$s><xsl:value-of select=\"/*\"/></%1$s></xsl:template></xsl:stylesheet>";
+
+    private Mock mockXWiki;
+
+    private PdfExportImpl pdfExport;
+
+    private List<Event> progressEvents = new ArrayList<Event>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.mockXWiki = mock(XWiki.class);
+        this.mockXWiki.stubs().method("getEncoding").will(returnValue("UTF-8"));
+        this.mockXWiki.stubs().method("parseTemplate").will(returnValue(""));
+        setConfiguration(1L, 1L);
+        getContext().setWiki((XWiki) this.mockXWiki.proxy());
+
+        ObservationManager observationManager = getComponentManager().getInstance(ObservationManager.class);
+        observationManager.addListener(new EventListener()
+        {
+            @Override
+            public String getName()
+            {
+                return "progress";
+            }
+
+            @Override
+            public List<Event> getEvents()
+            {
+                return Arrays.<Event>asList(AllEvent.ALLEVENT);
+            }
+
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                if (event instanceof PushLevelProgressEvent || event instanceof StepProgressEvent
+                    || event instanceof PopLevelProgressEvent) {
+                    progressEvents.add(event);
+                }
+            }
+        });
+
+        this.pdfExport = new PdfExportImpl();
+    }
+
+    private void setConfiguration(long maxConcurrentConversions, long queueTimeout)
+    {
+        this.mockXWiki.stubs().method("ParamAsLong").with(eq("xwiki.export.pdf.maxConcurrentConversions"), ANYTHING)
+            .will(returnValue(maxConcurrentConversions));
+        this.mockXWiki.stubs().method("ParamAsLong").with(eq("xwiki.export.pdf.queueTimeout"), ANYTHING)
+            .will(returnValue(queueTimeout));
+    }
+
+    private InputStream getXSLT(String element) throws Exception
+    {
+        return IOUtils.toInputStream(String.format(XSLT, element), "UTF-8");
+    }
+
+    public void testTemplatesAreCompiledOncePerXSLT() throws Exception
+    {
+        Templates templates = this.pdfExport.getTemplates(getXSLT("first"));
+
+        assertSame(templates, this.pdfExport.getTemplates(getXSLT("first")));
+        assertSame(templates, new PdfExportImpl().getTemplates(getXSLT("first")));
+        assertEquals("<first>text</first>", this.pdfExport.applyXSLT("<in>text</in>", getXSLT("first")));
+    }
+
+    public void testTemplatesAreRecompiledWhenTheXSLTChanges() throws Exception
+    {
+        Templates templates = this.pdfExport.getTemplates(getXSLT("first"));
+
+        assertNotSame(templates, this.pdfExport.getTemplates(getXSLT("second")));
+        assertEquals("<second>text</second>", this.pdfExport.applyXSLT("<in>text</in>", getXSLT("second")));
+    }
+
+    public void testChainedTransformationsMatchSuccessiveTransformations() throws Exception
+    {
+        String xml = "<in>text</in>";
+        String expected = this.pdfExport.applyXSLT(this.pdfExport.applyXSLT(xml, getXSLT("first")), getXSLT("second"));
+
+        StringWriter output = new StringWriter();
+        Templates first = this.pdfExport.getTemplates(getXSLT("first"));
+        Templates second = this.pdfExport.getTemplates(getXSLT("second"));
+        List<Templates> transformations = Arrays.asList(first, second);
+        this.pdfExport.transform(new StreamSource(new StringReader(xml)), transformations, new StreamResult(output));
+
+        assertEquals("<second>text</second>", expected);
+        assertEquals(expected, output.toString());
+    }
+
+    public void testConversionTimesOutWhenAllSlotsAreTaken() throws Exception
+    {
+        Semaphore slots = PdfExportImpl.getConversionSlots(getContext());
+        assertTrue(slots.tryAcquire());
+        try {
+            this.pdfExport.exportHtml("<html/>", new ByteArrayOutputStream(), ExportType.PDF, getContext());
+            fail("Expected the export to time out");
+        } catch (XWikiException expected) {
+            assertEquals(XWikiException.MODULE_XWIKI_EXPORT, expected.getModule());
+            // The conversion didn't start
+            assertTrue(this.progressEvents.isEmpty());
+        } finally {
+            slots.release();
+        }
+    }
+
+    public void testConversionSlotsFollowTheConfiguration() throws Exception
+    {
+        setConfiguration(2L, 1L);
+        Semaphore slots = PdfExportImpl.getConversionSlots(getContext());
+        assertEquals(2, slots.availablePermits());
+        assertTrue(slots.isFair());
+        assertSame(slots, PdfExportImpl.getConversionSlots(getContext()));
+
+        setConfiguration(3L, 1L);
+        assertEquals(3, PdfExportImpl.getConversionSlots(getContext()).availablePermits());
+    }
+
+    public void testProgressIsClosedAndSlotReleasedWhenTheConversionFails() throws Exception
+    {
+        Mock mockRequest = mock(XWikiRequest.class);
+        mockRequest.stubs().method("getParameter").will(throwException(new RuntimeException("failure")));
+        getContext().setRequest((XWikiRequest) mockRequest.proxy());
+
+        try {
+            this.pdfExport.exportHtml("<html><body><p>text</p></body></html>", new ByteArrayOutputStream(),
+                ExportType.PDF, getContext());
+            fail("Expected the export to fail");
+        } catch (RuntimeException expected) {
+            assertEquals("failure", expected.getMessage());
+        }
+
+        assertEquals(3, this.progressEvents.size());
+        assertTrue(this.progressEvents.get(0) instanceof PushLevelProgressEvent);
+        assertTrue(this.progressEvents.get(1) instanceof StepProgressEvent);
+        assertTrue(this.progressEvents.get(2) instanceof PopLevelProgressEvent);
+        assertEquals(1, PdfExportImpl.getConversionSlots(getContext()).availablePermits());
+    }
+}
@@ -20,23 +20,41 @@
 package com.xpn.xwiki.plugin.image;
 
 import java.awt.Image;
+import java.awt.image.RenderedImage;
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.xpn.xwiki.XWiki;
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiAttachment;
 import com.xpn.xwiki.doc.XWikiAttachmentContent;
+import com.xpn.xwiki.doc.XWikiDocument;
 import com.xpn.xwiki.plugin.image.ImageProcessor;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 import com.xpn.xwiki.web.XWikiServletRequest;
 import com.xpn.xwiki.web.Utils;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jmock.Mock;
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheFactory;
 import org.xwiki.cache.event.CacheEntryListener;
+import org.xwiki.component.descriptor.DefaultComponentDescriptor;
+import org.xwiki.context.Execution;
+import org.xwiki.environment.Environment;
+import org.xwiki.model.reference.DocumentReference;
 
 /**
  * Unit tests for the {@link com.xpn.xwiki.plugin.image.ImagePlugin} class.
@@ -85,46 +103,133 @@ public class ImagePluginTest extends AbstractBridgedXWikiComponentTestCase
 
     private ImagePlugin plugin;
 
+    private Mock mockXWiki;
+
+    /**
+     * The thumbnails cached in memory.
+     */
+    private Map<String, File> cachedThumbnails = new HashMap<String, File>();
+
+    /**
+     * The permanent directory, where the thumbnails are stored.
+     */
+    private File permanentDirectory;
+
+    private CountingImageProcessor imageProcessor;
+
+    /**
+     * Delegates to the default image processor, counting the scaled images.
+     */
+    private static class CountingImageProcessor implements ImageProcessor
+    {
+        private final ImageProcessor processor;
+
+        private final AtomicInteger scaleCount = new AtomicInteger();
+
+        private final Collection<String> scaleThreads = Collections.synchronizedList(new ArrayList<String>());
+
+        private final Collection<Object> scaleContexts = Collections.synchronizedList(new ArrayList<Object>());
+
+        private volatile long scaleTime;
+
+        CountingImageProcessor(ImageProcessor processor)
+        {
+            this.processor = processor;
+        }
+
+        @Override
+        public Image readImage(InputStream inputStream) throws IOException
+        {
+            return this.processor.readImage(inputStream);
+        }
+
+        @Override
+        public void writeImage(RenderedImage image, String mimeType, float quality, OutputStream out)
+            throws IOException
+        {
+            this.processor.writeImage(image, mimeType, quality, out);
+        }
+
+        @Override
+        public RenderedImage scaleImage(Image image, int width, int height)
+        {
+            this.scaleCount.incrementAndGet();
+            this.scaleThreads.add(Thread.currentThread().getName());
+            this.scaleContexts.add(Utils.getComponent(Execution.class).getContext().getProperty("xwikicontext"));
+            if (this.scaleTime > 0) {
+                try {
+                    Thread.sleep(this.scaleTime);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return this.processor.scaleImage(image, width, height);
+        }
+
+        @Override
+        public boolean isMimeTypeSupported(String mimeType)
+        {
+            return this.processor.isMimeTypeSupported(mimeType);
+        }
+    }
+
     @Override
     protected void setUp() throws Exception
     {
         super.setUp();
 
-        Mock mockXWiki = mock(XWiki.class);
-        mockXWiki.stubs().method("Param").will(returnValue("10"));
+        this.mockXWiki = mock(XWiki.class);
+        this.mockXWiki.stubs().method("Param").will(returnValue("10"));
         Mock mockCacheFactory = mock(CacheFactory.class);
-        Cache<XWikiAttachment> cache = (new Cache<XWikiAttachment>() {
-            private final Map<String, XWikiAttachment> map = new HashMap<String, XWikiAttachment>();
+        Cache<File> cache = (new Cache<File>() {
             @Override
-            public void set(String key, XWikiAttachment value) { map.put(key, value); }
+            public void set(String key, File value) { cachedThumbnails.put(key, value); }
             @Override
-            public XWikiAttachment get(String key) { return map.get(key); }
+            public File get(String key) { return cachedThumbnails.get(key); }
             @Override
             public void remove(String key) { }
             @Override
             public void removeAll() { }
             @Override
-            public void addCacheEntryListener(CacheEntryListener<XWikiAttachment> listener) { }
+            public void addCacheEntryListener(CacheEntryListener<File> listener) { }
             @Override
-            public void removeCacheEntryListener(CacheEntryListener<XWikiAttachment> listener) { }
+            public void removeCacheEntryListener(CacheEntryListener<File> listener) { }
             @Override
-            public void dispose() { }
+            public void dispose() { cachedThumbnails.clear(); }
         });
-        mockCacheFactory.expects(once()).method("newCache").will(returnValue(cache));
-        mockXWiki.stubs().method("getLocalCacheFactory").will(returnValue(mockCacheFactory.proxy()));
-        getContext().setWiki((XWiki) mockXWiki.proxy());
-        this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), getContext());
+        mockCacheFactory.stubs().method("newCache").will(returnValue(cache));
+        this.mockXWiki.stubs().method("getLocalCacheFactory").will(returnValue(mockCacheFactory.proxy()));
+        getContext().setWiki((XWiki) this.mockXWiki.proxy());
+
+        this.permanentDirectory = new File(System.getProperty("java.io.tmpdir"), "imageplugintest" + System.nanoTime());
+        Mock mockEnvironment = registerMockComponent(Environment.class);
+        mockEnvironment.stubs().method("getPermanentDirectory").will(returnValue(this.permanentDirectory));
+        mockEnvironment.stubs().method("getTemporaryDirectory").will(
+            returnValue(new File(System.getProperty("java.io.tmpdir"))));
+
+        this.imageProcessor = new CountingImageProcessor(Utils.getComponent(ImageProcessor.class));
+        DefaultComponentDescriptor<ImageProcessor> descriptor = new DefaultComponentDescriptor<ImageProcessor>();
+        descriptor.setRole(ImageProcessor.class);
+        getComponentManager().registerComponent(descriptor, this.imageProcessor);
     }
 
-    public void testDownloadAttachmentWithUnsupportedFileType()
+    @Override
+    protected void tearDown() throws Exception
     {
-        Mock attachmentMock = mock(XWikiAttachment.class);
-        attachmentMock.stubs().method("getMimeType").will(returnValue("image/notsupported"));
-        XWikiAttachment attachment = (XWikiAttachment) attachmentMock.proxy();
-        assertSame(attachment, plugin.downloadAttachment(attachment, new XWikiContext()));
+        if (this.plugin != null) {
+            this.plugin.flushCache();
+        }
+        FileUtils.deleteDirectory(this.permanentDirectory);
+
+        super.tearDown();
     }
 
-    public void testCacheOfScaledAttachment() throws Exception
+    private void createPlugin()
+    {
+        this.plugin = new ImagePlugin("image", ImagePlugin.class.getName(), getContext());
+    }
+
+    private XWikiAttachment createImage() throws Exception
     {
         XWikiAttachment attach = (new XWikiAttachment() {
             @Override
@@ -136,23 +241,199 @@ public XWikiAttachment clone() {
             @Override
             public String getMimeType(XWikiContext context) { return "image/png"; }
         });
+        attach.setFilename("image.png");
         attach.setContent(new ByteArrayInputStream(testPngImageContent));
+
+        return attach;
+    }
+
+    private void setRequestedWidth(final String width)
+    {
         XWikiServletRequest req = (new XWikiServletRequest(null) {
             @Override
-            public String getParameter(String prop) { return "30"; }
+            public String getParameter(String prop) { return "width".equals(prop) ? width : null; }
         });
         this.getContext().setRequest(req);
+    }
+
+    private int getWidth(XWikiAttachment image) throws Exception
+    {
+        return this.imageProcessor.readImage(image.getContentInputStream(this.getContext())).getWidth(null);
+    }
+
+    private File getThumbnailDirectory()
+    {
+        return new File(this.permanentDirectory, "cache/image/thumbnails");
+    }
+
+    public void testDownloadAttachmentWithUnsupportedFileType()
+    {
+        createPlugin();
+
+        Mock attachmentMock = mock(XWikiAttachment.class);
+        attachmentMock.stubs().method("getMimeType").will(returnValue("image/notsupported"));
+        XWikiAttachment attachment = (XWikiAttachment) attachmentMock.proxy();
+        assertSame(attachment, plugin.downloadAttachment(attachment, new XWikiContext()));
+    }
+
+    public void testCacheOfScaledAttachment() throws Exception
+    {
+        createPlugin();
+        XWikiAttachment attach = createImage();
+        setRequestedWidth("30");
 
         final XWikiAttachment scaled = plugin.downloadAttachment(attach, this.getContext());
 
         // Check that the width is indeed 30
-        ImageProcessor imageProcessor = Utils.getComponent(ImageProcessor.class);
-        Image scaledImage = imageProcessor.readImage(scaled.getContentInputStream(this.getContext()));
-        assertEquals(30, scaledImage.getWidth(null));
+        assertEquals(30, getWidth(scaled));
 
-        // Load the scaled attachment again and make sure it's the same object in memory.
+        // Only the location of the thumbnail is kept in memory
+        assertEquals(1, this.cachedThumbnails.size());
+        File thumbnailFile = this.cachedThumbnails.values().iterator().next();
+        assertTrue(thumbnailFile.isFile());
+
+        // Load the scaled attachment again and make sure it's read from the disk store instead of being scaled again.
         final XWikiAttachment cached = plugin.downloadAttachment(attach, this.getContext());
-        assertTrue(scaled == cached);
-        assertTrue(scaled.getAttachment_content() == cached.getAttachment_content());
+        assertNotSame(scaled, cached);
+        assertTrue(IOUtils.contentEquals(scaled.getContentInputStream(this.getContext()),
+            cached.getContentInputStream(this.getContext())));
+        assertEquals(1, this.imageProcessor.scaleCount.get());
+    }
+
+    public void testThumbnailsAreKeptOnDiskWhenTheCacheIsFlushed() throws Exception
+    {
+        createPlugin();
+        XWikiAttachment attach = createImage();
+        setRequestedWidth("30");
+
+        plugin.downloadAttachment(attach, this.getContext());
+        assertEquals(1, FileUtils.listFiles(getThumbnailDirectory(), null, true).size());
+
+        // Flushing the cache stops the thumbnail threads, they are created again on next use
+        plugin.flushCache();
+        assertTrue(this.cachedThumbnails.isEmpty());
+
+        assertEquals(30, getWidth(plugin.downloadAttachment(attach, this.getContext())));
+        assertEquals(1, this.imageProcessor.scaleCount.get());
+
+        setRequestedWidth("40");
+        assertEquals(40, getWidth(plugin.downloadAttachment(attach, this.getContext())));
+        assertEquals(2, this.imageProcessor.scaleCount.get());
+        assertEquals(2, FileUtils.listFiles(getThumbnailDirectory(), null, true).size());
+    }
+
+    public void testLeastRecentlyUsedThumbnailsArePurged() throws Exception
+    {
+        // Store at most 1MB of thumbnails
+        this.mockXWiki.stubs().method("Param").with(eq("xwiki.plugin.image.thumbnails.maxDiskSize"))
+            .will(returnValue("1"));
+
+        // Fill the disk store with two old thumbnails of 600KB
+        File oldest = new File(getThumbnailDirectory(), "aa/oldest");
+        FileUtils.writeByteArrayToFile(oldest, new byte[600 * 1024]);
+        oldest.setLastModified(System.currentTimeMillis() - 1000000L);
+        File old = new File(getThumbnailDirectory(), "bb/old");
+        FileUtils.writeByteArrayToFile(old, new byte[600 * 1024]);
+        old.setLastModified(System.currentTimeMillis() - 500000L);
+
+        createPlugin();
+        setRequestedWidth("30");
+        plugin.downloadAttachment(createImage(), this.getContext());
+
+        // The least recently used thumbnails are deleted until the store is 90% full
+        assertFalse(oldest.exists());
+        assertTrue(old.exists());
+        assertTrue(this.cachedThumbnails.values().iterator().next().isFile());
+    }
+
+    public void testGeneratedVariantsAreAvailable() throws Exception
+    {
+        // The test image is 150 pixels wide so there's no variant of width 200
+        this.mockXWiki.stubs().method("Param").with(eq("xwiki.plugin.image.variants")).will(
+            returnValue("100, 30, 200"));
+        createPlugin();
+        XWikiAttachment attach = createImage();
+        assertTrue(plugin.getAvailableVariants(attach).isEmpty());
+
+        plugin.generateVariants(attach, this.getContext());
+
+        assertEquals(Arrays.asList(30, 100), plugin.getAvailableVariants(attach));
+        assertEquals(2, this.imageProcessor.scaleCount.get());
+
+        // The variants are not generated again
+        plugin.generateVariants(attach, this.getContext());
+        assertEquals(2, this.imageProcessor.scaleCount.get());
+
+        // A download with the width of a variant reads it from the disk store
+        setRequestedWidth("30");
+        assertEquals(30, getWidth(plugin.downloadAttachment(attach, this.getContext())));
+        assertEquals(2, this.imageProcessor.scaleCount.get());
+    }
+
+    public void testSrcsetListsTheAvailableVariants() throws Exception
+    {
+        this.mockXWiki.stubs().method("Param").with(eq("xwiki.plugin.image.variants")).will(returnValue("100, 30"));
+        createPlugin();
+
+        XWikiDocument document = new XWikiDocument(new DocumentReference("xwiki", "Space", "Page"))
+        {
+            @Override
+            public String getAttachmentURL(String filename, String action, String querystring, XWikiContext context)
+            {
+                return "/" + action + "/" + filename + "?" + querystring;
+            }
+        };
+        XWikiAttachment attach = createImage();
+        attach.setDoc(document);
+        document.getAttachmentList().add(attach);
+        this.mockXWiki.stubs().method("getDocument").will(returnValue(document));
+        ImagePluginAPI api = (ImagePluginAPI) plugin.getPluginApi(plugin, this.getContext());
+
+        assertEquals("", api.getSrcset("Space.Page", "image.png"));
+
+        plugin.generateVariants(attach, this.getContext());
+
+        assertEquals("/download/image.png?width=30 30w, /download/image.png?width=100 100w",
+            api.getSrcset("Space.Page", "image.png"));
+        assertEquals("", api.getSrcset("Space.Page", "missing.png"));
+    }
+
+    public void testConcurrentRequestsGenerateTheThumbnailOnce() throws Exception
+    {
+        createPlugin();
+        final XWikiAttachment attach = createImage();
+        setRequestedWidth("30");
+        this.imageProcessor.scaleTime = 200L;
+
+        final List<XWikiAttachment> thumbnails = Collections.synchronizedList(new ArrayList<XWikiAttachment>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    thumbnails.add(plugin.downloadAttachment(attach, getContext()));
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4, thumbnails.size());
+        for (XWikiAttachment thumbnail : thumbnails) {
+            assertEquals(30, getWidth(thumbnail));
+        }
+        assertEquals(1, this.imageProcessor.scaleCount.get());
+
+        // The thumbnail is generated by a thumbnail thread, with its own copy of the context
+        assertTrue(this.imageProcessor.scaleThreads.iterator().next().startsWith("XWiki image thumbnail thread"));
+        Object threadContext = this.imageProcessor.scaleContexts.iterator().next();
+        assertTrue(threadContext instanceof XWikiContext);
+        assertNotSame(getContext(), threadContext);
     }
 }
@@ -19,11 +19,17 @@
  */
 package com.xpn.xwiki.plugin.packaging;
 
+import java.io.File;
+import java.io.FilenameFilter;
+
 import org.jmock.Mock;
+import org.xwiki.environment.Environment;
 import org.xwiki.model.reference.DocumentReference;
 
 import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.web.Utils;
 
 /**
  * Unit tests for the {@link com.xpn.xwiki.plugin.packaging.Package} class.
@@ -99,5 +105,85 @@ public void testImportWithHeterogeneousEncodingInFilesUsingCommonsCompress() thr
             this.pack.getFiles().get(1).getDoc().getContent());
     }
 
+    public void testImportLoadsDocumentsOnlyWhenNeeded() throws Exception
+    {
+        XWikiDocument doc1 = new XWikiDocument(new DocumentReference("Wiki", "Main", "Document1"));
+        doc1.setContent("content");
+
+        XWikiDocument docs[] = {doc1};
+
+        this.pack.Import(this.createZipFile(docs, new String[] {"UTF-8"}), getContext());
+
+        DocumentInfo docInfo = this.pack.getFiles().get(0);
+        assertTrue(docInfo.isLight());
+        assertEquals("Main.Document1", docInfo.getFullName());
+
+        assertEquals("content", docInfo.getDoc().getContent());
+        assertFalse(docInfo.isLight());
+
+        docInfo.release();
+        assertTrue(docInfo.isLight());
+
+        this.pack.dispose();
+    }
+
+    public void testImportFiltersDocumentsLoadedAgain() throws Exception
+    {
+        XWikiDocument doc1 = new XWikiDocument(new DocumentReference("Wiki", "Main", "Document1"));
+        doc1.setContent("content");
+
+        XWikiDocument docs[] = {doc1};
+
+        this.pack.addDocumentFilter(new DocumentFilter()
+        {
+            @Override
+            public void filter(XWikiDocument doc, XWikiContext context)
+            {
+                doc.setContent("filtered " + doc.getContent());
+            }
+        });
+        this.pack.Import(this.createZipFile(docs, new String[] {"UTF-8"}), getContext());
 
+        DocumentInfo docInfo = this.pack.getFiles().get(0);
+        assertTrue(docInfo.isLight());
+        assertEquals("filtered content", docInfo.getDoc().getContent());
+
+        this.pack.dispose();
+    }
+
+    public void testImportedPackageAbandonedIsDisposedAtTheEndOfTheRequest() throws Exception
+    {
+        XWikiDocument doc1 = new XWikiDocument(new DocumentReference("Wiki", "Main", "Document1"));
+        doc1.setContent("content");
+
+        XWikiDocument docs[] = {doc1};
+
+        File temporaryDirectory = Utils.getComponent(Environment.class).getTemporaryDirectory();
+        int temporaryFiles = getPackageFiles(temporaryDirectory).length;
+
+        // Import the package but never install nor dispose it
+        this.pack.Import(this.createZipFile(docs, new String[] {"UTF-8"}), getContext());
+        assertEquals(temporaryFiles + 1, getPackageFiles(temporaryDirectory).length);
+
+        // End of the request
+        Package.disposeImportedPackages(getContext());
+
+        assertEquals(temporaryFiles, getPackageFiles(temporaryDirectory).length);
+        // The documents can't be loaded from the package anymore
+        assertFalse(this.pack.getFiles().get(0).load());
+    }
+
+    private File[] getPackageFiles(File directory)
+    {
+        File[] files = directory.listFiles(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith("package") && name.endsWith(".xar");
+            }
+        });
+
+        return files != null ? files : new File[0];
+    }
 }
@@ -19,13 +19,30 @@
  */
 package com.xpn.xwiki.store.hibernate.query;
 
+import java.util.Collections;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.store.XWikiHibernateStore;
 import com.xpn.xwiki.store.hibernate.HibernateSessionFactory;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 import org.jmock.Expectations;
+import org.jmock.States;
+import org.jmock.lib.legacy.ClassImposteriser;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.query.Query;
 import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
+import org.xwiki.query.internal.DefaultQuery;
 import org.xwiki.test.jmock.AbstractMockingComponentTestCase;
 import org.xwiki.test.jmock.annotation.MockingRequirement;
 
@@ -90,4 +107,99 @@ public void completeShortStatementPassingAQueryOnSomethingElseThanADocument()
         Assert.assertEquals("select lock.docId from XWikiLock as lock ",
             executor.completeShortFormStatement("select lock.docId from XWikiLock as lock "));
     }
+
+    /**
+     * The results are scrolled in a stateless session, outside of the session of the context, and each row is filtered
+     * when it's fetched rather than once all the rows are loaded.
+     */
+    @Test
+    public void iterateFiltersEachRowInAStatelessSession() throws Exception
+    {
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        final XWikiContext context = new XWikiContext();
+        final XWiki xwiki = getMockery().mock(XWiki.class);
+        context.setWiki(xwiki);
+        final ExecutionContext executionContext = new ExecutionContext();
+        executionContext.setProperty("xwikicontext", context);
+
+        final Execution execution = getComponentManager().getInstance(Execution.class);
+        final XWikiHibernateStore store = getMockery().mock(XWikiHibernateStore.class);
+        final StatelessSession session = getMockery().mock(StatelessSession.class);
+        final Transaction transaction = getMockery().mock(Transaction.class);
+        final org.hibernate.Query namedQuery = getMockery().mock(org.hibernate.Query.class, "namedQuery");
+        final org.hibernate.Query hquery = getMockery().mock(org.hibernate.Query.class, "hquery");
+        final ScrollableResults results = getMockery().mock(ScrollableResults.class);
+        final QueryFilter filter = getMockery().mock(QueryFilter.class);
+        final States iteration = getMockery().states("iteration").startsAs("first");
+
+        getMockery().checking(new Expectations() {{
+            allowing(execution).getContext();
+            will(returnValue(executionContext));
+            allowing(xwiki).getHibernateStore();
+            will(returnValue(store));
+
+            oneOf(store).checkHibernate(context);
+            oneOf(store).openStatelessSession(context);
+            will(returnValue(session));
+            never(store).beginTransaction(with(any(XWikiContext.class)));
+            oneOf(session).beginTransaction();
+            will(returnValue(transaction));
+
+            // The filters are applied on the statement of the named query
+            oneOf(session).getNamedQuery("getSpaceDocsName");
+            will(returnValue(namedQuery));
+            oneOf(namedQuery).getQueryString();
+            will(returnValue("select doc.name from XWikiDocument doc"));
+            oneOf(filter).filterStatement("select doc.name from XWikiDocument doc", Query.HQL);
+            will(returnValue("select doc.name from XWikiDocument doc where doc.hidden <> true"));
+            oneOf(session).createQuery("select doc.name from XWikiDocument doc where doc.hidden <> true");
+            will(returnValue(hquery));
+            oneOf(hquery).setFetchSize(100);
+            oneOf(hquery).scroll(ScrollMode.FORWARD_ONLY);
+            will(returnValue(results));
+
+            // The second row is fetched only once the first one has been returned
+            oneOf(results).next();
+            will(returnValue(true));
+            when(iteration.is("first"));
+            oneOf(results).get();
+            will(returnValue(new Object[] {"A"}));
+            when(iteration.is("first"));
+            oneOf(filter).filterResults(Collections.singletonList("A"));
+            will(returnValue(Collections.singletonList("A")));
+            when(iteration.is("first"));
+
+            exactly(3).of(results).next();
+            will(onConsecutiveCalls(returnValue(true), returnValue(true), returnValue(false)));
+            when(iteration.is("next"));
+            exactly(2).of(results).get();
+            will(onConsecutiveCalls(returnValue(new Object[] {"B"}), returnValue(new Object[] {"C"})));
+            when(iteration.is("next"));
+            oneOf(filter).filterResults(Collections.singletonList("B"));
+            will(returnValue(Collections.emptyList()));
+            when(iteration.is("next"));
+            oneOf(filter).filterResults(Collections.singletonList("C"));
+            will(returnValue(Collections.singletonList("C")));
+            when(iteration.is("next"));
+
+            oneOf(results).close();
+            oneOf(transaction).rollback();
+            oneOf(session).close();
+        }});
+
+        Query query = new DefaultQuery("getSpaceDocsName", this.executor);
+        query.addFilter(filter);
+        QueryIterator<String> iterator = this.executor.iterate(query);
+
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals("A", iterator.next());
+        // The session of the context is left untouched
+        Assert.assertNull(context.get("hibsession"));
+
+        iteration.become("next");
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals("C", iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+    }
 }
@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.user.impl.xwiki;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.securityfilter.filter.SecurityRequestWrapper;
+import org.xwiki.test.jmock.AbstractComponentTestCase;
+
+/**
+ * Unit tests for {@link MyPersistentLoginManager}.
+ * 
+ * @version $Id$
+ */
+public class MyPersistentLoginManagerTest extends AbstractComponentTestCase
+{
+    private MyPersistentLoginManager loginManager;
+
+    private HttpServletResponse response;
+
+    /**
+     * The cookies sent to the client, in the order they have been sent.
+     */
+    private List<Cookie> cookies = new ArrayList<Cookie>();
+
+    /**
+     * Used to give a distinct name to each mocked request.
+     */
+    private int requestCount;
+
+    @Before
+    public void configure() throws Exception
+    {
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        this.loginManager = new MyPersistentLoginManager();
+        this.loginManager.setProtection("all");
+        this.loginManager.setUseIP("true");
+        this.loginManager.setValidationKey("totototototototototototototototo");
+        this.loginManager.setEncryptionKey("titititititititititititititititi");
+
+        this.response = getMockery().mock(HttpServletResponse.class);
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(response).addHeader(with("Set-Cookie"), with(any(String.class)));
+                will(new CustomAction("addCookie")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        // name="value"; Version=1; ...
+                        String header = (String) invocation.getParameter(1);
+                        String cookie = header.substring(0, header.indexOf(';'));
+                        String name = cookie.substring(0, cookie.indexOf('='));
+                        String value = cookie.substring(cookie.indexOf('=') + 1).replace("\"", "");
+                        cookies.add(new Cookie(name, value));
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    private SecurityRequestWrapper createRequest(final String ip, final Cookie... requestCookies)
+    {
+        final SecurityRequestWrapper request =
+            getMockery().mock(SecurityRequestWrapper.class, "request" + this.requestCount++);
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(request).getCookies();
+                will(returnValue(requestCookies));
+                allowing(request).getParameter("j_rememberme");
+                will(returnValue("true"));
+                allowing(request).getHeader("X-Forwarded-For");
+                will(returnValue(null));
+                allowing(request).getRemoteAddr();
+                will(returnValue(ip));
+                allowing(request).setUserPrincipal(null);
+            }
+        });
+
+        return request;
+    }
+
+    private Cookie[] rememberLogin(String ip)
+    {
+        this.loginManager.rememberLogin(createRequest(ip), this.response, "XWiki.Admin", "admin");
+
+        Cookie[] rememberedCookies = this.cookies.toArray(new Cookie[this.cookies.size()]);
+        this.cookies.clear();
+
+        return rememberedCookies;
+    }
+
+    @Test
+    public void getRememberedLogin()
+    {
+        Cookie[] rememberedCookies = rememberLogin("10.0.0.1");
+
+        // The credentials are never sent in clear
+        for (Cookie cookie : rememberedCookies) {
+            Assert.assertFalse(cookie.getValue().contains("admin"));
+        }
+
+        // Several requests in a row, reusing the same ciphers
+        for (int i = 0; i < 3; ++i) {
+            SecurityRequestWrapper request = createRequest("10.0.0.1", rememberedCookies);
+            Assert.assertEquals("XWiki.Admin", this.loginManager.getRememberedUsername(request, this.response));
+            Assert.assertEquals("admin", this.loginManager.getRememberedPassword(request, this.response));
+        }
+
+        Assert.assertTrue(this.cookies.isEmpty());
+    }
+
+    @Test
+    public void getRememberedLoginFromAnotherIP()
+    {
+        Cookie[] rememberedCookies = rememberLogin("10.0.0.1");
+
+        SecurityRequestWrapper request = createRequest("10.0.0.2", rememberedCookies);
+        Assert.assertNull(this.loginManager.getRememberedUsername(request, this.response));
+        Assert.assertNull(this.loginManager.getRememberedPassword(request, this.response));
+
+        // The login cookies are removed
+        Assert.assertFalse(this.cookies.isEmpty());
+        Assert.assertEquals(0, this.cookies.get(0).getMaxAge());
+    }
+
+    @Test
+    public void getRememberedLoginWithModifiedCookie()
+    {
+        Cookie[] rememberedCookies = rememberLogin("10.0.0.1");
+
+        Cookie[] modifiedCookies = new Cookie[rememberedCookies.length];
+        for (int i = 0; i < rememberedCookies.length; ++i) {
+            modifiedCookies[i] = rememberedCookies[i];
+            if (rememberedCookies[i].getName().equals("username")) {
+                modifiedCookies[i] = new Cookie("username", this.loginManager.encryptText("XWiki.Other"));
+            }
+        }
+
+        SecurityRequestWrapper request = createRequest("10.0.0.1", modifiedCookies);
+        Assert.assertNull(this.loginManager.getRememberedUsername(request, this.response));
+        Assert.assertNull(this.loginManager.getRememberedPassword(request, this.response));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for {@link XWikiServletRequestStub}.
+ * 
+ * @version $Id$
+ */
+public class XWikiServletRequestStubTest
+{
+    @Test
+    public void withoutParameters()
+    {
+        XWikiServletRequestStub request = new XWikiServletRequestStub();
+
+        Assert.assertNull(request.getParameter("pdftoc"));
+        Assert.assertEquals(0, request.getParameterValues("pdftoc").length);
+        Assert.assertEquals("", request.get("pdftoc"));
+        Assert.assertNull(request.getParameterMap());
+        Assert.assertNull(request.getParameterNames());
+    }
+
+    @Test
+    public void withParameters()
+    {
+        Map<String, String[]> parameters = new HashMap<String, String[]>();
+        parameters.put("pages", new String[] {"Main.WebHome", "Sandbox.WebHome"});
+        parameters.put("empty", new String[0]);
+
+        XWikiServletRequestStub request = new XWikiServletRequestStub();
+        request.setRequestParameters(parameters);
+
+        Assert.assertEquals("Main.WebHome", request.getParameter("pages"));
+        Assert.assertEquals("Main.WebHome", request.get("pages"));
+        Assert.assertArrayEquals(new String[] {"Main.WebHome", "Sandbox.WebHome"},
+            request.getParameterValues("pages"));
+        Assert.assertNull(request.getParameter("empty"));
+        Assert.assertNull(request.getParameter("pdftoc"));
+        Assert.assertEquals("", request.get("pdftoc"));
+        Assert.assertSame(parameters, request.getParameterMap());
+        Assert.assertEquals(parameters.keySet(),
+            new HashSet<Object>(Collections.list(request.getParameterNames())));
+    }
+}
@@ -22,6 +22,8 @@
 import java.util.List;
 import java.util.Map;
 
+import org.xwiki.stability.Unstable;
+
 /**
  * This is a Query interface, representing all queries in various languages for various stores.
  *
@@ -157,4 +159,17 @@
      * @throws QueryException if something goes wrong.
      */
     <T> List<T> execute() throws QueryException;
+
+    /**
+     * Execute the query and fetch the results while they are iterated instead of loading them all in memory, when
+     * supported by the query language. Useful to go through all the documents of a big wiki. The returned iterator
+     * must be {@link QueryIterator#close() closed} if it's not read until the end.
+     *
+     * @param <T> expected type of elements in the result.
+     * @return iterator over the results of the query. If several fields are selected then T=Object[].
+     * @throws QueryException if something goes wrong.
+     * @since 5.2M1
+     */
+    @Unstable
+    <T> QueryIterator<T> iterate() throws QueryException;
 }
@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query;
+
+import java.util.Iterator;
+
+import org.xwiki.stability.Unstable;
+
+/**
+ * Iterator over the results of a query, fetching them from the store while iterating when supported by the query
+ * language. The resources used by the iterator are released when the last result has been read. An iterator which
+ * is not read until the end must be explicitly closed.
+ *
+ * @param <T> expected type of elements in the result. If several fields are selected then T=Object[].
+ * @version $Id$
+ * @see Query#iterate()
+ * @since 5.2M1
+ */
+@Unstable
+public interface QueryIterator<T> extends Iterator<T>
+{
+    /**
+     * Release the resources used to fetch the results. Calling it again or after the last result has been read has
+     * no effect.
+     */
+    void close();
+}
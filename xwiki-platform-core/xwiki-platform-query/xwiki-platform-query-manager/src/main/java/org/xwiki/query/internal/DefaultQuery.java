@@ -30,6 +30,7 @@
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 
 /**
  * Stores all information needed for execute a query.
@@ -248,6 +249,12 @@ public <T> List<T> execute() throws QueryException
         return getExecuter().execute(this);
     }
 
+    @Override
+    public <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return ListQueryIterator.iterate(getExecuter(), this);
+    }
+
     /**
      * @return QueryExecutor interface for execute the query.
      */
@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query.internal;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryExecutor;
+import org.xwiki.query.QueryIterator;
+import org.xwiki.query.StreamingQueryExecutor;
+
+/**
+ * {@link QueryIterator} over already loaded results, used for the query languages which can't fetch the results while
+ * they are iterated.
+ *
+ * @param <T> expected type of elements in the result
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class ListQueryIterator<T> implements QueryIterator<T>
+{
+    /**
+     * The iterator over the loaded results.
+     */
+    private final Iterator<T> iterator;
+
+    /**
+     * @param results the loaded results
+     */
+    public ListQueryIterator(List<T> results)
+    {
+        this.iterator = results.iterator();
+    }
+
+    /**
+     * Iterate over the results of a query using the streaming support of the executor if it has any.
+     *
+     * @param <T> expected type of elements in the result
+     * @param executor the query executor
+     * @param query the query to execute
+     * @return iterator over the results of the query
+     * @throws QueryException if something goes wrong
+     */
+    public static <T> QueryIterator<T> iterate(QueryExecutor executor, Query query) throws QueryException
+    {
+        if (executor instanceof StreamingQueryExecutor) {
+            return ((StreamingQueryExecutor) executor).iterate(query);
+        }
+
+        return new ListQueryIterator<T>(executor.<T>execute(query));
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return this.iterator.hasNext();
+    }
+
+    @Override
+    public T next()
+    {
+        return this.iterator.next();
+    }
+
+    @Override
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close()
+    {
+        // Nothing to release
+    }
+}
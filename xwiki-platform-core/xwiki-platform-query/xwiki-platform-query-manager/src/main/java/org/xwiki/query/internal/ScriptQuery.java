@@ -27,6 +27,7 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryManager;
 
 import java.util.List;
@@ -235,4 +236,10 @@ public <T> List<T> execute() throws QueryException
     {
         return query.execute();
     }
+
+    @Override
+    public <T> QueryIterator<T> iterate() throws QueryException
+    {
+        return query.iterate();
+    }
 }
\ No newline at end of file
@@ -31,6 +31,8 @@
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryExecutorManager;
+import org.xwiki.query.QueryIterator;
+import org.xwiki.query.StreamingQueryExecutor;
 
 /**
  * {@link QueryExecutorManager} with access rights checking.
@@ -43,7 +45,7 @@
 @Component(roles = { QueryExecutorManager.class })
 @Named("secure")
 @Singleton
-public class SecureQueryExecutorManager implements QueryExecutorManager
+public class SecureQueryExecutorManager implements QueryExecutorManager, StreamingQueryExecutor
 {
     /**
      * Nested {@link QueryExecutorManager}.
@@ -76,6 +78,25 @@ private boolean isShortFormStatement(String statement)
 
     @Override
     public <T> List<T> execute(Query query) throws QueryException
+    {
+        checkAllowed(query);
+
+        return getNestedQueryExecutorManager().execute(query);
+    }
+
+    @Override
+    public <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        checkAllowed(query);
+
+        return ListQueryIterator.iterate(getNestedQueryExecutorManager(), query);
+    }
+
+    /**
+     * @param query the query to execute
+     * @throws QueryException if the current user is not allowed to execute the query
+     */
+    private void checkAllowed(Query query) throws QueryException
     {
         if (query.isNamed() && !getBridge().hasProgrammingRights()) {
             throw new QueryException("Named queries requires programming right", query, null);
@@ -87,7 +108,6 @@ public <T> List<T> execute(Query query) throws QueryException
         if (!isShortFormStatement(query.getStatement()) && !getBridge().hasProgrammingRights()) {
             throw new QueryException("Full form statements requires programming right", query, null);
         }
-        return getNestedQueryExecutorManager().execute(query);
     }
 
     @Override
@@ -19,10 +19,18 @@
  */
 package org.xwiki.query.internal;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -45,4 +53,26 @@ public void addSameFilterMultipleTimes()
         // QueryFilter#getName() or QueryFilter#getID() in order to forbid the addition of multiple identical filters.
         assertTrue(query.getFilters().size() == 1);
     }
+
+    @Test
+    public void iterateWithExecutorNotSupportingIt() throws Exception
+    {
+        QueryExecutor executor = new QueryExecutor()
+        {
+            @SuppressWarnings("unchecked")
+            @Override
+            public <T> List<T> execute(Query query) throws QueryException
+            {
+                return (List<T>) Arrays.asList("first", "second");
+            }
+        };
+        Query query = new DefaultQuery("", Query.XWQL, executor);
+
+        QueryIterator<String> iterator = query.iterate();
+
+        assertEquals("first", iterator.next());
+        assertEquals("second", iterator.next());
+        assertFalse(iterator.hasNext());
+        iterator.close();
+    }
 }
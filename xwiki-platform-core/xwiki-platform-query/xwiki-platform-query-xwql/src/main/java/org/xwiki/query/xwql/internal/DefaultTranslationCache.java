@@ -0,0 +1,157 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query.xwql.internal;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Default {@link TranslationCache}, a LRU cache indexed by wiki and statement.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultTranslationCache implements TranslationCache, Initializable
+{
+    /** The maximum number of translations to keep in memory. */
+    private static final int CACHE_SIZE = 1000;
+
+    /** Separator between the wiki and the statement or class in the keys. */
+    private static final char WIKI_SEPARATOR = ':';
+
+    /** Used to create the cache. */
+    @Inject
+    private CacheManager cacheManager;
+
+    /** The logger to log. */
+    @Inject
+    private Logger logger;
+
+    /** The translated statements, indexed by wiki and XWQL statement. */
+    private Cache<String> cache;
+
+    /** The classes, prefixed with their wiki, used by the cached statements. */
+    private final Set<String> classes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Number of translations found in the cache. */
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /** Number of statements which had to be translated. */
+    private final AtomicLong missCount = new AtomicLong();
+
+    /** Total time spent to translate statements. */
+    private final AtomicLong translationTime = new AtomicLong();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId("query.xwql.translations");
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(CACHE_SIZE);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.cache = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            // Not critical, statements will just be translated each time
+            this.logger.error("Failed to create cache [{}]", cacheConfiguration.getConfigurationId(), e);
+        }
+    }
+
+    @Override
+    public String get(String statement, String wiki)
+    {
+        String translation = this.cache != null ? this.cache.get(wiki + WIKI_SEPARATOR + statement) : null;
+
+        if (translation != null) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+        }
+
+        return translation;
+    }
+
+    @Override
+    public void put(String statement, String wiki, String translation, Collection<String> classNames, long time)
+    {
+        this.translationTime.addAndGet(time);
+
+        if (this.cache != null) {
+            for (String className : classNames) {
+                this.classes.add(className.indexOf(WIKI_SEPARATOR) < 0 ? wiki + WIKI_SEPARATOR + className
+                    : className);
+            }
+
+            this.cache.set(wiki + WIKI_SEPARATOR + statement, translation);
+        }
+    }
+
+    @Override
+    public void invalidate(DocumentReference classReference)
+    {
+        String className = classReference.getWikiReference().getName() + WIKI_SEPARATOR
+            + classReference.getLastSpaceReference().getName() + '.' + classReference.getName();
+
+        if (this.cache != null && this.classes.contains(className)) {
+            // Class modifications are rare enough to not bother indexing the statements by class
+            this.classes.clear();
+            this.cache.removeAll();
+        }
+    }
+
+    @Override
+    public long getHitCount()
+    {
+        return this.hitCount.get();
+    }
+
+    @Override
+    public long getMissCount()
+    {
+        return this.missCount.get();
+    }
+
+    @Override
+    public long getTranslationTime()
+    {
+        return this.translationTime.get();
+    }
+}
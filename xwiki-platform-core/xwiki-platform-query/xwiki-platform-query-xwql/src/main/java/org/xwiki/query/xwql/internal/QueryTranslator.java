@@ -19,6 +19,8 @@
  */
 package org.xwiki.query.xwql.internal;
 
+import java.util.Collection;
+
 import org.xwiki.component.annotation.Role;
 
 @Role
@@ -27,4 +29,13 @@
     String getOutputLanguage();
 
     String translate(String statement) throws Exception;
+
+    /**
+     * @param statement the statement to translate
+     * @param classNames filled with the names of the classes whose objects are used by the statement
+     * @return the translated statement
+     * @throws Exception if the statement could not be translated
+     * @since 5.2M1
+     */
+    String translate(String statement, Collection<String> classNames) throws Exception;
 }
@@ -0,0 +1,74 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query.xwql.internal;
+
+import java.util.Collection;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+/**
+ * Keep the result of the translation of XWQL statements so that the statements executed again and again (live tables,
+ * panels, etc.) are parsed and translated only once.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface TranslationCache
+{
+    /**
+     * @param statement the XWQL statement
+     * @param wiki the wiki in which the statement is translated
+     * @return the translated statement or null if it's not in the cache
+     */
+    String get(String statement, String wiki);
+
+    /**
+     * @param statement the XWQL statement
+     * @param wiki the wiki in which the statement has been translated
+     * @param translation the translated statement
+     * @param classNames the names of the classes whose objects are used by the statement
+     * @param time the time spent, in milliseconds, to parse and translate the statement
+     */
+    void put(String statement, String wiki, String translation, Collection<String> classNames, long time);
+
+    /**
+     * Forget the translations of the statements using the given class since they depend on its properties types.
+     *
+     * @param classReference the reference of the modified class document
+     */
+    void invalidate(DocumentReference classReference);
+
+    /**
+     * @return the number of translations found in the cache
+     */
+    long getHitCount();
+
+    /**
+     * @return the number of statements which had to be parsed and translated
+     */
+    long getMissCount();
+
+    /**
+     * @return the total time spent, in milliseconds, to parse and translate the statements not found in the cache
+     */
+    long getTranslationTime();
+}
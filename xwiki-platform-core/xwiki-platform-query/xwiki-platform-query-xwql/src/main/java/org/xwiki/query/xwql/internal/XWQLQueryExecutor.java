@@ -19,8 +19,10 @@
  */
 package org.xwiki.query.xwql.internal;
 
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -35,14 +37,15 @@
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
-import org.xwiki.query.QueryExecutor;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryIterator;
 import org.xwiki.query.QueryManager;
+import org.xwiki.query.StreamingQueryExecutor;
 
 @Component
 @Named("xwql")
 @Singleton
-public class XWQLQueryExecutor implements QueryExecutor
+public class XWQLQueryExecutor implements StreamingQueryExecutor
 {
     @Inject
     @Named("hql")
@@ -54,6 +57,9 @@ public class XWQLQueryExecutor implements QueryExecutor
     @Inject
     private ModelContext context;
 
+    @Inject
+    private TranslationCache translationCache;
+
     public QueryManager getQueryManager() throws ComponentLookupException
     {
         // We can't inject QueryManager because of cyclic dependency.
@@ -62,6 +68,22 @@ public QueryManager getQueryManager() throws ComponentLookupException
 
     @Override
     public <T> List<T> execute(Query query) throws QueryException
+    {
+        return createNativeQuery(query).execute();
+    }
+
+    @Override
+    public <T> QueryIterator<T> iterate(Query query) throws QueryException
+    {
+        return createNativeQuery(query).iterate();
+    }
+
+    /**
+     * @param query the XWQL query
+     * @return the query to execute in the language of the translator
+     * @throws QueryException if the query could not be translated
+     */
+    private Query createNativeQuery(Query query) throws QueryException
     {
         EntityReference currentEntityReference = this.context.getCurrentEntityReference();
 
@@ -77,8 +99,7 @@ public <T> List<T> execute(Query query) throws QueryException
             }
 
             nativeQuery =
-                getQueryManager().createQuery(this.translator.translate(query.getStatement()),
-                    this.translator.getOutputLanguage());
+                getQueryManager().createQuery(translate(query.getStatement()), this.translator.getOutputLanguage());
             nativeQuery.setLimit(query.getLimit());
             nativeQuery.setOffset(query.getOffset());
             nativeQuery.setWiki(query.getWiki());
@@ -94,7 +115,7 @@ public <T> List<T> execute(Query query) throws QueryException
                 nativeQuery.bindValue(e.getKey(), e.getValue());
             }
 
-            return nativeQuery.execute();
+            return nativeQuery;
         } catch (Exception e) {
             if (e instanceof QueryException) {
                 throw (QueryException) e;
@@ -106,6 +127,39 @@ public <T> List<T> execute(Query query) throws QueryException
         }
     }
 
+    /**
+     * Translate the statement in the current wiki, reusing the previous translation of the same statement if any.
+     *
+     * @param statement the XWQL statement
+     * @return the translated statement
+     * @throws Exception if the statement could not be translated
+     */
+    private String translate(String statement) throws Exception
+    {
+        EntityReference currentEntityReference = this.context.getCurrentEntityReference();
+        String wiki = currentEntityReference != null
+            ? currentEntityReference.extractReference(EntityType.WIKI).getName() : null;
+
+        String translation = this.translationCache.get(statement, wiki);
+        if (translation == null) {
+            long startTime = System.currentTimeMillis();
+            Set<String> classNames = new HashSet<String>();
+            translation = this.translator.translate(statement, classNames);
+            this.translationCache.put(statement, wiki, translation, classNames,
+                System.currentTimeMillis() - startTime);
+        }
+
+        return translation;
+    }
+
+    /**
+     * @return the cache of the translated statements, which also provides translation statistics
+     */
+    public TranslationCache getTranslationCache()
+    {
+        return this.translationCache;
+    }
+
     public QueryTranslator getTranslator()
     {
         return this.translator;
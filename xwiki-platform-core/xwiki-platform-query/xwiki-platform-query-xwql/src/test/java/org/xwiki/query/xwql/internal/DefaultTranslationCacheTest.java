@@ -0,0 +1,162 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query.xwql.internal;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link DefaultTranslationCache}.
+ *
+ * @version $Id$
+ */
+public class DefaultTranslationCacheTest
+{
+    private static final String STATEMENT = "select doc.fullName from Document doc, doc.object(XWiki.MyClass) as obj";
+
+    private CacheManager cacheManager;
+
+    private DefaultTranslationCache translationCache;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        final Map<String, String> entries = new HashMap<String, String>();
+        @SuppressWarnings("unchecked")
+        Cache<String> cache = mock(Cache.class);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                entries.put((String) invocation.getArguments()[0], (String) invocation.getArguments()[1]);
+                return null;
+            }
+        }).when(cache).set(anyString(), anyString());
+        when(cache.get(anyString())).thenAnswer(new Answer<String>()
+        {
+            @Override
+            public String answer(InvocationOnMock invocation)
+            {
+                return entries.get(invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                entries.clear();
+                return null;
+            }
+        }).when(cache).removeAll();
+
+        this.cacheManager = mock(CacheManager.class);
+        when(this.cacheManager.<String>createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+
+        this.translationCache = createTranslationCache();
+    }
+
+    private DefaultTranslationCache createTranslationCache() throws Exception
+    {
+        DefaultTranslationCache translationCache = new DefaultTranslationCache();
+        ReflectionUtils.setFieldValue(translationCache, "cacheManager", this.cacheManager);
+        ReflectionUtils.setFieldValue(translationCache, "logger", mock(Logger.class));
+        translationCache.initialize();
+
+        return translationCache;
+    }
+
+    @Test
+    public void translationIsCachedPerStatementAndWiki()
+    {
+        Assert.assertNull(this.translationCache.get(STATEMENT, "wiki1"));
+        this.translationCache.put(STATEMENT, "wiki1", "hql1", Arrays.asList("XWiki.MyClass"), 5);
+
+        Assert.assertEquals("hql1", this.translationCache.get(STATEMENT, "wiki1"));
+        Assert.assertNull(this.translationCache.get(STATEMENT, "wiki2"));
+        Assert.assertNull(this.translationCache.get("select doc.fullName from Document doc", "wiki1"));
+
+        this.translationCache.put(STATEMENT, "wiki2", "hql2", Arrays.asList("XWiki.MyClass"), 3);
+        Assert.assertEquals("hql2", this.translationCache.get(STATEMENT, "wiki2"));
+        Assert.assertEquals("hql1", this.translationCache.get(STATEMENT, "wiki1"));
+
+        Assert.assertEquals(3, this.translationCache.getHitCount());
+        Assert.assertEquals(3, this.translationCache.getMissCount());
+        Assert.assertEquals(8, this.translationCache.getTranslationTime());
+    }
+
+    @Test
+    public void translationsAreInvalidatedWhenAUsedClassChanges()
+    {
+        this.translationCache.put(STATEMENT, "wiki1", "hql1", Arrays.asList("XWiki.MyClass"), 5);
+
+        // Classes not used by the cached statements
+        this.translationCache.invalidate(new DocumentReference("wiki1", "XWiki", "OtherClass"));
+        this.translationCache.invalidate(new DocumentReference("wiki2", "XWiki", "MyClass"));
+        Assert.assertEquals("hql1", this.translationCache.get(STATEMENT, "wiki1"));
+
+        this.translationCache.invalidate(new DocumentReference("wiki1", "XWiki", "MyClass"));
+        Assert.assertNull(this.translationCache.get(STATEMENT, "wiki1"));
+    }
+
+    @Test
+    public void translationsAreInvalidatedWhenAClassFromAnotherWikiChanges()
+    {
+        this.translationCache.put(STATEMENT, "wiki1", "hql1", Arrays.asList("wiki2:XWiki.MyClass"), 5);
+
+        this.translationCache.invalidate(new DocumentReference("wiki1", "XWiki", "MyClass"));
+        Assert.assertEquals("hql1", this.translationCache.get(STATEMENT, "wiki1"));
+
+        this.translationCache.invalidate(new DocumentReference("wiki2", "XWiki", "MyClass"));
+        Assert.assertNull(this.translationCache.get(STATEMENT, "wiki1"));
+    }
+
+    @Test
+    public void translationsAreNotCachedWhenTheCacheCannotBeCreated() throws Exception
+    {
+        when(this.cacheManager.<String>createNewCache(any(CacheConfiguration.class))).thenThrow(
+            new CacheException("error"));
+        DefaultTranslationCache translationCache = createTranslationCache();
+
+        translationCache.put(STATEMENT, "wiki1", "hql1", Collections.<String>emptyList(), 5);
+
+        Assert.assertNull(translationCache.get(STATEMENT, "wiki1"));
+        Assert.assertEquals(1, translationCache.getMissCount());
+        Assert.assertEquals(5, translationCache.getTranslationTime());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.query.xwql.internal;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link TranslationCacheInvalidator}.
+ *
+ * @version $Id$
+ */
+public class TranslationCacheInvalidatorTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<TranslationCacheInvalidator> mocker =
+        new MockitoComponentMockingRule<TranslationCacheInvalidator>(TranslationCacheInvalidator.class);
+
+    @Test
+    public void listensToDocumentModifications() throws Exception
+    {
+        Assert.assertEquals(3, this.mocker.getComponentUnderTest().getEvents().size());
+        Assert.assertTrue(this.mocker.getComponentUnderTest().getEvents().get(1).matches(
+            new DocumentUpdatedEvent(new DocumentReference("wiki", "XWiki", "MyClass"))));
+    }
+
+    @Test
+    public void classModificationInvalidatesTheTranslations() throws Exception
+    {
+        DocumentReference classReference = new DocumentReference("wiki", "XWiki", "MyClass");
+        DocumentModelBridge classDocument = mock(DocumentModelBridge.class);
+        when(classDocument.getDocumentReference()).thenReturn(classReference);
+
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(classReference), classDocument, null);
+        this.mocker.getComponentUnderTest().onEvent(new DocumentCreatedEvent(classReference), classDocument, null);
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(classReference), classDocument, null);
+
+        TranslationCache translationCache = this.mocker.getInstance(TranslationCache.class);
+        verify(translationCache, times(3)).invalidate(classReference);
+    }
+}
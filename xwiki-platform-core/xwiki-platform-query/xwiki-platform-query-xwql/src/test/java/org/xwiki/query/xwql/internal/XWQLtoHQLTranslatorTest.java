@@ -19,8 +19,13 @@
  */
 package org.xwiki.query.xwql.internal;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.commons.lang3.StringUtils;
 import org.jmock.Expectations;
 import org.junit.Before;
@@ -195,4 +200,15 @@ public void testCustomMapping() throws Exception
             "select doc from XWikiDocument as doc , BaseObject as c , Custom.Mapping as cCM1, StringProperty as c_prop2 " +
                 "where ( cCM1.cmprop = 'some' and c_prop2.value = 1 ) and doc.fullName=c.name and c.id=cCM1.id and c_prop2.id.id=c.id and c_prop2.id.name='prop'");
     }
+
+    @Test
+    public void testClassNames() throws Exception
+    {
+        Set<String> classNames = new HashSet<String>();
+        translator.translate("from doc.object('XWiki.XWikiUsers') as user where doc.object(XWiki.XWikiGroups).member "
+            + "= 'XWiki.Admin' and doc.object(Blog.BlogPostClass).title = 'title'", classNames);
+
+        assertEquals(new HashSet<String>(Arrays.asList("XWiki.XWikiUsers", "XWiki.XWikiGroups", "Blog.BlogPostClass")),
+            classNames);
+    }
 }
@@ -27,11 +27,19 @@
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
 import org.xwiki.context.Execution;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReferenceSerializer;
@@ -49,6 +57,7 @@
 import org.xwiki.rendering.macro.wikibridge.WikiMacroVisibility;
 import org.xwiki.rendering.parser.ParseException;
 import org.xwiki.rendering.parser.Parser;
+import org.xwiki.rendering.syntax.Syntax;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -63,8 +72,13 @@
  */
 @Component
 @Singleton
-public class DefaultWikiMacroFactory implements WikiMacroFactory, WikiMacroConstants
+public class DefaultWikiMacroFactory implements WikiMacroFactory, WikiMacroConstants, Initializable
 {
+    /**
+     * The maximum number of parsed macro contents to keep in memory.
+     */
+    private static final int PARSED_CONTENT_CACHE_SIZE = 500;
+
     /**
      * The {@link ComponentManager} component.
      */
@@ -83,12 +97,42 @@ public class DefaultWikiMacroFactory implements WikiMacroFactory, WikiMacroConst
     @Inject
     private EntityReferenceSerializer<String> serializer;
 
+    /**
+     * Used to create the parsed macro content cache.
+     */
+    @Inject
+    private CacheManager cacheManager;
+
     /**
      * The logger to log.
      */
     @Inject
     private Logger logger;
 
+    /**
+     * The already parsed macros contents indexed by macro document, syntax and hash of the source. A macro is
+     * registered again each time the document holding it is saved, the content is only parsed when it actually
+     * changed. Never modified since {@link DefaultWikiMacro} executes a clone of it.
+     */
+    private Cache<XDOM> parsedContentCache;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        CacheConfiguration cacheConfiguration = new CacheConfiguration();
+        cacheConfiguration.setConfigurationId("rendering.wikimacro.content");
+        LRUEvictionConfiguration lru = new LRUEvictionConfiguration();
+        lru.setMaxEntries(PARSED_CONTENT_CACHE_SIZE);
+        cacheConfiguration.put(LRUEvictionConfiguration.CONFIGURATIONID, lru);
+
+        try {
+            this.parsedContentCache = this.cacheManager.createNewCache(cacheConfiguration);
+        } catch (CacheException e) {
+            // Not critical, macros content will just be parsed each time
+            this.logger.error("Failed to create cache [{}]", cacheConfiguration.getConfigurationId(), e);
+        }
+    }
+
     /**
      * Utility method for accessing XWikiContext.
      * 
@@ -239,21 +283,51 @@ private WikiMacro buildMacro(XWikiDocument doc) throws WikiMacroException
             new WikiMacroDescriptor(id, macroName, macroDescription, macroDefaultCategory, macroVisibility,
                 contentDescriptor, parameterDescriptors);
 
-        XDOM xdom;
-        try {
-            Parser parser = componentManager.getInstance(Parser.class, doc.getSyntax().toIdString());
-            xdom = parser.parse(new StringReader(macroCode));
-        } catch (ComponentLookupException ex) {
-            throw new WikiMacroException("Could not find a parser for macro content", ex);
-        } catch (ParseException ex) {
-            throw new WikiMacroException("Error while parsing macro content", ex);
-        }
+        XDOM xdom = parseContent(documentReference, macroCode, doc.getSyntax());
 
         // Create & return the macro.
         return new DefaultWikiMacro(documentReference, doc.getAuthorReference(), macroSupportsInlineMode,
             macroDescriptor, xdom, doc.getSyntax(), this.componentManager);
     }
 
+    /**
+     * Parse the macro content or reuse it from the cache when the same content of the same macro document has already
+     * been parsed.
+     * 
+     * @param documentReference the document holding the macro definition
+     * @param macroCode the macro content to parse
+     * @param syntax the syntax of the macro content
+     * @return the parsed macro content
+     * @throws WikiMacroException when failing to parse the content
+     */
+    XDOM parseContent(DocumentReference documentReference, String macroCode, Syntax syntax)
+        throws WikiMacroException
+    {
+        String syntaxId = syntax.toIdString();
+        // Don't keep the whole macro code in the key, a hash is enough to know if it changed
+        String key =
+            this.serializer.serialize(documentReference) + ':' + syntaxId + ':' + DigestUtils.sha256Hex(macroCode);
+
+        XDOM xdom = this.parsedContentCache != null ? this.parsedContentCache.get(key) : null;
+
+        if (xdom == null) {
+            try {
+                Parser parser = componentManager.getInstance(Parser.class, syntaxId);
+                xdom = parser.parse(new StringReader(macroCode));
+            } catch (ComponentLookupException ex) {
+                throw new WikiMacroException("Could not find a parser for macro content", ex);
+            } catch (ParseException ex) {
+                throw new WikiMacroException("Error while parsing macro content", ex);
+            }
+
+            if (this.parsedContentCache != null) {
+                this.parsedContentCache.set(key, xdom);
+            }
+        }
+
+        return xdom;
+    }
+
     @Override
     public boolean containsWikiMacro(DocumentReference documentReference)
     {
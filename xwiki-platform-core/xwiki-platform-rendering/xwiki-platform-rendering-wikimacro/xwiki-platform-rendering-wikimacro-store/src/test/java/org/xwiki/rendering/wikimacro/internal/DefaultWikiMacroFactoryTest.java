@@ -21,6 +21,7 @@
 
 import org.jmock.Mock;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.macro.wikibridge.WikiMacro;
 import org.xwiki.rendering.macro.wikibridge.WikiMacroDescriptor;
 import org.xwiki.rendering.macro.wikibridge.WikiMacroFactory;
@@ -29,6 +30,7 @@
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.test.AbstractBridgedXWikiComponentTestCase;
 import org.xwiki.rendering.macro.wikibridge.WikiMacroVisibility;
+import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.rendering.wikimacro.internal.DefaultWikiMacroFactory;
 
 /**
@@ -102,4 +104,24 @@ public void testCreateWikiMacroWithoutName() throws Exception
         // Check if the macro was built correctly.
         assertEquals("testmacro", macro.getDescriptor().getName());
     }
+
+    public void testParsedContentIsReused() throws Exception
+    {
+        DefaultWikiMacroFactory factory = (DefaultWikiMacroFactory) this.wikiMacroFactory;
+        DocumentReference reference = new DocumentReference("xwiki", "Macros", "Test");
+
+        XDOM xdom = factory.parseContent(reference, "==Hi==", Syntax.XWIKI_2_1);
+
+        // Registering the same macro again doesn't parse its content again
+        assertSame(xdom, factory.parseContent(reference, "==Hi==", Syntax.XWIKI_2_1));
+
+        // Editing the macro code invalidates the parsed content
+        XDOM modifiedXDOM = factory.parseContent(reference, "==Hello==", Syntax.XWIKI_2_1);
+        assertNotSame(xdom, modifiedXDOM);
+        assertSame(modifiedXDOM, factory.parseContent(reference, "==Hello==", Syntax.XWIKI_2_1));
+
+        // The parsed content of a macro is not shared with another macro document
+        assertNotSame(modifiedXDOM,
+            factory.parseContent(new DocumentReference("xwiki", "Macros", "Other"), "==Hello==", Syntax.XWIKI_2_1));
+    }
 }
@@ -41,6 +41,7 @@
             @QueryParam("number") @DefaultValue("-1") Integer number,
             @QueryParam("parentId") String parentFilterExpression,
             @QueryParam("order") String order,
-            @QueryParam("prettyNames") @DefaultValue("false") Boolean withPrettyNames
+            @QueryParam("prettyNames") @DefaultValue("false") Boolean withPrettyNames,
+            @QueryParam("after") String after
     ) throws XWikiRestException;
 }
@@ -0,0 +1,44 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.resources.wikis;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.rest.model.jaxb.Batch;
+import org.xwiki.rest.model.jaxb.BatchResults;
+
+/**
+ * Applies several page, object and attachment modifications in one request. The modifications targeting the same page
+ * are saved together.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Path("/wikis/{wikiName}/batch")
+public interface WikiBatchResource
+{
+    @POST BatchResults applyBatch(
+            @PathParam("wikiName") String wikiName,
+            Batch batch
+    ) throws XWikiRestException;
+}
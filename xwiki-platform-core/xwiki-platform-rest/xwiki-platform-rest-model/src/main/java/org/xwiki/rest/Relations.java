@@ -162,6 +162,13 @@
      */
     public static final String SYNTAXES = "http://www.xwiki.org/rel/syntaxes";
 
+    /**
+     * Relation for links pointing to the next page of a paginated list.
+     *
+     * @since 5.2M1
+     */
+    public static final String NEXT = "next";
+
     /**
      * Avoid instantiation.
      */
@@ -19,6 +19,11 @@
  */
 package org.xwiki.rest;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -27,10 +32,20 @@
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriInfo;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Dimension;
+import org.restlet.data.Tag;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
 import org.xwiki.component.manager.ComponentManager;
@@ -38,6 +53,7 @@
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.QueryManager;
+import org.xwiki.rest.internal.Constants;
 import org.xwiki.rest.internal.Utils;
 import org.xwiki.rest.model.jaxb.ObjectFactory;
 
@@ -62,6 +78,20 @@ public class XWikiResource implements XWikiRestComponent, Initializable
     @Context
     protected UriInfo uriInfo;
 
+    /**
+     * <p> The current request, used to evaluate the conditional request headers (If-None-Match, If-Modified-Since).
+     * </p>
+     */
+    @Context
+    protected Request request;
+
+    /**
+     * <p> The headers of the current request, used to take the negotiated media type into account in the entity tags.
+     * </p>
+     */
+    @Context
+    protected HttpHeaders headers;
+
     /**
      * <p> The logger to be used to output log messages. </p>
      */
@@ -214,6 +244,124 @@ public DocumentInfo getDocumentInfo(String wikiName, String spaceName, String pa
         return new DocumentInfo(doc, !existed);
     }
 
+    /**
+     * <p> Evaluate the conditional headers of the request against the current state of a document. If the client
+     * already holds the current representation a 304 (Not Modified) response is sent right away, otherwise the
+     * validators are registered so that they are sent along with the representation. </p>
+     *
+     * @param doc The document the representation is built from.
+     * @param maxAge The number of seconds during which the representation can be reused without revalidation.
+     * @param variant Additional information the representation depends on (e.g. an object or an attachment name).
+     * @throws WebApplicationException NOT_MODIFIED if the client already holds the current representation.
+     */
+    protected void evaluatePreconditions(Document doc, int maxAge, String... variant)
+    {
+        evaluatePreconditions(doc.getDate(), getEntityTag(doc.getPrefixedFullName(), doc.getLanguage(),
+            doc.getVersion(), StringUtils.join(variant, ':')), maxAge);
+    }
+
+    /**
+     * <p> Evaluate the conditional headers of the request against the current state of a page. The page representation
+     * doesn't only depend on the document version but also on its translations, its parent, its children and its
+     * display title, so all of them are part of the entity tag. The modification date of the document isn't used as
+     * validator since it doesn't change when, for instance, a child is created. </p>
+     *
+     * @param doc The document the page representation is built from.
+     * @param maxAge The number of seconds during which the representation can be reused without revalidation.
+     * @throws XWikiException if the state of the page can't be retrieved.
+     * @throws WebApplicationException NOT_MODIFIED if the client already holds the current representation.
+     */
+    protected void evaluatePagePreconditions(Document doc, int maxAge) throws XWikiException
+    {
+        Document parent = Utils.getParentDocument(doc, Utils.getXWikiApi(this.componentManager));
+        String parentState = "";
+        if (parent != null) {
+            parentState = parent.getPrefixedFullName() + (parent.isNew() ? ":new" : ":exists");
+        }
+
+        /* Only the existence of children matters, so don't load all of them */
+        EntityTag entityTag = getEntityTag(doc.getPrefixedFullName(), doc.getLanguage(), doc.getVersion(),
+            StringUtils.join(doc.getTranslationList(), ','), parentState,
+            String.valueOf(doc.getChildren(1, 0).isEmpty()), doc.getDisplayTitle());
+
+        evaluatePreconditions(null, entityTag, maxAge);
+    }
+
+    /**
+     * <p> Evaluate the conditional headers of the request against the passed validators. If the client already holds
+     * the current representation a 304 (Not Modified) response is sent right away, otherwise the validators are
+     * registered so that they are sent along with the representation. </p>
+     *
+     * @param lastModified The last modification date of the representation.
+     * @param entityTag The entity tag of the representation.
+     * @param maxAge The number of seconds during which the representation can be reused without revalidation.
+     * @throws WebApplicationException NOT_MODIFIED if the client already holds the current representation.
+     */
+    protected void evaluatePreconditions(Date lastModified, EntityTag entityTag, int maxAge)
+    {
+        /* HTTP dates have a precision of one second */
+        Date modificationDate = lastModified != null ? new Date(lastModified.getTime() / 1000 * 1000) : null;
+
+        /* The representations depend on the rights of the current user so they must not be shared */
+        CacheControl cacheControl = new CacheControl();
+        cacheControl.setPrivate(true);
+        cacheControl.setNoTransform(false);
+        cacheControl.setMaxAge(maxAge);
+        cacheControl.setMustRevalidate(maxAge == 0);
+
+        /* The entity tag depends on the negotiated media type (XML or JSON) */
+        org.restlet.Response.getCurrent().getAttributes().put(Constants.RESPONSE_DIMENSIONS,
+            Collections.singleton(Dimension.MEDIA_TYPE));
+
+        ResponseBuilder builder = modificationDate != null
+            ? this.request.evaluatePreconditions(modificationDate, entityTag)
+            : this.request.evaluatePreconditions(entityTag);
+        if (builder != null) {
+            builder.tag(entityTag).cacheControl(cacheControl);
+            if (modificationDate != null) {
+                builder.lastModified(modificationDate);
+            }
+            throw new WebApplicationException(builder.build());
+        }
+
+        /*
+         * The resources return model objects, so the validators are set on the Restlet response by the
+         * XWikiSetupCleanupFilter, once the representation has been created.
+         */
+        List<CacheDirective> cacheDirectives = new ArrayList<CacheDirective>();
+        cacheDirectives.add(CacheDirective.privateInfo());
+        cacheDirectives.add(CacheDirective.maxAge(maxAge));
+        if (maxAge == 0) {
+            cacheDirectives.add(CacheDirective.mustRevalidate());
+        }
+
+        Map<String, Object> attributes = org.restlet.Response.getCurrent().getAttributes();
+        attributes.put(Constants.RESPONSE_TAG, new Tag(entityTag.getValue(), entityTag.isWeak()));
+        attributes.put(Constants.RESPONSE_CACHE_DIRECTIVES, cacheDirectives);
+        if (modificationDate != null) {
+            attributes.put(Constants.RESPONSE_MODIFICATION_DATE, modificationDate);
+        }
+    }
+
+    /**
+     * <p> Compute a weak entity tag from the passed values, the request URI, since the query parameters (e.g.
+     * prettyNames) change the representation, and the media types accepted by the client, since they select the
+     * representation format. </p>
+     *
+     * @param values The values identifying the state of the represented entity (e.g. document reference, locale and
+     *            version).
+     * @return The entity tag.
+     */
+    protected EntityTag getEntityTag(String... values)
+    {
+        String value = StringUtils.join(values, ':') + ':' + this.uriInfo.getRequestUri();
+        if (this.headers != null) {
+            value += ':' + StringUtils.join(this.headers.getAcceptableMediaTypes(), ',');
+        }
+
+        return new EntityTag(DigestUtils.md5Hex(value), true);
+    }
+
     /**
      * <p> A special GET method that produces the ad-hoc "uritemplate" media type used for retrieving the URI template
      * associated to a resource. This is an auxiliary method that is used for documenting the REST API. </p>
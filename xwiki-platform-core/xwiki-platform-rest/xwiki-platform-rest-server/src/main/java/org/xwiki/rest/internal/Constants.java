@@ -48,4 +48,27 @@
      * The key used to store the current HTTP request object in the current Restlet context.
      */
     public static final String HTTP_REQUEST = "httpRequest";
+
+    /**
+     * The key used to store, in the current Restlet response attributes, the entity tag of the returned representation.
+     */
+    public static final String RESPONSE_TAG = "rest.responseTag";
+
+    /**
+     * The key used to store, in the current Restlet response attributes, the modification date of the returned
+     * representation.
+     */
+    public static final String RESPONSE_MODIFICATION_DATE = "rest.responseModificationDate";
+
+    /**
+     * The key used to store, in the current Restlet response attributes, the cache directives of the returned
+     * representation.
+     */
+    public static final String RESPONSE_CACHE_DIRECTIVES = "rest.responseCacheDirectives";
+
+    /**
+     * The key used to store, in the current Restlet response attributes, the dimensions (sent in the Vary header) the
+     * returned representation depends on.
+     */
+    public static final String RESPONSE_DIMENSIONS = "rest.responseDimensions";
 }
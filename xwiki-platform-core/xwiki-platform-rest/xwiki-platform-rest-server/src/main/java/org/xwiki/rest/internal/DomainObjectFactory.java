@@ -297,7 +297,7 @@ private static void fillPageSummary(PageSummary pageSummary, ObjectFactory objec
         historyLink.setRel(Relations.HISTORY);
         pageSummary.getLinks().add(historyLink);
 
-        if (!doc.getChildren().isEmpty()) {
+        if (!doc.getChildren(1, 0).isEmpty()) {
             String pageChildrenUri =
                 uri(baseUri, PageChildrenResource.class, doc.getWiki(), doc.getSpace(), doc.getName());
             Link pageChildrenLink = objectFactory.createLink();
@@ -19,7 +19,9 @@
  */
 package org.xwiki.rest.internal;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.logging.Level;
 
@@ -27,6 +29,10 @@
 
 import org.restlet.Request;
 import org.restlet.Response;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.Dimension;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
 import org.restlet.ext.servlet.ServletUtils;
 import org.restlet.routing.Filter;
 import org.xwiki.component.manager.ComponentLifecycleException;
@@ -78,6 +84,8 @@ protected void afterHandle(Request request, Response response)
             }
         }
 
+        setValidators(response);
+
         /* Avoid that empty entities make the engine forward the response creation to the XWiki servlet. */
         if (response.getEntity() != null) {
             if (!response.getEntity().isAvailable()) {
@@ -86,6 +94,49 @@ protected void afterHandle(Request request, Response response)
         }
     }
 
+    /**
+     * Set the validators and cache directives registered by the JAX-RS resource on the response.
+     * 
+     * @param response the response
+     * @see org.xwiki.rest.XWikiResource#evaluatePreconditions(Date, javax.ws.rs.core.EntityTag, int)
+     */
+    private void setValidators(Response response)
+    {
+        if (!response.getStatus().isSuccess() && !Status.REDIRECTION_NOT_MODIFIED.equals(response.getStatus())) {
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        Collection<Dimension> dimensions = (Collection<Dimension>) response.getAttributes().get(
+            Constants.RESPONSE_DIMENSIONS);
+        if (dimensions != null) {
+            response.getDimensions().addAll(dimensions);
+        }
+
+        if (!response.getStatus().isSuccess()) {
+            // The other validators have been set on the 304 response by the resource
+            return;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<CacheDirective> cacheDirectives =
+            (List<CacheDirective>) response.getAttributes().get(Constants.RESPONSE_CACHE_DIRECTIVES);
+        if (cacheDirectives != null) {
+            response.getCacheDirectives().addAll(cacheDirectives);
+        }
+
+        if (response.getEntity() != null) {
+            Tag tag = (Tag) response.getAttributes().get(Constants.RESPONSE_TAG);
+            if (tag != null) {
+                response.getEntity().setTag(tag);
+            }
+            Date modificationDate = (Date) response.getAttributes().get(Constants.RESPONSE_MODIFICATION_DATE);
+            if (modificationDate != null) {
+                response.getEntity().setModificationDate(modificationDate);
+            }
+        }
+    }
+
     /**
      * @param componentManager the component manager
      * @return the list of JAX-RS resources that are implemented as components with per-lookup policy and that have been
@@ -21,12 +21,17 @@
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Formatter;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import javax.inject.Inject;
 import javax.ws.rs.core.UriBuilderException;
 
 import org.apache.commons.lang3.StringUtils;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.rest.Relations;
@@ -40,6 +45,9 @@
 import org.xwiki.rest.resources.pages.PageResource;
 import org.xwiki.rest.resources.pages.PageTranslationResource;
 import org.xwiki.rest.resources.spaces.SpaceResource;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.internal.XWikiCachingRightService;
 
 import com.xpn.xwiki.XWikiContext;
 import com.xpn.xwiki.XWikiException;
@@ -79,6 +87,63 @@ public class BaseSearchResult extends XWikiResource
         LUCENE
     }
 
+    /**
+     * Used to filter the search results the current user is not allowed to view.
+     */
+    @Inject
+    protected AuthorizationManager authorizationManager;
+
+    /**
+     * Check which of the passed documents the current user is allowed to view. This is done in a single pass when the
+     * configured right service relies on the {@link AuthorizationManager}. A custom right service is asked for each
+     * document instead.
+     *
+     * @param documents the documents to check
+     * @return the documents the current user is allowed to view
+     * @throws XWikiException if the configured right service fails to check the access
+     */
+    protected Set<DocumentReference> getViewableDocuments(Collection<DocumentReference> documents)
+        throws XWikiException
+    {
+        XWikiContext xwikiContext = Utils.getXWikiContext(this.componentManager);
+
+        if (xwikiContext.getWiki().getRightService() instanceof XWikiCachingRightService) {
+            return new HashSet<DocumentReference>(this.authorizationManager.filterAccessible(Right.VIEW,
+                xwikiContext.getUserReference(), documents));
+        }
+
+        XWiki xwikiApi = Utils.getXWikiApi(this.componentManager);
+        Set<DocumentReference> viewableDocuments = new HashSet<DocumentReference>();
+        for (DocumentReference document : documents) {
+            if (xwikiApi.hasAccessLevel("view", Utils.getPageId(document.getWikiReference().getName(),
+                document.getLastSpaceReference().getName(), document.getName()))) {
+                viewableDocuments.add(document);
+            }
+        }
+
+        return viewableDocuments;
+    }
+
+    /**
+     * Check which of the documents returned by a query the current user is allowed to view.
+     *
+     * @param queryResult the query result, each row containing the space and page names at index 1 and 2
+     * @param wikiName the wiki where the query has been executed
+     * @return the documents the current user is allowed to view
+     * @throws XWikiException if the configured right service fails to check the access
+     */
+    protected Set<DocumentReference> getViewableDocuments(List<Object> queryResult, String wikiName)
+        throws XWikiException
+    {
+        List<DocumentReference> documents = new ArrayList<DocumentReference>(queryResult.size());
+        for (Object object : queryResult) {
+            Object[] fields = (Object[]) object;
+            documents.add(new DocumentReference(wikiName, (String) fields[1], (String) fields[2]));
+        }
+
+        return getViewableDocuments(documents);
+    }
+
     /**
      * Search for keyword in the given scopes. See {@link SearchScope} for more information.
      *
@@ -236,6 +301,8 @@ protected List<SearchResult> searchPages(List<SearchScope> searchScopes, String
                     .execute();
             }
 
+            Set<DocumentReference> viewableDocuments = getViewableDocuments(queryResult, wikiName);
+
             for (Object object : queryResult) {
                 Object[] fields = (Object[]) object;
 
@@ -247,7 +314,7 @@ protected List<SearchResult> searchPages(List<SearchScope> searchScopes, String
                 String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
 
                 /* Check if the user has the right to see the found document */
-                if (xwikiApi.hasAccessLevel("view", pageId)) {
+                if (viewableDocuments.contains(new DocumentReference(wikiName, spaceName, pageName))) {
                     Document doc = xwikiApi.getDocument(pageFullName);
                     String title = doc.getDisplayTitle();
                     SearchResult searchResult = objectFactory.createSearchResult();
@@ -473,6 +540,8 @@ protected List<SearchResult> searchObjects(String keywords, String wikiName, Str
                                 .execute();
             }
 
+            Set<DocumentReference> viewableDocuments = getViewableDocuments(queryResult, wikiName);
+
             /* Build the result. */
             for (Object object : queryResult) {
                 Object[] fields = (Object[]) object;
@@ -484,14 +553,14 @@ protected List<SearchResult> searchObjects(String keywords, String wikiName, Str
 
                 String id = Utils.getObjectId(wikiName, spaceName, pageName, className, objectNumber);
 
-                String pageId = Utils.getPageId(wikiName, spaceName, pageName);
                 String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
 
                 /*
                  * Check if the user has the right to see the found document. We also prevent guest users to access
                  * object data in order to avoid leaking important information such as emails to crawlers.
                  */
-                if (xwikiApi.hasAccessLevel("view", pageId) && xwikiContext.getUserReference() != null) {
+                if (xwikiContext.getUserReference() != null
+                    && viewableDocuments.contains(new DocumentReference(wikiName, spaceName, pageName))) {
                     Document doc = xwikiApi.getDocument(pageFullName);
                     String title = doc.getDisplayTitle();
                     SearchResult searchResult = objectFactory.createSearchResult();
@@ -638,6 +707,8 @@ protected List<SearchResult> searchDatabaseQuery(String query, String queryLangu
 
             queryResult = queryManager.createQuery(squery, queryLanguage).setLimit(number).setOffset(start).execute();
 
+            Set<DocumentReference> viewableDocuments = getViewableDocuments(queryResult, wikiName);
+
             /* Build the result. */
             for (Object object : queryResult) {
                 Object[] fields = (Object[]) object;
@@ -650,7 +721,7 @@ protected List<SearchResult> searchDatabaseQuery(String query, String queryLangu
                 String pageFullName = Utils.getPageFullName(wikiName, spaceName, pageName);
 
                 /* Check if the user has the right to see the found document */
-                if (xwikiApi.hasAccessLevel("view", pageId)) {
+                if (viewableDocuments.contains(new DocumentReference(wikiName, spaceName, pageName))) {
                     Document doc = xwikiApi.getDocument(pageFullName);
                     String title = doc.getDisplayTitle();
 
@@ -781,6 +852,13 @@ protected List<SearchResult> searchLucene(String query, String defaultWikiName,
                 List<com.xpn.xwiki.plugin.lucene.SearchResult> luceneResults =
                         luceneSearchResults.getResults(start + 1, (number == -1) ? 20 : number);
 
+                List<DocumentReference> documents = new ArrayList<DocumentReference>();
+                for (com.xpn.xwiki.plugin.lucene.SearchResult luceneSearchResult : luceneResults) {
+                    documents.add(new DocumentReference(luceneSearchResult.getWiki(), luceneSearchResult.getSpace(),
+                        luceneSearchResult.getName()));
+                }
+                Set<DocumentReference> viewableDocuments = getViewableDocuments(documents);
+
                 /* Build the result. */
                 for (com.xpn.xwiki.plugin.lucene.SearchResult luceneSearchResult : luceneResults) {
                     String wikiName = luceneSearchResult.getWiki();
@@ -790,7 +868,7 @@ protected List<SearchResult> searchLucene(String query, String defaultWikiName,
                     String pageId = Utils.getPageId(wikiName, spaceName, pageName);
 
                     /* Check if the user has the right to see the found document */
-                    if (xwikiApi.hasAccessLevel("view", pageId)) {
+                    if (viewableDocuments.contains(new DocumentReference(wikiName, spaceName, pageName))) {
                         Document doc = xwikiApi.getDocument(pageId);
                         String title = doc.getDisplayTitle();
 
@@ -53,6 +53,9 @@ public Response getAttachment(String wikiName, String spaceName, String pageName
                 throw new WebApplicationException(Status.NOT_FOUND);
             }
 
+            evaluatePreconditions(xwikiAttachment.getDate(), getEntityTag(doc.getPrefixedFullName(), attachmentName,
+                xwikiAttachment.getVersion()), 0);
+
             return Response.ok().type(xwikiAttachment.getMimeType()).entity(xwikiAttachment.getContent()).build();
         } catch (XWikiException e) {
             throw new XWikiRestException(e);
@@ -37,6 +37,11 @@
 @Component("org.xwiki.rest.internal.resources.attachments.AttachmentVersionResourceImpl")
 public class AttachmentVersionResourceImpl extends XWikiResource implements AttachmentVersionResource
 {
+    /**
+     * Number of seconds during which a client can reuse an attachment version without revalidating it (one day).
+     */
+    private static final int ATTACHMENT_VERSION_MAX_AGE = 86400;
+
     @Override
     public Response getAttachment(String wikiName, String spaceName, String pageName, String attachmentName,
             String attachmentVersion) throws XWikiRestException
@@ -57,6 +62,10 @@ public Response getAttachment(String wikiName, String spaceName, String pageName
                 throw new WebApplicationException(Status.NOT_FOUND);
             }
 
+            /* An attachment version never changes so it can be reused for a long time without revalidation */
+            evaluatePreconditions(xwikiAttachmentVersion.getDate(), getEntityTag(doc.getPrefixedFullName(),
+                attachmentName, xwikiAttachmentVersion.getVersion()), ATTACHMENT_VERSION_MAX_AGE);
+
             return Response.ok().type(xwikiAttachment.getMimeType()).entity(xwikiAttachmentVersion.getContent())
                     .build();
         } catch (XWikiException e) {
@@ -54,6 +54,8 @@ public Object getObject(String wikiName, String spaceName, String pageName, Stri
                 throw new WebApplicationException(Status.NOT_FOUND);
             }
 
+            evaluatePreconditions(doc, 0, className, String.valueOf(objectNumber));
+
             return DomainObjectFactory.createObject(objectFactory, uriInfo.getBaseUri(), Utils
                     .getXWikiContext(componentManager), doc, baseObject, false, Utils.getXWikiApi(componentManager),
                     withPrettyNames);
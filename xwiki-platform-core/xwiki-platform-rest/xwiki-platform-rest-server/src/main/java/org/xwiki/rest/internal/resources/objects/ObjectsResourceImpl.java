@@ -57,6 +57,8 @@ public Objects getObjects(String wikiName, String spaceName, String pageName, In
 
             Document doc = documentInfo.getDocument();
 
+            evaluatePreconditions(doc, 0);
+
             Objects objects = objectFactory.createObjects();
 
             List<BaseObject> objectList = getBaseObjects(doc);
@@ -39,6 +39,34 @@ public Response putPage(DocumentInfo documentInfo, Page page) throws XWikiExcept
     {
         Document doc = documentInfo.getDocument();
 
+        boolean save = updateDocument(doc, page);
+
+        if (save) {
+            doc.save(page.getComment());
+
+            page =
+                DomainObjectFactory.createPage(objectFactory, uriInfo.getBaseUri(), uriInfo.getAbsolutePath(), doc,
+                    false, Utils.getXWikiApi(componentManager), false);
+
+            if (documentInfo.isCreated()) {
+                return Response.created(uriInfo.getAbsolutePath()).entity(page).build();
+            } else {
+                return Response.status(Status.ACCEPTED).entity(page).build();
+            }
+        } else {
+            return Response.status(Status.NOT_MODIFIED).build();
+        }
+    }
+
+    /**
+     * Copy the fields set in the passed page representation to the passed document.
+     *
+     * @param doc the document to update
+     * @param page the page representation
+     * @return true if the document has been modified and needs to be saved
+     */
+    protected boolean updateDocument(Document doc, Page page)
+    {
         boolean save = false;
 
         if (page.getContent() != null) {
@@ -63,21 +91,7 @@ public Response putPage(DocumentInfo documentInfo, Page page) throws XWikiExcept
             }
         }
 
-        if (save) {
-            doc.save(page.getComment());
-
-            page =
-                DomainObjectFactory.createPage(objectFactory, uriInfo.getBaseUri(), uriInfo.getAbsolutePath(), doc,
-                    false, Utils.getXWikiApi(componentManager), false);
-
-            if (documentInfo.isCreated()) {
-                return Response.created(uriInfo.getAbsolutePath()).entity(page).build();
-            } else {
-                return Response.status(Status.ACCEPTED).entity(page).build();
-            }
-        } else {
-            return Response.status(Status.NOT_MODIFIED).build();
-        }
+        return save;
     }
 
     void deletePage(DocumentInfo documentInfo) throws XWikiException
@@ -46,6 +46,9 @@ public Page getPage(String wikiName, String spaceName, String pageName, Boolean
 
             Document doc = documentInfo.getDocument();
 
+            /* Clients polling the page get a 304 as long as it isn't modified */
+            evaluatePagePreconditions(doc, 0);
+
             return DomainObjectFactory.createPage(objectFactory, uriInfo.getBaseUri(), uriInfo.getAbsolutePath(), doc,
                     false, Utils.getXWikiApi(componentManager), withPrettyNames);
         } catch (XWikiException e) {
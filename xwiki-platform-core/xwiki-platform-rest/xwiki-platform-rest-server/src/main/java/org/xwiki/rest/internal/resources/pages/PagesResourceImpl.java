@@ -22,13 +22,18 @@
 import java.util.List;
 import java.util.regex.Pattern;
 
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
 import org.xwiki.component.annotation.Component;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryFilter;
 import org.xwiki.rest.XWikiResource;
+import org.xwiki.rest.Relations;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
 import org.xwiki.rest.internal.Utils;
+import org.xwiki.rest.model.jaxb.Link;
 import org.xwiki.rest.model.jaxb.Pages;
 import org.xwiki.rest.resources.pages.PagesResource;
 
@@ -40,11 +45,24 @@
 @Component("org.xwiki.rest.internal.resources.pages.PagesResourceImpl")
 public class PagesResourceImpl extends XWikiResource implements PagesResource
 {
+    /**
+     * Query used to get the page names following a given page name (keyset pagination).
+     */
+    private static final String PAGES_AFTER_QUERY =
+        "select distinct doc.name from XWikiDocument doc where doc.space=:space and doc.name > :after"
+            + " order by doc.name asc";
+
     @Override
     public Pages getPages(String wikiName, String spaceName, Integer start, Integer number,
-            String parentFilterExpression, String order, Boolean withPrettyNames)
+            String parentFilterExpression, String order, Boolean withPrettyNames, String after)
             throws XWikiRestException
     {
+        boolean orderByDate = "date".equals(order);
+        if (after != null && orderByDate) {
+            /* The keyset pagination relies on the page names being unique in the space */
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
         String database = Utils.getXWikiContext(componentManager).getDatabase();
 
         Pages pages = objectFactory.createPages();
@@ -52,9 +70,16 @@ public Pages getPages(String wikiName, String spaceName, Integer start, Integer
         try {
             Utils.getXWikiContext(componentManager).setDatabase(wikiName);
 
-            Query query = ("date".equals(order)) ? queryManager.createQuery(
+            Query query;
+            if (orderByDate) {
+                query = queryManager.createQuery(
                     "select doc.name from Document doc where doc.space=:space and language='' order by doc.date desc",
-                    "xwql") : queryManager.getNamedQuery("getSpaceDocsName");
+                    "xwql");
+            } else if (after != null) {
+                query = queryManager.createQuery(PAGES_AFTER_QUERY, Query.HQL).bindValue("after", after);
+            } else {
+                query = queryManager.getNamedQuery("getSpaceDocsName");
+            }
 
             /* Use an explicit query to improve performance */
             List<String> pageNames =
@@ -73,14 +98,15 @@ public Pages getPages(String wikiName, String spaceName, Integer start, Integer
             for (String pageName : pageNames) {
                 String pageFullName = Utils.getPageId(wikiName, spaceName, pageName);
 
-                if (!Utils.getXWikiApi(componentManager).exists(pageFullName)) {
+                /* Load the document only once, a new document is returned when it doesn't exist */
+                Document doc = Utils.getXWikiApi(componentManager).getDocument(pageFullName);
+
+                if (doc != null && doc.isNew()) {
                     logger.warning(String
                             .format("[Page '%s' appears to be in space '%s' but no information is available.]",
                                     pageName,
                                     spaceName));
                 } else {
-                    Document doc = Utils.getXWikiApi(componentManager).getDocument(pageFullName);
-
                     /* We only add pages we have the right to access */
                     if (doc != null) {
                         boolean add = true;
@@ -102,6 +128,15 @@ public Pages getPages(String wikiName, String spaceName, Integer start, Integer
                     }
                 }
             }
+
+            /* Link to the next pages using the last page name as cursor, unless ordering by date */
+            if (!orderByDate && number > 0 && pageNames.size() == number) {
+                Link nextLink = objectFactory.createLink();
+                nextLink.setHref(uriInfo.getRequestUriBuilder().replaceQueryParam("start")
+                    .replaceQueryParam("after", pageNames.get(pageNames.size() - 1)).build().toString());
+                nextLink.setRel(Relations.NEXT);
+                pages.getLinks().add(nextLink);
+            }
         } catch (Exception e) {
             throw new XWikiRestException(e);
         } finally {
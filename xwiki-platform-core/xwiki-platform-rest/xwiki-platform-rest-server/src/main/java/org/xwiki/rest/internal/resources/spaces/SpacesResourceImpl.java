@@ -22,11 +22,14 @@
 import java.util.List;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.query.Query;
 import org.xwiki.query.QueryFilter;
+import org.xwiki.rest.Relations;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.rest.XWikiRestException;
 import org.xwiki.rest.internal.DomainObjectFactory;
 import org.xwiki.rest.internal.Utils;
+import org.xwiki.rest.model.jaxb.Link;
 import org.xwiki.rest.model.jaxb.Spaces;
 import org.xwiki.rest.resources.spaces.SpacesResource;
 
@@ -39,8 +42,14 @@
 @Component("org.xwiki.rest.internal.resources.spaces.SpacesResourceImpl")
 public class SpacesResourceImpl extends XWikiResource implements SpacesResource
 {
+    /**
+     * Query used to get the space names following a given space name (keyset pagination).
+     */
+    private static final String SPACES_AFTER_QUERY =
+        "select distinct doc.space from XWikiDocument doc where doc.space > :after order by doc.space asc";
+
     @Override
-    public Spaces getSpaces(String wikiName, Integer start, Integer number)
+    public Spaces getSpaces(String wikiName, Integer start, Integer number, String after)
             throws XWikiRestException
     {
         String database = Utils.getXWikiContext(componentManager).getDatabase();
@@ -50,7 +59,11 @@ public Spaces getSpaces(String wikiName, Integer start, Integer number)
         try {
             Utils.getXWikiContext(componentManager).setDatabase(wikiName);
 
-            List<String> spaceNames = queryManager.getNamedQuery("getSpaces").addFilter(
+            Query query = after != null
+                ? queryManager.createQuery(SPACES_AFTER_QUERY, Query.HQL).bindValue("after", after)
+                : queryManager.getNamedQuery("getSpaces");
+
+            List<String> spaceNames = query.addFilter(
                     componentManager.<QueryFilter>getInstance(QueryFilter.class, "hidden")).setOffset(start)
                     .setLimit(number).execute();
 
@@ -67,6 +80,15 @@ public Spaces getSpaces(String wikiName, Integer start, Integer number)
                             .createSpace(objectFactory, uriInfo.getBaseUri(), wikiName, spaceName, home));
                 }
             }
+
+            /* Link to the next spaces using the last space name as cursor */
+            if (number > 0 && spaceNames.size() == number) {
+                Link nextLink = objectFactory.createLink();
+                nextLink.setHref(uriInfo.getRequestUriBuilder().replaceQueryParam("start")
+                    .replaceQueryParam("after", spaceNames.get(spaceNames.size() - 1)).build().toString());
+                nextLink.setRel(Relations.NEXT);
+                spaces.getLinks().add(nextLink);
+            }
         } catch (Exception e) {
             throw new XWikiRestException(e);
         } finally {
@@ -0,0 +1,219 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.wikis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiRestException;
+import org.xwiki.rest.internal.Utils;
+import org.xwiki.rest.internal.resources.pages.ModifiablePageResource;
+import org.xwiki.rest.model.jaxb.Batch;
+import org.xwiki.rest.model.jaxb.BatchAttachment;
+import org.xwiki.rest.model.jaxb.BatchOperation;
+import org.xwiki.rest.model.jaxb.BatchResult;
+import org.xwiki.rest.model.jaxb.BatchResults;
+import org.xwiki.rest.model.jaxb.Object;
+import org.xwiki.rest.model.jaxb.Page;
+import org.xwiki.rest.model.jaxb.Property;
+import org.xwiki.rest.resources.wikis.WikiBatchResource;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.api.Document;
+import com.xpn.xwiki.objects.classes.BaseClass;
+
+/**
+ * Applies the operations of a batch page by page: all the operations targeting the same page are applied to the
+ * document and then saved at once, so that a page is saved (and its history and events updated) only once per batch.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component("org.xwiki.rest.internal.resources.wikis.WikiBatchResourceImpl")
+public class WikiBatchResourceImpl extends ModifiablePageResource implements WikiBatchResource
+{
+    @Override
+    public BatchResults applyBatch(String wikiName, Batch batch) throws XWikiRestException
+    {
+        /* Group the operations per page, keeping the order in which the pages appear in the batch */
+        Map<String, List<BatchOperation>> operationsPerPage = new LinkedHashMap<String, List<BatchOperation>>();
+        for (BatchOperation operation : batch.getOperations()) {
+            String pageId = Utils.getPageId(wikiName, operation.getSpace(), operation.getName());
+            List<BatchOperation> operations = operationsPerPage.get(pageId);
+            if (operations == null) {
+                operations = new ArrayList<BatchOperation>();
+                operationsPerPage.put(pageId, operations);
+            }
+            operations.add(operation);
+        }
+
+        Map<String, BatchResult> resultPerPage = new HashMap<String, BatchResult>();
+
+        XWikiContext xcontext = Utils.getXWikiContext(componentManager);
+        String database = xcontext.getDatabase();
+        try {
+            xcontext.setDatabase(wikiName);
+
+            for (Map.Entry<String, List<BatchOperation>> entry : operationsPerPage.entrySet()) {
+                BatchResult result = objectFactory.createBatchResult();
+                result.setPageId(entry.getKey());
+                try {
+                    result.setStatus(applyOperations(wikiName, entry.getValue()).getStatusCode());
+                } catch (WebApplicationException e) {
+                    result.setStatus(e.getResponse().getStatus());
+                } catch (Exception e) {
+                    /* A failing page must not prevent the other pages from being updated */
+                    logger.log(Level.WARNING, String.format("Failed to apply the batch operations on page [%s]",
+                        entry.getKey()), e);
+                    result.setStatus(Status.INTERNAL_SERVER_ERROR.getStatusCode());
+                    result.setError(e.getMessage());
+                }
+                resultPerPage.put(entry.getKey(), result);
+            }
+        } finally {
+            xcontext.setDatabase(database);
+        }
+
+        /* Report the result of each operation, in the order of the batch */
+        BatchResults results = objectFactory.createBatchResults();
+        for (BatchOperation operation : batch.getOperations()) {
+            BatchResult pageResult =
+                resultPerPage.get(Utils.getPageId(wikiName, operation.getSpace(), operation.getName()));
+            BatchResult result = objectFactory.createBatchResult();
+            result.setId(operation.getId());
+            result.setPageId(pageResult.getPageId());
+            result.setStatus(pageResult.getStatus());
+            result.setError(pageResult.getError());
+            results.getBatchResults().add(result);
+        }
+
+        return results;
+    }
+
+    /**
+     * Apply the passed operations to their page and save it.
+     *
+     * @param wikiName the wiki containing the page
+     * @param operations the operations, all targeting the same page
+     * @return CREATED if the page has been created, ACCEPTED if it has been updated and NOT_MODIFIED if the operations
+     *         didn't change anything
+     * @throws XWikiException if the page cannot be loaded or saved
+     */
+    Status applyOperations(String wikiName, List<BatchOperation> operations) throws XWikiException
+    {
+        BatchOperation firstOperation = operations.get(0);
+        if (firstOperation.getSpace() == null || firstOperation.getName() == null) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
+        DocumentInfo documentInfo =
+            getDocumentInfo(wikiName, firstOperation.getSpace(), firstOperation.getName(), null, null, false, true);
+        Document doc = documentInfo.getDocument();
+
+        if (!doc.hasAccessLevel("edit", Utils.getXWikiUser(componentManager))) {
+            throw new WebApplicationException(Status.UNAUTHORIZED);
+        }
+
+        boolean save = false;
+        String comment = null;
+
+        for (BatchOperation operation : operations) {
+            Page page = operation.getPage();
+            if (page != null) {
+                save |= updateDocument(doc, page);
+                if (page.getComment() != null) {
+                    comment = page.getComment();
+                }
+            }
+
+            for (Object object : operation.getObjects()) {
+                updateObject(doc, object);
+                save = true;
+            }
+
+            for (BatchAttachment attachment : operation.getAttachments()) {
+                if (attachment.getName() == null || attachment.getContent() == null) {
+                    throw new WebApplicationException(Status.BAD_REQUEST);
+                }
+                if (doc.addAttachment(attachment.getName(), attachment.getContent()) == null) {
+                    throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
+                }
+                save = true;
+            }
+        }
+
+        if (!save) {
+            return Status.NOT_MODIFIED;
+        }
+
+        doc.save(comment);
+
+        return documentInfo.isCreated() ? Status.CREATED : Status.ACCEPTED;
+    }
+
+    /**
+     * Set the properties of an object, creating it if the document has no object of this class with the given number.
+     * An object can only be created with the number the document would give to its next object of this class, since
+     * objects are numbered by the document.
+     *
+     * @param doc the document holding the object
+     * @param object the object representation
+     * @throws XWikiException if the class of the object cannot be loaded
+     */
+    void updateObject(Document doc, Object object) throws XWikiException
+    {
+        if (object.getClassName() == null) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+
+        com.xpn.xwiki.api.Object xwikiObject = doc.getObject(object.getClassName(), object.getNumber());
+        if (xwikiObject == null) {
+            /* Don't silently create the object with another number than the requested one */
+            if (object.getNumber() != doc.getObjectNumbers(object.getClassName())) {
+                throw new WebApplicationException(Status.BAD_REQUEST);
+            }
+
+            xwikiObject = doc.newObject(object.getClassName());
+            if (xwikiObject == null) {
+                throw new WebApplicationException(Status.INTERNAL_SERVER_ERROR);
+            }
+
+            // We must initialize all the fields to an empty value in order to correctly create the object
+            BaseClass xwikiClass = Utils.getXWiki(componentManager).getClass(object.getClassName(),
+                Utils.getXWikiContext(componentManager));
+            for (java.lang.Object propertyName : xwikiClass.getPropertyNames()) {
+                xwikiObject.set((String) propertyName, "");
+            }
+        }
+
+        for (Property property : object.getProperties()) {
+            xwikiObject.set(property.getName(), property.getValue());
+        }
+    }
+}
@@ -131,6 +131,9 @@ public Wiki importXAR(String wikiName, Boolean backup, String history, InputStre
                 throw new WebApplicationException(e);
             } finally {
                 xwikiContext.setDatabase(database);
+
+                // Delete the temporary copy of the package
+                importer.dispose();
             }
 
             return DomainObjectFactory.createWiki(objectFactory, uriInfo.getBaseUri(), wikiName);
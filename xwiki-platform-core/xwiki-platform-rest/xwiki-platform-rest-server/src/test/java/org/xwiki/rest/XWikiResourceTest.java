@@ -0,0 +1,202 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.restlet.data.Dimension;
+import org.restlet.data.Tag;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.rest.internal.Constants;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.api.Document;
+
+/**
+ * Unit tests for the conditional request handling of {@link XWikiResource}.
+ * 
+ * @version $Id$
+ */
+public class XWikiResourceTest
+{
+    private XWikiResource resource;
+
+    private org.restlet.Response restletResponse;
+
+    private Document document;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.resource = new XWikiResource();
+        this.resource.uriInfo = mock(UriInfo.class);
+        when(this.resource.uriInfo.getRequestUri()).thenReturn(
+            new URI("http://host/xwiki/rest/wikis/xwiki/spaces/A/pages/B"));
+        this.resource.request = mock(Request.class);
+        this.resource.headers = mock(HttpHeaders.class);
+        when(this.resource.headers.getAcceptableMediaTypes()).thenReturn(
+            Collections.singletonList(MediaType.APPLICATION_XML_TYPE));
+
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontext.getWiki()).thenReturn(mock(XWiki.class));
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.setProperty("xwikicontext", xcontext);
+        Execution execution = mock(Execution.class);
+        when(execution.getContext()).thenReturn(executionContext);
+        this.resource.componentManager = mock(ComponentManager.class);
+        when(this.resource.componentManager.getInstance(Execution.class)).thenReturn(execution);
+
+        this.document = mock(Document.class);
+        when(this.document.getPrefixedFullName()).thenReturn("xwiki:A.B");
+        when(this.document.getLanguage()).thenReturn("");
+        when(this.document.getVersion()).thenReturn("1.1");
+        when(this.document.getParent()).thenReturn("");
+        when(this.document.getTranslationList()).thenReturn(Collections.<String>emptyList());
+        when(this.document.getChildren(1, 0)).thenReturn(Collections.<String>emptyList());
+        when(this.document.getDisplayTitle()).thenReturn("B");
+
+        this.restletResponse = new org.restlet.Response(new org.restlet.Request());
+        org.restlet.Response.setCurrent(this.restletResponse);
+    }
+
+    private EntityTag evaluatePagePreconditions() throws Exception
+    {
+        this.resource.evaluatePagePreconditions(this.document, 0);
+
+        Tag tag = (Tag) this.restletResponse.getAttributes().get(Constants.RESPONSE_TAG);
+        return new EntityTag(tag.getName(), tag.isWeak());
+    }
+
+    @Test
+    public void evaluatePreconditionsWhenModified() throws Exception
+    {
+        Date date = new Date(1234567890123L);
+        EntityTag entityTag = this.resource.getEntityTag("xwiki:A.B", "", "1.1");
+
+        this.resource.evaluatePreconditions(date, entityTag, 0);
+
+        // The representation is built and the validators are sent along with it
+        Assert.assertEquals(new Tag(entityTag.getValue(), true),
+            this.restletResponse.getAttributes().get(Constants.RESPONSE_TAG));
+        Assert.assertEquals(new Date(1234567890000L),
+            this.restletResponse.getAttributes().get(Constants.RESPONSE_MODIFICATION_DATE));
+        Assert.assertEquals(Collections.singleton(Dimension.MEDIA_TYPE),
+            this.restletResponse.getAttributes().get(Constants.RESPONSE_DIMENSIONS));
+    }
+
+    @Test
+    public void evaluatePreconditionsWhenNotModified() throws Exception
+    {
+        EntityTag entityTag = this.resource.getEntityTag("xwiki:A.B", "", "1.1");
+        when(this.resource.request.evaluatePreconditions(any(EntityTag.class))).thenReturn(
+            Response.notModified(entityTag));
+
+        try {
+            this.resource.evaluatePreconditions(null, entityTag, 0);
+            Assert.fail("Expected a 304 response");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(Response.Status.NOT_MODIFIED.getStatusCode(), e.getResponse().getStatus());
+        }
+
+        // The representation depends on the negotiated media type
+        Assert.assertEquals(Collections.singleton(Dimension.MEDIA_TYPE),
+            this.restletResponse.getAttributes().get(Constants.RESPONSE_DIMENSIONS));
+    }
+
+    @Test
+    public void pageEntityTagChangesWithTranslations() throws Exception
+    {
+        EntityTag before = evaluatePagePreconditions();
+
+        when(this.document.getTranslationList()).thenReturn(Arrays.asList("fr"));
+
+        Assert.assertFalse(before.equals(evaluatePagePreconditions()));
+    }
+
+    @Test
+    public void pageEntityTagChangesWithChildren() throws Exception
+    {
+        EntityTag before = evaluatePagePreconditions();
+
+        when(this.document.getChildren(1, 0)).thenReturn(Arrays.asList("A.C"));
+
+        Assert.assertFalse(before.equals(evaluatePagePreconditions()));
+    }
+
+    @Test
+    public void pageEntityTagDoesNotLoadAllChildren() throws Exception
+    {
+        evaluatePagePreconditions();
+
+        verify(this.document, never()).getChildren();
+    }
+
+    @Test
+    public void pageEntityTagChangesWithDisplayTitle() throws Exception
+    {
+        EntityTag before = evaluatePagePreconditions();
+
+        when(this.document.getDisplayTitle()).thenReturn("Title");
+
+        Assert.assertFalse(before.equals(evaluatePagePreconditions()));
+    }
+
+    @Test
+    public void pageEntityTagChangesWithMediaType() throws Exception
+    {
+        EntityTag before = evaluatePagePreconditions();
+
+        when(this.resource.headers.getAcceptableMediaTypes()).thenReturn(
+            Collections.singletonList(MediaType.APPLICATION_JSON_TYPE));
+
+        Assert.assertFalse(before.equals(evaluatePagePreconditions()));
+    }
+
+    @Test
+    public void pageValidationDoesNotUseModificationDate() throws Exception
+    {
+        evaluatePagePreconditions();
+
+        Assert.assertNull(this.restletResponse.getAttributes().get(Constants.RESPONSE_MODIFICATION_DATE));
+    }
+}
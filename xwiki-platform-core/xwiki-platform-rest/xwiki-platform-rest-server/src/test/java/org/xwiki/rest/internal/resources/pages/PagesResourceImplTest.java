@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.pages;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryManager;
+import org.xwiki.rest.Relations;
+import org.xwiki.rest.model.jaxb.Link;
+import org.xwiki.rest.model.jaxb.Pages;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
+import com.xpn.xwiki.user.api.XWikiRightService;
+
+/**
+ * Unit tests for the pagination of {@link PagesResourceImpl}.
+ * 
+ * @version $Id$
+ */
+public class PagesResourceImplTest extends AbstractBridgedComponentTestCase
+{
+    private static final String PAGES_URI = "http://host/xwiki/rest/wikis/xwiki/spaces/Space/pages";
+
+    private PagesResourceImpl resource;
+
+    private QueryManager queryManager;
+
+    private UriInfo uriInfo;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        registerMockComponent(QueryFilter.class, "hidden");
+
+        // The pages can't be viewed: the page summaries are not the concern of these tests.
+        XWiki xwiki = mock(XWiki.class);
+        when(xwiki.getRightService()).thenReturn(mock(XWikiRightService.class));
+        when(xwiki.getDocument(any(DocumentReference.class), any(XWikiContext.class))).thenAnswer(
+            new Answer<XWikiDocument>()
+            {
+                @Override
+                public XWikiDocument answer(InvocationOnMock invocation) throws Throwable
+                {
+                    return new XWikiDocument((DocumentReference) invocation.getArguments()[0]);
+                }
+            });
+        getContext().setWiki(xwiki);
+
+        this.queryManager = mock(QueryManager.class);
+        this.uriInfo = mock(UriInfo.class);
+        when(this.uriInfo.getBaseUri()).thenReturn(new URI("http://host/xwiki/rest"));
+
+        this.resource = new PagesResourceImpl();
+        ReflectionUtils.setFieldValue(this.resource, "componentManager", getComponentManager());
+        ReflectionUtils.setFieldValue(this.resource, "queryManager", this.queryManager);
+        ReflectionUtils.setFieldValue(this.resource, "uriInfo", this.uriInfo);
+        this.resource.initialize();
+    }
+
+    private Query mockQuery(List<String> results) throws Exception
+    {
+        Query query = mock(Query.class);
+        when(query.addFilter(any(QueryFilter.class))).thenReturn(query);
+        when(query.bindValue(anyString(), any())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.<String> execute()).thenReturn(results);
+        return query;
+    }
+
+    private String getNextLink(String requestQueryString, Integer start, Integer number, String order, String after)
+        throws Exception
+    {
+        when(this.uriInfo.getRequestUriBuilder()).thenReturn(
+            UriBuilder.fromUri(PAGES_URI + '?' + requestQueryString));
+
+        Pages pages = this.resource.getPages("xwiki", "Space", start, number, null, order, false, after);
+
+        for (Link link : pages.getLinks()) {
+            if (Relations.NEXT.equals(link.getRel())) {
+                return link.getHref();
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void pagingAcrossPageBoundary() throws Exception
+    {
+        Query firstQuery = mockQuery(Arrays.asList("A", "B"));
+        when(this.queryManager.getNamedQuery("getSpaceDocsName")).thenReturn(firstQuery);
+
+        // A full page of results links to the pages following its last page.
+        String nextLink = getNextLink("start=0&number=2", 0, 2, null, null);
+        Assert.assertNotNull(nextLink);
+        URI nextURI = new URI(nextLink);
+        Assert.assertEquals(new URI(PAGES_URI).getPath(), nextURI.getPath());
+        Assert.assertTrue(nextURI.getQuery().contains("after=B"));
+        Assert.assertTrue(nextURI.getQuery().contains("number=2"));
+        Assert.assertFalse(nextURI.getQuery().contains("start="));
+        verify(firstQuery).bindValue("space", "Space");
+        verify(firstQuery).setOffset(0);
+        verify(firstQuery).setLimit(2);
+
+        // Following the link selects the pages after the cursor instead of skipping rows.
+        Query secondQuery = mockQuery(Arrays.asList("C"));
+        when(this.queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(secondQuery);
+
+        Assert.assertNull(getNextLink(nextURI.getQuery(), 0, 2, null, "B"));
+        verify(secondQuery).bindValue("after", "B");
+        verify(secondQuery).bindValue("space", "Space");
+        verify(secondQuery).setOffset(0);
+        verify(secondQuery).setLimit(2);
+    }
+
+    @Test
+    public void noNextLinkWhenOrderingByDate() throws Exception
+    {
+        Query query = mockQuery(Arrays.asList("A", "B"));
+        when(this.queryManager.createQuery(anyString(), eq("xwql"))).thenReturn(query);
+
+        Assert.assertNull(getNextLink("start=0&number=2&order=date", 0, 2, "date", null));
+    }
+
+    @Test
+    public void afterIsRejectedWhenOrderingByDate() throws Exception
+    {
+        try {
+            getNextLink("number=2&order=date&after=B", 0, 2, "date", "B");
+            Assert.fail("Expected a 400 response");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), e.getResponse().getStatus());
+        }
+
+        verify(this.queryManager, never()).createQuery(anyString(), anyString());
+    }
+}
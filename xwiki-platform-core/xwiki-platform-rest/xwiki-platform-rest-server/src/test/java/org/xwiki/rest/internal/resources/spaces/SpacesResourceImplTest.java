@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.spaces;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.core.UriBuilder;
+import javax.ws.rs.core.UriInfo;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryFilter;
+import org.xwiki.query.QueryManager;
+import org.xwiki.rest.Relations;
+import org.xwiki.rest.model.jaxb.Link;
+import org.xwiki.rest.model.jaxb.Space;
+import org.xwiki.rest.model.jaxb.Spaces;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.test.AbstractBridgedComponentTestCase;
+import com.xpn.xwiki.user.api.XWikiRightService;
+
+/**
+ * Unit tests for the pagination of {@link SpacesResourceImpl}.
+ * 
+ * @version $Id$
+ */
+public class SpacesResourceImplTest extends AbstractBridgedComponentTestCase
+{
+    private static final String SPACES_URI = "http://host/xwiki/rest/wikis/xwiki/spaces";
+
+    private SpacesResourceImpl resource;
+
+    private QueryManager queryManager;
+
+    private UriInfo uriInfo;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        registerMockComponent(QueryFilter.class, "hidden");
+
+        XWiki xwiki = mock(XWiki.class);
+        XWikiRightService rightService = mock(XWikiRightService.class);
+        when(rightService.hasAccessLevel(eq("view"), anyString(), anyString(), any(XWikiContext.class))).thenReturn(
+            true);
+        when(xwiki.getRightService()).thenReturn(rightService);
+        getContext().setWiki(xwiki);
+
+        this.queryManager = mock(QueryManager.class);
+        this.uriInfo = mock(UriInfo.class);
+        when(this.uriInfo.getBaseUri()).thenReturn(new URI("http://host/xwiki/rest"));
+
+        this.resource = new SpacesResourceImpl();
+        ReflectionUtils.setFieldValue(this.resource, "componentManager", getComponentManager());
+        ReflectionUtils.setFieldValue(this.resource, "queryManager", this.queryManager);
+        ReflectionUtils.setFieldValue(this.resource, "uriInfo", this.uriInfo);
+        this.resource.initialize();
+    }
+
+    private Query mockQuery(List<String> results) throws Exception
+    {
+        Query query = mock(Query.class);
+        when(query.addFilter(any(QueryFilter.class))).thenReturn(query);
+        when(query.bindValue(anyString(), any())).thenReturn(query);
+        when(query.setOffset(anyInt())).thenReturn(query);
+        when(query.setLimit(anyInt())).thenReturn(query);
+        when(query.<String> execute()).thenReturn(results);
+        return query;
+    }
+
+    private Spaces getSpaces(String requestQueryString, Integer start, Integer number, String after)
+        throws Exception
+    {
+        when(this.uriInfo.getRequestUriBuilder()).thenReturn(
+            UriBuilder.fromUri(SPACES_URI + '?' + requestQueryString));
+
+        return this.resource.getSpaces("xwiki", start, number, after);
+    }
+
+    private List<String> getSpaceNames(Spaces spaces)
+    {
+        List<String> names = new ArrayList<String>();
+        for (Space space : spaces.getSpaces()) {
+            names.add(space.getName());
+        }
+        return names;
+    }
+
+    private String getNextLink(Spaces spaces)
+    {
+        for (Link link : spaces.getLinks()) {
+            if (Relations.NEXT.equals(link.getRel())) {
+                return link.getHref();
+            }
+        }
+
+        return null;
+    }
+
+    @Test
+    public void pagingAcrossPageBoundary() throws Exception
+    {
+        Query firstQuery = mockQuery(Arrays.asList("A", "B"));
+        when(this.queryManager.getNamedQuery("getSpaces")).thenReturn(firstQuery);
+
+        Spaces firstPage = getSpaces("start=0&number=2", 0, 2, null);
+        Assert.assertEquals(Arrays.asList("A", "B"), getSpaceNames(firstPage));
+        verify(firstQuery).setOffset(0);
+        verify(firstQuery).setLimit(2);
+
+        // A full page of results links to the spaces following its last space.
+        String nextLink = getNextLink(firstPage);
+        Assert.assertNotNull(nextLink);
+        URI nextURI = new URI(nextLink);
+        Assert.assertEquals(new URI(SPACES_URI).getPath(), nextURI.getPath());
+        Assert.assertTrue(nextURI.getQuery().contains("after=B"));
+        Assert.assertTrue(nextURI.getQuery().contains("number=2"));
+        Assert.assertFalse(nextURI.getQuery().contains("start="));
+
+        // Following the link selects the spaces after the cursor instead of skipping rows.
+        Query secondQuery = mockQuery(Arrays.asList("C"));
+        when(this.queryManager.createQuery(anyString(), eq(Query.HQL))).thenReturn(secondQuery);
+
+        Spaces secondPage = getSpaces(nextURI.getQuery(), 0, 2, "B");
+        Assert.assertEquals(Arrays.asList("C"), getSpaceNames(secondPage));
+        verify(secondQuery).bindValue("after", "B");
+        verify(secondQuery).setOffset(0);
+        verify(secondQuery).setLimit(2);
+
+        // The last page doesn't link to an empty page.
+        Assert.assertNull(getNextLink(secondPage));
+    }
+
+    @Test
+    public void noNextLinkWithoutLimit() throws Exception
+    {
+        Query query = mockQuery(Arrays.asList("A", "B"));
+        when(this.queryManager.getNamedQuery("getSpaces")).thenReturn(query);
+
+        Assert.assertNull(getNextLink(getSpaces("start=0&number=-1", 0, -1, null)));
+    }
+}
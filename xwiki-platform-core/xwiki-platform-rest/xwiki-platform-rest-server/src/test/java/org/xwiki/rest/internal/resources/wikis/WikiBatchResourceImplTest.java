@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.rest.internal.resources.wikis;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.rest.model.jaxb.BatchOperation;
+import org.xwiki.rest.model.jaxb.Object;
+import org.xwiki.rest.model.jaxb.Property;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.api.Document;
+import com.xpn.xwiki.objects.classes.BaseClass;
+
+/**
+ * Unit tests for {@link WikiBatchResourceImpl}.
+ * 
+ * @version $Id$
+ */
+public class WikiBatchResourceImplTest
+{
+    private static final String CLASS_NAME = "XWiki.TagClass";
+
+    private WikiBatchResourceImpl resource;
+
+    private XWiki xwiki;
+
+    private Document document;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.document = mock(Document.class);
+        when(this.document.hasAccessLevel("edit", "XWiki.Guest")).thenReturn(true);
+
+        this.resource = new WikiBatchResourceImpl()
+        {
+            @Override
+            public DocumentInfo getDocumentInfo(String wikiName, String spaceName, String pageName, String language,
+                String version, boolean failIfDoesntExist, boolean failIfLocked)
+            {
+                return new DocumentInfo(document, false);
+            }
+        };
+
+        this.xwiki = mock(XWiki.class);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontext.getWiki()).thenReturn(this.xwiki);
+        ExecutionContext executionContext = new ExecutionContext();
+        executionContext.setProperty("xwikicontext", xcontext);
+        Execution execution = mock(Execution.class);
+        when(execution.getContext()).thenReturn(executionContext);
+        ComponentManager componentManager = mock(ComponentManager.class);
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        ReflectionUtils.setFieldValue(this.resource, "componentManager", componentManager);
+    }
+
+    private BatchOperation createObjectOperation(int number)
+    {
+        Property property = new Property();
+        property.setName("tags");
+        property.setValue("performance");
+
+        Object object = new Object();
+        object.setClassName(CLASS_NAME);
+        object.setNumber(number);
+        object.getProperties().add(property);
+
+        BatchOperation operation = new BatchOperation();
+        operation.setSpace("Space");
+        operation.setName("Page");
+        operation.getObjects().add(object);
+
+        return operation;
+    }
+
+    @Test
+    public void updateExistingObject() throws Exception
+    {
+        com.xpn.xwiki.api.Object xwikiObject = mock(com.xpn.xwiki.api.Object.class);
+        when(this.document.getObject(CLASS_NAME, 1)).thenReturn(xwikiObject);
+
+        Assert.assertEquals(Status.ACCEPTED,
+            this.resource.applyOperations("xwiki", Collections.singletonList(createObjectOperation(1))));
+
+        verify(xwikiObject).set("tags", "performance");
+        verify(this.document, never()).newObject(CLASS_NAME);
+        verify(this.document).save(null);
+    }
+
+    @Test
+    public void createObjectWithNextNumber() throws Exception
+    {
+        when(this.document.getObjectNumbers(CLASS_NAME)).thenReturn(2);
+        com.xpn.xwiki.api.Object xwikiObject = mock(com.xpn.xwiki.api.Object.class);
+        when(this.document.newObject(CLASS_NAME)).thenReturn(xwikiObject);
+        BaseClass xwikiClass = mock(BaseClass.class);
+        when(xwikiClass.getPropertyNames()).thenReturn(new String[] {"tags"});
+        when(this.xwiki.getClass(eq(CLASS_NAME), any(XWikiContext.class))).thenReturn(xwikiClass);
+
+        Assert.assertEquals(Status.ACCEPTED,
+            this.resource.applyOperations("xwiki", Collections.singletonList(createObjectOperation(2))));
+
+        verify(xwikiObject).set("tags", "");
+        verify(xwikiObject).set("tags", "performance");
+        verify(this.document).save(null);
+    }
+
+    @Test
+    public void rejectObjectWithOtherNumber() throws Exception
+    {
+        when(this.document.getObjectNumbers(CLASS_NAME)).thenReturn(2);
+
+        try {
+            this.resource.applyOperations("xwiki", Collections.singletonList(createObjectOperation(5)));
+            Assert.fail("Expected a 400 response");
+        } catch (WebApplicationException e) {
+            Assert.assertEquals(Status.BAD_REQUEST.getStatusCode(), e.getResponse().getStatus());
+        }
+
+        verify(this.document, never()).newObject(CLASS_NAME);
+        verify(this.document, never()).save(null);
+    }
+}
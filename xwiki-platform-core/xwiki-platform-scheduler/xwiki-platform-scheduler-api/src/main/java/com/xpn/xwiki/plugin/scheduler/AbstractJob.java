@@ -19,10 +19,22 @@
  */
 package com.xpn.xwiki.plugin.scheduler;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
 import org.xwiki.context.ExecutionContextException;
@@ -35,14 +47,109 @@
  * Base class for any XWiki Quartz Job. This class take care of initializing ExecutionContext properly.
  * <p>
  * A class extending {@link AbstractJob} should implements {@link #executeJob(JobExecutionContext)}.
+ * <p>
+ * This class also applies the execution settings of the job object (concurrent executions and timeout) and records
+ * the execution statistics of the job.
  * 
  * @since 1.8
  * @version $Id$
  */
 public abstract class AbstractJob implements Job
 {
+    /**
+     * Log object to log messages in this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractJob.class);
+
+    /**
+     * Names of the jobs which are currently running and don't allow concurrent executions.
+     */
+    private static final Set<String> RUNNING_JOBS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /**
+     * Interrupts the jobs which exceed their timeout.
+     */
+    private static final ScheduledExecutorService WATCHDOG = new ScheduledThreadPoolExecutor(1,
+        new BasicThreadFactory.Builder().namingPattern("XWiki Scheduler job watchdog").daemon(true).build());
+
     @Override
     public final void execute(JobExecutionContext jobContext) throws JobExecutionException
+    {
+        JobDataMap data = jobContext.getJobDetail().getJobDataMap();
+        String jobName = jobContext.getJobDetail().getName();
+
+        // Skip the execution if the previous one is still running and the job doesn't allow concurrent executions
+        boolean exclusive = Boolean.TRUE.equals(data.get(SchedulerPlugin.DATA_DISALLOW_CONCURRENT_EXECUTION));
+        if (exclusive && !RUNNING_JOBS.add(jobName)) {
+            LOGGER.info("Skipping execution of job [{}] since the previous execution is still running", jobName);
+            JobMetrics metrics = (JobMetrics) data.get(SchedulerPlugin.DATA_METRICS);
+            if (metrics != null) {
+                metrics.skipped();
+            }
+            return;
+        }
+
+        try {
+            executeWithMetrics(jobContext);
+        } finally {
+            if (exclusive) {
+                RUNNING_JOBS.remove(jobName);
+            }
+        }
+    }
+
+    /**
+     * Execute the job, interrupting it if it exceeds its timeout, and record its execution statistics.
+     * 
+     * @param jobContext the Quartz execution context
+     * @throws JobExecutionException if the job fails to execute
+     */
+    private void executeWithMetrics(JobExecutionContext jobContext) throws JobExecutionException
+    {
+        JobDataMap data = jobContext.getJobDetail().getJobDataMap();
+        JobMetrics metrics = (JobMetrics) data.get(SchedulerPlugin.DATA_METRICS);
+
+        long start = System.currentTimeMillis();
+        if (metrics != null) {
+            Date scheduledFireTime = jobContext.getScheduledFireTime();
+            metrics.started(scheduledFireTime != null ? Math.max(0, start - scheduledFireTime.getTime()) : 0);
+        }
+
+        Watchdog watchdog = null;
+        ScheduledFuture< ? > watchdogFuture = null;
+        Long timeout = (Long) data.get(SchedulerPlugin.DATA_TIMEOUT);
+        if (timeout != null && timeout > 0) {
+            watchdog = new Watchdog(Thread.currentThread(), jobContext.getJobDetail().getName());
+            watchdogFuture = WATCHDOG.schedule(watchdog, timeout, TimeUnit.SECONDS);
+        }
+
+        boolean failed = true;
+        boolean timedOut = false;
+        try {
+            executeInExecutionContext(jobContext);
+            failed = false;
+        } finally {
+            if (watchdog != null) {
+                watchdogFuture.cancel(false);
+                timedOut = watchdog.finish();
+                if (timedOut) {
+                    // Don't leak the interruption to the next job executed by this thread
+                    Thread.interrupted();
+                }
+            }
+            if (metrics != null) {
+                metrics.finished(System.currentTimeMillis() - start, failed, timedOut);
+            }
+        }
+    }
+
+    /**
+     * Initialize the execution context and execute the job.
+     * 
+     * @param jobContext the Quartz execution context
+     * @throws JobExecutionException if the job fails to execute
+     */
+    private void executeInExecutionContext(JobExecutionContext jobContext) throws JobExecutionException
     {
         JobDataMap data = jobContext.getJobDetail().getJobDataMap();
 
@@ -77,4 +184,63 @@ public final void execute(JobExecutionContext jobContext) throws JobExecutionExc
     }
 
     protected abstract void executeJob(JobExecutionContext jobContext) throws JobExecutionException;
+
+    /**
+     * Interrupts a job execution which exceeds its timeout, unless the execution is already finished.
+     */
+    private static class Watchdog implements Runnable
+    {
+        /**
+         * The thread executing the job.
+         */
+        private final Thread jobThread;
+
+        /**
+         * The name of the job.
+         */
+        private final String jobName;
+
+        /**
+         * True once the job execution is finished, after which the job thread must not be interrupted anymore.
+         */
+        private boolean finished;
+
+        /**
+         * True if the job thread has been interrupted because the job exceeded its timeout.
+         */
+        private boolean timedOut;
+
+        /**
+         * @param jobThread the thread executing the job
+         * @param jobName the name of the job
+         */
+        Watchdog(Thread jobThread, String jobName)
+        {
+            this.jobThread = jobThread;
+            this.jobName = jobName;
+        }
+
+        @Override
+        public synchronized void run()
+        {
+            if (!this.finished) {
+                LOGGER.warn("Job [{}] exceeded its timeout, interrupting it", this.jobName);
+                this.timedOut = true;
+                this.jobThread.interrupt();
+            }
+        }
+
+        /**
+         * Indicate that the job execution is finished. Once this method returns the watchdog won't interrupt the job
+         * thread anymore, even if it was already running.
+         * 
+         * @return true if the job thread has been interrupted because the job exceeded its timeout
+         */
+        synchronized boolean finish()
+        {
+            this.finished = true;
+
+            return this.timedOut;
+        }
+    }
 }
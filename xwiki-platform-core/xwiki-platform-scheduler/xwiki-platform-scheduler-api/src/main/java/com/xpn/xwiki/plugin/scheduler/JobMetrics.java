@@ -0,0 +1,271 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.scheduler;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution statistics of a scheduled job, collected since the job was scheduled.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class JobMetrics
+{
+    /**
+     * Number of executions, successful or not.
+     */
+    private final AtomicLong executionCount = new AtomicLong();
+
+    /**
+     * Number of executions which ended with an error.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Number of executions which exceeded the job timeout.
+     */
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    /**
+     * Number of executions skipped because a previous execution was still running.
+     */
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * Number of fire times missed by the scheduler.
+     */
+    private final AtomicLong misfireCount = new AtomicLong();
+
+    /**
+     * Number of executions currently running.
+     */
+    private final AtomicInteger runningCount = new AtomicInteger();
+
+    /**
+     * Sum of the execution times, in milliseconds.
+     */
+    private final AtomicLong totalRunTime = new AtomicLong();
+
+    /**
+     * Longest execution time, in milliseconds.
+     */
+    private final AtomicLong maxRunTime = new AtomicLong();
+
+    /**
+     * Last execution time, in milliseconds.
+     */
+    private volatile long lastRunTime;
+
+    /**
+     * Sum of the delays between the scheduled fire times and the actual starts, in milliseconds.
+     */
+    private final AtomicLong totalQueueDelay = new AtomicLong();
+
+    /**
+     * Longest delay between a scheduled fire time and the actual start, in milliseconds.
+     */
+    private final AtomicLong maxQueueDelay = new AtomicLong();
+
+    /**
+     * Last delay between the scheduled fire time and the actual start, in milliseconds.
+     */
+    private volatile long lastQueueDelay;
+
+    /**
+     * Start date of the last execution.
+     */
+    private volatile long lastExecutionDate;
+
+    /**
+     * Record the start of an execution.
+     * 
+     * @param queueDelay the delay between the scheduled fire time and the actual start, in milliseconds
+     */
+    void started(long queueDelay)
+    {
+        this.lastExecutionDate = System.currentTimeMillis();
+        this.runningCount.incrementAndGet();
+        this.lastQueueDelay = queueDelay;
+        this.totalQueueDelay.addAndGet(queueDelay);
+        updateMax(this.maxQueueDelay, queueDelay);
+    }
+
+    /**
+     * Record the end of an execution.
+     * 
+     * @param runTime the execution time, in milliseconds
+     * @param failed true if the execution ended with an error
+     * @param timedOut true if the execution exceeded the job timeout
+     */
+    void finished(long runTime, boolean failed, boolean timedOut)
+    {
+        this.runningCount.decrementAndGet();
+        this.executionCount.incrementAndGet();
+        this.lastRunTime = runTime;
+        this.totalRunTime.addAndGet(runTime);
+        updateMax(this.maxRunTime, runTime);
+        if (failed) {
+            this.failureCount.incrementAndGet();
+        }
+        if (timedOut) {
+            this.timeoutCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record an execution skipped because a previous execution was still running.
+     */
+    void skipped()
+    {
+        this.skippedCount.incrementAndGet();
+    }
+
+    /**
+     * Record a fire time missed by the scheduler.
+     */
+    void misfired()
+    {
+        this.misfireCount.incrementAndGet();
+    }
+
+    /**
+     * @param max the maximum to update
+     * @param value the new value
+     */
+    private void updateMax(AtomicLong max, long value)
+    {
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * @return the number of executions, successful or not
+     */
+    public long getExecutionCount()
+    {
+        return this.executionCount.get();
+    }
+
+    /**
+     * @return the number of executions which ended with an error
+     */
+    public long getFailureCount()
+    {
+        return this.failureCount.get();
+    }
+
+    /**
+     * @return the number of executions which exceeded the job timeout
+     */
+    public long getTimeoutCount()
+    {
+        return this.timeoutCount.get();
+    }
+
+    /**
+     * @return the number of executions skipped because a previous execution was still running
+     */
+    public long getSkippedCount()
+    {
+        return this.skippedCount.get();
+    }
+
+    /**
+     * @return the number of fire times missed by the scheduler, typically because all the threads of the job group
+     *         were busy
+     */
+    public long getMisfireCount()
+    {
+        return this.misfireCount.get();
+    }
+
+    /**
+     * @return the number of executions currently running
+     */
+    public int getRunningCount()
+    {
+        return this.runningCount.get();
+    }
+
+    /**
+     * @return the last execution time, in milliseconds
+     */
+    public long getLastRunTime()
+    {
+        return this.lastRunTime;
+    }
+
+    /**
+     * @return the longest execution time, in milliseconds
+     */
+    public long getMaxRunTime()
+    {
+        return this.maxRunTime.get();
+    }
+
+    /**
+     * @return the average execution time, in milliseconds
+     */
+    public long getAverageRunTime()
+    {
+        long count = getExecutionCount();
+
+        return count > 0 ? this.totalRunTime.get() / count : 0;
+    }
+
+    /**
+     * @return the last delay between the scheduled fire time and the actual start, in milliseconds
+     */
+    public long getLastQueueDelay()
+    {
+        return this.lastQueueDelay;
+    }
+
+    /**
+     * @return the longest delay between a scheduled fire time and the actual start, in milliseconds
+     */
+    public long getMaxQueueDelay()
+    {
+        return this.maxQueueDelay.get();
+    }
+
+    /**
+     * @return the average delay between the scheduled fire times and the actual starts, in milliseconds
+     */
+    public long getAverageQueueDelay()
+    {
+        long count = getExecutionCount() + getRunningCount();
+
+        return count > 0 ? this.totalQueueDelay.get() / count : 0;
+    }
+
+    /**
+     * @return the start date of the last execution, null if the job has not been executed yet
+     */
+    public Date getLastExecutionDate()
+    {
+        return this.lastExecutionDate > 0 ? new Date(this.lastExecutionDate) : null;
+    }
+}
@@ -24,6 +24,10 @@
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.quartz.CronTrigger;
@@ -39,6 +43,10 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.ApplicationStoppedEvent;
+import org.xwiki.observation.event.Event;
 import org.xwiki.rendering.syntax.Syntax;
 import org.xwiki.script.service.ScriptServiceManager;
 
@@ -83,10 +91,45 @@ public class SchedulerPlugin extends XWikiDefaultPlugin
         EntityType.DOCUMENT, new EntityReference("XWiki", EntityType.SPACE));
 
     /**
-     * Default Quartz scheduler instance.
+     * Key of the job data holding the {@link JobMetrics} of the job.
+     */
+    static final String DATA_METRICS = "metrics";
+
+    /**
+     * Key of the job data telling if the job must be skipped when its previous execution is still running.
+     */
+    static final String DATA_DISALLOW_CONCURRENT_EXECUTION = "disallowConcurrentExecution";
+
+    /**
+     * Key of the job data holding the number of seconds after which the job execution is interrupted.
+     */
+    static final String DATA_TIMEOUT = "timeout";
+
+    /**
+     * Name of the job object property holding the job group.
+     */
+    private static final String FIELD_JOB_GROUP = "jobGroup";
+
+    /**
+     * Name of the listener stopping the job group schedulers when XWiki stops.
+     */
+    private static final String SHUTDOWN_LISTENER = "SchedulerPluginShutdown";
+
+    /**
+     * Default Quartz scheduler instance, running the jobs which don't belong to any job group.
      */
     private Scheduler scheduler;
 
+    /**
+     * Quartz scheduler instances dedicated to the job groups, each one with its own bounded thread pool.
+     */
+    private final Map<String, Scheduler> groupSchedulers = new ConcurrentHashMap<String, Scheduler>();
+
+    /**
+     * Execution statistics of the scheduled jobs, by job unique id.
+     */
+    private final Map<String, JobMetrics> metrics = new ConcurrentHashMap<String, JobMetrics>();
+
     /**
      * Default plugin constructor.
      * 
@@ -134,9 +177,33 @@ public void init(XWikiContext context)
             System.setProperty("org.quartz.threadPool.makeThreadsDaemons", "true");
 
             setScheduler(getDefaultSchedulerInstance());
-            setStatusListener();
+            setStatusListener(getScheduler());
             getScheduler().start();
 
+            // The job group schedulers are created by this plugin so it has to stop them
+            ObservationManager observationManager = Utils.getComponent(ObservationManager.class);
+            observationManager.removeListener(SHUTDOWN_LISTENER);
+            observationManager.addListener(new EventListener()
+            {
+                @Override
+                public String getName()
+                {
+                    return SHUTDOWN_LISTENER;
+                }
+
+                @Override
+                public List<Event> getEvents()
+                {
+                    return Collections.<Event>singletonList(new ApplicationStoppedEvent());
+                }
+
+                @Override
+                public void onEvent(Event event, Object source, Object data)
+                {
+                    shutdownGroupSchedulers();
+                }
+            });
+
             // Restore jobs
 
             try {
@@ -311,7 +378,8 @@ private void restoreExistingJobs(XWikiContext context)
      */
     public JobState getJobStatus(BaseObject object, XWikiContext context) throws SchedulerException
     {
-        int state = getScheduler().getTriggerState(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
+        int state =
+            getScheduler(object, context).getTriggerState(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
         return new JobState(state);
     }
 
@@ -340,9 +408,23 @@ public boolean scheduleJob(BaseObject object, XWikiContext context) throws Sched
             data.put("xjob", object);
             data.put("services", Utils.getComponent(ScriptServiceManager.class));
 
+            // Execution settings and statistics, handled by AbstractJob
+            data.put(DATA_DISALLOW_CONCURRENT_EXECUTION, object.getIntValue(DATA_DISALLOW_CONCURRENT_EXECUTION) == 1);
+            data.put(DATA_TIMEOUT, object.getLongValue(DATA_TIMEOUT));
+            JobMetrics jobMetrics = this.metrics.get(xjob);
+            if (jobMetrics == null) {
+                jobMetrics = new JobMetrics();
+                this.metrics.put(xjob, jobMetrics);
+            }
+            data.put(DATA_METRICS, jobMetrics);
+
             job.setJobDataMap(data);
 
-            getScheduler().addJob(job, true);
+            // The job group may have changed since the job was last scheduled
+            Scheduler jobScheduler = getScheduler(object, context);
+            deleteJob(xjob, jobScheduler);
+
+            jobScheduler.addJob(job, true);
 
             JobState status = getJobStatus(object, context);
 
@@ -354,14 +436,14 @@ public boolean scheduleJob(BaseObject object, XWikiContext context) throws Sched
                     if (getTrigger(object, context).compareTo(trigger) != 0) {
                         LOGGER.debug("Reschedule Job: [{}]", object.getStringValue("jobName"));
                     }
-                    getScheduler().rescheduleJob(trigger.getName(), trigger.getGroup(), trigger);
+                    jobScheduler.rescheduleJob(trigger.getName(), trigger.getGroup(), trigger);
                     break;
                 case Trigger.STATE_NONE:
                     LOGGER.debug("Schedule Job: [{}]", object.getStringValue("jobName"));
-                    getScheduler().scheduleJob(trigger);
+                    jobScheduler.scheduleJob(trigger);
                     LOGGER.info("XWiki Job Status: [{}]", object.getStringValue("status"));
                     if (object.getStringValue("status").equals("Paused")) {
-                        getScheduler().pauseJob(xjob, Scheduler.DEFAULT_GROUP);
+                        jobScheduler.pauseJob(xjob, Scheduler.DEFAULT_GROUP);
                         saveStatus("Paused", object, context);
                     } else {
                         saveStatus("Normal", object, context);
@@ -369,7 +451,7 @@ public boolean scheduleJob(BaseObject object, XWikiContext context) throws Sched
                     break;
                 default:
                     LOGGER.debug("Schedule Job: [{}]", object.getStringValue("jobName"));
-                    getScheduler().scheduleJob(trigger);
+                    jobScheduler.scheduleJob(trigger);
                     saveStatus("Normal", object, context);
                     break;
             }
@@ -397,7 +479,7 @@ public boolean scheduleJob(BaseObject object, XWikiContext context) throws Sched
     public void pauseJob(BaseObject object, XWikiContext context) throws SchedulerPluginException
     {
         try {
-            getScheduler().pauseJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
+            getScheduler(object, context).pauseJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
             saveStatus("Paused", object, context);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(SchedulerPluginException.ERROR_SCHEDULERPLUGIN_PAUSE_JOB,
@@ -416,7 +498,7 @@ public void pauseJob(BaseObject object, XWikiContext context) throws SchedulerPl
     public void resumeJob(BaseObject object, XWikiContext context) throws SchedulerPluginException
     {
         try {
-            getScheduler().resumeJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
+            getScheduler(object, context).resumeJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
             saveStatus("Normal", object, context);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(SchedulerPluginException.ERROR_SCHEDULERPLUGIN_RESUME_JOB,
@@ -436,7 +518,7 @@ public void resumeJob(BaseObject object, XWikiContext context) throws SchedulerP
     public void triggerJob(BaseObject object, XWikiContext context) throws SchedulerPluginException
     {
         try {
-            getScheduler().triggerJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
+            getScheduler(object, context).triggerJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(SchedulerPluginException.ERROR_SCHEDULERPLUGIN_TRIGGER_JOB,
                 "Error occured while trying to trigger job " + object.getStringValue("jobName"), e);
@@ -451,7 +533,9 @@ public void triggerJob(BaseObject object, XWikiContext context) throws Scheduler
     public void unscheduleJob(BaseObject object, XWikiContext context) throws SchedulerPluginException
     {
         try {
-            getScheduler().deleteJob(getObjectUniqueId(object, context), Scheduler.DEFAULT_GROUP);
+            String xjob = getObjectUniqueId(object, context);
+            deleteJob(xjob, null);
+            this.metrics.remove(xjob);
             saveStatus("None", object, context);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(SchedulerPluginException.ERROR_SCHEDULERPLUGIN_JOB_XCLASS_NOT_FOUND,
@@ -474,7 +558,7 @@ private Trigger getTrigger(BaseObject object, XWikiContext context) throws Sched
         String job = getObjectUniqueId(object, context);
         Trigger trigger;
         try {
-            trigger = getScheduler().getTrigger(job, Scheduler.DEFAULT_GROUP);
+            trigger = getScheduler(object, context).getTrigger(job, Scheduler.DEFAULT_GROUP);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(SchedulerPluginException.ERROR_SCHEDULERPLUGIN_JOB_XCLASS_NOT_FOUND,
                 "Error while getting trigger for job " + job, e);
@@ -512,6 +596,19 @@ public Date getNextFireTime(BaseObject object, XWikiContext context) throws Sche
         return getTrigger(object, context).getNextFireTime();
     }
 
+    /**
+     * Give the execution statistics of the given job, collected since it was scheduled.
+     * 
+     * @param object unwrapped XObject job for which the statistics will be given
+     * @param context the XWiki context
+     * @return the execution statistics of the job, null if the job is not scheduled
+     * @since 5.2M1
+     */
+    public JobMetrics getJobMetrics(BaseObject object, XWikiContext context)
+    {
+        return this.metrics.get(getObjectUniqueId(object, context));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -546,6 +643,104 @@ public Scheduler getScheduler()
         return this.scheduler;
     }
 
+    /**
+     * Get the scheduler running the given job: the default scheduler, or the scheduler dedicated to the job group if
+     * the job belongs to one.
+     * 
+     * @param object the XObject job
+     * @param context the XWiki context
+     * @return the scheduler running the job
+     * @throws SchedulerException if the scheduler of the job group failed to be created
+     */
+    private Scheduler getScheduler(BaseObject object, XWikiContext context) throws SchedulerException
+    {
+        String group = StringUtils.trim(object.getStringValue(FIELD_JOB_GROUP));
+        if (StringUtils.isEmpty(group)) {
+            return getScheduler();
+        }
+
+        Scheduler groupScheduler = this.groupSchedulers.get(group);
+        if (groupScheduler == null) {
+            groupScheduler = createGroupScheduler(group, context);
+        }
+
+        return groupScheduler;
+    }
+
+    /**
+     * Create and start the scheduler dedicated to a job group. Its thread pool size and thread priority are read from
+     * the {@code xwiki.plugin.scheduler.group.<group>.threads} and
+     * {@code xwiki.plugin.scheduler.group.<group>.priority} configuration properties.
+     * 
+     * @param group the job group
+     * @param context the XWiki context
+     * @return the scheduler of the job group
+     * @throws SchedulerException if the scheduler failed to be created
+     */
+    private synchronized Scheduler createGroupScheduler(String group, XWikiContext context) throws SchedulerException
+    {
+        Scheduler groupScheduler = this.groupSchedulers.get(group);
+        if (groupScheduler == null) {
+            String prefix = "xwiki.plugin.scheduler.group." + group;
+            long threads = Math.max(1, context.getWiki().ParamAsLong(prefix + ".threads", 1));
+            long priority = context.getWiki().ParamAsLong(prefix + ".priority", Thread.NORM_PRIORITY);
+
+            Properties properties = new Properties();
+            properties.setProperty(StdSchedulerFactory.PROP_SCHED_INSTANCE_NAME, "XWikiScheduler_" + group);
+            properties.setProperty("org.quartz.scheduler.makeSchedulerThreadDaemon", "true");
+            properties.setProperty(StdSchedulerFactory.PROP_THREAD_POOL_CLASS, "org.quartz.simpl.SimpleThreadPool");
+            properties.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threads));
+            properties.setProperty("org.quartz.threadPool.threadPriority", String.valueOf(priority));
+            properties.setProperty("org.quartz.threadPool.makeThreadsDaemons", "true");
+            properties.setProperty(StdSchedulerFactory.PROP_JOB_STORE_CLASS, "org.quartz.simpl.RAMJobStore");
+
+            groupScheduler = new StdSchedulerFactory(properties).getScheduler();
+            try {
+                setStatusListener(groupScheduler);
+            } catch (SchedulerPluginException e) {
+                throw new SchedulerException("Failed to initialize the scheduler of job group [" + group + "]", e);
+            }
+            groupScheduler.start();
+
+            this.groupSchedulers.put(group, groupScheduler);
+        }
+
+        return groupScheduler;
+    }
+
+    /**
+     * Stop the schedulers dedicated to the job groups, without waiting for the running jobs to finish.
+     */
+    private synchronized void shutdownGroupSchedulers()
+    {
+        for (Map.Entry<String, Scheduler> entry : this.groupSchedulers.entrySet()) {
+            try {
+                entry.getValue().shutdown(false);
+            } catch (SchedulerException e) {
+                LOGGER.warn("Failed to stop the scheduler of job group [{}]", entry.getKey(), e);
+            }
+        }
+        this.groupSchedulers.clear();
+    }
+
+    /**
+     * Delete a job from all the schedulers but the given one.
+     * 
+     * @param xjob the unique id of the job
+     * @param except the scheduler to keep the job in, null to delete it from all the schedulers
+     * @throws SchedulerException if the job failed to be deleted
+     */
+    private void deleteJob(String xjob, Scheduler except) throws SchedulerException
+    {
+        List<Scheduler> schedulers = new ArrayList<Scheduler>(this.groupSchedulers.values());
+        schedulers.add(getScheduler());
+        for (Scheduler jobScheduler : schedulers) {
+            if (jobScheduler != except) {
+                jobScheduler.deleteJob(xjob, Scheduler.DEFAULT_GROUP);
+            }
+        }
+    }
+
     /**
      * @return the default Scheduler instance
      * @throws SchedulerPluginException if the default Scheduler instance failed to be retrieved for any reason. Note
@@ -566,14 +761,16 @@ private synchronized Scheduler getDefaultSchedulerInstance() throws SchedulerPlu
     /**
      * Associates the scheduler with a StatusListener
      * 
+     * @param listenedScheduler the scheduler to listen to
      * @throws SchedulerPluginException if the status listener failed to be set properly
      */
-    private void setStatusListener() throws SchedulerPluginException
+    private void setStatusListener(Scheduler listenedScheduler) throws SchedulerPluginException
     {
-        StatusListener listener = new StatusListener();
+        StatusListener listener = new StatusListener(this.metrics);
         try {
-            getScheduler().addSchedulerListener(listener);
-            getScheduler().addGlobalJobListener(listener);
+            listenedScheduler.addSchedulerListener(listener);
+            listenedScheduler.addGlobalJobListener(listener);
+            listenedScheduler.addGlobalTriggerListener(listener);
         } catch (SchedulerException e) {
             throw new SchedulerPluginException(
                 SchedulerPluginException.ERROR_SCHEDULERPLUGIN_INITIALIZE_STATUS_LISTENER,
@@ -683,6 +880,10 @@ Utils.<DocumentReferenceResolver<EntityReference>> getComponent(DocumentReferenc
         needsUpdate |= bclass.addTextField("contextUser", "Job execution context user", 30);
         needsUpdate |= bclass.addTextField("contextLang", "Job execution context lang", 30);
         needsUpdate |= bclass.addTextField("contextDatabase", "Job execution context database", 30);
+        needsUpdate |= bclass.addTextField(FIELD_JOB_GROUP, "Job Group", 30);
+        needsUpdate |=
+            bclass.addBooleanField(DATA_DISALLOW_CONCURRENT_EXECUTION, "Disallow concurrent execution", "yesno");
+        needsUpdate |= bclass.addNumberField(DATA_TIMEOUT, "Timeout (seconds)", 10, "long");
         needsUpdate |= setSchedulerClassesDocumentFields(doc, "XWiki Scheduler Job Class");
 
         if (needsUpdate) {
@@ -357,4 +357,36 @@ public Date getNextFireTime(BaseObject object)
             return null;
         }
     }
+
+    /**
+     * Give the execution statistics of the given XObject job, collected since it was scheduled: number of executions,
+     * failures, timeouts, skipped executions and misfires, run times and delays between the scheduled fire times and
+     * the actual starts. Can be called for example: <code> #set($metrics = $xwiki.scheduler.getJobMetrics($job))
+     * #if ($metrics) Average run time: $metrics.averageRunTime ms #end </code>
+     * 
+     * @param object the wrapped XObject for which to give the statistics
+     * @return the execution statistics of the job, null if the job is not scheduled
+     * @since 5.2M1
+     */
+    public JobMetrics getJobMetrics(Object object)
+    {
+        try {
+            return getJobMetrics(retrieveBaseObject(object));
+        } catch (Exception e) {
+            this.context.put("error", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Give the execution statistics of the given BaseObject job, collected since it was scheduled.
+     * 
+     * @param object the BaseObject for which to give the statistics
+     * @return the execution statistics of the job, null if the job is not scheduled
+     * @since 5.2M1
+     */
+    public JobMetrics getJobMetrics(BaseObject object)
+    {
+        return getProtectedPlugin().getJobMetrics(object, this.context);
+    }
 }
@@ -19,25 +19,48 @@
  */
 package com.xpn.xwiki.plugin.scheduler;
 
+import java.util.Collections;
+import java.util.Map;
+
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
 import org.quartz.JobListener;
 import org.quartz.SchedulerException;
 import org.quartz.SchedulerListener;
 import org.quartz.Trigger;
+import org.quartz.TriggerListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * @version $Id$
  */
-public class StatusListener implements SchedulerListener, JobListener
+public class StatusListener implements SchedulerListener, JobListener, TriggerListener
 {
     /**
      * Log4j logger that records events for this class
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(StatusListener.class);
 
+    /**
+     * The execution statistics of the scheduled jobs, by job name.
+     */
+    private final Map<String, JobMetrics> metrics;
+
+    public StatusListener()
+    {
+        this(Collections.<String, JobMetrics>emptyMap());
+    }
+
+    /**
+     * @param metrics the execution statistics of the scheduled jobs, by job name, in which misfires are recorded
+     * @since 5.2M1
+     */
+    public StatusListener(Map<String, JobMetrics> metrics)
+    {
+        this.metrics = metrics;
+    }
+
     @Override
     public void jobScheduled(Trigger trigger)
     {
@@ -111,4 +134,31 @@ public void jobWasExecuted(JobExecutionContext context, JobExecutionException e)
     {
         LOGGER.info("Task [{}] executed: ", context.getJobDetail().getName(), e);
     }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context)
+    {
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context)
+    {
+        return false;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger)
+    {
+        LOGGER.warn("Task [{}] misfired", trigger.getJobName());
+
+        JobMetrics jobMetrics = this.metrics.get(trigger.getJobName());
+        if (jobMetrics != null) {
+            jobMetrics.misfired();
+        }
+    }
+
+    @Override
+    public void triggerComplete(Trigger trigger, JobExecutionContext context, int triggerInstructionCode)
+    {
+    }
 }
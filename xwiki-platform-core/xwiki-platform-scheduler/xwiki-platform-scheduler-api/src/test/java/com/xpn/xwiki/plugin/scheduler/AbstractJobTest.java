@@ -0,0 +1,161 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.scheduler;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.Scheduler;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContextManager;
+
+import com.xpn.xwiki.web.Utils;
+
+/**
+ * Unit tests for {@link AbstractJob}.
+ * 
+ * @version $Id$
+ */
+public class AbstractJobTest
+{
+    private JobExecutionContext jobContext;
+
+    private JobMetrics metrics = new JobMetrics();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ComponentManager componentManager = mock(ComponentManager.class);
+        when(componentManager.getInstance(ExecutionContextManager.class, "default")).thenReturn(
+            mock(ExecutionContextManager.class));
+        when(componentManager.getInstance(Execution.class, "default")).thenReturn(mock(Execution.class));
+        Utils.setComponentManager(componentManager);
+
+        JobDetail jobDetail = new JobDetail("job", Scheduler.DEFAULT_GROUP, AbstractJob.class);
+        jobDetail.getJobDataMap().put(SchedulerPlugin.DATA_METRICS, this.metrics);
+
+        this.jobContext = mock(JobExecutionContext.class);
+        when(this.jobContext.getJobDetail()).thenReturn(jobDetail);
+        when(this.jobContext.getScheduledFireTime()).thenReturn(new Date());
+    }
+
+    @After
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    @Test
+    public void recordSuccessfulExecution() throws Exception
+    {
+        new AbstractJob()
+        {
+            @Override
+            protected void executeJob(JobExecutionContext jobContext)
+            {
+                Assert.assertEquals(1, metrics.getRunningCount());
+            }
+        }.execute(this.jobContext);
+
+        Assert.assertEquals(1, this.metrics.getExecutionCount());
+        Assert.assertEquals(0, this.metrics.getFailureCount());
+        Assert.assertEquals(0, this.metrics.getTimeoutCount());
+        Assert.assertEquals(0, this.metrics.getRunningCount());
+        Assert.assertNotNull(this.metrics.getLastExecutionDate());
+    }
+
+    @Test
+    public void recordFailedExecution() throws Exception
+    {
+        try {
+            new AbstractJob()
+            {
+                @Override
+                protected void executeJob(JobExecutionContext jobContext) throws JobExecutionException
+                {
+                    throw new JobExecutionException("failure");
+                }
+            }.execute(this.jobContext);
+            Assert.fail("The job failure should be propagated");
+        } catch (JobExecutionException expected) {
+            // expected
+        }
+
+        Assert.assertEquals(1, this.metrics.getExecutionCount());
+        Assert.assertEquals(1, this.metrics.getFailureCount());
+        Assert.assertEquals(0, this.metrics.getRunningCount());
+    }
+
+    @Test
+    public void interruptJobExceedingTimeout() throws Exception
+    {
+        this.jobContext.getJobDetail().getJobDataMap().put(SchedulerPlugin.DATA_TIMEOUT, 1L);
+
+        final boolean[] interrupted = new boolean[1];
+        new AbstractJob()
+        {
+            @Override
+            protected void executeJob(JobExecutionContext jobContext)
+            {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                }
+            }
+        }.execute(this.jobContext);
+
+        Assert.assertTrue(interrupted[0]);
+        Assert.assertEquals(1, this.metrics.getTimeoutCount());
+        Assert.assertEquals(1, this.metrics.getExecutionCount());
+        // The interruption doesn't leak to the next job executed by the same thread
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void doNotInterruptFinishedJob() throws Exception
+    {
+        this.jobContext.getJobDetail().getJobDataMap().put(SchedulerPlugin.DATA_TIMEOUT, 1L);
+
+        new AbstractJob()
+        {
+            @Override
+            protected void executeJob(JobExecutionContext jobContext)
+            {
+            }
+        }.execute(this.jobContext);
+
+        // Wait past the timeout: the cancelled watchdog must not interrupt the thread
+        Thread.sleep(1500);
+
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        Assert.assertEquals(0, this.metrics.getTimeoutCount());
+    }
+}
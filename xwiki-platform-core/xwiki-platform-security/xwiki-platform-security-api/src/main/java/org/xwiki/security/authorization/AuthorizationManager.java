@@ -19,6 +19,9 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.xwiki.component.annotation.Role;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
@@ -74,6 +77,23 @@ void checkAccess(Right right, DocumentReference userReference, EntityReference e
      */
     boolean hasAccess(Right right, DocumentReference userReference, EntityReference entityReference);
 
+    /**
+     * Filter the passed entities to keep only the ones on which the user identified by {@code userReference} has the
+     * access identified by {@code right}. This is the same as calling {@link #hasAccess} for each entity but the
+     * access resolved for a parent entity (space, wiki) is shared by all its children not having any specific rule,
+     * which make it a lot faster for big lists of entities like search results.
+     * This function should be used for interface matters, use {@link #checkAccess} at security checkpoints.
+     * 
+     * @param <T> the type of entity references
+     * @param right the right to check
+     * @param userReference the user to check the right for
+     * @param entityReferences the entities on which to check the right
+     * @return the entities on which the user has the specified right, in the same order as the passed ones
+     * @since 5.2M1
+     */
+    <T extends EntityReference> List<T> filterAccessible(Right right, DocumentReference userReference,
+        Collection<T> entityReferences);
+
     /**
      * Register a new custom {@link Right}.
      *
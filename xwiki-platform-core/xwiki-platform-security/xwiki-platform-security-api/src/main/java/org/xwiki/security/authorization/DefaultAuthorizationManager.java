@@ -19,6 +19,12 @@
  */
 package org.xwiki.security.authorization;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
@@ -115,6 +121,45 @@ public boolean hasAccess(Right right, DocumentReference userReference, EntityRef
         }
     }
 
+    @Override
+    public <T extends EntityReference> List<T> filterAccessible(Right right, DocumentReference userReference,
+        Collection<T> entityReferences)
+    {
+        if (isSuperAdmin(userReference)) {
+            return new ArrayList<T>(entityReferences);
+        }
+
+        List<T> accessibleReferences = new ArrayList<T>();
+
+        if (right == null || right == Right.ILLEGAL || (!right.isReadOnly() && xwikiBridge.isWikiReadOnly())) {
+            return accessibleReferences;
+        }
+
+        UserSecurityReference user = securityReferenceFactory.newUserReference(userReference);
+
+        // The access resolved for each entity, shared with the entities inheriting it
+        Map<SecurityReference, SecurityAccess> accesses = new HashMap<SecurityReference, SecurityAccess>();
+
+        for (T entityReference : entityReferences) {
+            try {
+                SecurityAccess securityAccess =
+                    getAccess(user, securityReferenceFactory.newEntityReference(entityReference), accesses);
+
+                RuleState access = securityAccess.get(right);
+                logAccess(access, userReference, entityReference, right, "access filter", true);
+                if (access == RuleState.ALLOW) {
+                    accessibleReferences.add(entityReference);
+                }
+            } catch (Exception e) {
+                this.logger.error(String.format("Failed to load rights for user [%s] on [%s].",
+                    (userReference == null) ? AuthorizationException.NULL_USER : userReference,
+                    (entityReference == null) ? AuthorizationException.NULL_ENTITY : entityReference), e);
+            }
+        }
+
+        return accessibleReferences;
+    }
+
     /**
      * Verifies if the user identified by {@code userReference} has the access identified by {@code right} on the
      * entity identified by {@code entityReference}. Note that some rights may be checked higher in hierarchy of the
@@ -226,6 +271,60 @@ private SecurityAccess getAccess(UserSecurityReference user, SecurityReference e
         return access;
     }
 
+    /**
+     * Obtain the access for the user on the given entity, reusing the accesses already resolved for the same user in
+     * the passed map. Follow the same logic as {@link #getAccess(UserSecurityReference, SecurityReference)}: an entity
+     * without any rule shares the access of its nearest parent having rules.
+     *
+     * @param user The user identity.
+     * @param entity The entity.  May be of type DOCUMENT, WIKI, or SPACE.
+     * @param accesses the accesses already resolved for the user, updated with the new resolved ones
+     * @return the access entry.
+     * @exception org.xwiki.security.authorization.AuthorizationException if an error occurs
+     */
+    private SecurityAccess getAccess(UserSecurityReference user, SecurityReference entity,
+        Map<SecurityReference, SecurityAccess> accesses) throws AuthorizationException
+    {
+        // The entities sharing the found access: the ones without rules traversed and the one holding the rules
+        List<SecurityReference> traversedReferences = new ArrayList<SecurityReference>();
+
+        SecurityAccess access = null;
+        for (SecurityReference ref = entity; ref != null && access == null; ref = ref.getParentSecurityReference()) {
+            access = accesses.get(ref);
+            if (access == null) {
+                SecurityRuleEntry entry = securityCache.get(ref);
+                if (entry == null) {
+                    // Let the standard path load and cache the missing entries
+                    traversedReferences.clear();
+                    access = getAccess(user, entity);
+                } else if (!entry.isEmpty()) {
+                    SecurityAccessEntry accessEntry = securityCache.get(user, ref);
+                    if (accessEntry == null) {
+                        traversedReferences.clear();
+                        access = getAccess(user, entity);
+                    } else {
+                        access = accessEntry.getAccess();
+                        traversedReferences.add(ref);
+                    }
+                } else {
+                    traversedReferences.add(ref);
+                }
+            }
+        }
+
+        if (access == null) {
+            traversedReferences.clear();
+            access = getAccess(user, entity);
+        }
+
+        accesses.put(entity, access);
+        for (SecurityReference reference : traversedReferences) {
+            accesses.put(reference, access);
+        }
+
+        return access;
+    }
+
     /**
      * Log access conclusion.
      * @param access The ALLOW or DENY state
@@ -0,0 +1,75 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization;
+
+import java.util.Collection;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+
+/**
+ * Index of the group membership of users and groups, maintained per wiki and invalidated when a group of the wiki is
+ * modified. It avoids browsing again the group hierarchy of a user each time its security cache entry is evicted.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface GroupClosureIndex
+{
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where groups are evaluated
+     * @return the groups of the given wiki having the given user or group as direct member
+     * @throws AuthorizationException if an error occurs during retrieval
+     */
+    Collection<DocumentReference> getGroupsFor(DocumentReference member, WikiReference wiki)
+        throws AuthorizationException;
+
+    /**
+     * @param member the user or group
+     * @param wiki the wiki where groups are evaluated
+     * @return the groups of the given wiki having the given user or group as direct or indirect member; for a member
+     *         of another wiki, this includes the groups having as member one of the groups of the member wiki
+     * @throws AuthorizationException if an error occurs during retrieval
+     */
+    Collection<DocumentReference> getAllGroupsFor(DocumentReference member, WikiReference wiki)
+        throws AuthorizationException;
+
+    /**
+     * Forget the group membership indexed for the given wiki.
+     *
+     * @param wiki the wiki in which a group has been modified, or which has been deleted
+     */
+    void invalidate(WikiReference wiki);
+
+    /**
+     * @param wiki the wiki
+     * @return the number of users and groups currently indexed for the given wiki
+     */
+    int size(WikiReference wiki);
+
+    /**
+     * @param wiki the wiki
+     * @return the time spent, in milliseconds, to build the current index of the given wiki
+     */
+    long getBuildTime(WikiReference wiki);
+}
@@ -21,8 +21,10 @@
 package org.xwiki.security.authorization;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -579,4 +581,25 @@ public void testCheckAccess() throws Exception
                 e.getCause(), nullValue());
         }
     }
+
+    @Test
+    public void testFilterAccessible() throws Exception
+    {
+        initialiseWikiMock("groupAccess");
+
+        List<DocumentReference> documents = Arrays.asList(getXDoc("any document", "any space"),
+            getXDoc("docDenyGroupA", "any space"), getXDoc("docAllowGroupA", "any space"),
+            getXDoc("another document", "any space"), getXDoc("docDenyGroupB", "any space"));
+
+        Assert.assertEquals(Arrays.asList(documents.get(0), documents.get(2), documents.get(3)),
+            authorizationManager.filterAccessible(VIEW, getXUser("userA"), documents));
+
+        // Same result when the cache is already filled
+        Assert.assertEquals(Arrays.asList(documents.get(0), documents.get(2), documents.get(3)),
+            authorizationManager.filterAccessible(VIEW, getXUser("userA"), documents));
+
+        Assert.assertEquals(documents, authorizationManager.filterAccessible(VIEW, SUPERADMIN, documents));
+        Assert.assertEquals(Collections.emptyList(),
+            authorizationManager.filterAccessible(ILLEGAL, getXUser("userA"), documents));
+    }
 }
@@ -33,6 +33,7 @@
 import org.xwiki.bridge.event.DocumentCreatedEvent;
 import org.xwiki.bridge.event.DocumentDeletedEvent;
 import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.bridge.event.WikiDeletedEvent;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.context.Execution;
 import org.xwiki.model.reference.DocumentReference;
@@ -43,6 +44,7 @@
 import org.xwiki.observation.event.Event;
 import org.xwiki.security.SecurityReferenceFactory;
 import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.GroupClosureIndex;
 import org.xwiki.security.authorization.cache.SecurityCache;
 import org.xwiki.security.authorization.cache.SecurityCacheRulesInvalidator;
 import org.xwiki.security.internal.XWikiConstants;
@@ -93,6 +95,10 @@ public class DefaultSecurityCacheRulesInvalidator implements SecurityCacheRulesI
     @Inject
     private EntityReferenceSerializer<String> serializer;
 
+    /** The index of the group membership. */
+    @Inject
+    private GroupClosureIndex groupClosureIndex;
+
     /** Execution object. */
     @Inject
     private Execution execution;
@@ -129,6 +135,7 @@ public List<Event> getEvents()
             new DocumentCreatedEvent(),
             new DocumentUpdatedEvent(),
             new DocumentDeletedEvent(),
+            new WikiDeletedEvent(),
         };
         return Arrays.asList(events);
     }
@@ -152,6 +159,9 @@ private static DocumentReference getDocumentReference(Object xwikiDocument)
     private boolean isGroupDocument(Object source)
     {
         XWikiDocument doc = (XWikiDocument) source;
+        if (doc == null) {
+            return false;
+        }
         DocumentReference docRef = doc.getDocumentReference();
         DocumentReference groupClass = resolver.resolve(XWikiConstants.GROUP_CLASS, docRef);
         List objects = doc.getXObjects(groupClass);
@@ -200,9 +210,19 @@ public void invalidateGroupMembers(DocumentReference group, SecurityCache securi
     @Override
     public void onEvent(Event event, Object source, Object data)
     {
+        if (event instanceof WikiDeletedEvent) {
+            // Don't keep the group membership of a wiki that doesn't exist anymore
+            groupClosureIndex.invalidate(new WikiReference(((WikiDeletedEvent) event).getWikiId()));
+            return;
+        }
+
         DocumentReference ref = getDocumentReference(source);
         readWriteLock.writeLock().lock();
         try {
+            if (isGroupDocument(source) || isGroupDocument(((XWikiDocument) source).getOriginalDocument())) {
+                // The group membership of the wiki changed, including when a group is deleted
+                groupClosureIndex.invalidate(ref.getWikiReference());
+            }
             deliverUpdateEvent(ref);
             if (isGroupDocument(source)) {
                 // When a group receive a new member, the update event is triggered and the above invalidate the group
@@ -93,46 +93,6 @@ private XWikiContext getXWikiContext() {
         return ((XWikiContext) execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
     }
 
-    /**
-     * Internal implementation of the SecurityRuleEntry.
-     */
-    private final class InternalSecurityRuleEntry extends AbstractSecurityRuleEntry
-    {
-        /** Reference of the related entity. */
-        private final SecurityReference reference;
-
-        /** The list of objects. */
-        private final Collection<SecurityRule> rules;
-
-        /**
-         * @param reference reference of the related entity
-         * @param rules collection of security rules applied on the entity.
-         */
-        private InternalSecurityRuleEntry(SecurityReference reference, Collection<SecurityRule> rules)
-        {
-            this.reference = reference;
-            this.rules = Collections.unmodifiableCollection(rules);
-        }
-
-        /**
-         * @return all rules available for this entity
-         */
-        @Override
-        public SecurityReference getReference()
-        {
-            return reference;
-        }
-
-        /**
-         * @return all rules available for this entity
-         */
-        @Override
-        public Collection<SecurityRule> getRules()
-        {
-            return rules;
-        }
-    }
-
     /**
      * Load the rules from wiki documents.
      *
@@ -0,0 +1,417 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.slf4j.Logger;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.manager.ComponentLifecycleException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.concurrent.ExecutionContextRunnable;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.SecurityReferenceFactory;
+import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RightSet;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityEntryReader;
+import org.xwiki.security.authorization.SecurityRule;
+import org.xwiki.security.authorization.cache.ConflictingInsertionException;
+import org.xwiki.security.authorization.cache.ParentEntryEvictedException;
+import org.xwiki.security.authorization.cache.SecurityCacheRulesInvalidator;
+import org.xwiki.security.authorization.cache.internal.SecurityCache;
+import org.xwiki.security.internal.XWikiConstants;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Default implementation of {@link SecurityRulesPreloader}. The rights objects of all the preferences documents of a
+ * wiki are fetched with a few projection queries, so that no document is loaded to build the wiki and space entries.
+ * Document level entries are still loaded lazily by the {@link SecurityEntryReader} since they also depend on the
+ * document creator.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultSecurityRulesPreloader implements SecurityRulesPreloader, Initializable, Disposable
+{
+    /** Right set allowed for wiki owner. */
+    private static final RightSet OWNER_RIGHTS = new RightSet(Right.ADMIN);
+
+    /** Common part of the rights objects queries, selecting the properties of the global rights objects. */
+    private static final String RIGHTS_QUERY_PREFIX = "select doc.space, doc.name, obj.number, prop.id.name, "
+        + "prop.value from XWikiDocument as doc, BaseObject as obj, ";
+
+    /** Common part of the rights objects queries, restricting the objects to the preferences documents. */
+    private static final String RIGHTS_QUERY_SUFFIX = " as prop where doc.translation = 0 "
+        + "and obj.name = doc.fullName and obj.className = :className and obj.id = prop.id.id "
+        + "and (doc.name = :spaceDocument or (doc.space = :wikiSpace and doc.name = :wikiDocument)) "
+        + "and prop.id.name in ";
+
+    /**
+     * Delay in seconds before a background preloading starts, so that the consecutive preferences changes of a wiki,
+     * like the ones of an import, trigger a single preloading.
+     */
+    private static final long PRELOAD_DELAY = 10;
+
+    /** Query listing the spaces of a wiki. */
+    private static final String SPACES_QUERY = "select distinct doc.space from XWikiDocument as doc";
+
+    /** Logger. */
+    @Inject
+    private Logger logger;
+
+    /** The security cache to fill. */
+    @Inject
+    private SecurityCache securityCache;
+
+    /** Used to prevent invalidation while the cache is being filled. */
+    @Inject
+    private SecurityCacheRulesInvalidator rulesInvalidator;
+
+    /** Used to load the parent entries which are missing from the cache. */
+    @Inject
+    private SecurityEntryReader securityEntryReader;
+
+    /** Factory of security references. */
+    @Inject
+    private SecurityReferenceFactory securityReferenceFactory;
+
+    /** Used to read the rights objects. */
+    @Inject
+    private QueryManager queryManager;
+
+    /** Resolver for user and group names. */
+    @Inject
+    @Named("user")
+    private DocumentReferenceResolver<String> resolver;
+
+    /** Used to get the wiki owner. */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /** Used to initialize the execution context of the background thread. */
+    @Inject
+    private ComponentManager componentManager;
+
+    /** Thread in which the background preloading are executed. */
+    private ScheduledExecutorService preloadExecutor;
+
+    /** The wikis for which a background preloading is scheduled but not started yet. */
+    private final Set<WikiReference> scheduledPreloads =
+        Collections.newSetFromMap(new ConcurrentHashMap<WikiReference, Boolean>());
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki security rules preloading thread").daemon(true)
+                .priority(Thread.MIN_PRIORITY).build();
+        this.preloadExecutor = Executors.newSingleThreadScheduledExecutor(factory);
+    }
+
+    @Override
+    public void dispose() throws ComponentLifecycleException
+    {
+        this.preloadExecutor.shutdownNow();
+    }
+
+    @Override
+    public void preloadInBackground(final WikiReference wiki)
+    {
+        if (!this.scheduledPreloads.add(wiki)) {
+            // The preloading which is already scheduled will read the latest rules
+            return;
+        }
+
+        Runnable preloading = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                // Changes made from now on need another preloading
+                scheduledPreloads.remove(wiki);
+
+                try {
+                    preload(wiki);
+                } catch (Exception e) {
+                    logger.warn("Failed to preload the security rules of wiki [{}]: {}", wiki.getName(),
+                        e.getMessage());
+                }
+            }
+        };
+
+        this.preloadExecutor.schedule(new ExecutionContextRunnable(preloading, this.componentManager), PRELOAD_DELAY,
+            TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void preload(WikiReference wiki) throws AuthorizationException
+    {
+        long startTime = System.currentTimeMillis();
+
+        SecurityReference wikiReference = this.securityReferenceFactory.newEntityReference(wiki);
+
+        int loaded = 0;
+
+        // The rights are read while the invalidation is suspended, so that a change committed after the read is
+        // invalidated after the entries built from it are cached, and not before.
+        this.rulesInvalidator.suspend();
+        try {
+            List<String> spaces = getSpaces(wiki);
+            Map<String, SortedMap<Integer, BaseObject>> rightsObjects = getRightsObjects(wiki);
+
+            List<SecurityRule> impliedRules = new ArrayList<SecurityRule>();
+            DocumentReference owner = getWikiOwner(wiki);
+            if (owner != null) {
+                // Allow global rights to wiki owner
+                impliedRules.add(new XWikiSecurityRule(OWNER_RIGHTS, RuleState.ALLOW, Collections.singleton(owner),
+                    null));
+            }
+
+            // The cache only accepts entries whose parents are already cached
+            for (SecurityReference parent : wikiReference.getReversedSecurityReferenceChain()) {
+                if (parent != wikiReference && this.securityCache.get(parent) == null) {
+                    this.securityCache.add(this.securityEntryReader.read(parent));
+                }
+            }
+
+            if (addEntry(wikiReference, getRules(wiki, impliedRules, rightsObjects.get(null)))) {
+                loaded++;
+            }
+
+            for (String space : spaces) {
+                SecurityReference spaceReference =
+                    this.securityReferenceFactory.newEntityReference(new SpaceReference(space, wiki));
+                if (addEntry(spaceReference, getRules(wiki, impliedRules, rightsObjects.get(space)))) {
+                    loaded++;
+                }
+            }
+        } catch (ParentEntryEvictedException e) {
+            // The wiki entry has been invalidated in the meantime, the remaining entries will be loaded on demand
+            this.logger.debug("Interrupted the preloading of the security rules of wiki [{}]", wiki.getName());
+        } catch (ConflictingInsertionException e) {
+            this.logger.debug("Interrupted the preloading of the security rules of wiki [{}]", wiki.getName());
+        } finally {
+            this.rulesInvalidator.resume();
+        }
+
+        this.logger.debug("Preloaded [{}] security rule entries of wiki [{}] in [{}] ms", loaded, wiki.getName(),
+            System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Add an entry to the cache unless it is already there.
+     *
+     * @param reference the reference of the entry
+     * @param rules the rules of the entry
+     * @return true if the entry has been added
+     * @throws ParentEntryEvictedException if the parent of the entry is not in the cache anymore
+     */
+    private boolean addEntry(SecurityReference reference, Collection<SecurityRule> rules)
+        throws ParentEntryEvictedException
+    {
+        if (this.securityCache.get(reference) != null) {
+            return false;
+        }
+
+        try {
+            this.securityCache.add(new InternalSecurityRuleEntry(reference, rules));
+        } catch (ConflictingInsertionException e) {
+            // Loaded concurrently by an access check
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @param wiki the wiki from which the rules are extracted
+     * @param impliedRules the rules implied by the wiki ownership
+     * @param objects the rights objects of the entity, or null if there is none
+     * @return the security rules of the entity
+     */
+    private Collection<SecurityRule> getRules(WikiReference wiki, List<SecurityRule> impliedRules,
+        SortedMap<Integer, BaseObject> objects)
+    {
+        List<SecurityRule> rules = new ArrayList<SecurityRule>(impliedRules);
+
+        if (objects != null) {
+            for (BaseObject obj : objects.values()) {
+                try {
+                    rules.add(XWikiSecurityRule.createNewRule(obj, this.resolver, wiki, false));
+                } catch (IllegalArgumentException e) {
+                    // Do not add badly formed security rules.
+                    continue;
+                }
+            }
+        }
+
+        return rules;
+    }
+
+    /**
+     * @param wiki the wiki
+     * @return the spaces of the wiki
+     * @throws AuthorizationException if the query failed
+     */
+    private List<String> getSpaces(WikiReference wiki) throws AuthorizationException
+    {
+        try {
+            return this.queryManager.createQuery(SPACES_QUERY, Query.HQL).setWiki(wiki.getName()).execute();
+        } catch (QueryException e) {
+            throw new AuthorizationException(wiki, "Could not list the spaces of this wiki", e);
+        }
+    }
+
+    /**
+     * Read the global rights objects of the wiki and space preferences documents, without loading the documents.
+     *
+     * @param wiki the wiki
+     * @return the rights objects indexed by space and by object number, the wiki preferences objects being indexed
+     *         by the {@code null} space
+     * @throws AuthorizationException if the query failed
+     */
+    private Map<String, SortedMap<Integer, BaseObject>> getRightsObjects(WikiReference wiki)
+        throws AuthorizationException
+    {
+        Map<String, SortedMap<Integer, BaseObject>> objects = new HashMap<String, SortedMap<Integer, BaseObject>>();
+
+        String fields = "('" + XWikiConstants.LEVELS_FIELD_NAME + "')";
+        readProperties(wiki, RIGHTS_QUERY_PREFIX + "StringProperty" + RIGHTS_QUERY_SUFFIX + fields, objects);
+        fields = "('" + XWikiConstants.USERS_FIELD_NAME + "', '" + XWikiConstants.GROUPS_FIELD_NAME + "')";
+        readProperties(wiki, RIGHTS_QUERY_PREFIX + "LargeStringProperty" + RIGHTS_QUERY_SUFFIX + fields, objects);
+        fields = "('" + XWikiConstants.ALLOW_FIELD_NAME + "')";
+        readProperties(wiki, RIGHTS_QUERY_PREFIX + "IntegerProperty" + RIGHTS_QUERY_SUFFIX + fields, objects);
+
+        return objects;
+    }
+
+    /**
+     * Execute a rights properties query and set the properties on the matching objects.
+     *
+     * @param wiki the wiki
+     * @param statement the HQL statement
+     * @param objects the rights objects indexed by space and by object number
+     * @throws AuthorizationException if the query failed
+     */
+    private void readProperties(WikiReference wiki, String statement,
+        Map<String, SortedMap<Integer, BaseObject>> objects) throws AuthorizationException
+    {
+        List<Object[]> results;
+        try {
+            Query query = this.queryManager.createQuery(statement, Query.HQL);
+            query.setWiki(wiki.getName());
+            query.bindValue("className", XWikiConstants.XWIKI_SPACE + '.' + XWikiConstants.GLOBAL_CLASSNAME);
+            query.bindValue("spaceDocument", XWikiConstants.SPACE_DOC);
+            query.bindValue("wikiSpace", XWikiConstants.XWIKI_SPACE);
+            query.bindValue("wikiDocument", XWikiConstants.WIKI_DOC);
+            results = query.execute();
+        } catch (QueryException e) {
+            throw new AuthorizationException(wiki, "Could not read the rights objects of this wiki", e);
+        }
+
+        for (Object[] result : results) {
+            String space = (String) result[0];
+            if (XWikiConstants.WIKI_DOC.equals(result[1])) {
+                // The wiki preferences
+                space = null;
+            }
+
+            SortedMap<Integer, BaseObject> spaceObjects = objects.get(space);
+            if (spaceObjects == null) {
+                spaceObjects = new TreeMap<Integer, BaseObject>();
+                objects.put(space, spaceObjects);
+            }
+
+            Integer number = (Integer) result[2];
+            BaseObject obj = spaceObjects.get(number);
+            if (obj == null) {
+                obj = new BaseObject();
+                obj.setNumber(number);
+                spaceObjects.put(number, obj);
+            }
+
+            String name = (String) result[3];
+            if (result[4] instanceof Integer) {
+                obj.setIntValue(name, (Integer) result[4]);
+            } else if (XWikiConstants.LEVELS_FIELD_NAME.equals(name)) {
+                obj.setStringValue(name, (String) result[4]);
+            } else {
+                obj.setLargeStringValue(name, (String) result[4]);
+            }
+        }
+    }
+
+    /**
+     * @param wiki the wiki to look for owner
+     * @return a reference to the owner of the wiki
+     * @throws AuthorizationException if the owner could not be retrieved.
+     */
+    private DocumentReference getWikiOwner(WikiReference wiki) throws AuthorizationException
+    {
+        XWikiContext context = this.xcontextProvider.get();
+        String wikiOwner;
+        try {
+            wikiOwner = context.getWiki().getWikiOwner(wiki.getName(), context);
+        } catch (XWikiException e) {
+            throw new AuthorizationException(wiki, "Could not retrieve the owner of this wiki", e);
+        }
+
+        if (wikiOwner == null) {
+            return null;
+        }
+
+        return this.resolver.resolve(wikiOwner, wiki);
+    }
+}
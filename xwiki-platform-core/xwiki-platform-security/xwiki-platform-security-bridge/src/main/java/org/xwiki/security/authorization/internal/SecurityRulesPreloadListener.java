@@ -0,0 +1,96 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.xwiki.bridge.event.ApplicationReadyEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.security.internal.XWikiConstants;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Warm the security cache with the wiki and space level rules of the main wiki at startup, and again for a wiki when
+ * its preferences are modified, since this invalidates all the entries of the wiki. Consecutive modifications are
+ * merged into a single preloading by the {@link SecurityRulesPreloader}.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Named("security.rulesPreloader")
+@Singleton
+public class SecurityRulesPreloadListener implements EventListener
+{
+    /** The events to listen to. */
+    private static final List<Event> EVENTS = Arrays.<Event>asList(new ApplicationReadyEvent(),
+        new DocumentUpdatedEvent());
+
+    /**
+     * The rules preloader.
+     * <p>
+     * Lazily initialized to not start the preloading thread too early.
+     */
+    @Inject
+    private Provider<SecurityRulesPreloader> preloader;
+
+    /** Used to get the main wiki. */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Override
+    public List<Event> getEvents()
+    {
+        return EVENTS;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "security.rulesPreloader";
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        if (event instanceof ApplicationReadyEvent) {
+            this.preloader.get().preloadInBackground(new WikiReference(this.xcontextProvider.get().getMainXWiki()));
+        } else {
+            DocumentReference reference = ((XWikiDocument) source).getDocumentReference();
+            if (XWikiConstants.WIKI_DOC.equals(reference.getName())
+                && XWikiConstants.XWIKI_SPACE.equals(reference.getLastSpaceReference().getName())) {
+                this.preloader.get().preloadInBackground(reference.getWikiReference());
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.security.authorization.AuthorizationException;
+
+/**
+ * Fill the security cache with the wiki and space level rules of a whole wiki, reading only the rights objects
+ * from the database instead of loading each preferences document on the first access check.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Role
+public interface SecurityRulesPreloader
+{
+    /**
+     * Load the wiki and space level rules of the given wiki into the security cache. Entries already present in the
+     * cache are left untouched.
+     *
+     * @param wiki the wiki for which to load the rules
+     * @throws AuthorizationException if the rights objects could not be read
+     */
+    void preload(WikiReference wiki) throws AuthorizationException;
+
+    /**
+     * Same as {@link #preload(WikiReference)} but executed asynchronously in a dedicated low priority thread, after a
+     * short delay. Requests for a wiki whose preloading is scheduled but not started yet are merged into it.
+     *
+     * @param wiki the wiki for which to load the rules
+     */
+    void preloadInBackground(WikiReference wiki);
+}
@@ -0,0 +1,294 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.context.Execution;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.security.authorization.AuthorizationException;
+import org.xwiki.security.authorization.GroupClosureIndex;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.user.api.XWikiGroupService;
+
+/**
+ * Default implementation of {@link GroupClosureIndex}. The direct memberships are indexed per wiki with each user or
+ * group reference stored once and the memberships kept as arrays of reference identifiers. The indirect memberships
+ * are computed from the indexed direct memberships.
+ *
+ * @version $Id$
+ * @since 5.2M1
+ */
+@Component
+@Singleton
+public class DefaultGroupClosureIndex implements GroupClosureIndex
+{
+    /** The maximum number of users and groups indexed per wiki, the index of a wiki is reset when it is reached. */
+    static final int MAX_MEMBERS = 10000;
+
+    /** The index of each wiki, indexed by wiki name. */
+    private final ConcurrentMap<String, WikiGroupIndex> wikiIndexes = new ConcurrentHashMap<String, WikiGroupIndex>();
+
+    /** Execution object. */
+    @Inject
+    private Execution execution;
+
+    /**
+     * The group membership of the users and groups of a wiki.
+     */
+    private static final class WikiGroupIndex
+    {
+        /** The identifier of each indexed reference. */
+        private final Map<DocumentReference, Integer> ids = new HashMap<DocumentReference, Integer>();
+
+        /** The indexed references, by identifier. */
+        private final List<DocumentReference> references = new ArrayList<DocumentReference>();
+
+        /** The identifiers of the direct groups of each indexed member. */
+        private final Map<Integer, int[]> groups = new HashMap<Integer, int[]>();
+
+        /** The time spent to retrieve the indexed memberships. */
+        private long buildTime;
+
+        /**
+         * @param member the user or group
+         * @return the direct groups of the member, or null if they are not indexed
+         */
+        synchronized Collection<DocumentReference> getGroups(DocumentReference member)
+        {
+            Integer memberId = this.ids.get(member);
+            int[] groupIds = memberId != null ? this.groups.get(memberId) : null;
+            if (groupIds == null) {
+                return null;
+            }
+
+            List<DocumentReference> memberGroups = new ArrayList<DocumentReference>(groupIds.length);
+            for (int groupId : groupIds) {
+                memberGroups.add(this.references.get(groupId));
+            }
+
+            return memberGroups;
+        }
+
+        /**
+         * @param member the user or group
+         * @param memberGroups the direct groups of the member
+         * @param time the time spent to retrieve the groups
+         */
+        synchronized void putGroups(DocumentReference member, Collection<DocumentReference> memberGroups, long time)
+        {
+            if (this.groups.size() >= MAX_MEMBERS) {
+                // Start again from an empty index rather than growing without bounds on wikis with many users
+                this.ids.clear();
+                this.references.clear();
+                this.groups.clear();
+                this.buildTime = 0;
+            }
+
+            int[] groupIds = new int[memberGroups.size()];
+            int i = 0;
+            for (DocumentReference group : memberGroups) {
+                groupIds[i++] = getId(group);
+            }
+
+            this.groups.put(getId(member), groupIds);
+            this.buildTime += time;
+        }
+
+        /**
+         * @param reference a user or group reference
+         * @return the identifier of the reference, allocated if needed
+         */
+        private int getId(DocumentReference reference)
+        {
+            Integer id = this.ids.get(reference);
+            if (id == null) {
+                id = this.references.size();
+                this.references.add(reference);
+                this.ids.put(reference, id);
+            }
+
+            return id;
+        }
+
+        /**
+         * @return the number of indexed members
+         */
+        synchronized int size()
+        {
+            return this.groups.size();
+        }
+
+        /**
+         * @return the time spent to retrieve the indexed memberships
+         */
+        synchronized long getBuildTime()
+        {
+            return this.buildTime;
+        }
+    }
+
+    /**
+     * @return the current {@code XWikiContext}
+     */
+    private XWikiContext getXWikiContext()
+    {
+        return ((XWikiContext) execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
+    }
+
+    /**
+     * @param wiki the wiki
+     * @return the index of the wiki, created if needed
+     */
+    private WikiGroupIndex getWikiIndex(WikiReference wiki)
+    {
+        WikiGroupIndex index = this.wikiIndexes.get(wiki.getName());
+        if (index == null) {
+            index = new WikiGroupIndex();
+            WikiGroupIndex existingIndex = this.wikiIndexes.putIfAbsent(wiki.getName(), index);
+            if (existingIndex != null) {
+                index = existingIndex;
+            }
+        }
+
+        return index;
+    }
+
+    @Override
+    public Collection<DocumentReference> getGroupsFor(DocumentReference member, WikiReference wiki)
+        throws AuthorizationException
+    {
+        WikiGroupIndex index = getWikiIndex(wiki);
+
+        Collection<DocumentReference> groups = index.getGroups(member);
+        if (groups == null) {
+            long startTime = System.currentTimeMillis();
+            groups = getGroupsReferencesFor(wiki, member);
+            index.putGroups(member, groups, System.currentTimeMillis() - startTime);
+        }
+
+        return groups;
+    }
+
+    @Override
+    public Collection<DocumentReference> getAllGroupsFor(DocumentReference member, WikiReference wiki)
+        throws AuthorizationException
+    {
+        List<DocumentReference> members = new ArrayList<DocumentReference>();
+        members.add(member);
+
+        WikiReference memberWiki = member.getWikiReference();
+        if (!memberWiki.equals(wiki)) {
+            // The groups of the member wiki can also be members of the groups of the given wiki
+            members.addAll(getAllGroupsFor(members, memberWiki));
+        }
+
+        return getAllGroupsFor(members, wiki);
+    }
+
+    /**
+     * @param members the users or groups
+     * @param wiki the wiki where groups are evaluated
+     * @return the groups of the given wiki having any of the given users or groups as direct or indirect member
+     * @throws AuthorizationException if an error occurs during retrieval
+     */
+    private Collection<DocumentReference> getAllGroupsFor(Collection<DocumentReference> members, WikiReference wiki)
+        throws AuthorizationException
+    {
+        Collection<DocumentReference> allGroups = new LinkedHashSet<DocumentReference>();
+
+        List<DocumentReference> toVisit = new ArrayList<DocumentReference>(members);
+        for (int i = 0; i < toVisit.size(); i++) {
+            for (DocumentReference group : getGroupsFor(toVisit.get(i), wiki)) {
+                // The set avoids infinite loops on cyclic group hierarchies
+                if (allGroups.add(group)) {
+                    toVisit.add(group);
+                }
+            }
+        }
+
+        return allGroups;
+    }
+
+    @Override
+    public void invalidate(WikiReference wiki)
+    {
+        this.wikiIndexes.remove(wiki.getName());
+    }
+
+    @Override
+    public int size(WikiReference wiki)
+    {
+        WikiGroupIndex index = this.wikiIndexes.get(wiki.getName());
+
+        return index != null ? index.size() : 0;
+    }
+
+    @Override
+    public long getBuildTime(WikiReference wiki)
+    {
+        WikiGroupIndex index = this.wikiIndexes.get(wiki.getName());
+
+        return index != null ? index.getBuildTime() : 0;
+    }
+
+    /**
+     * Get all groups in a given wiki where a given user or group is a member of.
+     * @param wiki the wiki to search groups containing the user/group
+     * @param userOrGroupDocumentReference the user/group document reference
+     * @return the list of group where the user/group is a member
+     * @throws AuthorizationException when an issue arise during retrieval.
+     */
+    private Collection<DocumentReference> getGroupsReferencesFor(WikiReference wiki,
+        DocumentReference userOrGroupDocumentReference) throws AuthorizationException
+    {
+        XWikiContext xwikiContext = getXWikiContext();
+        XWikiGroupService groupService;
+        try {
+            groupService = xwikiContext.getWiki().getGroupService(xwikiContext);
+        } catch (Exception e) {
+            throw new AuthorizationException("Failed to access the group service.",  e);
+        }
+
+        String currentWiki = xwikiContext.getDatabase();
+        try {
+            xwikiContext.setDatabase(wiki.getName());
+            return groupService.getAllGroupsReferencesForMember(userOrGroupDocumentReference, 0, 0, xwikiContext);
+        } catch (Exception e) {
+            throw new AuthorizationException(String.format("Failed to get groups for user or group [%s] in wiki [%s]",
+                userOrGroupDocumentReference, wiki), e);
+        } finally {
+            xwikiContext.setDatabase(currentWiki);
+        }
+    }
+}
@@ -27,16 +27,13 @@
 import javax.inject.Singleton;
 
 import org.xwiki.component.annotation.Component;
-import org.xwiki.context.Execution;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.WikiReference;
 import org.xwiki.security.GroupSecurityReference;
 import org.xwiki.security.SecurityReferenceFactory;
 import org.xwiki.security.UserSecurityReference;
 import org.xwiki.security.authorization.AuthorizationException;
-
-import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.user.api.XWikiGroupService;
+import org.xwiki.security.authorization.GroupClosureIndex;
 
 /**
  * Temporary implementation of the (@link UserBridge} interface to access user information.
@@ -52,16 +49,9 @@ public class DefaultUserBridge implements UserBridge
     @Inject
     private SecurityReferenceFactory factory;
 
-    /** Execution object. */
+    /** Index of the group membership. */
     @Inject
-    private Execution execution;
-
-    /**
-     * @return the current {@code XWikiContext}
-     */
-    private XWikiContext getXWikiContext() {
-        return ((XWikiContext) execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY));
-    }
+    private GroupClosureIndex groupClosureIndex;
 
     @Override
     public Collection<GroupSecurityReference> getAllGroupsFor(UserSecurityReference user, WikiReference wikiReference)
@@ -74,7 +64,7 @@ public Collection<GroupSecurityReference> getAllGroupsFor(UserSecurityReference
             return Collections.emptyList();
         }
 
-        Collection<DocumentReference> groupRefs = getGroupsReferencesFor(wikiReference, userRef);
+        Collection<DocumentReference> groupRefs = groupClosureIndex.getGroupsFor(userRef, wikiReference);
 
         Collection<GroupSecurityReference> groups = new ArrayList<GroupSecurityReference>(groupRefs.size());
         for (DocumentReference groupRef : groupRefs) {
@@ -83,34 +73,4 @@ public Collection<GroupSecurityReference> getAllGroupsFor(UserSecurityReference
         }
         return groups;
     }
-
-    /**
-     * Get all groups in a given wiki where a given user or group is a member of.
-     * @param wiki the wiki to search groups containing the user/group
-     * @param userOrGroupDocumentReference the user/group document reference
-     * @return the list of group where the user/group is a member
-     * @throws AuthorizationException when an issue arise during retrieval.
-     */
-    private Collection<DocumentReference> getGroupsReferencesFor(WikiReference wiki,
-        DocumentReference userOrGroupDocumentReference) throws AuthorizationException
-    {
-        XWikiContext xwikiContext = getXWikiContext();
-        XWikiGroupService groupService;
-        try {
-            groupService = xwikiContext.getWiki().getGroupService(xwikiContext);
-        } catch (Exception e) {
-            throw new AuthorizationException("Failed to access the group service.",  e);
-        }
-
-        String currentWiki = xwikiContext.getDatabase();
-        try {
-            xwikiContext.setDatabase(wiki.getName());
-            return groupService.getAllGroupsReferencesForMember(userOrGroupDocumentReference, 0, 0, xwikiContext);
-        } catch (Exception e) {
-            throw new AuthorizationException(String.format("Failed to get groups for user or group [%s] in wiki [%s]",
-                userOrGroupDocumentReference, wiki), e);
-        } finally {
-            xwikiContext.setDatabase(currentWiki);
-        }
-    }
 }
@@ -0,0 +1,233 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.authorization.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.SpaceReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.query.Query;
+import org.xwiki.query.QueryManager;
+import org.xwiki.security.SecurityReference;
+import org.xwiki.security.SecurityReferenceFactory;
+import org.xwiki.security.authorization.AbstractWikiTestCase;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.security.authorization.RightSet;
+import org.xwiki.security.authorization.RuleState;
+import org.xwiki.security.authorization.SecurityEntryReader;
+import org.xwiki.security.authorization.SecurityRule;
+import org.xwiki.security.authorization.SecurityRuleEntry;
+import org.xwiki.security.authorization.cache.internal.SecurityCache;
+import org.xwiki.security.authorization.testwikibuilding.LegacyTestWiki;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.objects.BaseObject;
+
+/**
+ * Unit tests for {@link DefaultSecurityRulesPreloader}.
+ * 
+ * @version $Id$
+ */
+public class DefaultSecurityRulesPreloaderTest extends AbstractWikiTestCase
+{
+    private static final WikiReference WIKI = new WikiReference("wiki");
+
+    private XWikiContext context;
+
+    private SecurityRulesPreloader preloader;
+
+    private SecurityEntryReader reader;
+
+    private SecurityCache securityCache;
+
+    private SecurityReferenceFactory securityReferenceFactory;
+
+    @Override
+    @Before
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        LegacyTestWiki testWiki = newTestWiki("preloadedRules.xml", false);
+        this.context = testWiki.getXWikiContext();
+
+        final QueryManager queryManager = registerMockComponent(QueryManager.class);
+        final Query spacesQuery = mockQuery("spaces", Arrays.<Object>asList("XWiki", "Space", "Other"));
+        final Query levelsQuery = mockQuery("levels", getRightsRows("levels"));
+        final Query usersAndGroupsQuery = mockQuery("usersAndGroups", getRightsRows("users", "groups"));
+        final Query allowQuery = mockQuery("allow", getRightsRows("allow"));
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(queryManager).createQuery(with(any(String.class)), with(equal(Query.HQL)));
+                will(new CustomAction("return the query matching the statement")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        String statement = (String) invocation.getParameter(0);
+                        if (statement.contains("LargeStringProperty")) {
+                            return usersAndGroupsQuery;
+                        } else if (statement.contains("StringProperty")) {
+                            return levelsQuery;
+                        } else if (statement.contains("IntegerProperty")) {
+                            return allowQuery;
+                        }
+                        return spacesQuery;
+                    }
+                });
+            }
+        });
+
+        this.preloader = getComponentManager().getInstance(SecurityRulesPreloader.class);
+        this.reader = getComponentManager().getInstance(SecurityEntryReader.class);
+        this.securityCache = getComponentManager().getInstance(SecurityCache.class);
+        this.securityReferenceFactory = getComponentManager().getInstance(SecurityReferenceFactory.class);
+    }
+
+    private Query mockQuery(String name, final List<Object> results) throws Exception
+    {
+        final Query query = getMockery().mock(Query.class, name);
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(query).setWiki(WIKI.getName());
+                will(returnValue(query));
+                allowing(query).bindValue(with(any(String.class)), with(anything()));
+                will(returnValue(query));
+                allowing(query).execute();
+                will(returnValue(results));
+            }
+        });
+
+        return query;
+    }
+
+    /**
+     * Simulate the rows returned by a rights projection query, from the rights objects of the preferences documents.
+     */
+    private List<Object> getRightsRows(String... properties) throws Exception
+    {
+        List<Object> rows = new ArrayList<Object>();
+
+        for (DocumentReference document : Arrays.asList(new DocumentReference("wiki", "XWiki", "XWikiPreferences"),
+            new DocumentReference("wiki", "Space", "WebPreferences"))) {
+            List<BaseObject> objects = this.context.getWiki().getDocument(document, this.context)
+                .getXObjects(new DocumentReference("wiki", "XWiki", "XWikiGlobalRights"));
+            for (int number = 0; number < objects.size(); ++number) {
+                BaseObject object = objects.get(number);
+                for (String property : properties) {
+                    Object value;
+                    if (property.equals("allow")) {
+                        value = object.getIntValue(property);
+                    } else {
+                        value = object.getStringValue(property);
+                    }
+                    rows.add(new Object[] {document.getLastSpaceReference().getName(), document.getName(), number,
+                        property, value});
+                }
+            }
+        }
+
+        return rows;
+    }
+
+    private SecurityReference getSecurityReference(EntityReference reference)
+    {
+        return this.securityReferenceFactory.newEntityReference(reference);
+    }
+
+    private void assertPreloaded(SecurityReference reference) throws Exception
+    {
+        SecurityRuleEntry preloaded = (SecurityRuleEntry) this.securityCache.get(reference);
+        Assert.assertNotNull(preloaded);
+        Assert.assertEquals(new ArrayList<SecurityRule>(this.reader.read(reference).getRules()),
+            new ArrayList<SecurityRule>(preloaded.getRules()));
+    }
+
+    @Test
+    public void preloadedEntriesMatchTheReadEntries() throws Exception
+    {
+        this.preloader.preload(WIKI);
+
+        SecurityReference wikiReference = getSecurityReference(WIKI);
+        assertPreloaded(wikiReference);
+        assertPreloaded(getSecurityReference(new SpaceReference("XWiki", WIKI)));
+        assertPreloaded(getSecurityReference(new SpaceReference("Space", WIKI)));
+        assertPreloaded(getSecurityReference(new SpaceReference("Other", WIKI)));
+
+        // The wiki and space entries get the owner rule
+        SecurityRule ownerRule = new XWikiSecurityRule(new RightSet(Right.ADMIN), RuleState.ALLOW,
+            Collections.singleton(new DocumentReference("wiki", "XWiki", "Owner")), null);
+        Collection<SecurityRule> wikiRules = ((SecurityRuleEntry) this.securityCache.get(wikiReference)).getRules();
+        Assert.assertTrue(wikiRules.contains(ownerRule));
+        Assert.assertEquals(4, wikiRules.size());
+        Assert.assertEquals(Collections.singletonList(ownerRule), new ArrayList<SecurityRule>(
+            ((SecurityRuleEntry) this.securityCache.get(getSecurityReference(new SpaceReference("Other", WIKI))))
+                .getRules()));
+
+        // The creator rule and the edit denial only apply to the preferences documents themselves, which are left
+        // to the reader
+        for (SecurityRule rule : wikiRules) {
+            Assert.assertFalse(rule instanceof AllowEditToNoOneRule);
+            Assert.assertFalse(rule.match(Right.CREATOR));
+        }
+        SecurityReference preferencesReference =
+            getSecurityReference(new DocumentReference("wiki", "XWiki", "XWikiPreferences"));
+        Assert.assertNull(this.securityCache.get(preferencesReference));
+        Collection<SecurityRule> preferencesRules = this.reader.read(preferencesReference).getRules();
+        Assert.assertTrue(preferencesRules.contains(new XWikiSecurityRule(new RightSet(Right.CREATOR),
+            RuleState.ALLOW, Collections.singleton(new DocumentReference("wiki", "XWiki", "Admin")), null)));
+        boolean denyEdit = false;
+        for (SecurityRule rule : preferencesRules) {
+            denyEdit |= rule instanceof AllowEditToNoOneRule;
+        }
+        Assert.assertTrue(denyEdit);
+    }
+
+    @Test
+    public void preloadKeepsCachedEntries() throws Exception
+    {
+        SecurityReference wikiReference = getSecurityReference(WIKI);
+        SecurityReference spaceReference = getSecurityReference(new SpaceReference("Space", WIKI));
+        SecurityRuleEntry spaceEntry =
+            new InternalSecurityRuleEntry(spaceReference, Collections.<SecurityRule>emptyList());
+        this.securityCache.add(this.reader.read(wikiReference));
+        this.securityCache.add(spaceEntry);
+
+        this.preloader.preload(WIKI);
+
+        Assert.assertSame(spaceEntry, this.securityCache.get(spaceReference));
+        assertPreloaded(getSecurityReference(new SpaceReference("Other", WIKI)));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.security.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jmock.Expectations;
+import org.jmock.api.Invocation;
+import org.jmock.lib.action.CustomAction;
+import org.jmock.lib.legacy.ClassImposteriser;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.security.authorization.GroupClosureIndex;
+import org.xwiki.test.jmock.AbstractMockingComponentTestCase;
+import org.xwiki.test.jmock.annotation.MockingRequirement;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.user.api.XWikiGroupService;
+
+/**
+ * Unit tests for {@link DefaultGroupClosureIndex}.
+ * 
+ * @version $Id$
+ */
+@MockingRequirement(DefaultGroupClosureIndex.class)
+public class DefaultGroupClosureIndexTest extends AbstractMockingComponentTestCase
+{
+    private static final WikiReference WIKI = new WikiReference("wiki");
+
+    private static final WikiReference SUBWIKI = new WikiReference("subwiki");
+
+    private static final DocumentReference USER = new DocumentReference("wiki", "XWiki", "user");
+
+    private GroupClosureIndex index;
+
+    /**
+     * The direct groups of each member, indexed by the wiki of the groups.
+     */
+    private Map<String, Map<DocumentReference, Collection<DocumentReference>>> memberships =
+        new HashMap<String, Map<DocumentReference, Collection<DocumentReference>>>();
+
+    /**
+     * The members for which the group service has been called.
+     */
+    private Collection<DocumentReference> retrievedMembers = new ArrayList<DocumentReference>();
+
+    @Before
+    @Override
+    public void setUp() throws Exception
+    {
+        getMockery().setImposteriser(ClassImposteriser.INSTANCE);
+
+        super.setUp();
+
+        this.index = getComponentManager().getInstance(GroupClosureIndex.class);
+
+        final XWiki xwiki = getMockery().mock(XWiki.class);
+        final XWikiGroupService groupService = getMockery().mock(XWikiGroupService.class);
+        XWikiContext xcontext = new XWikiContext();
+        xcontext.setWiki(xwiki);
+        xcontext.setDatabase(WIKI.getName());
+        final ExecutionContext executionContext = new ExecutionContext();
+        executionContext.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+        final Execution execution = getComponentManager().getInstance(Execution.class);
+
+        getMockery().checking(new Expectations()
+        {
+            {
+                allowing(execution).getContext();
+                will(returnValue(executionContext));
+                allowing(xwiki).getGroupService(with(any(XWikiContext.class)));
+                will(returnValue(groupService));
+                allowing(groupService).getAllGroupsReferencesForMember(with(any(DocumentReference.class)), with(0),
+                    with(0), with(any(XWikiContext.class)));
+                will(new CustomAction("return the direct groups of the member in the current wiki")
+                {
+                    @Override
+                    public Object invoke(Invocation invocation) throws Throwable
+                    {
+                        DocumentReference member = (DocumentReference) invocation.getParameter(0);
+                        retrievedMembers.add(member);
+                        String wiki = ((XWikiContext) invocation.getParameter(3)).getDatabase();
+                        Map<DocumentReference, Collection<DocumentReference>> wikiMemberships = memberships.get(wiki);
+                        Collection<DocumentReference> groups =
+                            wikiMemberships != null ? wikiMemberships.get(member) : null;
+                        return groups != null ? groups : Collections.<DocumentReference>emptyList();
+                    }
+                });
+            }
+        });
+    }
+
+    private DocumentReference addGroup(DocumentReference member, WikiReference wiki, String groupName)
+    {
+        DocumentReference group = new DocumentReference(wiki.getName(), "XWiki", groupName);
+
+        Map<DocumentReference, Collection<DocumentReference>> wikiMemberships = this.memberships.get(wiki.getName());
+        if (wikiMemberships == null) {
+            wikiMemberships = new HashMap<DocumentReference, Collection<DocumentReference>>();
+            this.memberships.put(wiki.getName(), wikiMemberships);
+        }
+        Collection<DocumentReference> groups = wikiMemberships.get(member);
+        if (groups == null) {
+            groups = new ArrayList<DocumentReference>();
+            wikiMemberships.put(member, groups);
+        }
+        groups.add(group);
+
+        return group;
+    }
+
+    @Test
+    public void getAllGroupsForNestedGroups() throws Exception
+    {
+        DocumentReference group1 = addGroup(USER, WIKI, "group1");
+        DocumentReference group2 = addGroup(group1, WIKI, "group2");
+        DocumentReference group3 = addGroup(USER, WIKI, "group3");
+
+        Assert.assertEquals(Arrays.asList(group1, group3, group2),
+            new ArrayList<DocumentReference>(this.index.getAllGroupsFor(USER, WIKI)));
+        Assert.assertEquals(Arrays.asList(group1, group3), this.index.getGroupsFor(USER, WIKI));
+        Assert.assertEquals(4, this.index.size(WIKI));
+
+        // The memberships are retrieved only once
+        Assert.assertEquals(Arrays.asList(USER, group1, group3, group2), this.retrievedMembers);
+        this.index.getAllGroupsFor(USER, WIKI);
+        Assert.assertEquals(4, this.retrievedMembers.size());
+    }
+
+    @Test
+    public void getAllGroupsForCyclicGroups() throws Exception
+    {
+        DocumentReference group1 = addGroup(USER, WIKI, "group1");
+        DocumentReference group2 = addGroup(group1, WIKI, "group2");
+        this.memberships.get(WIKI.getName()).put(group2, Arrays.asList(group1));
+
+        Assert.assertEquals(Arrays.asList(group1, group2),
+            new ArrayList<DocumentReference>(this.index.getAllGroupsFor(USER, WIKI)));
+    }
+
+    @Test
+    public void getAllGroupsForMemberOfAnotherWiki() throws Exception
+    {
+        // A group of the main wiki member of a group of a subwiki
+        DocumentReference globalGroup = addGroup(USER, WIKI, "globalGroup");
+        DocumentReference localGroup = addGroup(globalGroup, SUBWIKI, "localGroup");
+        DocumentReference userLocalGroup = addGroup(USER, SUBWIKI, "userLocalGroup");
+        DocumentReference parentLocalGroup = addGroup(localGroup, SUBWIKI, "parentLocalGroup");
+
+        Assert.assertEquals(Arrays.asList(userLocalGroup, localGroup, parentLocalGroup),
+            new ArrayList<DocumentReference>(this.index.getAllGroupsFor(USER, SUBWIKI)));
+        Assert.assertEquals(Arrays.asList(globalGroup),
+            new ArrayList<DocumentReference>(this.index.getAllGroupsFor(USER, WIKI)));
+    }
+
+    @Test
+    public void indexIsResetWhenFull() throws Exception
+    {
+        for (int i = 0; i < DefaultGroupClosureIndex.MAX_MEMBERS; i++) {
+            this.index.getGroupsFor(new DocumentReference("wiki", "XWiki", "user" + i), WIKI);
+        }
+        Assert.assertEquals(DefaultGroupClosureIndex.MAX_MEMBERS, this.index.size(WIKI));
+
+        this.index.getGroupsFor(USER, WIKI);
+        Assert.assertEquals(1, this.index.size(WIKI));
+
+        // The other wikis are not affected
+        this.index.getGroupsFor(USER, SUBWIKI);
+        Assert.assertEquals(1, this.index.size(SUBWIKI));
+    }
+
+    @Test
+    public void invalidate() throws Exception
+    {
+        DocumentReference group1 = addGroup(USER, WIKI, "group1");
+        this.index.getGroupsFor(USER, WIKI);
+        this.index.getGroupsFor(USER, SUBWIKI);
+
+        DocumentReference group2 = addGroup(USER, WIKI, "group2");
+        this.index.invalidate(WIKI);
+
+        Assert.assertEquals(0, this.index.size(WIKI));
+        Assert.assertEquals(0, this.index.getBuildTime(WIKI));
+        Assert.assertEquals(1, this.index.size(SUBWIKI));
+        Assert.assertEquals(Arrays.asList(group1, group2), this.index.getGroupsFor(USER, WIKI));
+    }
+}
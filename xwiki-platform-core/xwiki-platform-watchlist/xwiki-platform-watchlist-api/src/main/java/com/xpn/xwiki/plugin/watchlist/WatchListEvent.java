@@ -146,6 +146,11 @@ public class WatchListEvent implements Comparable<WatchListEvent>
      */
     private String htmlDiff;
 
+    /**
+     * External URL of the document which has fired the event.
+     */
+    private String url;
+
     /**
      * Constructor.
      * 
@@ -241,12 +246,13 @@ public String getPrefixedFullName()
      */
     public String getUrl() 
     {
-        String url = "";
-        
-        try {
-            url = context.getWiki().getDocument(getPrefixedFullName(), context).getExternalURL("view", context);
-        } catch (Exception e) {
-            // Do nothing, we don't want to throw exceptions in notification emails.
+        if (url == null) {
+            try {
+                url = context.getWiki().getDocument(getPrefixedFullName(), context).getExternalURL("view", context);
+            } catch (Exception e) {
+                // Do nothing, we don't want to throw exceptions in notification emails.
+                url = "";
+            }
         }
         
         return url;
@@ -573,6 +579,22 @@ public String getHTMLDiff()
         return htmlDiff;
     }
 
+    /**
+     * Compute all the lazily computed properties of the event (URL, versions, authors, dates and HTML diff). Once
+     * done, the event doesn't access the store and its XWiki context anymore and can be read by several threads.
+     * 
+     * @since 5.2M1
+     */
+    public void prepare()
+    {
+        getUrl();
+        getDates();
+        getAuthors();
+        getVersions();
+        getPreviousVersion();
+        getHTMLDiff();
+    }
+
     /**
      * Perform a string comparison on the prefixed fullName of the source document.
      * 
@@ -22,20 +22,31 @@
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.ListUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
 
 import com.xpn.xwiki.XWikiContext;
-import com.xpn.xwiki.XWikiException;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityEventType;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStream;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityStreamException;
 import com.xpn.xwiki.plugin.activitystream.api.ActivityEvent;
 import com.xpn.xwiki.plugin.activitystream.plugin.ActivityStreamPlugin;
+import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+import com.xpn.xwiki.web.Utils;
 
 /**
  * Matcher for WatchList events. This class store all the events fired during a given interval. It also allows to 
@@ -96,7 +107,7 @@ public WatchListEventMatcher(Date start, XWikiContext context)
             for (ActivityEvent rawEvent : rawEvents) {
                 WatchListEvent event = new WatchListEvent(rawEvent, context);
                 if (!events.contains(event)) {
-                    events.add(new WatchListEvent(rawEvent, context));
+                    events.add(event);
                 } else {
                     WatchListEvent existingCompositeEvent = events.get(events.indexOf(event));
                     existingCompositeEvent.addEvent(event);
@@ -139,24 +150,137 @@ public List<WatchListEvent> getMatchingEvents(List<String> wikis, List<String> s
             if (wikis.contains(event.getWiki()) || spaces.contains(event.getPrefixedSpace())
                 || documents.contains(event.getPrefixedFullName()) 
                 || ListUtils.intersection(users, event.getAuthors()).size() > 0) {
-                try {
-                    // We exclude watchlist jobs from notifications since they are modified each time they are fired,
-                    // producing useless noise. We also ensure that users have the right to view documents we send
-                    // notifications for.
-                    if (!jobDocumentNames.contains(event.getFullName()) 
-                        && context.getWiki().getRightService().hasAccessLevel("view", userName, 
-                            event.getPrefixedFullName(), context)) {
-                        matchingEvents.add(event);
-                    }
-                } catch (XWikiException e) {
-                    // We're in a job, we don't throw exceptions
-                    e.printStackTrace();
+                // We exclude watchlist jobs from notifications since they are modified each time they are fired,
+                // producing useless noise.
+                if (!jobDocumentNames.contains(event.getFullName())) {
+                    matchingEvents.add(event);
                 }
             }
         }
 
+        // We ensure that users have the right to view documents we send notifications for.
+        matchingEvents = filterViewableEvents(userName, matchingEvents);
+
         Collections.sort(matchingEvents);
 
         return matchingEvents;
     }
+
+    /**
+     * Get the events matching the elements watched by several users at once. Instead of scanning all the events for
+     * each user, an index of the users watching each element is built and the events are dispatched through it, so
+     * that the view right is only checked for the events actually matching a user, in a single call per user.
+     * 
+     * @param watchedElements the elements watched by each notification recipient, by element type
+     * @param context the XWiki context
+     * @return the sorted list of matching events for each notification recipient, recipients without any matching
+     *         event are not included
+     */
+    public Map<String, List<WatchListEvent>> getMatchingEvents(
+        Map<String, Map<ElementType, List<String>>> watchedElements, XWikiContext context)
+    {
+        // Index the users by watched element
+        Map<ElementType, Map<String, List<String>>> watchers =
+            new EnumMap<ElementType, Map<String, List<String>>>(ElementType.class);
+        for (ElementType type : ElementType.values()) {
+            watchers.put(type, new HashMap<String, List<String>>());
+        }
+        for (Map.Entry<String, Map<ElementType, List<String>>> entry : watchedElements.entrySet()) {
+            for (Map.Entry<ElementType, List<String>> elements : entry.getValue().entrySet()) {
+                Map<String, List<String>> elementWatchers = watchers.get(elements.getKey());
+                for (String element : elements.getValue()) {
+                    List<String> users = elementWatchers.get(element);
+                    if (users == null) {
+                        users = new ArrayList<String>();
+                        elementWatchers.put(element, users);
+                    }
+                    users.add(entry.getKey());
+                }
+            }
+        }
+
+        WatchListPlugin plugin = (WatchListPlugin) context.getWiki().getPlugin(WatchListPlugin.ID, context);
+        Set<String> jobDocumentNames = new HashSet<String>(plugin.getStore().getJobDocumentNames());
+
+        Map<String, List<WatchListEvent>> matchingEvents = new HashMap<String, List<WatchListEvent>>();
+        for (WatchListEvent event : events) {
+            // We exclude watchlist jobs from notifications since they are modified each time they are fired,
+            // producing useless noise.
+            if (jobDocumentNames.contains(event.getFullName())) {
+                continue;
+            }
+
+            Set<String> users = new HashSet<String>();
+            addWatchers(users, watchers.get(ElementType.WIKI), event.getWiki());
+            addWatchers(users, watchers.get(ElementType.SPACE), event.getPrefixedSpace());
+            addWatchers(users, watchers.get(ElementType.DOCUMENT), event.getPrefixedFullName());
+            for (String author : event.getAuthors()) {
+                addWatchers(users, watchers.get(ElementType.USER), author);
+            }
+
+            for (String user : users) {
+                List<WatchListEvent> userEvents = matchingEvents.get(user);
+                if (userEvents == null) {
+                    userEvents = new ArrayList<WatchListEvent>();
+                    matchingEvents.put(user, userEvents);
+                }
+                userEvents.add(event);
+            }
+        }
+
+        Iterator<Map.Entry<String, List<WatchListEvent>>> it = matchingEvents.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, List<WatchListEvent>> entry = it.next();
+            // We ensure that users have the right to view documents we send notifications for.
+            List<WatchListEvent> userEvents = filterViewableEvents(entry.getKey(), entry.getValue());
+            if (userEvents.isEmpty()) {
+                it.remove();
+            } else {
+                Collections.sort(userEvents);
+                entry.setValue(userEvents);
+            }
+        }
+
+        return matchingEvents;
+    }
+
+    /**
+     * @param userName the user
+     * @param userEvents the events to filter
+     * @return the events of documents the given user is allowed to view, in the same order
+     */
+    private List<WatchListEvent> filterViewableEvents(String userName, List<WatchListEvent> userEvents)
+    {
+        DocumentReferenceResolver<String> resolver = Utils.getComponent(DocumentReferenceResolver.TYPE_STRING);
+        AuthorizationManager authorizationManager = Utils.getComponent(AuthorizationManager.class);
+
+        List<DocumentReference> documents = new ArrayList<DocumentReference>(userEvents.size());
+        for (WatchListEvent event : userEvents) {
+            documents.add(resolver.resolve(event.getPrefixedFullName()));
+        }
+        Set<DocumentReference> viewableDocuments = new HashSet<DocumentReference>(
+            authorizationManager.filterAccessible(Right.VIEW, resolver.resolve(userName), documents));
+
+        List<WatchListEvent> viewableEvents = new ArrayList<WatchListEvent>(userEvents.size());
+        for (int i = 0; i < userEvents.size(); i++) {
+            if (viewableDocuments.contains(documents.get(i))) {
+                viewableEvents.add(userEvents.get(i));
+            }
+        }
+
+        return viewableEvents;
+    }
+
+    /**
+     * @param users the set to add the watchers to
+     * @param watchers the users watching each element of a given type
+     * @param element the element
+     */
+    private void addWatchers(Set<String> users, Map<String, List<String>> watchers, String element)
+    {
+        List<String> elementWatchers = watchers.get(element);
+        if (elementWatchers != null) {
+            users.addAll(elementWatchers);
+        }
+    }
 }
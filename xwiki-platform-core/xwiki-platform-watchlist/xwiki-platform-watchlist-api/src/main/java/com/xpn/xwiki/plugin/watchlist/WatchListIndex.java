@@ -0,0 +1,195 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.watchlist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+
+/**
+ * In-memory index of the elements watched by each user and of the users watching each element. Element names are
+ * shared between all the users watching them and each user only holds arrays of references, so that the index stays
+ * small even when many users watch the same spaces or wikis.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+class WatchListIndex
+{
+    /**
+     * Watched elements, by user and element type. The arrays are never modified once indexed.
+     */
+    private final Map<String, Map<ElementType, String[]>> elementsByUser =
+        new ConcurrentHashMap<String, Map<ElementType, String[]>>();
+
+    /**
+     * Watchers, by element type and element name.
+     */
+    private final Map<ElementType, Map<String, Watchers>> watchersByElement =
+        new EnumMap<ElementType, Map<String, Watchers>>(ElementType.class);
+
+    /**
+     * The users watching an element, along with the canonical instance of the element name.
+     */
+    private static final class Watchers
+    {
+        /**
+         * The element name, shared by all the users watching the element.
+         */
+        private final String element;
+
+        /**
+         * The users watching the element.
+         */
+        private final Set<String> users = new HashSet<String>();
+
+        /**
+         * @param element the element name
+         */
+        Watchers(String element)
+        {
+            this.element = element;
+        }
+    }
+
+    /**
+     * Default constructor.
+     */
+    WatchListIndex()
+    {
+        for (ElementType type : ElementType.values()) {
+            this.watchersByElement.put(type, new HashMap<String, Watchers>());
+        }
+    }
+
+    /**
+     * @param user the prefixed name of the user, e.g. {@code xwiki:XWiki.Admin}
+     * @param type the type of the elements to return
+     * @return a modifiable copy of the elements of the given type watched by the user, or null if the user is not
+     *         indexed
+     */
+    List<String> getWatchedElements(String user, ElementType type)
+    {
+        Map<ElementType, String[]> elements = this.elementsByUser.get(user);
+        if (elements == null) {
+            return null;
+        }
+
+        List<String> result = new ArrayList<String>();
+        Collections.addAll(result, elements.get(type));
+
+        return result;
+    }
+
+    /**
+     * @param element the watched element
+     * @param type the type of the element
+     * @return the prefixed names of the indexed users watching the element
+     */
+    synchronized List<String> getWatchers(String element, ElementType type)
+    {
+        Watchers watchers = this.watchersByElement.get(type).get(element);
+        if (watchers == null) {
+            return new ArrayList<String>();
+        }
+
+        return new ArrayList<String>(watchers.users);
+    }
+
+    /**
+     * Index (or re-index) the elements watched by a user.
+     * 
+     * @param user the prefixed name of the user, e.g. {@code xwiki:XWiki.Admin}
+     * @param elements the elements watched by the user, by type
+     */
+    synchronized void put(String user, Map<ElementType, List<String>> elements)
+    {
+        remove(user);
+
+        Map<ElementType, String[]> userElements = new EnumMap<ElementType, String[]>(ElementType.class);
+        for (ElementType type : ElementType.values()) {
+            List<String> typeElements = elements.get(type);
+            if (typeElements == null) {
+                typeElements = Collections.emptyList();
+            }
+
+            Map<String, Watchers> typeWatchers = this.watchersByElement.get(type);
+            Set<String> canonicalElements = new LinkedHashSet<String>();
+            for (String element : typeElements) {
+                Watchers watchers = typeWatchers.get(element);
+                if (watchers == null) {
+                    watchers = new Watchers(element);
+                    typeWatchers.put(element, watchers);
+                }
+                watchers.users.add(user);
+                canonicalElements.add(watchers.element);
+            }
+            userElements.put(type, canonicalElements.toArray(new String[canonicalElements.size()]));
+        }
+
+        this.elementsByUser.put(user, userElements);
+    }
+
+    /**
+     * Remove a user from the index.
+     * 
+     * @param user the prefixed name of the user, e.g. {@code xwiki:XWiki.Admin}
+     */
+    synchronized void remove(String user)
+    {
+        Map<ElementType, String[]> userElements = this.elementsByUser.remove(user);
+        if (userElements == null) {
+            return;
+        }
+
+        for (Map.Entry<ElementType, String[]> entry : userElements.entrySet()) {
+            Map<String, Watchers> typeWatchers = this.watchersByElement.get(entry.getKey());
+            for (String element : entry.getValue()) {
+                Watchers watchers = typeWatchers.get(element);
+                if (watchers != null) {
+                    watchers.users.remove(user);
+                    if (watchers.users.isEmpty()) {
+                        typeWatchers.remove(element);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Empty the index.
+     */
+    synchronized void clear()
+    {
+        this.elementsByUser.clear();
+        for (Map<String, Watchers> typeWatchers : this.watchersByElement.values()) {
+            typeWatchers.clear();
+        }
+    }
+}
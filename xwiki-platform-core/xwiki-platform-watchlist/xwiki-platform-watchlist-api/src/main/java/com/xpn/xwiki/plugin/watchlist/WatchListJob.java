@@ -19,10 +19,20 @@
  */
 package com.xpn.xwiki.plugin.watchlist;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 import org.quartz.Job;
 import org.quartz.JobDataMap;
 import org.quartz.JobExecutionContext;
@@ -39,6 +49,7 @@
 import com.xpn.xwiki.objects.BaseObject;
 import com.xpn.xwiki.plugin.scheduler.AbstractJob;
 import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+import com.xpn.xwiki.util.AbstractXWikiRunnable;
 import com.xpn.xwiki.web.Utils;
 
 /**
@@ -212,6 +223,60 @@ private boolean hasSubscribers()
         return true;
     }
 
+    /**
+     * Render and send the notification emails concurrently, each thread working with its own copy of the XWiki
+     * context. The events are shared by the notification threads, so everything they need from the store is computed
+     * beforehand, in the job thread.
+     * 
+     * @param matchingEvents the events to notify to each subscriber
+     * @param previousFireTime the previous job fire time
+     * @throws InterruptedException if the job thread is interrupted while waiting for the emails to be sent
+     */
+    private void sendNotifications(Map<String, List<WatchListEvent>> matchingEvents, Date previousFireTime)
+        throws InterruptedException
+    {
+        if (matchingEvents.isEmpty()) {
+            return;
+        }
+
+        Set<WatchListEvent> events = Collections.newSetFromMap(new IdentityHashMap<WatchListEvent, Boolean>());
+        for (List<WatchListEvent> subscriberEvents : matchingEvents.values()) {
+            events.addAll(subscriberEvents);
+        }
+        for (WatchListEvent event : events) {
+            event.prepare();
+        }
+
+        int threads =
+            (int) Math.max(1, Math.min(matchingEvents.size(),
+                this.context.getWiki().ParamAsLong("xwiki.plugin.watchlist.notificationThreads", 2)));
+        BasicThreadFactory factory =
+            new BasicThreadFactory.Builder().namingPattern("XWiki watchlist notification thread %d").daemon(true)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, factory);
+
+        Map<String, String> emailTemplates = new HashMap<String, String>();
+        try {
+            for (Map.Entry<String, List<WatchListEvent>> entry : matchingEvents.entrySet()) {
+                String subscriber = entry.getKey();
+                String userWiki = StringUtils.substringBefore(subscriber, WatchListStore.WIKI_SPACE_SEP);
+                String emailTemplate = emailTemplates.get(userWiki);
+                if (emailTemplate == null) {
+                    emailTemplate = getEmailTemplate(userWiki);
+                    emailTemplates.put(userWiki, emailTemplate);
+                }
+
+                executor.execute(new NotificationRunnable(subscriber, entry.getValue(), emailTemplate,
+                    previousFireTime, this.context));
+            }
+        } finally {
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.debug("Waiting for the watchlist notifications to be sent");
+            }
+        }
+    }
+
     /**
      * Method called from the scheduler.
      * 
@@ -241,29 +306,25 @@ public void executeJob(JobExecutionContext jobContext) throws JobExecutionExcept
                 return;
             }
 
+            // Load the elements watched by each subscriber once and dispatch the events to the subscribers through
+            // an index of the watched elements, instead of matching all the events against each subscriber.
+            Map<String, Map<ElementType, List<String>>> watchedElements =
+                new HashMap<String, Map<ElementType, List<String>>>();
             for (String subscriber : subscribers) {
                 try {
-                    List<String> wikis =
-                        this.plugin.getStore().getWatchedElements(subscriber, ElementType.WIKI, this.context);
-                    List<String> spaces =
-                        this.plugin.getStore().getWatchedElements(subscriber, ElementType.SPACE, this.context);
-                    List<String> documents =
-                        this.plugin.getStore().getWatchedElements(subscriber, ElementType.DOCUMENT, this.context);
-                    List<String> users =
-                        this.plugin.getStore().getWatchedElements(subscriber, ElementType.USER, this.context);
-                    List<WatchListEvent> matchingEvents =
-                        eventMatcher.getMatchingEvents(wikis, spaces, documents, users, subscriber, this.context);
-                    String userWiki = StringUtils.substringBefore(subscriber, WatchListStore.WIKI_SPACE_SEP);
-
-                    // If events have occurred on at least one element watched by the user, send the email
-                    if (matchingEvents.size() > 0) {
-                        this.plugin.getNotifier().sendEmailNotification(subscriber, matchingEvents,
-                            getEmailTemplate(userWiki), previousFireTime, this.context);
+                    Map<ElementType, List<String>> elements =
+                        new EnumMap<ElementType, List<String>>(ElementType.class);
+                    for (ElementType type : ElementType.values()) {
+                        elements.put(type, this.plugin.getStore().getWatchedElements(subscriber, type, this.context));
                     }
+                    watchedElements.put(subscriber, elements);
                 } catch (Exception e) {
-                    LOGGER.error("Failed to send watchlist notification to user [{}]", subscriber, e);
+                    LOGGER.error("Failed to get the elements watched by user [{}]", subscriber, e);
                 }
             }
+
+            // If events have occurred on at least one element watched by a user, send the email
+            sendNotifications(eventMatcher.getMatchingEvents(watchedElements, this.context), previousFireTime);
         } catch (Exception e) {
             // We're in a job, we don't throw exceptions
             LOGGER.error("Exception while running job", e);
@@ -272,4 +333,61 @@ public void executeJob(JobExecutionContext jobContext) throws JobExecutionExcept
             cleanupComponents();
         }
     }
+
+    /**
+     * Renders and sends the notification email of a subscriber.
+     */
+    private class NotificationRunnable extends AbstractXWikiRunnable
+    {
+        /** The user to notify. */
+        private final String subscriber;
+
+        /** The events to notify. */
+        private final List<WatchListEvent> events;
+
+        /** The email template to use. */
+        private final String emailTemplate;
+
+        /** The previous job fire time. */
+        private final Date previousFireTime;
+
+        /** The XWiki context used by the notification thread. */
+        private final XWikiContext xcontext;
+
+        /**
+         * @param subscriber the user to notify
+         * @param events the events to notify
+         * @param emailTemplate the email template to use
+         * @param previousFireTime the previous job fire time
+         * @param context the job XWiki context, cloned for the notification thread
+         */
+        NotificationRunnable(String subscriber, List<WatchListEvent> events, String emailTemplate,
+            Date previousFireTime, XWikiContext context)
+        {
+            this.subscriber = subscriber;
+            this.events = events;
+            this.emailTemplate = emailTemplate;
+            this.previousFireTime = previousFireTime;
+            this.xcontext = context.clone();
+        }
+
+        @Override
+        protected void declareProperties(ExecutionContext executionContext)
+        {
+            this.xcontext.declareInExecutionContext(executionContext);
+        }
+
+        @Override
+        protected void runInternal()
+        {
+            try {
+                plugin.getNotifier().sendEmailNotification(this.subscriber, this.events, this.emailTemplate,
+                    this.previousFireTime, this.xcontext);
+            } catch (Exception e) {
+                LOGGER.error("Failed to send watchlist notification to user [{}]", this.subscriber, e);
+            } finally {
+                this.xcontext.getWiki().getStore().cleanUp(this.xcontext);
+            }
+        }
+    }
 }
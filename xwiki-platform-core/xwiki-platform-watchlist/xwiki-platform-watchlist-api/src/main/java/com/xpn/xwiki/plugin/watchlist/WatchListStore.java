@@ -22,6 +22,7 @@
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -175,6 +176,11 @@ public class WatchListStore implements EventListener
      */
     private Map<String, List<String>> subscribers = new HashMap<String, List<String>>();
 
+    /**
+     * Elements watched by the users of the wiki farm, kept up to date by the document events.
+     */
+    private final WatchListIndex index = new WatchListIndex();
+
     /**
      * Create or update the watchlist class properties.
      * 
@@ -338,6 +344,105 @@ public void init(XWikiContext context) throws XWikiException
         for (String jobDocumentName : jobDocumentNames) {
             initSubscribersCache(jobDocumentName, context);
         }
+
+        initIndex(context);
+    }
+
+    /**
+     * Index the elements watched by all the users of the wiki farm, reading the watchlist properties with one query
+     * per wiki instead of loading each user profile.
+     * 
+     * @param context the XWiki context
+     */
+    private void initIndex(XWikiContext context)
+    {
+        List<String> wikis;
+        try {
+            wikis = context.getWiki().getVirtualWikisDatabaseNames(context);
+        } catch (Exception e) {
+            LOGGER.error("Failed to get the list of wikis, the watchlist index will be built lazily", e);
+            return;
+        }
+
+        Map<String, ElementType> types = new HashMap<String, ElementType>();
+        for (ElementType type : ElementType.values()) {
+            types.put(getWatchListClassPropertyForType(type), type);
+        }
+
+        this.index.clear();
+        for (String wiki : wikis) {
+            Map<String, Map<ElementType, List<String>>> wikiElements =
+                new HashMap<String, Map<ElementType, List<String>>>();
+            try {
+                Query query = context.getWiki().getStore().getQueryManager().createQuery(
+                    "select doc.fullName, prop.id.name, prop.value from XWikiDocument as doc, BaseObject as obj,"
+                        + " LargeStringProperty as prop, BaseObject as userobj where doc.fullName=obj.name"
+                        + " and obj.className=:watchListClass and obj.id=prop.id.id"
+                        + " and doc.fullName=userobj.name and userobj.className=:usersClass", Query.HQL);
+                query.setWiki(wiki);
+                query.bindValue("watchListClass", WATCHLIST_CLASS);
+                query.bindValue("usersClass", USERS_CLASS);
+
+                for (Object[] row : query.<Object[]>execute()) {
+                    String user = wiki + WIKI_SPACE_SEP + row[0];
+                    Map<ElementType, List<String>> elements = wikiElements.get(user);
+                    if (elements == null) {
+                        elements = new EnumMap<ElementType, List<String>>(ElementType.class);
+                        wikiElements.put(user, elements);
+                    }
+                    ElementType type = types.get(row[1]);
+                    if (type != null) {
+                        elements.put(type, splitWatchedElements((String) row[2]));
+                    }
+                }
+            } catch (QueryException e) {
+                LOGGER.error("Failed to index the watched elements of the wiki [{}]", wiki, e);
+                continue;
+            }
+
+            for (Map.Entry<String, Map<ElementType, List<String>>> entry : wikiElements.entrySet()) {
+                this.index.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @param user a user, optionally prefixed with its wiki
+     * @param context the XWiki context
+     * @return the name of the user prefixed with its wiki, as used in the index
+     */
+    private String getIndexKey(String user, XWikiContext context)
+    {
+        return user.contains(WIKI_SPACE_SEP) ? user : context.getDatabase() + WIKI_SPACE_SEP + user;
+    }
+
+    /**
+     * @param watchedItems the value of a watchlist property
+     * @return the elements stored in the property
+     */
+    private List<String> splitWatchedElements(String watchedItems)
+    {
+        List<String> elements = new ArrayList<String>();
+        if (!StringUtils.isBlank(watchedItems)) {
+            elements.addAll(Arrays.asList(StringUtils.split(watchedItems.trim(), WATCHLIST_ELEMENT_SEP)));
+        }
+
+        return elements;
+    }
+
+    /**
+     * @param watchListObject a watchlist object
+     * @return the elements stored in the object, by type
+     */
+    private Map<ElementType, List<String>> getWatchedElements(BaseObject watchListObject)
+    {
+        Map<ElementType, List<String>> elements = new EnumMap<ElementType, List<String>>(ElementType.class);
+        for (ElementType type : ElementType.values()) {
+            elements.put(type,
+                splitWatchedElements(watchListObject.getLargeStringValue(getWatchListClassPropertyForType(type))));
+        }
+
+        return elements;
     }
 
     /**
@@ -416,16 +521,31 @@ public List<String> getJobDocumentNames()
      */
     public List<String> getWatchedElements(String user, ElementType type, XWikiContext context) throws XWikiException
     {
-        BaseObject watchListObject = getWatchListObject(user, context);
-        String watchedItems = watchListObject.getLargeStringValue(getWatchListClassPropertyForType(type)).trim();
-        List<String> elements = new ArrayList<String>();
-        if (StringUtils.isBlank(watchedItems)) {
-            return elements;
+        String indexKey = getIndexKey(user, context);
+        List<String> elements = this.index.getWatchedElements(indexKey, type);
+        if (elements == null) {
+            Map<ElementType, List<String>> allElements = getWatchedElements(getWatchListObject(user, context));
+            this.index.put(indexKey, allElements);
+            elements = allElements.get(type);
         }
-        elements.addAll(Arrays.asList(StringUtils.split(watchedItems, WATCHLIST_ELEMENT_SEP)));
+
         return elements;
     }
 
+    /**
+     * Get the users watching the given element. Only the explicit subscriptions are returned: a user watching a space
+     * is not returned as a watcher of the documents of that space.
+     * 
+     * @param element the watched element, prefixed with its wiki unless it's a wiki
+     * @param type type of the element
+     * @return the users watching the element, prefixed with their wiki
+     * @since 5.2M1
+     */
+    public List<String> getWatchers(String element, ElementType type)
+    {
+        return this.index.getWatchers(element, type);
+    }
+
     /**
      * Is the element watched by the given user.
      * 
@@ -716,6 +836,26 @@ private void watchListObjectsEventHandler(XWikiDocument originalDoc, XWikiDocume
         }
     }
 
+    /**
+     * Keep the watched elements index in sync with the watchlist objects.
+     * 
+     * @param originalDoc document version before the event occurred
+     * @param currentDoc document version after event occurred
+     * @param context the XWiki context
+     */
+    private void watchListIndexEventHandler(XWikiDocument originalDoc, XWikiDocument currentDoc,
+        XWikiContext context)
+    {
+        String user = context.getDatabase() + WIKI_SPACE_SEP + currentDoc.getFullName();
+        BaseObject currentWatchListObj = currentDoc.getObject(WATCHLIST_CLASS);
+
+        if (currentWatchListObj != null && currentDoc.getObject(USERS_CLASS) != null) {
+            this.index.put(user, getWatchedElements(currentWatchListObj));
+        } else if (originalDoc.getObject(WATCHLIST_CLASS) != null) {
+            this.index.remove(user);
+        }
+    }
+
     /**
      * Get automatic document edition watching mode based on user profile and xwiki.cfg.
      * 
@@ -763,6 +903,7 @@ public void onEvent(Event event, Object source, Object data)
 
         watchListJobObjectsEventHandler(originalDoc, currentDoc, context);
         watchListObjectsEventHandler(originalDoc, currentDoc, context);
+        watchListIndexEventHandler(originalDoc, currentDoc, context);
     }
 
     @Override
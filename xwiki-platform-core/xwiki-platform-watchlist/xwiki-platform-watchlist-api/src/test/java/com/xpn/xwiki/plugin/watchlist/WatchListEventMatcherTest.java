@@ -0,0 +1,277 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.watchlist;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEvent;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEventType;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityStream;
+import com.xpn.xwiki.plugin.activitystream.plugin.ActivityStreamPlugin;
+import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+import com.xpn.xwiki.web.Utils;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link WatchListEventMatcher}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class WatchListEventMatcherTest
+{
+    private static final String ALICE = "xwiki:XWiki.Alice";
+
+    private static final String BOB = "xwiki:XWiki.Bob";
+
+    private static final String JOB_DOCUMENT = "Scheduler.WatchListHourlyNotifier";
+
+    private XWikiContext xcontext;
+
+    private AuthorizationManager authorizationManager;
+
+    /**
+     * The documents each user is not allowed to view.
+     */
+    private Map<DocumentReference, Collection<DocumentReference>> deniedDocuments =
+        new HashMap<DocumentReference, Collection<DocumentReference>>();
+
+    /**
+     * The users for which the view right has been checked, one entry per check.
+     */
+    private List<DocumentReference> checkedUsers = new ArrayList<DocumentReference>();
+
+    private List<ActivityEvent> activityEvents = new ArrayList<ActivityEvent>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.xcontext = mock(XWikiContext.class);
+        XWiki xwiki = mock(XWiki.class);
+        when(this.xcontext.getWiki()).thenReturn(xwiki);
+
+        ActivityStreamPlugin activityStreamPlugin = mock(ActivityStreamPlugin.class);
+        when(xwiki.getPlugin(ActivityStreamPlugin.PLUGIN_NAME, this.xcontext)).thenReturn(activityStreamPlugin);
+        ActivityStream activityStream = mock(ActivityStream.class);
+        when(activityStreamPlugin.getActivityStream()).thenReturn(activityStream);
+        when(activityStream.searchEvents(anyString(), eq(false), eq(true), eq(0), eq(0), anyListOf(Object.class),
+            same(this.xcontext))).thenReturn(this.activityEvents);
+
+        WatchListPlugin watchListPlugin = mock(WatchListPlugin.class);
+        when(xwiki.getPlugin(WatchListPlugin.ID, this.xcontext)).thenReturn(watchListPlugin);
+        WatchListStore store = mock(WatchListStore.class);
+        when(watchListPlugin.getStore()).thenReturn(store);
+        when(store.getJobDocumentNames()).thenReturn(Arrays.asList(JOB_DOCUMENT));
+
+        ComponentManager componentManager = mock(ComponentManager.class);
+        Utils.setComponentManager(componentManager);
+        DocumentReferenceResolver<String> resolver = mock(DocumentReferenceResolver.class);
+        when(componentManager.getInstance(DocumentReferenceResolver.TYPE_STRING, "default")).thenReturn(resolver);
+        when(resolver.resolve(anyString())).thenAnswer(new Answer<DocumentReference>()
+        {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation)
+            {
+                String reference = (String) invocation.getArguments()[0];
+                String wiki = StringUtils.substringBefore(reference, ":");
+                String fullName = StringUtils.substringAfter(reference, ":");
+                return new DocumentReference(wiki, StringUtils.substringBefore(fullName, "."),
+                    StringUtils.substringAfter(fullName, "."));
+            }
+        });
+
+        this.authorizationManager = mock(AuthorizationManager.class);
+        when(componentManager.getInstance((Type) AuthorizationManager.class, "default")).thenReturn(
+            this.authorizationManager);
+        when(this.authorizationManager.filterAccessible(eq(Right.VIEW), any(DocumentReference.class),
+            anyCollectionOf(DocumentReference.class))).thenAnswer(new Answer<List<DocumentReference>>()
+        {
+            @Override
+            public List<DocumentReference> answer(InvocationOnMock invocation)
+            {
+                DocumentReference user = (DocumentReference) invocation.getArguments()[1];
+                checkedUsers.add(user);
+                List<DocumentReference> accessible =
+                    new ArrayList<DocumentReference>((Collection<DocumentReference>) invocation.getArguments()[2]);
+                Collection<DocumentReference> denied = deniedDocuments.get(user);
+                if (denied != null) {
+                    accessible.removeAll(denied);
+                }
+                return accessible;
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    private void addEvent(String type, String space, String page, String user)
+    {
+        ActivityEvent event = mock(ActivityEvent.class, space + '.' + page + ' ' + type);
+        when(event.getType()).thenReturn(type);
+        when(event.getWiki()).thenReturn("xwiki");
+        when(event.getSpace()).thenReturn(space);
+        when(event.getPage()).thenReturn(space + '.' + page);
+        when(event.getUser()).thenReturn(user);
+        when(event.getDate()).thenReturn(new Date());
+        this.activityEvents.add(event);
+    }
+
+    private void deny(String user, String document)
+    {
+        DocumentReference userReference = new DocumentReference("xwiki", "XWiki", user);
+        Collection<DocumentReference> denied = this.deniedDocuments.get(userReference);
+        if (denied == null) {
+            denied = new ArrayList<DocumentReference>();
+            this.deniedDocuments.put(userReference, denied);
+        }
+        denied.add(new DocumentReference("xwiki", StringUtils.substringBefore(document, "."),
+            StringUtils.substringAfter(document, ".")));
+    }
+
+    private Map<ElementType, List<String>> watch(ElementType type, String... elements)
+    {
+        Map<ElementType, List<String>> watchedElements = new EnumMap<ElementType, List<String>>(ElementType.class);
+        for (ElementType elementType : ElementType.values()) {
+            watchedElements.put(elementType, Collections.<String>emptyList());
+        }
+        watchedElements.put(type, Arrays.asList(elements));
+        return watchedElements;
+    }
+
+    private List<String> getDocuments(List<WatchListEvent> events)
+    {
+        List<String> documents = new ArrayList<String>();
+        for (WatchListEvent event : events) {
+            documents.add(event.getPrefixedFullName());
+        }
+        return documents;
+    }
+
+    @Test
+    public void getMatchingEventsPerUser()
+    {
+        addEvent(ActivityEventType.UPDATE, "Sandbox", "WebHome", "XWiki.Carol");
+        addEvent(ActivityEventType.CREATE, "Main", "Other", "XWiki.Carol");
+        addEvent(ActivityEventType.UPDATE, "Main", "WebHome", "XWiki.Dave");
+        addEvent(ActivityEventType.UPDATE, "Blog", "Post", "XWiki.Eve");
+        // The job documents are excluded
+        addEvent(ActivityEventType.UPDATE, "Scheduler", "WatchListHourlyNotifier", "XWiki.Carol");
+
+        WatchListEventMatcher matcher = new WatchListEventMatcher(new Date(0), this.xcontext);
+        Assert.assertEquals(5, matcher.getEventNumber());
+
+        Map<String, Map<ElementType, List<String>>> watchedElements =
+            new HashMap<String, Map<ElementType, List<String>>>();
+        watchedElements.put(ALICE, watch(ElementType.SPACE, "xwiki:Main", "xwiki:Scheduler"));
+        watchedElements.put(BOB, watch(ElementType.DOCUMENT, "xwiki:Sandbox.WebHome", "xwiki:Main.WebHome"));
+        watchedElements.put("xwiki:XWiki.Carol", watch(ElementType.USER, "XWiki.Dave"));
+        watchedElements.put("xwiki:XWiki.Dave", watch(ElementType.WIKI, "otherwiki"));
+
+        Map<String, List<WatchListEvent>> matchingEvents = matcher.getMatchingEvents(watchedElements, this.xcontext);
+
+        Assert.assertEquals(3, matchingEvents.size());
+        Assert.assertEquals(Arrays.asList("xwiki:Main.Other", "xwiki:Main.WebHome"),
+            getDocuments(matchingEvents.get(ALICE)));
+        Assert.assertEquals(Arrays.asList("xwiki:Main.WebHome", "xwiki:Sandbox.WebHome"),
+            getDocuments(matchingEvents.get(BOB)));
+        Assert.assertEquals(Arrays.asList("xwiki:Main.WebHome"),
+            getDocuments(matchingEvents.get("xwiki:XWiki.Carol")));
+        // Users without matching events are not included
+        Assert.assertFalse(matchingEvents.containsKey("xwiki:XWiki.Dave"));
+
+        // The rights are checked once per user having matching events
+        Assert.assertEquals(3, this.checkedUsers.size());
+    }
+
+    @Test
+    public void getMatchingEventsFiltersDocumentsNotViewable()
+    {
+        addEvent(ActivityEventType.UPDATE, "Main", "WebHome", "XWiki.Carol");
+        addEvent(ActivityEventType.UPDATE, "Main", "Secret", "XWiki.Carol");
+        addEvent(ActivityEventType.UPDATE, "Sandbox", "Secret", "XWiki.Carol");
+        deny("Alice", "Main.Secret");
+        deny("Bob", "Main.Secret");
+        deny("Bob", "Main.WebHome");
+
+        WatchListEventMatcher matcher = new WatchListEventMatcher(new Date(0), this.xcontext);
+
+        Map<String, Map<ElementType, List<String>>> watchedElements =
+            new HashMap<String, Map<ElementType, List<String>>>();
+        watchedElements.put(ALICE, watch(ElementType.WIKI, "xwiki"));
+        watchedElements.put(BOB, watch(ElementType.SPACE, "xwiki:Main"));
+
+        Map<String, List<WatchListEvent>> matchingEvents = matcher.getMatchingEvents(watchedElements, this.xcontext);
+
+        Assert.assertEquals(Arrays.asList("xwiki:Main.WebHome", "xwiki:Sandbox.Secret"),
+            getDocuments(matchingEvents.get(ALICE)));
+        // Bob can't view any of the matching documents
+        Assert.assertFalse(matchingEvents.containsKey(BOB));
+        verify(this.authorizationManager).filterAccessible(Right.VIEW, new DocumentReference("xwiki", "XWiki", "Bob"),
+            Arrays.asList(new DocumentReference("xwiki", "Main", "WebHome"),
+                new DocumentReference("xwiki", "Main", "Secret")));
+    }
+
+    @Test
+    public void getMatchingEventsOfSingleUser()
+    {
+        addEvent(ActivityEventType.UPDATE, "Main", "WebHome", "XWiki.Carol");
+        addEvent(ActivityEventType.UPDATE, "Main", "Secret", "XWiki.Carol");
+        addEvent(ActivityEventType.UPDATE, "Sandbox", "WebHome", "XWiki.Dave");
+        addEvent(ActivityEventType.UPDATE, "Scheduler", "WatchListHourlyNotifier", "XWiki.Carol");
+        deny("Alice", "Main.Secret");
+
+        WatchListEventMatcher matcher = new WatchListEventMatcher(new Date(0), this.xcontext);
+
+        List<String> none = Collections.emptyList();
+        List<WatchListEvent> events = matcher.getMatchingEvents(none, Arrays.asList("xwiki:Main", "xwiki:Scheduler"),
+            none, Arrays.asList("XWiki.Dave"), ALICE, this.xcontext);
+
+        Assert.assertEquals(Arrays.asList("xwiki:Main.WebHome", "xwiki:Sandbox.WebHome"), getDocuments(events));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.watchlist;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+
+/**
+ * Unit tests for {@link WatchListIndex}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class WatchListIndexTest
+{
+    private WatchListIndex index = new WatchListIndex();
+
+    private Map<ElementType, List<String>> elements(ElementType type, String... names)
+    {
+        Map<ElementType, List<String>> elements = new EnumMap<ElementType, List<String>>(ElementType.class);
+        elements.put(type, Arrays.asList(names));
+        return elements;
+    }
+
+    @Test
+    public void getWatchedElementsOfUnknownUser()
+    {
+        Assert.assertNull(this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.SPACE));
+    }
+
+    @Test
+    public void putAndGet()
+    {
+        this.index.put("xwiki:XWiki.Alice", elements(ElementType.SPACE, "xwiki:Main", "xwiki:Sandbox"));
+        this.index.put("xwiki:XWiki.Bob", elements(ElementType.SPACE, "xwiki:Main"));
+
+        Assert.assertEquals(Arrays.asList("xwiki:Main", "xwiki:Sandbox"),
+            this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.SPACE));
+        Assert.assertEquals(Collections.emptyList(),
+            this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.DOCUMENT));
+
+        List<String> watchers = this.index.getWatchers("xwiki:Main", ElementType.SPACE);
+        Collections.sort(watchers);
+        Assert.assertEquals(Arrays.asList("xwiki:XWiki.Alice", "xwiki:XWiki.Bob"), watchers);
+        Assert.assertEquals(Arrays.asList("xwiki:XWiki.Alice"),
+            this.index.getWatchers("xwiki:Sandbox", ElementType.SPACE));
+        Assert.assertTrue(this.index.getWatchers("xwiki:Main", ElementType.WIKI).isEmpty());
+    }
+
+    @Test
+    public void reindexAndRemove()
+    {
+        this.index.put("xwiki:XWiki.Alice", elements(ElementType.DOCUMENT, "xwiki:Main.WebHome"));
+        this.index.put("xwiki:XWiki.Alice", elements(ElementType.DOCUMENT, "xwiki:Main.Other"));
+
+        Assert.assertTrue(this.index.getWatchers("xwiki:Main.WebHome", ElementType.DOCUMENT).isEmpty());
+        Assert.assertEquals(Arrays.asList("xwiki:XWiki.Alice"),
+            this.index.getWatchers("xwiki:Main.Other", ElementType.DOCUMENT));
+
+        this.index.remove("xwiki:XWiki.Alice");
+
+        Assert.assertNull(this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.DOCUMENT));
+        Assert.assertTrue(this.index.getWatchers("xwiki:Main.Other", ElementType.DOCUMENT).isEmpty());
+    }
+
+    @Test
+    public void returnedListsAreCopies()
+    {
+        this.index.put("xwiki:XWiki.Alice", elements(ElementType.WIKI, "xwiki"));
+
+        this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.WIKI).add("other");
+
+        Assert.assertEquals(Arrays.asList("xwiki"),
+            this.index.getWatchedElements("xwiki:XWiki.Alice", ElementType.WIKI));
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package com.xpn.xwiki.plugin.watchlist;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.security.authorization.AuthorizationManager;
+import org.xwiki.security.authorization.Right;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEvent;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityEventType;
+import com.xpn.xwiki.plugin.activitystream.api.ActivityStream;
+import com.xpn.xwiki.plugin.activitystream.plugin.ActivityStreamPlugin;
+import com.xpn.xwiki.plugin.watchlist.WatchListStore.ElementType;
+import com.xpn.xwiki.store.XWikiStoreInterface;
+import com.xpn.xwiki.web.Utils;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link WatchListJob}.
+ * 
+ * @version $Id$
+ * @since 5.2M1
+ */
+public class WatchListJobTest
+{
+    private static final String ALICE = "xwiki:XWiki.Alice";
+
+    private static final String BOB = "xwiki:XWiki.Bob";
+
+    private static final String JOB_DOCUMENT = "Scheduler.WatchListHourlyNotifier";
+
+    private XWikiContext xcontext;
+
+    private XWiki xwiki;
+
+    private WatchListStore store;
+
+    private ExecutionContextManager executionContextManager;
+
+    private JobExecutionContext jobContext;
+
+    private Date previousFireTime = new Date(0);
+
+    private List<ActivityEvent> activityEvents = new ArrayList<ActivityEvent>();
+
+    /**
+     * The documents notified to each subscriber.
+     */
+    private Map<String, List<String>> notifications = Collections.synchronizedMap(new HashMap<String, List<String>>());
+
+    /**
+     * The threads in which the notifications have been sent.
+     */
+    private Collection<String> notificationThreads = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.xcontext = mock(XWikiContext.class);
+        when(this.xcontext.clone()).thenReturn(this.xcontext);
+        this.xwiki = mock(XWiki.class);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+        when(this.xwiki.getStore()).thenReturn(mock(XWikiStoreInterface.class));
+        when(this.xwiki.ParamAsLong("xwiki.plugin.watchlist.notificationThreads", 2)).thenReturn(2L);
+
+        // The documents of the events, used to prepare them
+        XWikiDocument document = mock(XWikiDocument.class);
+        when(document.getContent()).thenReturn("");
+        when(this.xwiki.getDocument(anyString(), same(this.xcontext))).thenReturn(document);
+        when(this.xwiki.getDocument(same(document), anyString(), same(this.xcontext))).thenReturn(document);
+
+        ActivityStreamPlugin activityStreamPlugin = mock(ActivityStreamPlugin.class);
+        when(this.xwiki.getPlugin(ActivityStreamPlugin.PLUGIN_NAME, this.xcontext)).thenReturn(activityStreamPlugin);
+        ActivityStream activityStream = mock(ActivityStream.class);
+        when(activityStreamPlugin.getActivityStream()).thenReturn(activityStream);
+        when(activityStream.searchEvents(anyString(), eq(false), eq(true), eq(0), eq(0), anyListOf(Object.class),
+            same(this.xcontext))).thenReturn(this.activityEvents);
+
+        WatchListPlugin plugin = mock(WatchListPlugin.class);
+        when(this.xwiki.getPlugin(WatchListPlugin.ID, this.xcontext)).thenReturn(plugin);
+        this.store = mock(WatchListStore.class);
+        when(plugin.getStore()).thenReturn(this.store);
+        when(this.store.getJobDocumentNames()).thenReturn(Arrays.asList(JOB_DOCUMENT));
+        when(this.store.getSubscribersForJob(JOB_DOCUMENT)).thenReturn(Arrays.asList(ALICE, BOB));
+        when(this.store.getWatchedElements(anyString(), any(ElementType.class), same(this.xcontext))).thenReturn(
+            Collections.<String>emptyList());
+
+        WatchListNotifier notifier = mock(WatchListNotifier.class);
+        when(plugin.getNotifier()).thenReturn(notifier);
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation)
+            {
+                List<String> documents = new ArrayList<String>();
+                for (Object event : (List< ? >) invocation.getArguments()[1]) {
+                    documents.add(((WatchListEvent) event).getPrefixedFullName());
+                }
+                notifications.put((String) invocation.getArguments()[0], documents);
+                notificationThreads.add(Thread.currentThread().getName());
+                return null;
+            }
+        }).when(notifier).sendEmailNotification(anyString(), anyListOf(WatchListEvent.class),
+            eq("XWiki.WatchListMessage"), eq(this.previousFireTime), same(this.xcontext));
+
+        // The job documents
+        BaseObject schedulerJobObject = mock(BaseObject.class);
+        when(schedulerJobObject.getName()).thenReturn(JOB_DOCUMENT);
+        BaseObject watchListJobObject = mock(BaseObject.class);
+        when(watchListJobObject.getName()).thenReturn(JOB_DOCUMENT);
+        when(watchListJobObject.getDateValue(WatchListJobManager.WATCHLIST_JOB_LAST_FIRE_TIME_PROP)).thenReturn(
+            this.previousFireTime);
+        when(watchListJobObject.getStringValue(WatchListJobManager.WATCHLIST_JOB_EMAIL_PROP)).thenReturn(
+            "XWiki.WatchListMessage");
+        XWikiDocument jobDocument = mock(XWikiDocument.class);
+        when(jobDocument.getObject(WatchListJobManager.WATCHLIST_JOB_CLASS)).thenReturn(watchListJobObject);
+        when(this.xwiki.getDocument(JOB_DOCUMENT, this.xcontext)).thenReturn(jobDocument);
+
+        JobDataMap data = new JobDataMap();
+        data.put("context", this.xcontext);
+        data.put("xjob", schedulerJobObject);
+        JobDetail jobDetail = new JobDetail();
+        jobDetail.setJobDataMap(data);
+        this.jobContext = mock(JobExecutionContext.class);
+        when(this.jobContext.getJobDetail()).thenReturn(jobDetail);
+
+        // Components
+        ComponentManager componentManager = mock(ComponentManager.class);
+        Utils.setComponentManager(componentManager);
+        this.executionContextManager = mock(ExecutionContextManager.class);
+        when(componentManager.getInstance((Type) ExecutionContextManager.class, "default")).thenReturn(
+            this.executionContextManager);
+        when(componentManager.getInstance((Type) Execution.class, "default")).thenReturn(mock(Execution.class));
+        DocumentReferenceResolver<String> resolver = mock(DocumentReferenceResolver.class);
+        when(componentManager.getInstance(DocumentReferenceResolver.TYPE_STRING, "default")).thenReturn(resolver);
+        when(resolver.resolve(anyString())).thenAnswer(new Answer<DocumentReference>()
+        {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation)
+            {
+                String reference = (String) invocation.getArguments()[0];
+                String fullName = StringUtils.substringAfter(reference, ":");
+                return new DocumentReference(StringUtils.substringBefore(reference, ":"),
+                    StringUtils.substringBefore(fullName, "."), StringUtils.substringAfter(fullName, "."));
+            }
+        });
+        AuthorizationManager authorizationManager = mock(AuthorizationManager.class);
+        when(componentManager.getInstance((Type) AuthorizationManager.class, "default")).thenReturn(
+            authorizationManager);
+        when(authorizationManager.filterAccessible(eq(Right.VIEW), any(DocumentReference.class),
+            anyCollectionOf(DocumentReference.class))).thenAnswer(new Answer<List<DocumentReference>>()
+        {
+            @Override
+            public List<DocumentReference> answer(InvocationOnMock invocation)
+            {
+                return new ArrayList<DocumentReference>((Collection<DocumentReference>) invocation.getArguments()[2]);
+            }
+        });
+    }
+
+    @After
+    public void tearDown()
+    {
+        Utils.setComponentManager(null);
+    }
+
+    private void addEvent(String space, String page)
+    {
+        ActivityEvent event = mock(ActivityEvent.class, space + '.' + page);
+        when(event.getType()).thenReturn(ActivityEventType.UPDATE);
+        when(event.getWiki()).thenReturn("xwiki");
+        when(event.getSpace()).thenReturn(space);
+        when(event.getPage()).thenReturn(space + '.' + page);
+        when(event.getUser()).thenReturn("XWiki.Carol");
+        when(event.getVersion()).thenReturn("");
+        when(event.getDate()).thenReturn(new Date());
+        this.activityEvents.add(event);
+    }
+
+    @Test
+    public void notificationsAreSentByThePool() throws Exception
+    {
+        addEvent("Main", "WebHome");
+        addEvent("Sandbox", "WebHome");
+        addEvent("Blog", "WebHome");
+        when(this.store.getWatchedElements(ALICE, ElementType.SPACE, this.xcontext)).thenReturn(
+            Arrays.asList("xwiki:Sandbox", "xwiki:Main"));
+        when(this.store.getWatchedElements(BOB, ElementType.DOCUMENT, this.xcontext)).thenReturn(
+            Arrays.asList("xwiki:Sandbox.WebHome"));
+
+        new WatchListJob().executeJob(this.jobContext);
+
+        Assert.assertEquals(2, this.notifications.size());
+        Assert.assertEquals(Arrays.asList("xwiki:Main.WebHome", "xwiki:Sandbox.WebHome"),
+            this.notifications.get(ALICE));
+        Assert.assertEquals(Arrays.asList("xwiki:Sandbox.WebHome"), this.notifications.get(BOB));
+
+        // Each notification is sent from a pool thread, with its own execution context
+        for (String thread : this.notificationThreads) {
+            Assert.assertTrue(thread.startsWith("XWiki watchlist notification thread"));
+        }
+        verify(this.executionContextManager, times(3)).initialize(any(ExecutionContext.class));
+    }
+
+    @Test
+    public void noNotificationWithoutMatchingEvent() throws Exception
+    {
+        addEvent("Blog", "WebHome");
+        when(this.store.getWatchedElements(ALICE, ElementType.SPACE, this.xcontext)).thenReturn(
+            Arrays.asList("xwiki:Main"));
+
+        new WatchListJob().executeJob(this.jobContext);
+
+        Assert.assertTrue(this.notifications.isEmpty());
+        // Only the job execution context has been initialized
+        verify(this.executionContextManager).initialize(any(ExecutionContext.class));
+    }
+}
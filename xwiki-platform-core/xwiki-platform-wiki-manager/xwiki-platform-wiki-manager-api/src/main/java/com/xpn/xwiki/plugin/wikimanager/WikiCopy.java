@@ -260,6 +260,9 @@ public void importPackage(String packageName, String targetWiki, XWikiContext co
             }
         } finally {
             context.setDatabase(database);
+
+            // Delete the temporary copy of the package
+            importer.dispose();
         }
     }
 